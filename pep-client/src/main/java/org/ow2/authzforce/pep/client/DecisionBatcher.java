@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.pep.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.Request;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.Response;
+
+/**
+ * Groups the XACML requests submitted by concurrent threads into batches, sent when the batch is full (by the thread submitting the last request) or when the oldest request of the batch has waited
+ * for the maximum delay (by the batcher's own thread), whichever comes first.
+ */
+final class DecisionBatcher implements AutoCloseable
+{
+	private static final class PendingRequest
+	{
+		private final Request request;
+		private final CompletableFuture<Response> future = new CompletableFuture<>();
+
+		private PendingRequest(final Request request)
+		{
+			this.request = request;
+		}
+	}
+
+	private final Function<List<Request>, List<Response>> batchSender;
+	private final int maxBatchSize;
+	private final long maxDelayNanos;
+	private final ScheduledExecutorService scheduler;
+
+	/*
+	 * Guarded by this
+	 */
+	private List<PendingRequest> pending;
+	private boolean closed = false;
+
+	/**
+	 * Constructor
+	 *
+	 * @param batchSender
+	 *            sends a batch of requests to the PDP and returns the responses in the same order
+	 * @param maxBatchSize
+	 *            maximum number of requests per batch (> 1)
+	 * @param maxDelayNanos
+	 *            maximum time a request waits for the batch to be full (nanoseconds)
+	 */
+	DecisionBatcher(final Function<List<Request>, List<Response>> batchSender, final int maxBatchSize, final long maxDelayNanos)
+	{
+		assert batchSender != null && maxBatchSize > 1 && maxDelayNanos > 0;
+		this.batchSender = batchSender;
+		this.maxBatchSize = maxBatchSize;
+		this.maxDelayNanos = maxDelayNanos;
+		this.pending = new ArrayList<>(maxBatchSize);
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			final Thread thread = new Thread(runnable, "authzforce-pep-batcher");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Adds a request to the current batch
+	 *
+	 * @param request
+	 *            XACML request
+	 * @return future response
+	 * @throws IllegalStateException
+	 *             the batcher is closed
+	 */
+	CompletableFuture<Response> submit(final Request request)
+	{
+		final PendingRequest pendingRequest = new PendingRequest(request);
+		final List<PendingRequest> fullBatch;
+		synchronized (this)
+		{
+			if (closed)
+			{
+				throw new IllegalStateException("PEP client closed");
+			}
+
+			pending.add(pendingRequest);
+			if (pending.size() >= maxBatchSize)
+			{
+				fullBatch = pending;
+				pending = new ArrayList<>(maxBatchSize);
+			}
+			else
+			{
+				fullBatch = null;
+				if (pending.size() == 1)
+				{
+					/*
+					 * First request of a new batch. If the batch gets full before the delay, the scheduled flush applies to the next batch, which is then sent earlier than necessary but never later.
+					 */
+					scheduler.schedule(this::flush, maxDelayNanos, TimeUnit.NANOSECONDS);
+				}
+			}
+		}
+
+		if (fullBatch != null)
+		{
+			send(fullBatch);
+		}
+
+		return pendingRequest.future;
+	}
+
+	private void flush()
+	{
+		final List<PendingRequest> batch;
+		synchronized (this)
+		{
+			if (pending.isEmpty())
+			{
+				return;
+			}
+
+			batch = pending;
+			pending = new ArrayList<>(maxBatchSize);
+		}
+
+		send(batch);
+	}
+
+	private void send(final List<PendingRequest> batch)
+	{
+		final List<Request> requests = new ArrayList<>(batch.size());
+		for (final PendingRequest pendingRequest : batch)
+		{
+			requests.add(pendingRequest.request);
+		}
+
+		final List<Response> responses;
+		try
+		{
+			responses = batchSender.apply(requests);
+		}
+		catch (final Throwable e)
+		{
+			// Errors too, else the requesting threads would wait until timeout
+			for (final PendingRequest pendingRequest : batch)
+			{
+				pendingRequest.future.completeExceptionally(e);
+			}
+
+			if (e instanceof Error)
+			{
+				throw (Error) e;
+			}
+
+			return;
+		}
+
+		if (responses == null || responses.size() != batch.size())
+		{
+			final IllegalStateException error = new IllegalStateException(
+			        "Invalid batch decision response: " + (responses == null ? 0 : responses.size()) + " response(s) to " + batch.size() + " request(s)");
+			for (final PendingRequest pendingRequest : batch)
+			{
+				pendingRequest.future.completeExceptionally(error);
+			}
+
+			return;
+		}
+
+		int index = 0;
+		for (final PendingRequest pendingRequest : batch)
+		{
+			pendingRequest.future.complete(responses.get(index));
+			index++;
+		}
+	}
+
+	/**
+	 * Sends the pending requests, if any, and stops the batcher's thread
+	 */
+	@Override
+	public void close()
+	{
+		final List<PendingRequest> batch;
+		synchronized (this)
+		{
+			if (closed)
+			{
+				return;
+			}
+
+			closed = true;
+			batch = pending;
+			pending = new ArrayList<>(0);
+		}
+
+		scheduler.shutdownNow();
+		if (!batch.isEmpty())
+		{
+			send(batch);
+		}
+	}
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.pep.client;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.Result;
+
+/**
+ * LRU cache of XACML results with a time-to-live per entry. Thread-safe; the operations are short (no I/O) so a single lock is enough.
+ */
+final class DecisionCache
+{
+	private static final class Entry
+	{
+		private final Result result;
+		private final long expiryNanos;
+
+		private Entry(final Result result, final long expiryNanos)
+		{
+			this.result = result;
+			this.expiryNanos = expiryNanos;
+		}
+	}
+
+	private final Map<DecisionCacheKey, Entry> entries;
+
+	/**
+	 * Constructor
+	 *
+	 * @param maxSize
+	 *            maximum number of entries; the least recently used entry is removed when the cache is full
+	 */
+	DecisionCache(final int maxSize)
+	{
+		assert maxSize > 0;
+		this.entries = new LinkedHashMap<>(16, 0.75F, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<DecisionCacheKey, Entry> eldest)
+			{
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Gets a cached result
+	 *
+	 * @param key
+	 *            cache key
+	 * @return the result, or null if none or expired
+	 */
+	Result get(final DecisionCacheKey key)
+	{
+		synchronized (entries)
+		{
+			final Entry entry = entries.get(key);
+			if (entry == null)
+			{
+				return null;
+			}
+
+			if (System.nanoTime() - entry.expiryNanos >= 0)
+			{
+				entries.remove(key);
+				return null;
+			}
+
+			return entry.result;
+		}
+	}
+
+	/**
+	 * Puts a result in the cache
+	 *
+	 * @param key
+	 *            cache key
+	 * @param result
+	 *            XACML result
+	 * @param ttlNanos
+	 *            time-to-live (nanoseconds), strictly positive
+	 */
+	void put(final DecisionCacheKey key, final Result result, final long ttlNanos)
+	{
+		assert ttlNanos > 0;
+		final Entry entry = new Entry(result, System.nanoTime() + ttlNanos);
+		synchronized (entries)
+		{
+			entries.put(key, entry);
+		}
+	}
+
+	/**
+	 * Removes all entries, e.g. after a policy change
+	 */
+	void clear()
+	{
+		synchronized (entries)
+		{
+			entries.clear();
+		}
+	}
+
+	int size()
+	{
+		synchronized (entries)
+		{
+			return entries.size();
+		}
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.pep.client;
+
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Key of the decision cache and of the in-flight decision requests: subject ID, subject roles, resource ID and action ID. Two keys with the same roles in a different order are equal.
+ */
+final class DecisionCacheKey
+{
+	private final String subjectId;
+	private final Set<String> roles;
+	private final String resourceId;
+	private final String actionId;
+	private final int hashCode;
+
+	DecisionCacheKey(final String subjectId, final Set<String> roles, final String resourceId, final String actionId)
+	{
+		this.subjectId = Objects.requireNonNull(subjectId, "subjectId");
+		this.roles = Set.copyOf(roles);
+		this.resourceId = Objects.requireNonNull(resourceId, "resourceId");
+		this.actionId = Objects.requireNonNull(actionId, "actionId");
+		this.hashCode = Objects.hash(this.subjectId, this.roles, this.resourceId, this.actionId);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return hashCode;
+	}
+
+	@Override
+	public boolean equals(final Object obj)
+	{
+		if (this == obj)
+		{
+			return true;
+		}
+
+		if (!(obj instanceof DecisionCacheKey))
+		{
+			return false;
+		}
+
+		final DecisionCacheKey other = (DecisionCacheKey) obj;
+		return hashCode == other.hashCode && subjectId.equals(other.subjectId) && resourceId.equals(other.resourceId) && actionId.equals(other.actionId) && roles.equals(other.roles);
+	}
+
+	@Override
+	public String toString()
+	{
+		return "[subjectId=" + subjectId + ", roles=" + roles + ", resourceId=" + resourceId + ", actionId=" + actionId + "]";
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.pep.client;
+
+import java.security.Principal;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.DecisionType;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.Obligation;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.Result;
+
+import org.apache.cxf.interceptor.Fault;
+import org.apache.cxf.interceptor.security.AccessDeniedException;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.phase.AbstractPhaseInterceptor;
+import org.apache.cxf.phase.Phase;
+import org.apache.cxf.security.LoginSecurityContext;
+import org.apache.cxf.security.SecurityContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * CXF interceptor enforcing the decisions of an AuthzForce Server domain's PDP (XACML PEP) on the requests to a JAX-RS service, using a {@link PepClient}. The subject ID and roles come from the
+ * {@link LoginSecurityContext} set by the authentication interceptor, the resource ID is the request URI and the action ID is the HTTP method. Access is granted only if the decision is Permit and all
+ * Obligations are fulfilled (see {@link #fulfillObligations(Result, Message)}).
+ */
+public class PepAuthzInterceptor extends AbstractPhaseInterceptor<Message>
+{
+	private static final Logger LOGGER = LoggerFactory.getLogger(PepAuthzInterceptor.class);
+
+	private final PepClient pepClient;
+
+	/**
+	 * Constructor
+	 *
+	 * @param pepClient
+	 *            client of the PDP
+	 */
+	public PepAuthzInterceptor(final PepClient pepClient)
+	{
+		super(Phase.PRE_INVOKE);
+		if (pepClient == null)
+		{
+			throw new IllegalArgumentException("Undefined pepClient");
+		}
+
+		this.pepClient = pepClient;
+	}
+
+	@Override
+	public void handleMessage(final Message message) throws Fault
+	{
+		final SecurityContext sc = message.get(SecurityContext.class);
+		if (!(sc instanceof LoginSecurityContext) || sc.getUserPrincipal() == null)
+		{
+			LOGGER.debug("The SecurityContext was not an instance of LoginSecurityContext (with a user principal). No authorization is possible as a result");
+			throw new AccessDeniedException("Unauthorized");
+		}
+
+		final Principal principal = sc.getUserPrincipal();
+		final Set<Principal> principalRoles = ((LoginSecurityContext) sc).getUserRoles();
+		final Set<String> roles;
+		if (principalRoles == null)
+		{
+			roles = Collections.emptySet();
+		}
+		else
+		{
+			roles = new HashSet<>(principalRoles.size());
+			for (final Principal p : principalRoles)
+			{
+				if (p != principal)
+				{
+					roles.add(p.getName());
+				}
+			}
+		}
+
+		final String resourceId = (String) message.get(Message.REQUEST_URI);
+		final String actionId = (String) message.get(Message.HTTP_REQUEST_METHOD);
+		final Result result;
+		try
+		{
+			result = pepClient.getDecision(principal.getName(), roles, resourceId == null ? "" : resourceId, actionId == null ? "" : actionId);
+		}
+		catch (final RuntimeException e)
+		{
+			LOGGER.debug("Unauthorized (PDP request failed)", e);
+			throw new AccessDeniedException("Unauthorized");
+		}
+
+		LOGGER.debug("XACML authorization result: {}", result);
+		if (result.getDecision() != DecisionType.PERMIT || !fulfillObligations(result, message))
+		{
+			throw new AccessDeniedException("Unauthorized");
+		}
+	}
+
+	/**
+	 * Handles the Obligations (and Advice) of a Permit result. This implementation fulfills no Obligation other than {@value PepClient#CACHE_TTL_OBLIGATION_ID} (already handled by the
+	 * {@link PepClient}), i.e. access is denied if there is any other. Override this method to handle specific Obligations/Advice.
+	 *
+	 * @param result
+	 *            Permit result
+	 * @param message
+	 *            request message
+	 * @return true iff all Obligations are fulfilled
+	 */
+	protected boolean fulfillObligations(final Result result, final Message message)
+	{
+		if (result.getObligations() == null)
+		{
+			return true;
+		}
+
+		for (final Obligation obligation : result.getObligations().getObligations())
+		{
+			if (!PepClient.CACHE_TTL_OBLIGATION_ID.equals(obligation.getObligationId()))
+			{
+				LOGGER.debug("Obligation '{}' not supported", obligation.getObligationId());
+				return false;
+			}
+		}
+
+		return true;
+	}
+}
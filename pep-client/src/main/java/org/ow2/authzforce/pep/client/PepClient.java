@@ -0,0 +1,454 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.pep.client;
+
+import java.beans.ConstructorProperties;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+import jakarta.ws.rs.ProcessingException;
+
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.Advice;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.AssociatedAdvice;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.Attribute;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.AttributeAssignment;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.AttributeValueType;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.Attributes;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.DecisionType;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.Obligation;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.Obligations;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.Request;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.Response;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.Result;
+
+import org.apache.cxf.jaxrs.client.JAXRSClientFactory;
+import org.apache.cxf.jaxrs.client.WebClient;
+import org.apache.cxf.transport.http.HTTPConduit;
+import org.ow2.authzforce.rest.api.jaxrs.DomainsResource;
+import org.ow2.authzforce.rest.api.jaxrs.PdpResource;
+import org.ow2.authzforce.rest.service.api.jaxrs.PdpBatchResource;
+import org.ow2.authzforce.rest.service.api.xmlns.DecisionBatch;
+import org.ow2.authzforce.xacml.identifiers.XacmlAttributeCategory;
+import org.ow2.authzforce.xacml.identifiers.XacmlAttributeId;
+import org.ow2.authzforce.xacml.identifiers.XacmlDatatypeId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Client of the PDP of an AuthzForce Server domain, for use by a PEP. Thread-safe: a single instance should be shared by all the threads enforcing the decisions of the same domain.
+ * <p>
+ * Besides the plain XACML request/response exchange, the client provides:
+ * <ul>
+ * <li>A local decision cache for the decisions on (subject ID, subject roles, resource ID, action ID), see {@link #getDecision(String, Set, String, String)}. The time-to-live of a cached decision is
+ * given by the PDP in an Obligation or Advice with ID {@value #CACHE_TTL_OBLIGATION_ID}, the value of its first AttributeAssignment being the TTL in seconds; else the default TTL applies. Indeterminate
+ * results are never cached.</li>
+ * <li>Coalescing of concurrent identical decision requests: only one of them is sent to the PDP, the others wait for its result.</li>
+ * <li>Micro-batching: the decision requests of concurrent threads are sent together to the batch decision endpoint ('/domains/{domainId}/pdp.batch'), when the batch is full or after a maximum delay,
+ * whichever comes first. This saves HTTP round trips and request processing overhead on the server when the request rate is high, at the cost of a bounded latency increase.</li>
+ * </ul>
+ * The HTTP requests go through CXF's default HTTP conduit, based on {@link java.net.http.HttpClient}, which keeps the connections to the server alive and reuses them across requests.
+ */
+public final class PepClient implements AutoCloseable
+{
+	private static final Logger LOGGER = LoggerFactory.getLogger(PepClient.class);
+
+	/**
+	 * ID of the Obligation or Advice giving the time-to-live (in seconds) of the decision in the PEP's decision cache. The TTL is the value of its first AttributeAssignment, of datatype integer. A TTL
+	 * of 0 disables caching of the decision.
+	 */
+	public static final String CACHE_TTL_OBLIGATION_ID = "urn:ow2:authzforce:pep:obligation:cache-ttl";
+
+	private final PdpResource pdp;
+	private final DecisionBatcher batcher;
+	private final DecisionCache cache;
+	private final long defaultCacheTtlNanos;
+	private final long maxWaitNanos;
+	private final ConcurrentMap<DecisionCacheKey, CompletableFuture<Result>> inFlightDecisions = new ConcurrentHashMap<>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param serverBaseAddress
+	 *            base address of AuthzForce Server's REST API, e.g. 'http://localhost:8080/authzforce-ce'
+	 * @param domainId
+	 *            ID of the domain to which the decision requests are sent
+	 * @param providers
+	 *            JAX-RS providers, e.g. a JAXB provider with schema validation; null or empty to use CXF's default ones
+	 * @param cacheMaxSize
+	 *            maximum number of decisions in the decision cache; 0 or less disables the cache
+	 * @param cacheDefaultTtlSeconds
+	 *            time-to-live (seconds) of the cached decisions unless the PDP returns an Obligation/Advice with ID {@value #CACHE_TTL_OBLIGATION_ID}; 0 or less disables caching of such decisions
+	 * @param maxBatchSize
+	 *            maximum number of decision requests sent together to the batch decision endpoint; 1 or less disables batching, i.e. each decision request is sent separately without delay
+	 * @param maxBatchDelayMillis
+	 *            maximum time (ms) a decision request waits for the batch to be full before the batch is sent (ignored if batching is disabled)
+	 * @param requestTimeoutMillis
+	 *            maximum time (ms) to wait for the server's response to a (batch) decision request; a thread waiting for the result of a batch, or of the same decision requested by another
+	 *            thread, waits at most this time plus {@code maxBatchDelayMillis}
+	 */
+	@ConstructorProperties({ "serverBaseAddress", "domainId", "providers", "cacheMaxSize", "cacheDefaultTtlSeconds", "maxBatchSize", "maxBatchDelayMillis", "requestTimeoutMillis" })
+	public PepClient(final String serverBaseAddress, final String domainId, final List<?> providers, final int cacheMaxSize, final int cacheDefaultTtlSeconds, final int maxBatchSize,
+	        final int maxBatchDelayMillis, final int requestTimeoutMillis)
+	{
+		this(newPdpProxy(serverBaseAddress, domainId, providers, requestTimeoutMillis),
+		        maxBatchSize > 1 ? newBatchSender(serverBaseAddress, domainId, providers, requestTimeoutMillis) : null, cacheMaxSize, cacheDefaultTtlSeconds, maxBatchSize,
+		        maxBatchDelayMillis, requestTimeoutMillis);
+	}
+
+	/**
+	 * Constructor from the PDP resource and batch sender, e.g. to test the client without a server
+	 *
+	 * @param pdp
+	 *            PDP resource of the domain
+	 * @param batchSender
+	 *            sends a batch of requests to the domain's batch decision endpoint and returns the responses in the same order (ignored if batching is disabled)
+	 * @see #PepClient(String, String, List, int, int, int, int, int)
+	 */
+	PepClient(final PdpResource pdp, final Function<List<Request>, List<Response>> batchSender, final int cacheMaxSize, final int cacheDefaultTtlSeconds, final int maxBatchSize,
+	        final int maxBatchDelayMillis, final int requestTimeoutMillis)
+	{
+		assert pdp != null;
+		if (requestTimeoutMillis < 1)
+		{
+			throw new IllegalArgumentException("Invalid requestTimeoutMillis: " + requestTimeoutMillis + " (expected: >= 1)");
+		}
+
+		this.pdp = pdp;
+		if (maxBatchSize > 1)
+		{
+			if (maxBatchDelayMillis < 1)
+			{
+				throw new IllegalArgumentException("Invalid maxBatchDelayMillis: " + maxBatchDelayMillis + " (expected: >= 1)");
+			}
+
+			assert batchSender != null;
+			this.batcher = new DecisionBatcher(batchSender, maxBatchSize, TimeUnit.MILLISECONDS.toNanos(maxBatchDelayMillis));
+		}
+		else
+		{
+			this.batcher = null;
+		}
+
+		this.cache = cacheMaxSize > 0 ? new DecisionCache(cacheMaxSize) : null;
+		this.defaultCacheTtlNanos = cacheDefaultTtlSeconds > 0 ? TimeUnit.SECONDS.toNanos(cacheDefaultTtlSeconds) : 0;
+		this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(requestTimeoutMillis + (long) (batcher == null ? 0 : maxBatchDelayMillis));
+	}
+
+	private static void setReceiveTimeout(final Object proxy, final int requestTimeoutMillis)
+	{
+		final HTTPConduit conduit = WebClient.getConfig(proxy).getHttpConduit();
+		conduit.getClient().setReceiveTimeout(requestTimeoutMillis);
+	}
+
+	private static PdpResource newPdpProxy(final String serverBaseAddress, final String domainId, final List<?> providers, final int requestTimeoutMillis)
+	{
+		if (serverBaseAddress == null || domainId == null)
+		{
+			throw new IllegalArgumentException("Undefined serverBaseAddress or domainId");
+		}
+
+		// thread-safe proxies, sub-resource proxies included
+		final DomainsResource domains = JAXRSClientFactory.create(serverBaseAddress, DomainsResource.class, providers == null ? Collections.emptyList() : providers, true);
+		WebClient.getConfig(domains).getOutInterceptors().add(new XmlMediaTypeInterceptor());
+		setReceiveTimeout(domains, requestTimeoutMillis);
+		return domains.getDomainResource(domainId).getPdpResource();
+	}
+
+	private static Function<List<Request>, List<Response>> newBatchSender(final String serverBaseAddress, final String domainId, final List<?> providers, final int requestTimeoutMillis)
+	{
+		final PdpBatchResource pdpBatch = JAXRSClientFactory.create(serverBaseAddress, PdpBatchResource.class, providers == null ? Collections.emptyList() : providers, true);
+		WebClient.getConfig(pdpBatch).getOutInterceptors().add(new XmlMediaTypeInterceptor());
+		setReceiveTimeout(pdpBatch, requestTimeoutMillis);
+		return requests -> pdpBatch.requestPolicyDecisions(domainId, new DecisionBatch(requests)).getResponses();
+	}
+
+	/**
+	 * Creates a XACML request with the usual attributes of a PEP request: subject ID, subject roles, resource ID and action ID (all of datatype string, except the roles: anyURI)
+	 *
+	 * @param subjectId
+	 *            subject ID
+	 * @param roles
+	 *            subject roles (possibly empty)
+	 * @param resourceId
+	 *            resource ID
+	 * @param actionId
+	 *            action ID
+	 * @return XACML request
+	 */
+	public static Request newRequest(final String subjectId, final Set<String> roles, final String resourceId, final String actionId)
+	{
+		final Attribute subjectIdAtt = newAttribute(XacmlAttributeId.XACML_1_0_SUBJECT_ID.value(), XacmlDatatypeId.STRING.value(), Collections.singleton(subjectId));
+		final List<Attribute> subjectAtts;
+		if (roles.isEmpty())
+		{
+			subjectAtts = Collections.singletonList(subjectIdAtt);
+		}
+		else
+		{
+			subjectAtts = Arrays.asList(subjectIdAtt, newAttribute(XacmlAttributeId.XACML_2_0_SUBJECT_ROLE.value(), XacmlDatatypeId.ANY_URI.value(), roles));
+		}
+
+		final Attributes subjectCategory = new Attributes(null, subjectAtts, XacmlAttributeCategory.XACML_1_0_ACCESS_SUBJECT.value(), null);
+		final Attributes resourceCategory = new Attributes(null,
+		        Collections.singletonList(newAttribute(XacmlAttributeId.XACML_1_0_RESOURCE_ID.value(), XacmlDatatypeId.STRING.value(), Collections.singleton(resourceId))),
+		        XacmlAttributeCategory.XACML_3_0_RESOURCE.value(), null);
+		final Attributes actionCategory = new Attributes(null,
+		        Collections.singletonList(newAttribute(XacmlAttributeId.XACML_1_0_ACTION_ID.value(), XacmlDatatypeId.STRING.value(), Collections.singleton(actionId))),
+		        XacmlAttributeCategory.XACML_3_0_ACTION.value(), null);
+		// Environment - current date/time will be set by the PDP
+		return new Request(null, Arrays.asList(subjectCategory, resourceCategory, actionCategory), null, false, false);
+	}
+
+	private static Attribute newAttribute(final String attributeId, final String datatype, final Set<String> values)
+	{
+		final List<AttributeValueType> attVals = new ArrayList<>(values.size());
+		for (final String value : values)
+		{
+			attVals.add(new AttributeValueType(Collections.singletonList(value), datatype, null));
+		}
+
+		return new Attribute(attVals, attributeId, null, false);
+	}
+
+	/**
+	 * Requests a decision from the PDP, through the batch decision endpoint if batching is enabled. The decision is not cached.
+	 *
+	 * @param request
+	 *            XACML request
+	 * @return XACML response
+	 * @throws jakarta.ws.rs.WebApplicationException
+	 *             error response from the server
+	 * @throws jakarta.ws.rs.ProcessingException
+	 *             error sending the request or processing the response, or no response within the request timeout
+	 * @throws IllegalStateException
+	 *             the client is closed
+	 */
+	public Response requestPolicyDecision(final Request request)
+	{
+		if (batcher == null)
+		{
+			return pdp.requestPolicyDecision(request);
+		}
+
+		return await(batcher.submit(request));
+	}
+
+	/**
+	 * Gets the decision for a subject with given roles to perform an action on a resource, from the decision cache if possible, else from the PDP (see
+	 * {@link #newRequest(String, Set, String, String)} for the request attributes). If the same decision is already being requested by another thread, waits for its result instead of sending the
+	 * same request again.
+	 *
+	 * @param subjectId
+	 *            subject ID
+	 * @param roles
+	 *            subject roles (possibly empty)
+	 * @param resourceId
+	 *            resource ID
+	 * @param actionId
+	 *            action ID
+	 * @return XACML result, including the Obligations and Advice, if any, that the PEP must handle
+	 * @throws jakarta.ws.rs.WebApplicationException
+	 *             error response from the server
+	 * @throws jakarta.ws.rs.ProcessingException
+	 *             error sending the request or processing the response, or no response within the request timeout
+	 * @throws IllegalStateException
+	 *             the client is closed, or invalid response from the PDP (no result)
+	 */
+	public Result getDecision(final String subjectId, final Set<String> roles, final String resourceId, final String actionId)
+	{
+		final DecisionCacheKey key = new DecisionCacheKey(subjectId, roles, resourceId, actionId);
+		if (cache != null)
+		{
+			final Result cachedResult = cache.get(key);
+			if (cachedResult != null)
+			{
+				return cachedResult;
+			}
+		}
+
+		final CompletableFuture<Result> newFuture = new CompletableFuture<>();
+		final CompletableFuture<Result> inFlightFuture = inFlightDecisions.putIfAbsent(key, newFuture);
+		if (inFlightFuture != null)
+		{
+			return await(inFlightFuture);
+		}
+
+		try
+		{
+			final Response response = requestPolicyDecision(newRequest(subjectId, roles, resourceId, actionId));
+			if (response == null || response.getResults().isEmpty())
+			{
+				throw new IllegalStateException("Invalid response from PDP: no Result");
+			}
+
+			final Result result = response.getResults().get(0);
+			if (cache != null)
+			{
+				final long ttlNanos = getCacheTtlNanos(result);
+				if (ttlNanos > 0)
+				{
+					cache.put(key, result, ttlNanos);
+				}
+			}
+
+			newFuture.complete(result);
+			return result;
+		}
+		catch (final Throwable e)
+		{
+			// Errors too, else the threads waiting for the same decision would wait until timeout
+			newFuture.completeExceptionally(e);
+			throw e;
+		}
+		finally
+		{
+			inFlightDecisions.remove(key, newFuture);
+		}
+	}
+
+	private long getCacheTtlNanos(final Result result)
+	{
+		if (result.getDecision() == DecisionType.INDETERMINATE)
+		{
+			return 0;
+		}
+
+		final Obligations obligations = result.getObligations();
+		if (obligations != null)
+		{
+			for (final Obligation obligation : obligations.getObligations())
+			{
+				if (CACHE_TTL_OBLIGATION_ID.equals(obligation.getObligationId()))
+				{
+					return parseCacheTtl(obligation.getAttributeAssignments());
+				}
+			}
+		}
+
+		final AssociatedAdvice advice = result.getAssociatedAdvice();
+		if (advice != null)
+		{
+			for (final Advice adviceElt : advice.getAdvices())
+			{
+				if (CACHE_TTL_OBLIGATION_ID.equals(adviceElt.getAdviceId()))
+				{
+					return parseCacheTtl(adviceElt.getAttributeAssignments());
+				}
+			}
+		}
+
+		return defaultCacheTtlNanos;
+	}
+
+	private static long parseCacheTtl(final List<AttributeAssignment> attributeAssignments)
+	{
+		if (attributeAssignments.isEmpty() || attributeAssignments.get(0).getContent().isEmpty())
+		{
+			LOGGER.warn("Missing TTL value in Obligation/Advice '{}': decision not cached", CACHE_TTL_OBLIGATION_ID);
+			return 0;
+		}
+
+		final Serializable ttlValue = attributeAssignments.get(0).getContent().get(0);
+		try
+		{
+			return TimeUnit.SECONDS.toNanos(Long.parseLong(ttlValue.toString().trim()));
+		}
+		catch (final NumberFormatException e)
+		{
+			LOGGER.warn("Invalid TTL value in Obligation/Advice '{}': '{}': decision not cached", CACHE_TTL_OBLIGATION_ID, ttlValue);
+			return 0;
+		}
+	}
+
+	private <T> T await(final CompletableFuture<T> future)
+	{
+		try
+		{
+			return future.get(maxWaitNanos, TimeUnit.NANOSECONDS);
+		}
+		catch (final ExecutionException e)
+		{
+			final Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+			{
+				throw (RuntimeException) cause;
+			}
+
+			if (cause instanceof Error)
+			{
+				throw (Error) cause;
+			}
+
+			throw new ProcessingException(cause);
+		}
+		catch (final TimeoutException e)
+		{
+			throw new ProcessingException("No decision after " + TimeUnit.NANOSECONDS.toMillis(maxWaitNanos) + " ms", e);
+		}
+		catch (final InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new ProcessingException("Interrupted while waiting for the decision", e);
+		}
+	}
+
+	/**
+	 * Removes all the decisions from the decision cache, e.g. after a change of the domain's policies
+	 */
+	public void clearCache()
+	{
+		if (cache != null)
+		{
+			cache.clear();
+		}
+	}
+
+	/**
+	 * Gets the number of decisions in the decision cache (including expired ones not yet evicted)
+	 *
+	 * @return number of cached decisions
+	 */
+	public int getCacheSize()
+	{
+		return cache == null ? 0 : cache.size();
+	}
+
+	/**
+	 * Sends the pending decision requests, if any, and stops the batching thread. Further decision requests fail if batching is enabled.
+	 */
+	@Override
+	public void close()
+	{
+		if (batcher != null)
+		{
+			batcher.close();
+		}
+	}
+}
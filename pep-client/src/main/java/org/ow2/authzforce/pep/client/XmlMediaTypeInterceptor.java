@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.pep.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import jakarta.ws.rs.core.MediaType;
+
+import org.apache.cxf.interceptor.Fault;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.phase.AbstractPhaseInterceptor;
+import org.apache.cxf.phase.Phase;
+
+/**
+ * CXF client interceptor restricting the Content-Type and Accept headers to XML. The API interfaces declare several media types (XML, Fast Infoset, JSON) and the proxy would accept all of them,
+ * whereas the client handles XML only.
+ */
+final class XmlMediaTypeInterceptor extends AbstractPhaseInterceptor<Message>
+{
+	private static final List<String> XML_MEDIA_TYPES = Collections.singletonList(MediaType.APPLICATION_XML);
+
+	XmlMediaTypeInterceptor()
+	{
+		super(Phase.PRE_LOGICAL);
+	}
+
+	@Override
+	public void handleMessage(final Message message) throws Fault
+	{
+		@SuppressWarnings("unchecked")
+		final Map<String, List<String>> headers = (Map<String, List<String>>) message.get(Message.PROTOCOL_HEADERS);
+		if (headers == null)
+		{
+			return;
+		}
+
+		if (headers.containsKey(Message.CONTENT_TYPE))
+		{
+			headers.put(Message.CONTENT_TYPE, new ArrayList<>(XML_MEDIA_TYPES));
+			message.put(Message.CONTENT_TYPE, MediaType.APPLICATION_XML);
+		}
+
+		headers.put(Message.ACCEPT_CONTENT_TYPE, new ArrayList<>(XML_MEDIA_TYPES));
+	}
+}
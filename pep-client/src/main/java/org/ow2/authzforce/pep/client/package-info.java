@@ -0,0 +1,23 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+/**
+ * Java PEP (Policy Enforcement Point) client library for the PDP API of AuthzForce Server, with a local decision cache, coalescing of concurrent identical decision requests, and micro-batching of
+ * decision requests to the batch decision endpoint ('/domains/{domainId}/pdp.batch')
+ */
+package org.ow2.authzforce.pep.client;
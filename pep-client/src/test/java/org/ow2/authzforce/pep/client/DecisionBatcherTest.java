@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.pep.client;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.DecisionType;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.Request;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.Response;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.Result;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the batch flush conditions of {@link DecisionBatcher}: batch full, maximum delay, close
+ */
+public class DecisionBatcherTest
+{
+	/*
+	 * Batches sent so far
+	 */
+	private final List<List<Request>> sentBatches = new CopyOnWriteArrayList<>();
+
+	/*
+	 * Responds to each request with a Permit for resource '/documents/0', else Deny; so that the responses can be matched with the requests
+	 */
+	private final Function<List<Request>, List<Response>> batchSender = requests -> {
+		sentBatches.add(requests);
+		final List<Response> responses = new ArrayList<>(requests.size());
+		for (final Request request : requests)
+		{
+			responses.add(newResponse(getResourceId(request).equals("/documents/0") ? DecisionType.PERMIT : DecisionType.DENY));
+		}
+
+		return responses;
+	};
+
+	private static Request newRequest(final String resourceId)
+	{
+		return PepClient.newRequest("alice", Collections.singleton("admin"), resourceId, "GET");
+	}
+
+	private static String getResourceId(final Request request)
+	{
+		return (String) request.getAttributes().get(1).getAttributes().get(0).getAttributeValues().get(0).getContent().get(0);
+	}
+
+	private static Response newResponse(final DecisionType decision)
+	{
+		return new Response(Collections.singletonList(new Result(decision, null, null, null, null, null)));
+	}
+
+	private static DecisionType getDecision(final CompletableFuture<Response> future) throws InterruptedException, ExecutionException
+	{
+		return future.get().getResults().get(0).getDecision();
+	}
+
+	@BeforeMethod
+	public void setUp()
+	{
+		sentBatches.clear();
+	}
+
+	@Test
+	public void flushWhenBatchFull() throws Exception
+	{
+		try (final DecisionBatcher batcher = new DecisionBatcher(batchSender, 3, TimeUnit.HOURS.toNanos(1)))
+		{
+			final CompletableFuture<Response> future0 = batcher.submit(newRequest("/documents/0"));
+			final CompletableFuture<Response> future1 = batcher.submit(newRequest("/documents/1"));
+			assertFalse(future0.isDone() || future1.isDone(), "Batch sent before being full");
+			assertTrue(sentBatches.isEmpty());
+
+			// the thread submitting the last request of the batch sends it
+			final CompletableFuture<Response> future2 = batcher.submit(newRequest("/documents/0"));
+			assertTrue(future0.isDone() && future1.isDone() && future2.isDone(), "Full batch not sent");
+			assertEquals(sentBatches.size(), 1);
+			assertEquals(sentBatches.get(0).size(), 3);
+			assertEquals(getDecision(future0), DecisionType.PERMIT);
+			assertEquals(getDecision(future1), DecisionType.DENY);
+			assertEquals(getDecision(future2), DecisionType.PERMIT);
+
+			// next request starts a new batch
+			final CompletableFuture<Response> future3 = batcher.submit(newRequest("/documents/1"));
+			assertFalse(future3.isDone());
+			assertEquals(sentBatches.size(), 1);
+		}
+	}
+
+	@Test
+	public void flushAfterMaxDelay() throws Exception
+	{
+		try (final DecisionBatcher batcher = new DecisionBatcher(batchSender, 100, TimeUnit.MILLISECONDS.toNanos(100)))
+		{
+			final long startNanos = System.nanoTime();
+			final CompletableFuture<Response> future0 = batcher.submit(newRequest("/documents/0"));
+			final CompletableFuture<Response> future1 = batcher.submit(newRequest("/documents/1"));
+			assertEquals(future0.get(5, TimeUnit.SECONDS).getResults().get(0).getDecision(), DecisionType.PERMIT);
+			assertEquals(getDecision(future1), DecisionType.DENY);
+			assertTrue(System.nanoTime() - startNanos >= TimeUnit.MILLISECONDS.toNanos(100), "Batch sent before the max delay although not full");
+			assertEquals(sentBatches.size(), 1);
+			assertEquals(sentBatches.get(0).size(), 2);
+		}
+	}
+
+	@Test
+	public void flushOnClose() throws Exception
+	{
+		final DecisionBatcher batcher = new DecisionBatcher(batchSender, 100, TimeUnit.HOURS.toNanos(1));
+		final CompletableFuture<Response> future = batcher.submit(newRequest("/documents/0"));
+		batcher.close();
+		assertTrue(future.isDone(), "Pending request not sent on close");
+		assertEquals(getDecision(future), DecisionType.PERMIT);
+	}
+
+	@Test(expectedExceptions = IllegalStateException.class)
+	public void submitAfterClose()
+	{
+		final DecisionBatcher batcher = new DecisionBatcher(batchSender, 100, TimeUnit.HOURS.toNanos(1));
+		batcher.close();
+		batcher.submit(newRequest("/documents/0"));
+	}
+
+	@Test
+	public void batchSenderFailure() throws Exception
+	{
+		final RuntimeException error = new RuntimeException("Server unavailable");
+		try (final DecisionBatcher batcher = new DecisionBatcher(requests -> {
+			throw error;
+		}, 2, TimeUnit.HOURS.toNanos(1)))
+		{
+			final CompletableFuture<Response> future0 = batcher.submit(newRequest("/documents/0"));
+			final CompletableFuture<Response> future1 = batcher.submit(newRequest("/documents/1"));
+			for (final CompletableFuture<Response> future : List.of(future0, future1))
+			{
+				try
+				{
+					future.get();
+					fail("Batch sender failure not propagated");
+				}
+				catch (final ExecutionException e)
+				{
+					assertSame(e.getCause(), error);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void batchSenderJvmError() throws Exception
+	{
+		final LinkageError error = new LinkageError("Class not found");
+		try (final DecisionBatcher batcher = new DecisionBatcher(requests -> {
+			throw error;
+		}, 2, TimeUnit.HOURS.toNanos(1)))
+		{
+			final CompletableFuture<Response> future0 = batcher.submit(newRequest("/documents/0"));
+			try
+			{
+				// fills the batch, so sent by this thread
+				batcher.submit(newRequest("/documents/1"));
+				fail("Batch sender error not rethrown");
+			}
+			catch (final LinkageError e)
+			{
+				assertSame(e, error);
+			}
+
+			try
+			{
+				future0.get(5, TimeUnit.SECONDS);
+				fail("Batch sender error not propagated to the other requests of the batch");
+			}
+			catch (final ExecutionException e)
+			{
+				assertSame(e.getCause(), error);
+			}
+		}
+	}
+
+	@Test
+	public void wrongNumberOfResponses() throws Exception
+	{
+		try (final DecisionBatcher batcher = new DecisionBatcher(requests -> Collections.singletonList(newResponse(DecisionType.PERMIT)), 2, TimeUnit.HOURS.toNanos(1)))
+		{
+			final CompletableFuture<Response> future0 = batcher.submit(newRequest("/documents/0"));
+			batcher.submit(newRequest("/documents/1"));
+			try
+			{
+				future0.get();
+				fail("Invalid batch response accepted");
+			}
+			catch (final ExecutionException e)
+			{
+				assertTrue(e.getCause() instanceof IllegalStateException, "Unexpected error: " + e.getCause());
+			}
+		}
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.pep.client;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.DecisionType;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.Result;
+
+import org.testng.annotations.Test;
+
+/**
+ * Tests the expiry and LRU eviction of {@link DecisionCache}
+ */
+public class DecisionCacheTest
+{
+	private static final long LONG_TTL_NANOS = TimeUnit.HOURS.toNanos(1);
+
+	private static DecisionCacheKey newKey(final String resourceId)
+	{
+		return new DecisionCacheKey("alice", Collections.singleton("admin"), resourceId, "GET");
+	}
+
+	private static Result newResult(final DecisionType decision)
+	{
+		return new Result(decision, null, null, null, null, null);
+	}
+
+	@Test
+	public void getBeforeExpiry()
+	{
+		final DecisionCache cache = new DecisionCache(10);
+		final Result result = newResult(DecisionType.PERMIT);
+		cache.put(newKey("/documents/0"), result, LONG_TTL_NANOS);
+		assertSame(cache.get(newKey("/documents/0")), result, "Cached result not found with an equal key");
+		assertNull(cache.get(newKey("/documents/1")));
+	}
+
+	@Test
+	public void getAfterExpiry() throws InterruptedException
+	{
+		final DecisionCache cache = new DecisionCache(10);
+		cache.put(newKey("/documents/0"), newResult(DecisionType.PERMIT), TimeUnit.MILLISECONDS.toNanos(10));
+		cache.put(newKey("/documents/1"), newResult(DecisionType.DENY), LONG_TTL_NANOS);
+		Thread.sleep(50);
+		assertNull(cache.get(newKey("/documents/0")), "Expired result returned");
+		assertEquals(cache.size(), 1, "Expired entry not removed on access");
+		assertEquals(cache.get(newKey("/documents/1")).getDecision(), DecisionType.DENY);
+	}
+
+	@Test
+	public void evictLeastRecentlyUsed()
+	{
+		final DecisionCache cache = new DecisionCache(2);
+		cache.put(newKey("/documents/0"), newResult(DecisionType.PERMIT), LONG_TTL_NANOS);
+		cache.put(newKey("/documents/1"), newResult(DecisionType.DENY), LONG_TTL_NANOS);
+		// access makes /documents/0 the most recently used
+		cache.get(newKey("/documents/0"));
+		cache.put(newKey("/documents/2"), newResult(DecisionType.PERMIT), LONG_TTL_NANOS);
+		assertEquals(cache.size(), 2);
+		assertNull(cache.get(newKey("/documents/1")), "Least recently used entry not evicted");
+		assertEquals(cache.get(newKey("/documents/0")).getDecision(), DecisionType.PERMIT);
+		assertEquals(cache.get(newKey("/documents/2")).getDecision(), DecisionType.PERMIT);
+	}
+
+	@Test
+	public void clear()
+	{
+		final DecisionCache cache = new DecisionCache(10);
+		cache.put(newKey("/documents/0"), newResult(DecisionType.PERMIT), LONG_TTL_NANOS);
+		cache.clear();
+		assertEquals(cache.size(), 0);
+		assertNull(cache.get(newKey("/documents/0")));
+	}
+}
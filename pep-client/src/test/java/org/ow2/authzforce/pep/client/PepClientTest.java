@@ -0,0 +1,392 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.pep.client;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import jakarta.ws.rs.ProcessingException;
+
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.Advice;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.AssociatedAdvice;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.AttributeAssignment;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.DecisionType;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.Obligation;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.Obligations;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.Request;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.Response;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.Result;
+
+import org.json.JSONObject;
+import org.ow2.authzforce.rest.api.jaxrs.PdpResource;
+import org.ow2.authzforce.xacml.identifiers.XacmlDatatypeId;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the coalescing of concurrent identical decision requests and the decision caching of {@link PepClient}, in particular the TTL given by the PDP in the
+ * {@value PepClient#CACHE_TTL_OBLIGATION_ID} Obligation/Advice, against a fake PDP
+ */
+public class PepClientTest
+{
+	private static final Set<String> ROLES = Collections.singleton("admin");
+
+	/**
+	 * Fake PDP returning the result of a given function and counting the requests
+	 */
+	private static final class FakePdp implements PdpResource
+	{
+		private final Function<Request, Result> resultFunction;
+		private final AtomicInteger requestCount = new AtomicInteger(0);
+
+		private FakePdp(final Function<Request, Result> resultFunction)
+		{
+			this.resultFunction = resultFunction;
+		}
+
+		@Override
+		public Response requestPolicyDecision(final Request request)
+		{
+			requestCount.incrementAndGet();
+			return new Response(Collections.singletonList(resultFunction.apply(request)));
+		}
+
+		@Override
+		public JSONObject requestPolicyDecisionXacmlJson(final JSONObject request)
+		{
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	private static List<AttributeAssignment> newTtlAssignments(final String ttl)
+	{
+		return Collections.singletonList(new AttributeAssignment(Collections.<Serializable> singletonList(ttl), XacmlDatatypeId.INTEGER.value(), null, "ttl", null, null));
+	}
+
+	private static Result newResultWithTtlObligation(final DecisionType decision, final String ttl)
+	{
+		return new Result(decision, null, new Obligations(Collections.singletonList(new Obligation(newTtlAssignments(ttl), PepClient.CACHE_TTL_OBLIGATION_ID))), null, null, null);
+	}
+
+	private static Result newResultWithTtlAdvice(final DecisionType decision, final String ttl)
+	{
+		return new Result(decision, null, null, new AssociatedAdvice(Collections.singletonList(new Advice(newTtlAssignments(ttl), PepClient.CACHE_TTL_OBLIGATION_ID))), null, null);
+	}
+
+	@DataProvider(name = "cacheTtlResults")
+	public Object[][] cacheTtlResults()
+	{
+		final Obligations zeroTtlObligations = new Obligations(Collections.singletonList(new Obligation(newTtlAssignments("0"), PepClient.CACHE_TTL_OBLIGATION_ID)));
+		final AssociatedAdvice ttlAdvice = new AssociatedAdvice(Collections.singletonList(new Advice(newTtlAssignments("3600"), PepClient.CACHE_TTL_OBLIGATION_ID)));
+		final Obligations otherObligations = new Obligations(
+		        Collections.singletonList(new Obligation(Collections.emptyList(), "urn:ow2:authzforce:test:obligation:log")));
+		return new Object[][] {
+		        /*
+		         * Result, default TTL (seconds), whether the result is expected in the cache
+		         */
+		        { new Result(DecisionType.PERMIT, null, null, null, null, null), 60, true },
+		        { new Result(DecisionType.PERMIT, null, null, null, null, null), 0, false },
+		        { new Result(DecisionType.DENY, null, otherObligations, null, null, null), 60, true },
+		        // Indeterminate never cached
+		        { new Result(DecisionType.INDETERMINATE, null, null, null, null, null), 60, false },
+		        { newResultWithTtlObligation(DecisionType.INDETERMINATE, "3600"), 60, false },
+		        // TTL Obligation/Advice overrides the default TTL
+		        { newResultWithTtlObligation(DecisionType.PERMIT, "3600"), 0, true },
+		        { newResultWithTtlObligation(DecisionType.DENY, " 3600 "), 0, true },
+		        { newResultWithTtlObligation(DecisionType.PERMIT, "0"), 60, false },
+		        { newResultWithTtlAdvice(DecisionType.PERMIT, "3600"), 0, true },
+		        { newResultWithTtlAdvice(DecisionType.NOT_APPLICABLE, "0"), 60, false },
+		        // Obligation takes precedence over Advice
+		        { new Result(DecisionType.PERMIT, null, zeroTtlObligations, ttlAdvice, null, null), 60, false },
+		        // invalid or missing TTL value: not cached
+		        { newResultWithTtlObligation(DecisionType.PERMIT, "one hour"), 60, false },
+		        { newResultWithTtlAdvice(DecisionType.PERMIT, "1.5"), 60, false },
+		        { new Result(DecisionType.PERMIT, null, new Obligations(Collections.singletonList(new Obligation(Collections.emptyList(), PepClient.CACHE_TTL_OBLIGATION_ID))), null,
+		                null, null), 60, false } };
+	}
+
+	@Test(dataProvider = "cacheTtlResults")
+	public void cacheWithTtlFromPdp(final Result pdpResult, final int defaultTtlSeconds, final boolean expectedCached)
+	{
+		final FakePdp pdp = new FakePdp(request -> pdpResult);
+		try (final PepClient pepClient = new PepClient(pdp, null, 100, defaultTtlSeconds, 1, 0, 5000))
+		{
+			assertSame(pepClient.getDecision("alice", ROLES, "/documents/0", "GET"), pdpResult);
+			assertEquals(pepClient.getCacheSize(), expectedCached ? 1 : 0);
+			assertSame(pepClient.getDecision("alice", ROLES, "/documents/0", "GET"), pdpResult);
+			assertEquals(pdp.requestCount.get(), expectedCached ? 1 : 2, "Number of requests to the PDP");
+		}
+	}
+
+	@Test
+	public void cacheKey()
+	{
+		final FakePdp pdp = new FakePdp(request -> new Result(DecisionType.PERMIT, null, null, null, null, null));
+		try (final PepClient pepClient = new PepClient(pdp, null, 100, 60, 1, 0, 5000))
+		{
+			pepClient.getDecision("alice", ROLES, "/documents/0", "GET");
+			pepClient.getDecision("alice", ROLES, "/documents/0", "GET");
+			pepClient.getDecision("alice", ROLES, "/documents/0", "PUT");
+			pepClient.getDecision("alice", Collections.emptySet(), "/documents/0", "GET");
+			pepClient.getDecision("bob", ROLES, "/documents/0", "GET");
+			pepClient.getDecision("alice", ROLES, "/documents/1", "GET");
+			assertEquals(pdp.requestCount.get(), 5, "Number of requests to the PDP");
+			assertEquals(pepClient.getCacheSize(), 5);
+
+			pepClient.clearCache();
+			assertEquals(pepClient.getCacheSize(), 0);
+			pepClient.getDecision("alice", ROLES, "/documents/0", "GET");
+			assertEquals(pdp.requestCount.get(), 6, "Decision still cached after clearCache()");
+		}
+	}
+
+	@Test
+	public void coalesceConcurrentIdenticalRequests() throws Exception
+	{
+		final int threadCount = 8;
+		final CountDownLatch pdpCalled = new CountDownLatch(1);
+		final CountDownLatch pdpRelease = new CountDownLatch(1);
+		final FakePdp pdp = new FakePdp(request -> {
+			pdpCalled.countDown();
+			try
+			{
+				pdpRelease.await();
+			}
+			catch (final InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(e);
+			}
+
+			return new Result(DecisionType.PERMIT, null, null, null, null, null);
+		});
+
+		final ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+		// cache disabled, to test the coalescing only
+		try (final PepClient pepClient = new PepClient(pdp, null, 0, 60, 1, 0, 5000))
+		{
+			final List<Future<Result>> futures = new ArrayList<>(threadCount);
+			futures.add(executor.submit(() -> pepClient.getDecision("alice", ROLES, "/documents/0", "GET")));
+			assertTrue(pdpCalled.await(5, TimeUnit.SECONDS), "No request to the PDP");
+			for (int i = 1; i < threadCount; i++)
+			{
+				futures.add(executor.submit(() -> pepClient.getDecision("alice", ROLES, "/documents/0", "GET")));
+			}
+
+			// let the other threads join the in-flight request
+			Thread.sleep(200);
+			pdpRelease.countDown();
+
+			final Result firstResult = futures.get(0).get(5, TimeUnit.SECONDS);
+			assertEquals(firstResult.getDecision(), DecisionType.PERMIT);
+			for (final Future<Result> future : futures)
+			{
+				assertSame(future.get(5, TimeUnit.SECONDS), firstResult, "Concurrent identical requests not coalesced");
+			}
+
+			assertEquals(pdp.requestCount.get(), 1, "Number of requests to the PDP");
+			assertEquals(pepClient.getCacheSize(), 0);
+
+			// no request in flight anymore
+			pepClient.getDecision("alice", ROLES, "/documents/0", "GET");
+			assertEquals(pdp.requestCount.get(), 2, "Number of requests to the PDP");
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void coalesceConcurrentIdenticalRequestsWithError() throws Exception
+	{
+		final CountDownLatch pdpCalled = new CountDownLatch(1);
+		final CountDownLatch pdpRelease = new CountDownLatch(1);
+		final IllegalStateException error = new IllegalStateException("PDP error");
+		final FakePdp pdp = new FakePdp(request -> {
+			pdpCalled.countDown();
+			try
+			{
+				pdpRelease.await();
+			}
+			catch (final InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+
+			throw error;
+		});
+
+		final ExecutorService executor = Executors.newFixedThreadPool(2);
+		try (final PepClient pepClient = new PepClient(pdp, null, 100, 60, 1, 0, 5000))
+		{
+			final Future<Result> future0 = executor.submit(() -> pepClient.getDecision("alice", ROLES, "/documents/0", "GET"));
+			assertTrue(pdpCalled.await(5, TimeUnit.SECONDS), "No request to the PDP");
+			final Future<Result> future1 = executor.submit(() -> pepClient.getDecision("alice", ROLES, "/documents/0", "GET"));
+			Thread.sleep(200);
+			pdpRelease.countDown();
+			for (final Future<Result> future : List.of(future0, future1))
+			{
+				try
+				{
+					future.get(5, TimeUnit.SECONDS);
+					fail("PDP error not propagated");
+				}
+				catch (final ExecutionException e)
+				{
+					assertSame(e.getCause(), error);
+				}
+			}
+
+			assertEquals(pdp.requestCount.get(), 1, "Number of requests to the PDP");
+			assertEquals(pepClient.getCacheSize(), 0);
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void coalesceConcurrentIdenticalRequestsWithJvmError() throws Exception
+	{
+		final CountDownLatch pdpCalled = new CountDownLatch(1);
+		final CountDownLatch pdpRelease = new CountDownLatch(1);
+		final LinkageError error = new LinkageError("PDP error");
+		final FakePdp pdp = new FakePdp(request -> {
+			pdpCalled.countDown();
+			try
+			{
+				pdpRelease.await();
+			}
+			catch (final InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+
+			throw error;
+		});
+
+		final ExecutorService executor = Executors.newFixedThreadPool(2);
+		// the request timeout must not be the reason why the second thread stops waiting
+		try (final PepClient pepClient = new PepClient(pdp, null, 100, 60, 1, 0, 60000))
+		{
+			final Future<Result> future0 = executor.submit(() -> pepClient.getDecision("alice", ROLES, "/documents/0", "GET"));
+			assertTrue(pdpCalled.await(5, TimeUnit.SECONDS), "No request to the PDP");
+			final Future<Result> future1 = executor.submit(() -> pepClient.getDecision("alice", ROLES, "/documents/0", "GET"));
+			Thread.sleep(200);
+			pdpRelease.countDown();
+			for (final Future<Result> future : List.of(future0, future1))
+			{
+				try
+				{
+					future.get(5, TimeUnit.SECONDS);
+					fail("PDP error not propagated");
+				}
+				catch (final ExecutionException e)
+				{
+					assertSame(e.getCause(), error);
+				}
+			}
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void requestTimeout() throws Exception
+	{
+		final CountDownLatch batchRelease = new CountDownLatch(1);
+		final Function<List<Request>, List<Response>> batchSender = requests -> {
+			try
+			{
+				batchRelease.await();
+			}
+			catch (final InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+
+			return Collections.emptyList();
+		};
+
+		try (final PepClient pepClient = new PepClient(new FakePdp(request -> null), batchSender, 100, 60, 4, 10, 100))
+		{
+			pepClient.getDecision("alice", ROLES, "/documents/0", "GET");
+			fail("No timeout");
+		}
+		catch (final ProcessingException e)
+		{
+			assertTrue(e.getCause() instanceof TimeoutException, "Unexpected error cause: " + e.getCause());
+		}
+		finally
+		{
+			batchRelease.countDown();
+		}
+	}
+
+	@Test
+	public void requestThroughBatchSender()
+	{
+		final FakePdp pdp = new FakePdp(request -> new Result(DecisionType.DENY, null, null, null, null, null));
+		final AtomicInteger batchCount = new AtomicInteger(0);
+		final Function<List<Request>, List<Response>> batchSender = requests -> {
+			batchCount.incrementAndGet();
+			final List<Response> responses = new ArrayList<>(requests.size());
+			for (int i = 0; i < requests.size(); i++)
+			{
+				responses.add(new Response(Collections.singletonList(new Result(DecisionType.PERMIT, null, null, null, null, null))));
+			}
+
+			return responses;
+		};
+
+		try (final PepClient pepClient = new PepClient(pdp, batchSender, 100, 60, 4, 10, 5000))
+		{
+			assertEquals(pepClient.getDecision("alice", ROLES, "/documents/0", "GET").getDecision(), DecisionType.PERMIT);
+			assertEquals(batchCount.get(), 1, "Request not sent to the batch decision endpoint");
+			assertEquals(pdp.requestCount.get(), 0, "Request sent to the single decision endpoint although batching enabled");
+		}
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void invalidMaxBatchDelay()
+	{
+		new PepClient(new FakePdp(request -> null), requests -> Collections.emptyList(), 100, 60, 4, 0, 5000);
+	}
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.api.jaxrs;
+
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+
+import org.ow2.authzforce.rest.service.api.xmlns.DomainBatch;
+import org.ow2.authzforce.rest.service.api.xmlns.DomainBatchResult;
+
+/**
+ * Domain batch resource, i.e. '/domains.batch'. Allows to create many domains in a single request, e.g. when onboarding a batch of tenants.
+ */
+@Path("domains.batch")
+public interface DomainBatchResource
+{
+	/**
+	 * Creates a domain for each domain properties of the batch, as {@link org.ow2.authzforce.rest.api.jaxrs.DomainsResource#addDomain(org.ow2.authzforce.rest.api.xmlns.DomainProperties)} would. The
+	 * failure to create one domain does not prevent the creation of the others.
+	 *
+	 * @param batch
+	 *            properties of the domains to be created
+	 * @return per-domain results, in the same order as the batch
+	 */
+	@POST
+	@Consumes({ "application/xml", "application/fastinfoset", "application/json" })
+	@Produces({ "application/xml", "application/fastinfoset", "application/json" })
+	DomainBatchResult addDomains(DomainBatch batch);
+}
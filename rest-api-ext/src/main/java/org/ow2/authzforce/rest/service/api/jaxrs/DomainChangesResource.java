@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.api.jaxrs;
+
+import jakarta.ws.rs.DefaultValue;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.StreamingOutput;
+
+import org.ow2.authzforce.rest.service.api.xmlns.DomainChanges;
+
+/**
+ * Domain change feed resource, i.e. '/admin/replication', polled by the read-only PDP replicas of this server (primary) to replicate its domains incrementally
+ */
+@Path("admin/replication")
+public interface DomainChangesResource
+{
+	/**
+	 * Gets the domains changed since a given sequence number of the change feed
+	 *
+	 * @param epoch
+	 *            epoch of the change feed returned by the previous request, undefined if none
+	 * @param since
+	 *            latest sequence number returned by the previous request, 0 if none
+	 * @return domain changes; all the existing domains (full resynchronization) if {@code epoch} is not the current epoch or the changes since {@code since} are no longer available
+	 */
+	@GET
+	@Path("changes")
+	@Produces({ "application/xml", "application/fastinfoset", "application/json" })
+	DomainChanges getDomainChanges(@QueryParam("epoch") String epoch, @QueryParam("since") @DefaultValue("0") long since);
+
+	/**
+	 * Gets the files of a domain (domain change set)
+	 *
+	 * @param domainId
+	 *            domain ID
+	 * @return ZIP archive of the domain files (entry names are the file paths relative to the domain directory)
+	 */
+	@GET
+	@Path("domains/{domainId}")
+	@Produces("application/zip")
+	StreamingOutput getDomainFiles(@PathParam("domainId") String domainId);
+}
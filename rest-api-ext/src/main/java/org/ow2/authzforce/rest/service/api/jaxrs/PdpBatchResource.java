@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.api.jaxrs;
+
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+
+import org.ow2.authzforce.rest.service.api.xmlns.DecisionBatch;
+import org.ow2.authzforce.rest.service.api.xmlns.DecisionBatchResult;
+
+/**
+ * Batch decision resource of a domain's PDP, i.e. '/domains/{domainId}/pdp.batch'. Allows a PEP to get the decisions for many XACML requests in a single HTTP request, e.g. when it groups the
+ * authorization requests of concurrent users.
+ * <p>
+ * This is a root resource because the domain sub-resources of the standard API are resolved statically from the API model interfaces, which cannot be extended.
+ */
+@Path("domains/{domainId}/pdp.batch")
+public interface PdpBatchResource
+{
+	/**
+	 * Evaluates each XACML request of the batch, as {@link org.ow2.authzforce.rest.api.jaxrs.PdpResource#requestPolicyDecision(oasis.names.tc.xacml._3_0.core.schema.wd_17.Request)} would.
+	 *
+	 * @param domainId
+	 *            domain ID
+	 * @param batch
+	 *            XACML requests
+	 * @return XACML responses, in the same order as the requests
+	 */
+	@POST
+	@Consumes({ "application/xml", "application/fastinfoset", "application/json" })
+	@Produces({ "application/xml", "application/fastinfoset", "application/json" })
+	DecisionBatchResult requestPolicyDecisions(@PathParam("domainId") String domainId, DecisionBatch batch);
+}
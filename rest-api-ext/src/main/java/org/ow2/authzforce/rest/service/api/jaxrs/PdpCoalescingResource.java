@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.api.jaxrs;
+
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.PUT;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+
+import org.ow2.authzforce.rest.service.api.xmlns.DecisionCoalescing;
+
+/**
+ * Decision coalescing resource of a domain's PDP, i.e. '/domains/{domainId}/pdp/coalescing'. Identical concurrent decision requests share a single evaluation if coalescing is enabled.
+ * <p>
+ * This is a root resource because the domain sub-resources of the standard API are resolved statically from the API model interfaces, which cannot be extended.
+ */
+@Path("domains/{domainId}/pdp/coalescing")
+public interface PdpCoalescingResource
+{
+	/**
+	 * Gets the status of the decision coalescing on the domain
+	 *
+	 * @param domainId
+	 *            domain ID
+	 * @return decision coalescing status
+	 */
+	@GET
+	@Produces({ "application/xml", "application/fastinfoset", "application/json" })
+	DecisionCoalescing getDecisionCoalescing(@PathParam("domainId") String domainId);
+
+	/**
+	 * Enables/disables the decision coalescing on the domain (until the server restarts)
+	 *
+	 * @param domainId
+	 *            domain ID
+	 * @param update
+	 *            new status (only 'enabled' is taken into account)
+	 * @return new decision coalescing status
+	 */
+	@PUT
+	@Consumes({ "application/xml", "application/fastinfoset", "application/json" })
+	@Produces({ "application/xml", "application/fastinfoset", "application/json" })
+	DecisionCoalescing updateDecisionCoalescing(@PathParam("domainId") String domainId, DecisionCoalescing update);
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.api.jaxrs;
+
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+
+import org.ow2.authzforce.rest.api.xmlns.Resources;
+import org.ow2.authzforce.rest.service.api.xmlns.PolicyTransaction;
+
+/**
+ * Policy transaction resource of a domain's PAP, i.e. '/domains/{domainId}/pap/policies.transaction'. Allows to add multiple policies and update the PDP properties (e.g. root policy) of a domain in a
+ * single request, all-or-nothing.
+ * <p>
+ * This is a root resource because the domain sub-resources of the standard API are resolved statically from the API model interfaces, which cannot be extended.
+ */
+@Path("domains/{domainId}/pap/policies.transaction")
+public interface PolicyTransactionResource
+{
+	/**
+	 * Adds all the policies of the transaction to the domain, then applies the PDP properties update if any. If any step fails, the changes already applied are rolled back.
+	 *
+	 * @param domainId
+	 *            domain ID
+	 * @param transaction
+	 *            policies and PDP properties update
+	 * @return links to the new policy versions, in the order in which they were added
+	 */
+	@POST
+	@Consumes({ "application/xml", "application/fastinfoset", "application/json" })
+	@Produces({ "application/xml", "application/fastinfoset", "application/json" })
+	Resources commitPolicyTransaction(@PathParam("domainId") String domainId, PolicyTransaction transaction);
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.api.jaxrs;
+
+import jakarta.ws.rs.DELETE;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+
+import org.ow2.authzforce.rest.service.api.xmlns.SlowDecisions;
+
+/**
+ * Slow decision log resource, i.e. '/admin/slowDecisions': last decision requests slower than the configured threshold, with their payload, phase durations and decision
+ */
+@Path("admin/slowDecisions")
+public interface SlowDecisionsResource
+{
+	/**
+	 * Gets the logged slow decisions
+	 *
+	 * @return slow decisions, from the oldest to the latest
+	 */
+	@GET
+	@Produces({ "application/xml", "application/fastinfoset", "application/json" })
+	SlowDecisions getSlowDecisions();
+
+	/**
+	 * Removes all the logged slow decisions
+	 *
+	 * @return the removed slow decisions, from the oldest to the latest
+	 */
+	@DELETE
+	@Produces({ "application/xml", "application/fastinfoset", "application/json" })
+	SlowDecisions deleteSlowDecisions();
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.api.jaxrs;
+
+import java.io.InputStream;
+
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+
+import org.w3._2005.atom.Link;
+
+/**
+ * XACML 2.0 policy resource of a domain's PAP, i.e. '/domains/{domainId}/pap/policies.xacml2'. Allows to add a policy from legacy tools in XACML 2.0, converted to XACML 3.0 by the server.
+ * <p>
+ * This is a root resource because the domain sub-resources of the standard API are resolved statically from the API model interfaces, which cannot be extended.
+ */
+@Path("domains/{domainId}/pap/policies.xacml2")
+public interface Xacml2PolicyResource
+{
+	/**
+	 * Converts a XACML 2.0 Policy or PolicySet to XACML 3.0 and adds the result to the domain's policies, like the standard policy creation ('/domains/{domainId}/pap/policies'). A XACML 2.0 Policy is
+	 * added as a PolicySet with the same ID and version, enclosing the converted Policy only.
+	 *
+	 * @param domainId
+	 *            domain ID
+	 * @param xacml2Policy
+	 *            XACML 2.0 Policy or PolicySet document (read as a stream, so that the server can reject a too large document without buffering it)
+	 * @return link to the new policy version
+	 */
+	@POST
+	@Consumes({ "application/xml", "application/xacml+xml" })
+	@Produces({ "application/xml", "application/fastinfoset", "application/json" })
+	Link addXacml2Policy(@PathParam("domainId") String domainId, InputStream xacml2Policy);
+}
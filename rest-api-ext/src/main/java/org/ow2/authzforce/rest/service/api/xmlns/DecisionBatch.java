@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.api.xmlns;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import jakarta.xml.bind.annotation.XmlAccessType;
+import jakarta.xml.bind.annotation.XmlAccessorType;
+import jakarta.xml.bind.annotation.XmlElement;
+import jakarta.xml.bind.annotation.XmlRootElement;
+import jakarta.xml.bind.annotation.XmlType;
+
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.Request;
+
+/**
+ * XACML requests to be evaluated by a domain's PDP in a single HTTP request (XML type 'DecisionBatch')
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+@XmlType(name = "DecisionBatch", propOrder = { "requests" })
+@XmlRootElement(name = "decisionBatch")
+public class DecisionBatch implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	@XmlElement(name = "Request", namespace = "urn:oasis:names:tc:xacml:3.0:core:schema:wd-17", required = true)
+	protected List<Request> requests;
+
+	/**
+	 * Default no-arg constructor (required by JAXB)
+	 */
+	protected DecisionBatch()
+	{
+		super();
+	}
+
+	/**
+	 * Fully-initialising value constructor
+	 *
+	 * @param requests
+	 *            XACML requests
+	 */
+	public DecisionBatch(final List<Request> requests)
+	{
+		super();
+		this.requests = requests == null ? null : new ArrayList<>(requests);
+	}
+
+	/**
+	 * Gets the XACML requests
+	 *
+	 * @return requests (never null)
+	 */
+	public List<Request> getRequests()
+	{
+		if (requests == null)
+		{
+			requests = new ArrayList<>();
+		}
+
+		return this.requests;
+	}
+
+}
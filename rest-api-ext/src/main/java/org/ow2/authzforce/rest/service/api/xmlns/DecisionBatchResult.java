@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.api.xmlns;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import jakarta.xml.bind.annotation.XmlAccessType;
+import jakarta.xml.bind.annotation.XmlAccessorType;
+import jakarta.xml.bind.annotation.XmlElement;
+import jakarta.xml.bind.annotation.XmlRootElement;
+import jakarta.xml.bind.annotation.XmlType;
+
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.Response;
+
+/**
+ * XACML responses to the requests of a {@link DecisionBatch}, in the same order (XML type 'DecisionBatchResult')
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+@XmlType(name = "DecisionBatchResult", propOrder = { "responses" })
+@XmlRootElement(name = "decisionBatchResult")
+public class DecisionBatchResult implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	@XmlElement(name = "Response", namespace = "urn:oasis:names:tc:xacml:3.0:core:schema:wd-17")
+	protected List<Response> responses;
+
+	/**
+	 * Default no-arg constructor (required by JAXB)
+	 */
+	protected DecisionBatchResult()
+	{
+		super();
+	}
+
+	/**
+	 * Fully-initialising value constructor
+	 *
+	 * @param responses
+	 *            XACML responses
+	 */
+	public DecisionBatchResult(final List<Response> responses)
+	{
+		super();
+		this.responses = responses == null ? null : new ArrayList<>(responses);
+	}
+
+	/**
+	 * Gets the XACML responses
+	 *
+	 * @return responses (never null)
+	 */
+	public List<Response> getResponses()
+	{
+		if (responses == null)
+		{
+			responses = new ArrayList<>();
+		}
+
+		return this.responses;
+	}
+
+}
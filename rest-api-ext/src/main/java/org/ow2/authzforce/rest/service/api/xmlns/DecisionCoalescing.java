@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.api.xmlns;
+
+import java.io.Serializable;
+
+import jakarta.xml.bind.annotation.XmlAccessType;
+import jakarta.xml.bind.annotation.XmlAccessorType;
+import jakarta.xml.bind.annotation.XmlAttribute;
+import jakarta.xml.bind.annotation.XmlRootElement;
+import jakarta.xml.bind.annotation.XmlType;
+
+/**
+ * Status of the coalescing of identical concurrent decision requests on a domain's PDP (XML type 'DecisionCoalescing'). Only 'enabled' is taken into account in an update.
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+@XmlType(name = "DecisionCoalescing")
+@XmlRootElement(name = "decisionCoalescing")
+public class DecisionCoalescing implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	@XmlAttribute(name = "enabled", required = true)
+	protected boolean enabled;
+
+	@XmlAttribute(name = "collapseWindow")
+	protected Long collapseWindow;
+
+	@XmlAttribute(name = "coalescedRequestCount")
+	protected Long coalescedRequestCount;
+
+	/**
+	 * Default no-arg constructor (required by JAXB)
+	 */
+	protected DecisionCoalescing()
+	{
+		super();
+	}
+
+	/**
+	 * Constructor for an update
+	 *
+	 * @param enabled
+	 *            true iff decision coalescing is enabled
+	 */
+	public DecisionCoalescing(final boolean enabled)
+	{
+		super();
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Fully-initialising value constructor
+	 *
+	 * @param enabled
+	 *            true iff decision coalescing is enabled
+	 * @param collapseWindow
+	 *            collapse window (ms)
+	 * @param coalescedRequestCount
+	 *            number of coalesced requests
+	 */
+	public DecisionCoalescing(final boolean enabled, final long collapseWindow, final long coalescedRequestCount)
+	{
+		super();
+		this.enabled = enabled;
+		this.collapseWindow = collapseWindow;
+		this.coalescedRequestCount = coalescedRequestCount;
+	}
+
+	/**
+	 * Gets the status of the decision coalescing
+	 *
+	 * @return true iff decision coalescing is enabled
+	 */
+	public boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	/**
+	 * Gets the collapse window, i.e. the maximum age of an in-progress evaluation that an identical decision request may join
+	 *
+	 * @return collapse window (ms); null if undefined (update)
+	 */
+	public Long getCollapseWindow()
+	{
+		return collapseWindow;
+	}
+
+	/**
+	 * Gets the number of decision requests that got the result of an identical request's evaluation instead of being evaluated, since the server started
+	 *
+	 * @return number of coalesced requests; null if undefined (update)
+	 */
+	public Long getCoalescedRequestCount()
+	{
+		return coalescedRequestCount;
+	}
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.api.xmlns;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import jakarta.xml.bind.annotation.XmlAccessType;
+import jakarta.xml.bind.annotation.XmlAccessorType;
+import jakarta.xml.bind.annotation.XmlElement;
+import jakarta.xml.bind.annotation.XmlRootElement;
+import jakarta.xml.bind.annotation.XmlType;
+
+import org.ow2.authzforce.rest.api.xmlns.DomainProperties;
+
+/**
+ * Properties of the domains to be created in a single request (XML type 'DomainBatch')
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+@XmlType(name = "DomainBatch", propOrder = { "domainProperties" })
+@XmlRootElement(name = "domainBatch")
+public class DomainBatch implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	@XmlElement(name = "domainProperties", namespace = "http://authzforce.github.io/rest-api-model/xmlns/authz/5", required = true)
+	protected List<DomainProperties> domainProperties;
+
+	/**
+	 * Default no-arg constructor (required by JAXB)
+	 */
+	protected DomainBatch()
+	{
+		super();
+	}
+
+	/**
+	 * Fully-initialising value constructor
+	 *
+	 * @param domainProperties
+	 *            properties of the domains to be created
+	 */
+	public DomainBatch(final List<DomainProperties> domainProperties)
+	{
+		super();
+		this.domainProperties = domainProperties == null ? null : new ArrayList<>(domainProperties);
+	}
+
+	/**
+	 * Gets the properties of the domains to be created
+	 *
+	 * @return domain properties (never null)
+	 */
+	public List<DomainProperties> getDomainProperties()
+	{
+		if (domainProperties == null)
+		{
+			domainProperties = new ArrayList<>();
+		}
+
+		return this.domainProperties;
+	}
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.api.xmlns;
+
+import java.io.Serializable;
+
+import jakarta.xml.bind.annotation.XmlAccessType;
+import jakarta.xml.bind.annotation.XmlAccessorType;
+import jakarta.xml.bind.annotation.XmlAttribute;
+import jakarta.xml.bind.annotation.XmlElement;
+import jakarta.xml.bind.annotation.XmlType;
+
+import org.w3._2005.atom.Link;
+
+/**
+ * Result of the creation of one domain of a {@link DomainBatch} (XML type 'DomainBatchItemResult'): link to the new domain if successful, else the error
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+@XmlType(name = "DomainBatchItemResult", propOrder = { "link" })
+public class DomainBatchItemResult implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	@XmlElement(name = "link", namespace = "http://www.w3.org/2005/Atom")
+	protected Link link;
+
+	@XmlAttribute(name = "index", required = true)
+	protected int index;
+
+	@XmlAttribute(name = "status", required = true)
+	protected int status;
+
+	@XmlAttribute(name = "error")
+	protected String error;
+
+	/**
+	 * Default no-arg constructor (required by JAXB)
+	 */
+	protected DomainBatchItemResult()
+	{
+		super();
+	}
+
+	/**
+	 * Fully-initialising value constructor
+	 *
+	 * @param index
+	 *            position (starting at 0) of the corresponding domain properties in the batch
+	 * @param status
+	 *            HTTP status code that the equivalent single domain creation request would have returned
+	 * @param link
+	 *            link to the new domain (null if creation failed)
+	 * @param error
+	 *            error message (null if creation succeeded)
+	 */
+	public DomainBatchItemResult(final int index, final int status, final Link link, final String error)
+	{
+		super();
+		this.index = index;
+		this.status = status;
+		this.link = link;
+		this.error = error;
+	}
+
+	/**
+	 * Gets the link to the new domain
+	 *
+	 * @return link to the new domain; null if creation failed
+	 */
+	public Link getLink()
+	{
+		return link;
+	}
+
+	/**
+	 * Gets the position of the corresponding domain properties in the batch
+	 *
+	 * @return index (starting at 0)
+	 */
+	public int getIndex()
+	{
+		return index;
+	}
+
+	/**
+	 * Gets the HTTP status code that the equivalent single domain creation request would have returned
+	 *
+	 * @return HTTP status code
+	 */
+	public int getStatus()
+	{
+		return status;
+	}
+
+	/**
+	 * Gets the error message
+	 *
+	 * @return error message; null if creation succeeded
+	 */
+	public String getError()
+	{
+		return error;
+	}
+
+}
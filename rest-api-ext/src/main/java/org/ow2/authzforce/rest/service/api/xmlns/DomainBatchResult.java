@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.api.xmlns;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import jakarta.xml.bind.annotation.XmlAccessType;
+import jakarta.xml.bind.annotation.XmlAccessorType;
+import jakarta.xml.bind.annotation.XmlElement;
+import jakarta.xml.bind.annotation.XmlRootElement;
+import jakarta.xml.bind.annotation.XmlType;
+
+/**
+ * Results of the creation of the domains of a {@link DomainBatch}, in the same order (XML type 'DomainBatchResult')
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+@XmlType(name = "DomainBatchResult", propOrder = { "items" })
+@XmlRootElement(name = "domainBatchResult")
+public class DomainBatchResult implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	@XmlElement(name = "item")
+	protected List<DomainBatchItemResult> items;
+
+	/**
+	 * Default no-arg constructor (required by JAXB)
+	 */
+	protected DomainBatchResult()
+	{
+		super();
+	}
+
+	/**
+	 * Fully-initialising value constructor
+	 *
+	 * @param items
+	 *            results of the domain creations
+	 */
+	public DomainBatchResult(final List<DomainBatchItemResult> items)
+	{
+		super();
+		this.items = items == null ? null : new ArrayList<>(items);
+	}
+
+	/**
+	 * Gets the results of the domain creations
+	 *
+	 * @return results (never null)
+	 */
+	public List<DomainBatchItemResult> getItems()
+	{
+		if (items == null)
+		{
+			items = new ArrayList<>();
+		}
+
+		return this.items;
+	}
+
+}
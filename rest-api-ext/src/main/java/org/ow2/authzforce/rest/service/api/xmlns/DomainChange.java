@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.api.xmlns;
+
+import java.io.Serializable;
+
+import jakarta.xml.bind.annotation.XmlAccessType;
+import jakarta.xml.bind.annotation.XmlAccessorType;
+import jakarta.xml.bind.annotation.XmlAttribute;
+import jakarta.xml.bind.annotation.XmlType;
+
+/**
+ * Change of a domain on the primary server (XML type 'DomainChange'): the domain has been created/modified, or removed
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+@XmlType(name = "DomainChange")
+public class DomainChange implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	@XmlAttribute(name = "domainId", required = true)
+	protected String domainId;
+
+	@XmlAttribute(name = "sequence", required = true)
+	protected long sequence;
+
+	@XmlAttribute(name = "removed", required = true)
+	protected boolean removed;
+
+	/**
+	 * Default no-arg constructor (required by JAXB)
+	 */
+	protected DomainChange()
+	{
+		super();
+	}
+
+	/**
+	 * Fully-initialising value constructor
+	 *
+	 * @param domainId
+	 *            domain ID
+	 * @param sequence
+	 *            sequence number of the latest change of the domain in the change feed
+	 * @param removed
+	 *            true iff the domain has been removed
+	 */
+	public DomainChange(final String domainId, final long sequence, final boolean removed)
+	{
+		super();
+		this.domainId = domainId;
+		this.sequence = sequence;
+		this.removed = removed;
+	}
+
+	/**
+	 * Gets the domain ID
+	 *
+	 * @return domain ID
+	 */
+	public String getDomainId()
+	{
+		return domainId;
+	}
+
+	/**
+	 * Gets the sequence number of the change
+	 *
+	 * @return sequence number
+	 */
+	public long getSequence()
+	{
+		return sequence;
+	}
+
+	/**
+	 * Gets the change type
+	 *
+	 * @return true iff the domain has been removed
+	 */
+	public boolean isRemoved()
+	{
+		return removed;
+	}
+
+}
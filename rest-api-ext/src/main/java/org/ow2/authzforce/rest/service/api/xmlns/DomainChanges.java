@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.api.xmlns;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import jakarta.xml.bind.annotation.XmlAccessType;
+import jakarta.xml.bind.annotation.XmlAccessorType;
+import jakarta.xml.bind.annotation.XmlAttribute;
+import jakarta.xml.bind.annotation.XmlElement;
+import jakarta.xml.bind.annotation.XmlRootElement;
+import jakarta.xml.bind.annotation.XmlType;
+
+/**
+ * Domains changed on the primary server since a given sequence number of the change feed, by increasing sequence number (XML type 'DomainChanges')
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+@XmlType(name = "DomainChanges", propOrder = { "domainChanges" })
+@XmlRootElement(name = "domainChanges")
+public class DomainChanges implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	@XmlElement(name = "domainChange")
+	protected List<DomainChange> domainChanges;
+
+	@XmlAttribute(name = "epoch", required = true)
+	protected String epoch;
+
+	@XmlAttribute(name = "latestSequence", required = true)
+	protected long latestSequence;
+
+	@XmlAttribute(name = "fullResync", required = true)
+	protected boolean fullResync;
+
+	/**
+	 * Default no-arg constructor (required by JAXB)
+	 */
+	protected DomainChanges()
+	{
+		super();
+	}
+
+	/**
+	 * Fully-initialising value constructor
+	 *
+	 * @param domainChanges
+	 *            domain changes
+	 * @param epoch
+	 *            identifier of the change feed instance
+	 * @param latestSequence
+	 *            latest sequence number of the change feed
+	 * @param fullResync
+	 *            true iff the requested changes are not available, in which case {@code domainChanges} contains all the existing domains
+	 */
+	public DomainChanges(final List<DomainChange> domainChanges, final String epoch, final long latestSequence, final boolean fullResync)
+	{
+		super();
+		this.domainChanges = domainChanges == null ? null : new ArrayList<>(domainChanges);
+		this.epoch = epoch;
+		this.latestSequence = latestSequence;
+		this.fullResync = fullResync;
+	}
+
+	/**
+	 * Gets the domain changes
+	 *
+	 * @return domain changes (never null)
+	 */
+	public List<DomainChange> getDomainChanges()
+	{
+		if (domainChanges == null)
+		{
+			domainChanges = new ArrayList<>();
+		}
+
+		return this.domainChanges;
+	}
+
+	/**
+	 * Gets the change feed epoch
+	 *
+	 * @return identifier of the change feed instance
+	 */
+	public String getEpoch()
+	{
+		return epoch;
+	}
+
+	/**
+	 * Gets the latest sequence number of the change feed
+	 *
+	 * @return latest sequence number
+	 */
+	public long getLatestSequence()
+	{
+		return latestSequence;
+	}
+
+	/**
+	 * Gets the full resynchronization flag
+	 *
+	 * @return true iff the requested changes are not available, in which case all the existing domains are returned and any other domain must be removed by the replica
+	 */
+	public boolean isFullResync()
+	{
+		return fullResync;
+	}
+
+}
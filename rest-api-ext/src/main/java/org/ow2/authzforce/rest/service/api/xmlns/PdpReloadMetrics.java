@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.api.xmlns;
+
+import java.io.Serializable;
+
+import javax.xml.datatype.XMLGregorianCalendar;
+
+import jakarta.xml.bind.annotation.XmlAccessType;
+import jakarta.xml.bind.annotation.XmlAccessorType;
+import jakarta.xml.bind.annotation.XmlAttribute;
+import jakarta.xml.bind.annotation.XmlRootElement;
+import jakarta.xml.bind.annotation.XmlSchemaType;
+import jakarta.xml.bind.annotation.XmlType;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Statistics on the reloads of a domain's PDP triggered by PAP changes (XML type 'PdpReloadMetrics'). Durations are in milliseconds, and cover the whole PAP write operation that reloaded the PDP (validation and storage of the change, PDP build).
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+@XmlType(name = "PdpReloadMetrics")
+@XmlRootElement(name = "pdpReloadMetrics")
+public class PdpReloadMetrics implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	@XmlAttribute(name = "reloadCount", required = true)
+	protected long reloadCount;
+
+	@XmlAttribute(name = "failedReloadCount", required = true)
+	protected long failedReloadCount;
+
+	@XmlAttribute(name = "lastWriteTime", required = true)
+	protected long lastWriteTime;
+
+	@XmlAttribute(name = "maxWriteTime", required = true)
+	protected long maxWriteTime;
+
+	@XmlAttribute(name = "totalWriteTime", required = true)
+	protected long totalWriteTime;
+
+	@XmlAttribute(name = "lastReload")
+	@XmlSchemaType(name = "dateTime")
+	protected XMLGregorianCalendar lastReload;
+
+	/**
+	 * Default no-arg constructor (required by JAXB)
+	 */
+	protected PdpReloadMetrics()
+	{
+		super();
+	}
+
+	/**
+	 * Fully-initialising value constructor
+	 *
+	 * @param reloadCount
+	 *            number of successful PDP reloads
+	 * @param failedReloadCount
+	 *            number of failed PDP reloads
+	 * @param lastWriteTime
+	 *            duration of the PAP write operation that built the current PDP (ms)
+	 * @param maxWriteTime
+	 *            maximum duration of a PAP write operation that reloaded the PDP (ms)
+	 * @param totalWriteTime
+	 *            cumulated duration of the PAP write operations that reloaded the PDP (ms)
+	 * @param lastReload
+	 *            date of the last successful PDP reload (null if none)
+	 */
+	@SuppressFBWarnings(value="EI_EXPOSE_REP2")
+	public PdpReloadMetrics(final long reloadCount, final long failedReloadCount, final long lastWriteTime, final long maxWriteTime, final long totalWriteTime, final XMLGregorianCalendar lastReload)
+	{
+		super();
+		this.reloadCount = reloadCount;
+		this.failedReloadCount = failedReloadCount;
+		this.lastWriteTime = lastWriteTime;
+		this.maxWriteTime = maxWriteTime;
+		this.totalWriteTime = totalWriteTime;
+		this.lastReload = lastReload;
+	}
+
+	/**
+	 * Gets the number of successful PDP reloads
+	 *
+	 * @return reload count
+	 */
+	public long getReloadCount()
+	{
+		return reloadCount;
+	}
+
+	/**
+	 * Gets the number of failed PDP reloads
+	 *
+	 * @return failed reload count
+	 */
+	public long getFailedReloadCount()
+	{
+		return failedReloadCount;
+	}
+
+	/**
+	 * Gets the duration of the PAP write operation that built the current PDP
+	 *
+	 * @return write time (ms)
+	 */
+	public long getLastWriteTime()
+	{
+		return lastWriteTime;
+	}
+
+	/**
+	 * Gets the maximum duration of a PAP write operation that reloaded the PDP
+	 *
+	 * @return maximum write time (ms)
+	 */
+	public long getMaxWriteTime()
+	{
+		return maxWriteTime;
+	}
+
+	/**
+	 * Gets the cumulated duration of the PAP write operations that reloaded the PDP
+	 *
+	 * @return total write time (ms)
+	 */
+	public long getTotalWriteTime()
+	{
+		return totalWriteTime;
+	}
+
+	/**
+	 * Gets the date of the last successful PDP reload
+	 *
+	 * @return last reload date; null if the PDP has never been reloaded
+	 */
+	@SuppressFBWarnings(value="EI_EXPOSE_REP")
+	public XMLGregorianCalendar getLastReload()
+	{
+		return lastReload;
+	}
+
+}
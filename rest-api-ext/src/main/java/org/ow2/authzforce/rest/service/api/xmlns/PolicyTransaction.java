@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.api.xmlns;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import jakarta.xml.bind.annotation.XmlAccessType;
+import jakarta.xml.bind.annotation.XmlAccessorType;
+import jakarta.xml.bind.annotation.XmlElement;
+import jakarta.xml.bind.annotation.XmlRootElement;
+import jakarta.xml.bind.annotation.XmlType;
+
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.PolicySet;
+import org.ow2.authzforce.rest.api.xmlns.PdpPropertiesUpdate;
+
+/**
+ * Set of policies to be added to a domain, with an optional update of the domain's PDP properties, applied as a single unit of work (XML type 'PolicyTransaction')
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+@XmlType(name = "PolicyTransaction", propOrder = { "policySets", "pdpPropertiesUpdate" })
+@XmlRootElement(name = "policyTransaction")
+public class PolicyTransaction implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	@XmlElement(name = "PolicySet", namespace = "urn:oasis:names:tc:xacml:3.0:core:schema:wd-17", required = true)
+	protected List<PolicySet> policySets;
+
+	@XmlElement(name = "pdpPropertiesUpdate", namespace = "http://authzforce.github.io/rest-api-model/xmlns/authz/5")
+	protected PdpPropertiesUpdate pdpPropertiesUpdate;
+
+	/**
+	 * Default no-arg constructor (required by JAXB)
+	 */
+	protected PolicyTransaction()
+	{
+		super();
+	}
+
+	/**
+	 * Fully-initialising value constructor
+	 *
+	 * @param policySets
+	 *            policies to be added
+	 * @param pdpPropertiesUpdate
+	 *            PDP properties update to be applied once all policies are added (optional)
+	 */
+	public PolicyTransaction(final List<PolicySet> policySets, final PdpPropertiesUpdate pdpPropertiesUpdate)
+	{
+		super();
+		this.policySets = policySets == null ? null : new ArrayList<>(policySets);
+		this.pdpPropertiesUpdate = pdpPropertiesUpdate;
+	}
+
+	/**
+	 * Gets the policies to be added
+	 *
+	 * @return policies (never null)
+	 */
+	public List<PolicySet> getPolicySets()
+	{
+		if (policySets == null)
+		{
+			policySets = new ArrayList<>();
+		}
+
+		return this.policySets;
+	}
+
+	/**
+	 * Gets the PDP properties update
+	 *
+	 * @return PDP properties update; null if none
+	 */
+	public PdpPropertiesUpdate getPdpPropertiesUpdate()
+	{
+		return pdpPropertiesUpdate;
+	}
+
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.api.xmlns;
+
+import java.io.Serializable;
+
+import javax.xml.datatype.XMLGregorianCalendar;
+
+import jakarta.xml.bind.annotation.XmlAccessType;
+import jakarta.xml.bind.annotation.XmlAccessorType;
+import jakarta.xml.bind.annotation.XmlAttribute;
+import jakarta.xml.bind.annotation.XmlElement;
+import jakarta.xml.bind.annotation.XmlSchemaType;
+import jakarta.xml.bind.annotation.XmlType;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Decision request slower than the slow decision threshold, with its payload, phase durations and decision (XML type 'SlowDecision'). Durations are in microseconds.
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+@XmlType(name = "SlowDecision", propOrder = { "request" })
+public class SlowDecision implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	@XmlElement(name = "request", required = true)
+	protected String request;
+
+	@XmlAttribute(name = "domainId", required = true)
+	protected String domainId;
+
+	@XmlAttribute(name = "time", required = true)
+	@XmlSchemaType(name = "dateTime")
+	protected XMLGregorianCalendar time;
+
+	@XmlAttribute(name = "mediaType")
+	protected String mediaType;
+
+	@XmlAttribute(name = "decision")
+	protected String decision;
+
+	@XmlAttribute(name = "requestTruncated", required = true)
+	protected boolean requestTruncated;
+
+	@XmlAttribute(name = "receiveTime", required = true)
+	protected long receiveTime;
+
+	@XmlAttribute(name = "readTime", required = true)
+	protected long readTime;
+
+	@XmlAttribute(name = "evalTime", required = true)
+	protected long evalTime;
+
+	@XmlAttribute(name = "writeTime", required = true)
+	protected long writeTime;
+
+	@XmlAttribute(name = "totalTime", required = true)
+	protected long totalTime;
+
+	/**
+	 * Default no-arg constructor (required by JAXB)
+	 */
+	protected SlowDecision()
+	{
+		super();
+	}
+
+	/**
+	 * Fully-initialising value constructor
+	 *
+	 * @param request
+	 *            request payload (XACML/XML or XACML/JSON), possibly truncated
+	 * @param domainId
+	 *            domain ID
+	 * @param time
+	 *            date of the request
+	 * @param mediaType
+	 *            request media type
+	 * @param decision
+	 *            decision(s), comma-separated if multiple
+	 * @param requestTruncated
+	 *            true iff {@code request} is truncated
+	 * @param receiveTime
+	 *            time from the reception of the request to the matching of the resource (µs)
+	 * @param readTime
+	 *            time spent reading the request body (µs)
+	 * @param evalTime
+	 *            PDP evaluation time (µs)
+	 * @param writeTime
+	 *            time spent writing the response body (µs)
+	 * @param totalTime
+	 *            total processing time (µs)
+	 */
+	@SuppressFBWarnings(value="EI_EXPOSE_REP2")
+	public SlowDecision(final String request, final String domainId, final XMLGregorianCalendar time, final String mediaType, final String decision, final boolean requestTruncated,
+	        final long receiveTime, final long readTime, final long evalTime, final long writeTime, final long totalTime)
+	{
+		super();
+		this.request = request;
+		this.domainId = domainId;
+		this.time = time;
+		this.mediaType = mediaType;
+		this.decision = decision;
+		this.requestTruncated = requestTruncated;
+		this.receiveTime = receiveTime;
+		this.readTime = readTime;
+		this.evalTime = evalTime;
+		this.writeTime = writeTime;
+		this.totalTime = totalTime;
+	}
+
+	/**
+	 * Gets the request payload
+	 *
+	 * @return request payload, possibly truncated (see {@link #isRequestTruncated()})
+	 */
+	public String getRequest()
+	{
+		return request;
+	}
+
+	/**
+	 * Gets the domain ID
+	 *
+	 * @return domain ID
+	 */
+	public String getDomainId()
+	{
+		return domainId;
+	}
+
+	/**
+	 * Gets the date of the request
+	 *
+	 * @return request date
+	 */
+	@SuppressFBWarnings(value="EI_EXPOSE_REP")
+	public XMLGregorianCalendar getTime()
+	{
+		return time;
+	}
+
+	/**
+	 * Gets the request media type
+	 *
+	 * @return media type
+	 */
+	public String getMediaType()
+	{
+		return mediaType;
+	}
+
+	/**
+	 * Gets the decision(s)
+	 *
+	 * @return decision(s), comma-separated if multiple; null if unknown (e.g. error)
+	 */
+	public String getDecision()
+	{
+		return decision;
+	}
+
+	/**
+	 * Tells whether the request payload is truncated
+	 *
+	 * @return true iff truncated
+	 */
+	public boolean isRequestTruncated()
+	{
+		return requestTruncated;
+	}
+
+	/**
+	 * Gets the time from the reception of the request to the matching of the resource
+	 *
+	 * @return receive time (µs)
+	 */
+	public long getReceiveTime()
+	{
+		return receiveTime;
+	}
+
+	/**
+	 * Gets the time spent reading the request body
+	 *
+	 * @return read time (µs)
+	 */
+	public long getReadTime()
+	{
+		return readTime;
+	}
+
+	/**
+	 * Gets the PDP evaluation time
+	 *
+	 * @return evaluation time (µs)
+	 */
+	public long getEvalTime()
+	{
+		return evalTime;
+	}
+
+	/**
+	 * Gets the time spent writing the response body
+	 *
+	 * @return write time (µs)
+	 */
+	public long getWriteTime()
+	{
+		return writeTime;
+	}
+
+	/**
+	 * Gets the total processing time
+	 *
+	 * @return total time (µs)
+	 */
+	public long getTotalTime()
+	{
+		return totalTime;
+	}
+
+}
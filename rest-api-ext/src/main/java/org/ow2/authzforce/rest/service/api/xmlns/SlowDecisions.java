@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.api.xmlns;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import jakarta.xml.bind.annotation.XmlAccessType;
+import jakarta.xml.bind.annotation.XmlAccessorType;
+import jakarta.xml.bind.annotation.XmlAttribute;
+import jakarta.xml.bind.annotation.XmlElement;
+import jakarta.xml.bind.annotation.XmlRootElement;
+import jakarta.xml.bind.annotation.XmlType;
+
+/**
+ * Last decision requests slower than the slow decision threshold, from the oldest to the latest (XML type 'SlowDecisions')
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+@XmlType(name = "SlowDecisions", propOrder = { "slowDecisions" })
+@XmlRootElement(name = "slowDecisions")
+public class SlowDecisions implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	@XmlElement(name = "slowDecision")
+	protected List<SlowDecision> slowDecisions;
+
+	@XmlAttribute(name = "threshold", required = true)
+	protected long threshold;
+
+	@XmlAttribute(name = "capacity", required = true)
+	protected int capacity;
+
+	/**
+	 * Default no-arg constructor (required by JAXB)
+	 */
+	protected SlowDecisions()
+	{
+		super();
+	}
+
+	/**
+	 * Fully-initialising value constructor
+	 *
+	 * @param slowDecisions
+	 *            slow decisions
+	 * @param threshold
+	 *            slow decision threshold (ms)
+	 * @param capacity
+	 *            maximum number of slow decisions kept in memory
+	 */
+	public SlowDecisions(final List<SlowDecision> slowDecisions, final long threshold, final int capacity)
+	{
+		super();
+		this.slowDecisions = slowDecisions == null ? null : new ArrayList<>(slowDecisions);
+		this.threshold = threshold;
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Gets the slow decisions
+	 *
+	 * @return slow decisions (never null)
+	 */
+	public List<SlowDecision> getSlowDecisions()
+	{
+		if (slowDecisions == null)
+		{
+			slowDecisions = new ArrayList<>();
+		}
+
+		return this.slowDecisions;
+	}
+
+	/**
+	 * Gets the slow decision threshold
+	 *
+	 * @return threshold (ms)
+	 */
+	public long getThreshold()
+	{
+		return threshold;
+	}
+
+	/**
+	 * Gets the maximum number of slow decisions kept in memory
+	 *
+	 * @return capacity
+	 */
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+}
@@ -0,0 +1,26 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+/**
+ * JAXB data model of the AuthzForce Server-specific extensions of the REST API (XML schema: classpath:/xsd/authz-rest-api-ext.xsd)
+ */
+@XmlSchema(namespace = "http://authzforce.github.io/server/xmlns/api/1", elementFormDefault = XmlNsForm.QUALIFIED)
+package org.ow2.authzforce.rest.service.api.xmlns;
+
+import jakarta.xml.bind.annotation.XmlNsForm;
+import jakarta.xml.bind.annotation.XmlSchema;
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.compression;
+
+import java.beans.ConstructorProperties;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import jakarta.ws.rs.core.HttpHeaders;
+
+import org.apache.cxf.interceptor.Fault;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.phase.AbstractPhaseInterceptor;
+import org.apache.cxf.phase.Phase;
+import org.ow2.authzforce.rest.service.metrics.MetricsInInterceptor;
+
+/**
+ * CXF interceptor for inbound messages that decompresses the request body according to its Content-Encoding header (gzip or deflate), e.g. for large policy uploads. The size of the decompressed
+ * body is limited to mitigate decompression bombs.
+ * <p>
+ * It runs after the {@link MetricsInInterceptor}, i.e. the request sizes in the metrics and access log are compressed.
+ */
+public final class CompressionInInterceptor extends AbstractPhaseInterceptor<Message>
+{
+	/*
+	 * Input stream failing when more than a given number of bytes is read
+	 */
+	private static final class SizeLimitingInputStream extends FilterInputStream
+	{
+		private final long maxSize;
+		private long count = 0;
+
+		private SizeLimitingInputStream(final InputStream in, final long maxSize)
+		{
+			super(in);
+			this.maxSize = maxSize;
+		}
+
+		private int count(final int n) throws IOException
+		{
+			if (n > 0)
+			{
+				count += n;
+				if (count > maxSize)
+				{
+					throw new IOException("Decompressed request body exceeds the maximum size (" + maxSize + " bytes)");
+				}
+			}
+
+			return n;
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			final int b = in.read();
+			if (b >= 0)
+			{
+				count(1);
+			}
+
+			return b;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len) throws IOException
+		{
+			return count(in.read(b, off, len));
+		}
+
+		@Override
+		public long skip(final long n) throws IOException
+		{
+			final long skipped = in.skip(n);
+			count += skipped;
+			return skipped;
+		}
+
+		@Override
+		public boolean markSupported()
+		{
+			return false;
+		}
+	}
+
+	private final long maxSize;
+
+	/**
+	 * Constructor
+	 *
+	 * @param maxSize
+	 *            maximum size (bytes) of a decompressed request body. Negative or zero value disables decompression, i.e. compressed request bodies are rejected.
+	 */
+	@ConstructorProperties({ "maxSize" })
+	public CompressionInInterceptor(final long maxSize)
+	{
+		super(Phase.RECEIVE);
+		addAfter(MetricsInInterceptor.class.getName());
+		this.maxSize = maxSize;
+	}
+
+	@Override
+	public void handleMessage(final Message message)
+	{
+		@SuppressWarnings("unchecked")
+		final Map<String, List<String>> headers = (Map<String, List<String>>) message.get(Message.PROTOCOL_HEADERS);
+		final InputStream in = message.getContent(InputStream.class);
+		if (headers == null || in == null)
+		{
+			return;
+		}
+
+		String encoding = null;
+		final Iterator<Map.Entry<String, List<String>>> headerIt = headers.entrySet().iterator();
+		while (headerIt.hasNext())
+		{
+			final Map.Entry<String, List<String>> header = headerIt.next();
+			if (HttpHeaders.CONTENT_ENCODING.equalsIgnoreCase(header.getKey()) && header.getValue() != null && !header.getValue().isEmpty())
+			{
+				encoding = String.join(",", header.getValue()).strip().toLowerCase(Locale.ENGLISH);
+				// the body is decoded below
+				headerIt.remove();
+				break;
+			}
+		}
+
+		if (encoding == null || encoding.isEmpty() || encoding.equals("identity"))
+		{
+			return;
+		}
+
+		if (maxSize <= 0)
+		{
+			throw new Fault(new IllegalArgumentException("Compressed request body not supported (Content-Encoding: " + encoding + ")"));
+		}
+
+		final InputStream decodedIn;
+		try
+		{
+			switch (encoding)
+			{
+				case "gzip":
+				case "x-gzip":
+					decodedIn = new GZIPInputStream(in);
+					break;
+				case "deflate":
+					decodedIn = new InflaterInputStream(in);
+					break;
+				default:
+					throw new Fault(new IllegalArgumentException("Unsupported Content-Encoding: " + encoding + " (supported: gzip, deflate)"));
+			}
+		}
+		catch (final IOException e)
+		{
+			throw new Fault(new IllegalArgumentException("Invalid compressed request body", e));
+		}
+
+		headers.remove(HttpHeaders.CONTENT_LENGTH);
+		message.setContent(InputStream.class, new SizeLimitingInputStream(decodedIn, maxSize));
+	}
+}
@@ -0,0 +1,491 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.compression;
+
+import java.beans.ConstructorProperties;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+
+import org.apache.cxf.interceptor.MessageSenderInterceptor;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageUtils;
+import org.apache.cxf.phase.AbstractPhaseInterceptor;
+import org.apache.cxf.phase.Phase;
+
+/**
+ * CXF interceptor for outbound messages that compresses the response body according to the request's Accept-Encoding header, iff the response media type is in a configured list and the body size
+ * reaches a minimum. Below this size (e.g. decision responses), compression costs more CPU time than it saves on the network. Since the size is not known in advance, the body is buffered up to this
+ * size before deciding.
+ * <p>
+ * The supported codings are gzip and, optionally, deflate (ZLIB format) at the fastest compression level, preferred to gzip by default when the client accepts both. The {@link Deflater}s are pooled.
+ * <p>
+ * The response body is compressed below the metrics (see {@link org.ow2.authzforce.rest.service.metrics.MetricsOutInterceptor}), i.e. the response sizes in the metrics and access log are
+ * uncompressed.
+ */
+public final class CompressionOutInterceptor extends AbstractPhaseInterceptor<Message>
+{
+	private static final String GZIP = "gzip";
+	private static final String X_GZIP = "x-gzip";
+	private static final String DEFLATE = "deflate";
+
+	private static final int GZIP_MAGIC = 0x8b1f;
+	private static final int BUFFER_SIZE = 8192;
+
+	/*
+	 * Content coding of the response
+	 */
+	private enum Coding
+	{
+		GZIP_CODING(CompressionOutInterceptor.GZIP), DEFLATE_CODING(CompressionOutInterceptor.DEFLATE);
+
+		private final String token;
+
+		Coding(final String token)
+		{
+			this.token = token;
+		}
+	}
+
+	/*
+	 * GZIP output stream using a given (pooled) raw deflater, unlike java.util.zip.GZIPOutputStream
+	 */
+	private static final class GzipDeflaterOutputStream extends DeflaterOutputStream
+	{
+		private final CRC32 crc = new CRC32();
+
+		private GzipDeflaterOutputStream(final OutputStream out, final Deflater deflater) throws IOException
+		{
+			super(out, deflater, BUFFER_SIZE);
+			// header: magic number, compression method (deflate), no flag, no modification time, no extra flag, unknown OS
+			out.write(new byte[] { (byte) GZIP_MAGIC, (byte) (GZIP_MAGIC >> 8), Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff });
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len) throws IOException
+		{
+			super.write(b, off, len);
+			crc.update(b, off, len);
+		}
+
+		private void writeIntLE(final long i) throws IOException
+		{
+			out.write((int) i & 0xff);
+			out.write((int) (i >> 8) & 0xff);
+			out.write((int) (i >> 16) & 0xff);
+			out.write((int) (i >> 24) & 0xff);
+		}
+
+		@Override
+		public void finish() throws IOException
+		{
+			if (!def.finished())
+			{
+				super.finish();
+				// trailer: CRC-32 and uncompressed size (modulo 2^32)
+				writeIntLE(crc.getValue());
+				writeIntLE(def.getBytesRead());
+			}
+		}
+	}
+
+	/*
+	 * Buffers the response body up to the minimum size, then either compresses it (minimum size reached) or writes it as is (closed before). In the first case, the headers are modified before
+	 * anything is written to the underlying stream, i.e. before the headers are sent.
+	 */
+	private final class CompressingOutputStream extends OutputStream
+	{
+		private final Message message;
+		private final Coding coding;
+		private final OutputStream out;
+		private byte[] buffer;
+		private int count = 0;
+		private OutputStream target = null;
+		private Deflater deflater = null;
+		private boolean closed = false;
+
+		private CompressingOutputStream(final Message message, final Coding coding, final OutputStream out)
+		{
+			this.message = message;
+			this.coding = coding;
+			this.out = out;
+			this.buffer = new byte[Math.min(minSize, BUFFER_SIZE)];
+		}
+
+		private void decide(final boolean sizeReached) throws IOException
+		{
+			final Map<String, List<String>> headers = getHeaders(message);
+			final boolean compressible = isCompressible(message, headers);
+			if (compressible)
+			{
+				// the response depends on Accept-Encoding, even if not compressed (too small)
+				addVaryAcceptEncoding(headers);
+			}
+
+			if (sizeReached && compressible)
+			{
+				headers.put(HttpHeaders.CONTENT_ENCODING, Collections.singletonList(coding.token));
+				headers.remove(HttpHeaders.CONTENT_LENGTH);
+				if (coding == Coding.GZIP_CODING)
+				{
+					deflater = gzipDeflaters.acquire();
+					target = new GzipDeflaterOutputStream(out, deflater);
+				}
+				else
+				{
+					deflater = deflateDeflaters.acquire();
+					target = new DeflaterOutputStream(out, deflater, BUFFER_SIZE);
+				}
+			}
+			else
+			{
+				target = out;
+			}
+
+			if (count > 0)
+			{
+				target.write(buffer, 0, count);
+			}
+
+			buffer = null;
+		}
+
+		@Override
+		public void write(final int b) throws IOException
+		{
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len) throws IOException
+		{
+			if (target == null)
+			{
+				if (count + len < minSize)
+				{
+					if (count + len > buffer.length)
+					{
+						final byte[] newBuffer = new byte[Math.min(minSize, Math.max(buffer.length * 2, count + len))];
+						System.arraycopy(buffer, 0, newBuffer, 0, count);
+						buffer = newBuffer;
+					}
+
+					System.arraycopy(b, off, buffer, count, len);
+					count += len;
+					return;
+				}
+
+				decide(true);
+			}
+
+			target.write(b, off, len);
+		}
+
+		@Override
+		public void flush() throws IOException
+		{
+			// until the minimum size is reached, keep buffering
+			if (target != null)
+			{
+				target.flush();
+			}
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			if (closed)
+			{
+				return;
+			}
+
+			closed = true;
+			try
+			{
+				if (target == null)
+				{
+					decide(false);
+				}
+
+				target.close();
+			}
+			finally
+			{
+				if (deflater != null)
+				{
+					(coding == Coding.GZIP_CODING ? gzipDeflaters : deflateDeflaters).release(deflater);
+					deflater = null;
+				}
+			}
+		}
+	}
+
+	private final int minSize;
+	private final List<MediaType> mediaTypes;
+	private final DeflaterPool gzipDeflaters;
+	private final DeflaterPool deflateDeflaters;
+
+	/**
+	 * Constructor
+	 *
+	 * @param minSize
+	 *            minimum size (bytes) of the response body to be compressed. Negative value disables compression altogether.
+	 * @param mediaTypes
+	 *            comma-separated list of response media types to be compressed (parameters ignored), e.g. "application/xml,application/json"
+	 * @param gzipLevel
+	 *            gzip compression level (1: fastest, 9: best compression)
+	 * @param deflateEnabled
+	 *            true iff the deflate coding (ZLIB format) is supported, with the fastest compression level. If the client accepts both deflate and gzip with same quality value, deflate is used.
+	 * @param poolSize
+	 *            maximum number of idle {@link Deflater}s kept for reuse, per coding
+	 */
+	@ConstructorProperties({ "minSize", "mediaTypes", "gzipLevel", "deflateEnabled", "poolSize" })
+	public CompressionOutInterceptor(final int minSize, final String mediaTypes, final int gzipLevel, final boolean deflateEnabled, final int poolSize)
+	{
+		super(Phase.PREPARE_SEND);
+		// wrap the output stream set by the MessageSenderInterceptor, like CXF's GZIPOutInterceptor
+		addAfter(MessageSenderInterceptor.class.getName());
+		if (gzipLevel < Deflater.BEST_SPEED || gzipLevel > Deflater.BEST_COMPRESSION)
+		{
+			throw new IllegalArgumentException("Invalid gzip compression level: " + gzipLevel + " (expected: " + Deflater.BEST_SPEED + " to " + Deflater.BEST_COMPRESSION + ")");
+		}
+
+		this.minSize = minSize;
+		final List<MediaType> mutableMediaTypes = new ArrayList<>();
+		for (final String mediaType : mediaTypes.split(","))
+		{
+			if (!mediaType.isBlank())
+			{
+				mutableMediaTypes.add(MediaType.valueOf(mediaType.strip()));
+			}
+		}
+
+		this.mediaTypes = Collections.unmodifiableList(mutableMediaTypes);
+		this.gzipDeflaters = new DeflaterPool(gzipLevel, true, Math.max(poolSize, 1));
+		this.deflateDeflaters = deflateEnabled ? new DeflaterPool(Deflater.BEST_SPEED, false, Math.max(poolSize, 1)) : null;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map<String, List<String>> getHeaders(final Message message)
+	{
+		Map<String, List<String>> headers = (Map<String, List<String>>) message.get(Message.PROTOCOL_HEADERS);
+		if (headers == null)
+		{
+			headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+			message.put(Message.PROTOCOL_HEADERS, headers);
+		}
+
+		return headers;
+	}
+
+	/*
+	 * Adds Accept-Encoding to the Vary header, keeping the values set by other components (e.g. Vary: Accept for content negotiation)
+	 */
+	private static void addVaryAcceptEncoding(final Map<String, List<String>> headers)
+	{
+		final List<String> varyValues = headers.get(HttpHeaders.VARY);
+		if (varyValues == null || varyValues.isEmpty())
+		{
+			headers.put(HttpHeaders.VARY, Collections.singletonList(HttpHeaders.ACCEPT_ENCODING));
+			return;
+		}
+
+		for (final String varyValue : varyValues)
+		{
+			for (final String fieldName : varyValue.split(","))
+			{
+				final String strippedFieldName = fieldName.strip();
+				if (strippedFieldName.equals("*") || strippedFieldName.equalsIgnoreCase(HttpHeaders.ACCEPT_ENCODING))
+				{
+					// already varying on Accept-Encoding
+					return;
+				}
+			}
+		}
+
+		final List<String> newVaryValues = new ArrayList<>(varyValues);
+		newVaryValues.add(HttpHeaders.ACCEPT_ENCODING);
+		headers.put(HttpHeaders.VARY, newVaryValues);
+	}
+
+	private boolean isCompressible(final Message message, final Map<String, List<String>> headers)
+	{
+		if (headers.containsKey(HttpHeaders.CONTENT_ENCODING))
+		{
+			// already encoded
+			return false;
+		}
+
+		final Object contentType = message.get(Message.CONTENT_TYPE);
+		if (contentType == null)
+		{
+			return false;
+		}
+
+		final MediaType mediaType;
+		try
+		{
+			mediaType = MediaType.valueOf(contentType.toString());
+		}
+		catch (final IllegalArgumentException e)
+		{
+			return false;
+		}
+
+		for (final MediaType compressibleType : mediaTypes)
+		{
+			if (compressibleType.isCompatible(mediaType))
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/*
+	 * Content coding to be used according to the Accept-Encoding header, null if none
+	 */
+	private Coding selectCoding(final Message inMessage)
+	{
+		@SuppressWarnings("unchecked")
+		final Map<String, List<String>> headers = (Map<String, List<String>>) inMessage.get(Message.PROTOCOL_HEADERS);
+		if (headers == null)
+		{
+			return null;
+		}
+
+		List<String> acceptEncodings = null;
+		for (final Map.Entry<String, List<String>> header : headers.entrySet())
+		{
+			if (HttpHeaders.ACCEPT_ENCODING.equalsIgnoreCase(header.getKey()))
+			{
+				acceptEncodings = header.getValue();
+				break;
+			}
+		}
+
+		if (acceptEncodings == null)
+		{
+			return null;
+		}
+
+		float gzipQuality = -1;
+		float deflateQuality = -1;
+		float wildcardQuality = -1;
+		for (final String acceptEncoding : acceptEncodings)
+		{
+			for (final String element : acceptEncoding.split(","))
+			{
+				final String[] parts = element.split(";");
+				final String coding = parts[0].strip().toLowerCase(Locale.ENGLISH);
+				float quality = 1;
+				for (int i = 1; i < parts.length; i++)
+				{
+					final String param = parts[i].strip();
+					if (param.startsWith("q=") || param.startsWith("Q="))
+					{
+						try
+						{
+							quality = Float.parseFloat(param.substring(2));
+						}
+						catch (final NumberFormatException e)
+						{
+							quality = 0;
+						}
+					}
+				}
+
+				switch (coding)
+				{
+					case GZIP:
+					case X_GZIP:
+						gzipQuality = Math.max(gzipQuality, quality);
+						break;
+					case DEFLATE:
+						deflateQuality = Math.max(deflateQuality, quality);
+						break;
+					case "*":
+						wildcardQuality = quality;
+						break;
+					default:
+						break;
+				}
+			}
+		}
+
+		// codings not listed explicitly get the wildcard quality if any
+		if (gzipQuality < 0)
+		{
+			gzipQuality = wildcardQuality;
+		}
+
+		if (deflateDeflaters == null)
+		{
+			// deflate not supported
+			deflateQuality = -1;
+		}
+		else if (deflateQuality < 0)
+		{
+			deflateQuality = wildcardQuality;
+		}
+
+		if (deflateQuality > 0 && deflateQuality >= gzipQuality)
+		{
+			return Coding.DEFLATE_CODING;
+		}
+
+		return gzipQuality > 0 ? Coding.GZIP_CODING : null;
+	}
+
+	@Override
+	public void handleMessage(final Message message)
+	{
+		if (minSize < 0 || MessageUtils.isRequestor(message) || message.getExchange().getInMessage() == null)
+		{
+			return;
+		}
+
+		final Message inMessage = message.getExchange().getInMessage();
+		if ("HEAD".equals(inMessage.get(Message.HTTP_REQUEST_METHOD)))
+		{
+			return;
+		}
+
+		final Coding coding = selectCoding(inMessage);
+		final OutputStream out = message.getContent(OutputStream.class);
+		if (coding == null || out == null)
+		{
+			return;
+		}
+
+		message.setContent(OutputStream.class, new CompressingOutputStream(message, coding, out));
+	}
+}
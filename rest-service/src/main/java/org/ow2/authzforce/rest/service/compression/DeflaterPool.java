@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.compression;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Deflater;
+
+/**
+ * Bounded pool of {@link Deflater}s with the same compression level and format, to avoid allocating (and freeing) the native zlib structures of a new {@link Deflater} for each response. Thread-safe.
+ */
+final class DeflaterPool
+{
+	private final int level;
+	private final boolean nowrap;
+	private final BlockingQueue<Deflater> deflaters;
+
+	/**
+	 * Constructor
+	 *
+	 * @param level
+	 *            compression level (0-9)
+	 * @param nowrap
+	 *            true iff the deflaters must produce raw deflate data (for GZIP), else ZLIB format
+	 * @param capacity
+	 *            maximum number of idle deflaters kept in the pool
+	 */
+	DeflaterPool(final int level, final boolean nowrap, final int capacity)
+	{
+		this.level = level;
+		this.nowrap = nowrap;
+		this.deflaters = new ArrayBlockingQueue<>(capacity);
+	}
+
+	/**
+	 * Gets a deflater from the pool, or a new one if the pool is empty
+	 *
+	 * @return deflater, to be returned with {@link #release(Deflater)}
+	 */
+	Deflater acquire()
+	{
+		final Deflater deflater = deflaters.poll();
+		return deflater == null ? new Deflater(level, nowrap) : deflater;
+	}
+
+	/**
+	 * Returns a deflater to the pool, or frees it if the pool is full
+	 *
+	 * @param deflater
+	 *            deflater acquired with {@link #acquire()}
+	 */
+	void release(final Deflater deflater)
+	{
+		deflater.reset();
+		if (!deflaters.offer(deflater))
+		{
+			deflater.end();
+		}
+	}
+}
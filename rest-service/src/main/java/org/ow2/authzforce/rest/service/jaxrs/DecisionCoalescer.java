@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.jaxrs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Single-flight deduplication of decision requests: while a request is being evaluated, identical requests (same canonical form) wait for its result instead of being evaluated again. A request joins
+ * an evaluation only if the latter started less than the collapse window ago, so that a slow evaluation (e.g. remote attribute provider timing out) does not hold back the following requests
+ * indefinitely; older evaluations are left alone and the request is evaluated separately. The result is shared only with the requests that arrived while the evaluation was in progress, never reused
+ * after it completes.
+ * <p>
+ * Thread-safe. Evaluation errors (exceptions and {@link Error}s) are propagated to all the requests sharing the evaluation.
+ *
+ * @param <RESULT>
+ *            evaluation result type
+ */
+final class DecisionCoalescer<RESULT>
+{
+	private static final class Flight<RESULT>
+	{
+		private final long startNanos;
+		private final CompletableFuture<RESULT> future = new CompletableFuture<>();
+
+		private Flight(final long startNanos)
+		{
+			this.startNanos = startNanos;
+		}
+	}
+
+	/**
+	 * Canonical form of a XACML/JSON request: keys of JSON objects are sorted, so that requests differing only by the order of the keys are identical. The hash code is computed once.
+	 */
+	static final class CanonicalJsonKey
+	{
+		private final String canonicalJson;
+		private final int hashCode;
+
+		CanonicalJsonKey(final JSONObject json)
+		{
+			final StringBuilder sb = new StringBuilder();
+			appendCanonical(json, sb);
+			this.canonicalJson = sb.toString();
+			this.hashCode = canonicalJson.hashCode();
+		}
+
+		private static void appendCanonical(final Object value, final StringBuilder sb)
+		{
+			if (value instanceof JSONObject)
+			{
+				final JSONObject jsonObject = (JSONObject) value;
+				final List<String> keys = new ArrayList<>(jsonObject.keySet());
+				Collections.sort(keys);
+				sb.append('{');
+				boolean first = true;
+				for (final String key : keys)
+				{
+					if (!first)
+					{
+						sb.append(',');
+					}
+
+					sb.append(JSONObject.quote(key)).append(':');
+					appendCanonical(jsonObject.get(key), sb);
+					first = false;
+				}
+
+				sb.append('}');
+			}
+			else if (value instanceof JSONArray)
+			{
+				final JSONArray jsonArray = (JSONArray) value;
+				sb.append('[');
+				for (int i = 0; i < jsonArray.length(); i++)
+				{
+					if (i > 0)
+					{
+						sb.append(',');
+					}
+
+					appendCanonical(jsonArray.get(i), sb);
+				}
+
+				sb.append(']');
+			}
+			else
+			{
+				sb.append(JSONObject.valueToString(value));
+			}
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(final Object obj)
+		{
+			if (this == obj)
+			{
+				return true;
+			}
+
+			if (!(obj instanceof CanonicalJsonKey))
+			{
+				return false;
+			}
+
+			final CanonicalJsonKey other = (CanonicalJsonKey) obj;
+			return hashCode == other.hashCode && canonicalJson.equals(other.canonicalJson);
+		}
+	}
+
+	private final ConcurrentMap<Object, Flight<RESULT>> inFlightEvaluations = new ConcurrentHashMap<>();
+	private final long collapseWindowNanos;
+	private final LongAdder coalescedCount = new LongAdder();
+
+	/**
+	 * Constructor
+	 *
+	 * @param collapseWindowMillis
+	 *            maximum age (ms) of an in-progress evaluation that an identical request may join (> 0)
+	 */
+	DecisionCoalescer(final long collapseWindowMillis)
+	{
+		assert collapseWindowMillis > 0;
+		this.collapseWindowNanos = TimeUnit.MILLISECONDS.toNanos(collapseWindowMillis);
+	}
+
+	/**
+	 * Evaluates a request, or waits for the result of the evaluation of an identical request in progress
+	 *
+	 * @param requestKey
+	 *            canonical form of the request, with consistent equals() and hashCode()
+	 * @param evaluation
+	 *            evaluation of the request
+	 * @return result
+	 */
+	RESULT evaluate(final Object requestKey, final Supplier<RESULT> evaluation)
+	{
+		final Flight<RESULT> newFlight = new Flight<>(System.nanoTime());
+		final Flight<RESULT> inFlight = inFlightEvaluations.putIfAbsent(requestKey, newFlight);
+		if (inFlight != null)
+		{
+			if (newFlight.startNanos - inFlight.startNanos > collapseWindowNanos)
+			{
+				// evaluation in progress too old to be joined
+				return evaluation.get();
+			}
+
+			coalescedCount.increment();
+			try
+			{
+				return inFlight.future.join();
+			}
+			catch (final CompletionException e)
+			{
+				if (e.getCause() instanceof RuntimeException)
+				{
+					throw (RuntimeException) e.getCause();
+				}
+
+				if (e.getCause() instanceof Error)
+				{
+					throw (Error) e.getCause();
+				}
+
+				throw e;
+			}
+		}
+
+		try
+		{
+			final RESULT result = evaluation.get();
+			newFlight.future.complete(result);
+			return result;
+		}
+		catch (final Throwable e)
+		{
+			// Errors as well, else the requests that joined this evaluation would wait forever
+			newFlight.future.completeExceptionally(e);
+			throw e;
+		}
+		finally
+		{
+			inFlightEvaluations.remove(requestKey, newFlight);
+		}
+	}
+
+	/**
+	 * Gets the collapse window
+	 *
+	 * @return collapse window (ms)
+	 */
+	long getCollapseWindowMillis()
+	{
+		return TimeUnit.NANOSECONDS.toMillis(collapseWindowNanos);
+	}
+
+	/**
+	 * Gets the number of requests that got the result of an identical request's evaluation instead of being evaluated, since this coalescer was created
+	 *
+	 * @return number of coalesced requests
+	 */
+	long getCoalescedCount()
+	{
+		return coalescedCount.sum();
+	}
+}
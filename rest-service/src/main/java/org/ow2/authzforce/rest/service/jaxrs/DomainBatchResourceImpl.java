@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.jaxrs;
+
+import java.beans.ConstructorProperties;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import jakarta.ws.rs.BadRequestException;
+import jakarta.ws.rs.ClientErrorException;
+import jakarta.ws.rs.core.Response.Status;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import org.ow2.authzforce.core.pap.api.dao.DomainsDao;
+import org.ow2.authzforce.rest.api.xmlns.DomainProperties;
+import org.ow2.authzforce.rest.service.api.jaxrs.DomainBatchResource;
+import org.ow2.authzforce.rest.service.api.xmlns.DomainBatch;
+import org.ow2.authzforce.rest.service.api.xmlns.DomainBatchItemResult;
+import org.ow2.authzforce.rest.service.api.xmlns.DomainBatchResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Implementation of {@link DomainBatchResource}
+ * <p>
+ * The domains are created one after the other: the domain repository serializes domain creations anyway (template copy and PDP instantiation), so the gain over single creation requests is the saving
+ * of one HTTP request (and request authentication/authorization, parsing...) per domain. The link to each new domain is the same as returned by
+ * {@link org.ow2.authzforce.rest.api.jaxrs.DomainsResource#addDomain(DomainProperties)}, i.e. relative to the domains resource.
+ */
+public class DomainBatchResourceImpl implements DomainBatchResource
+{
+	private static final Logger LOGGER = LoggerFactory.getLogger(DomainBatchResourceImpl.class);
+
+	private static final BadRequestException INVALID_ARG_BAD_REQUEST_EXCEPTION = new BadRequestException("Invalid argument");
+
+	private final DomainsDao<DomainResourceImpl<?>> domainRepo;
+
+	private final int maxBatchSize;
+
+	/**
+	 * Constructor
+	 *
+	 * @param domainsDao
+	 *            domain repository
+	 * @param maxBatchSize
+	 *            maximum number of domains in a batch
+	 */
+	@SuppressFBWarnings(value="EI_EXPOSE_REP2")
+	@ConstructorProperties({ "domainsDao", "maxBatchSize" })
+	public DomainBatchResourceImpl(final DomainsDao<DomainResourceImpl<?>> domainsDao, final int maxBatchSize)
+	{
+		if (maxBatchSize < 1)
+		{
+			throw new IllegalArgumentException("Invalid maxBatchSize: " + maxBatchSize + " (expected: >= 1)");
+		}
+
+		this.domainRepo = domainsDao;
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	@Override
+	public DomainBatchResult addDomains(final DomainBatch batch)
+	{
+		if (batch == null || batch.getDomainProperties().isEmpty())
+		{
+			throw INVALID_ARG_BAD_REQUEST_EXCEPTION;
+		}
+
+		final List<DomainProperties> domainPropsList = batch.getDomainProperties();
+		if (domainPropsList.size() > maxBatchSize)
+		{
+			throw new ClientErrorException("Too many domains in batch (max: " + maxBatchSize + ")", Status.REQUEST_ENTITY_TOO_LARGE);
+		}
+
+		final List<DomainBatchItemResult> results = new ArrayList<>(domainPropsList.size());
+		int index = 0;
+		for (final DomainProperties domainProps : domainPropsList)
+		{
+			results.add(addDomain(index, domainProps));
+			index++;
+		}
+
+		return new DomainBatchResult(results);
+	}
+
+	private DomainBatchItemResult addDomain(final int index, final DomainProperties domainProps)
+	{
+		if (domainProps == null)
+		{
+			return new DomainBatchItemResult(index, Status.BAD_REQUEST.getStatusCode(), null, INVALID_ARG_BAD_REQUEST_EXCEPTION.getMessage());
+		}
+
+		final String domainId;
+		try
+		{
+			domainId = domainRepo.addDomain(new WritableDomainPropertiesImpl(domainProps));
+		}
+		catch (final IllegalArgumentException e)
+		{
+			return new DomainBatchItemResult(index, Status.BAD_REQUEST.getStatusCode(), null, e.getMessage());
+		}
+		catch (final IOException e)
+		{
+			LOGGER.error("Error creating domain #{} of batch", index, e);
+			return new DomainBatchItemResult(index, Status.INTERNAL_SERVER_ERROR.getStatusCode(), null, Status.INTERNAL_SERVER_ERROR.getReasonPhrase());
+		}
+
+		return new DomainBatchItemResult(index, Status.OK.getStatusCode(), DomainsResourceImpl.newDomainLink(domainId), null);
+	}
+}
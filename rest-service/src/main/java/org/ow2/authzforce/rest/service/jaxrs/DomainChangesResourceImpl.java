@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.jaxrs;
+
+import java.beans.ConstructorProperties;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import jakarta.ws.rs.InternalServerErrorException;
+import jakarta.ws.rs.NotFoundException;
+import jakarta.ws.rs.ServerErrorException;
+import jakarta.ws.rs.core.Response.Status;
+import jakarta.ws.rs.core.StreamingOutput;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import org.ow2.authzforce.rest.service.api.jaxrs.DomainChangesResource;
+import org.ow2.authzforce.rest.service.api.xmlns.DomainChanges;
+import org.ow2.authzforce.rest.service.replication.DomainChangeFeed;
+
+/**
+ * Implementation of {@link DomainChangesResource}, based on {@link DomainChangeFeed}
+ *
+ */
+public class DomainChangesResourceImpl implements DomainChangesResource
+{
+	private final DomainChangeFeed feed;
+
+	/**
+	 * Constructor
+	 *
+	 * @param feed
+	 *            domain change feed
+	 */
+	@SuppressFBWarnings(value="EI_EXPOSE_REP2")
+	@ConstructorProperties({ "feed" })
+	public DomainChangesResourceImpl(final DomainChangeFeed feed)
+	{
+		assert feed != null;
+		this.feed = feed;
+	}
+
+	private void checkEnabled()
+	{
+		if (!feed.isEnabled())
+		{
+			throw new ServerErrorException("Domain change feed disabled", Status.NOT_IMPLEMENTED);
+		}
+	}
+
+	@Override
+	public DomainChanges getDomainChanges(final String epoch, final long since)
+	{
+		checkEnabled();
+		try
+		{
+			return feed.getChanges(epoch, since);
+		}
+		catch (final IOException e)
+		{
+			throw new InternalServerErrorException("Error getting the domain changes", e);
+		}
+	}
+
+	@Override
+	public StreamingOutput getDomainFiles(final String domainId)
+	{
+		checkEnabled();
+		final ByteArrayOutputStream zip = new ByteArrayOutputStream();
+		final boolean found;
+		try
+		{
+			found = feed.writeDomainFiles(domainId, zip);
+		}
+		catch (final IOException e)
+		{
+			throw new InternalServerErrorException("Error getting the files of domain '" + domainId + "'", e);
+		}
+
+		if (!found)
+		{
+			throw new NotFoundException();
+		}
+
+		return zip::writeTo;
+	}
+}
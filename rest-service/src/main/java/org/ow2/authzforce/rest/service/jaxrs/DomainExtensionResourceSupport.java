@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.jaxrs;
+
+import java.io.IOException;
+
+import jakarta.ws.rs.BadRequestException;
+import jakarta.ws.rs.InternalServerErrorException;
+import jakarta.ws.rs.NotFoundException;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import org.ow2.authzforce.core.pap.api.dao.DomainsDao;
+
+/**
+ * Base class for the root resources extending the domain resources of the standard API (e.g. '/domains/{domainId}/pap/policies.transaction'), which cannot be added as sub-resources of
+ * {@link DomainResourceImpl} since the latter are resolved statically from the API model interfaces.
+ *
+ */
+abstract class DomainExtensionResourceSupport
+{
+	private static final NotFoundException NOT_FOUND_EXCEPTION = new NotFoundException();
+
+	private static final BadRequestException INVALID_ARG_BAD_REQUEST_EXCEPTION = new BadRequestException("Invalid argument");
+
+	private final DomainsDao<DomainResourceImpl<?>> domainRepo;
+
+	@SuppressFBWarnings(value="EI_EXPOSE_REP2")
+	protected DomainExtensionResourceSupport(final DomainsDao<DomainResourceImpl<?>> domainsDao)
+	{
+		this.domainRepo = domainsDao;
+	}
+
+	/**
+	 * Gets the resource of a given domain
+	 *
+	 * @param domainId
+	 *            domain ID
+	 * @return domain resource
+	 * @throws BadRequestException
+	 *             domainId is null
+	 * @throws NotFoundException
+	 *             no such domain
+	 * @throws InternalServerErrorException
+	 *             error getting the domain from the domain repository
+	 */
+	protected final DomainResourceImpl<?> getDomainResource(final String domainId)
+	{
+		if (domainId == null)
+		{
+			throw INVALID_ARG_BAD_REQUEST_EXCEPTION;
+		}
+
+		final DomainResourceImpl<?> domainRes;
+		try
+		{
+			domainRes = domainRepo.getDomainDaoClient(domainId);
+		}
+		catch (final IOException e)
+		{
+			throw new InternalServerErrorException("Error getting domain info from domain repository", e);
+		}
+
+		if (domainRes == null)
+		{
+			throw NOT_FOUND_EXCEPTION;
+		}
+
+		return domainRes;
+	}
+}
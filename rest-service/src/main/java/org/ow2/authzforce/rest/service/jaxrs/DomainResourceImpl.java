@@ -20,16 +20,27 @@ package org.ow2.authzforce.rest.service.jaxrs;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.common.escape.Escaper;
+import com.google.common.hash.HashCode;
 import com.google.common.net.UrlEscapers;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.IdReferenceType;
 import oasis.names.tc.xacml._3_0.core.schema.wd_17.PolicySet;
 import oasis.names.tc.xacml._3_0.core.schema.wd_17.Request;
 import oasis.names.tc.xacml._3_0.core.schema.wd_17.Response;
 import org.apache.cxf.phase.PhaseInterceptorChain;
 import org.json.JSONObject;
 import org.ow2.authzforce.core.pap.api.dao.*;
+import org.ow2.authzforce.core.pdp.api.policy.PolicyVersion;
 import org.ow2.authzforce.rest.api.jaxrs.*;
 import org.ow2.authzforce.rest.api.xmlns.*;
+import org.ow2.authzforce.rest.service.api.xmlns.DecisionCoalescing;
+import org.ow2.authzforce.rest.service.api.xmlns.PdpReloadMetrics;
+import org.ow2.authzforce.rest.service.api.xmlns.PolicyTransaction;
+import org.ow2.authzforce.rest.service.metrics.DecisionMetrics;
+import org.ow2.authzforce.rest.service.metrics.ServerMetrics;
+import org.ow2.authzforce.rest.service.tracing.Span;
+import org.ow2.authzforce.rest.service.tracing.Tracer;
+import org.ow2.authzforce.rest.service.upgrade.PolicyContentHasher;
 import org.ow2.authzforce.xmlns.pdp.ext.AbstractAttributeProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,11 +49,20 @@ import org.w3._2005.atom.Relation;
 
 import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.Response.Status;
+import jakarta.xml.bind.JAXBElement;
 import javax.xml.datatype.DatatypeConfigurationException;
 import javax.xml.datatype.DatatypeFactory;
+import javax.xml.transform.TransformerConfigurationException;
+import java.beans.ConstructorProperties;
 import java.io.IOException;
+import java.io.Serializable;
 import java.math.BigInteger;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
 
 /**
  * Domain Resource implementation. Each domain managed by {@link DomainsResourceImpl} is an instance of this class.
@@ -78,6 +98,13 @@ public class DomainResourceImpl<DAO extends DomainDao<PolicyVersionResourceImpl,
 		}
 	}
 
+	private static final String XACML_POLICYSET_ID_REFERENCE_ELEMENT_NAME = "PolicySetIdReference";
+
+	/*
+	 * Request without any attribute, used to warm up a new PDP (evaluation of the root policy's Target, etc.)
+	 */
+	private static final Request PDP_WARM_UP_REQUEST = new Request(null, Collections.emptyList(), null, false, false);
+
 	private static final TimeZone UTC_TZ = TimeZone.getTimeZone("UTC");
 
 	private static final String GET_PROPERTIES_RESOURCE_METHOD_NAME = "getDomainPropertiesResource";
@@ -88,6 +115,9 @@ public class DomainResourceImpl<DAO extends DomainDao<PolicyVersionResourceImpl,
 	private static final String GET_POLICIES_RESOURCE_METHOD_NAME = "getPoliciesResource";
 	private static final String GET_ATTRIBUTE_PROVIDERS_RESOURCE_METHOD_NAME = "getAttributeProvidersResource";
 
+	private static final String PDP_EVALUATION_SPAN_NAME = "pdp.evaluate";
+	private static final String DOMAIN_ID_SPAN_ATTRIBUTE = "authzforce.domain.id";
+
 	/**
 	 * DomainResource Factory
 	 * 
@@ -102,6 +132,113 @@ public class DomainResourceImpl<DAO extends DomainDao<PolicyVersionResourceImpl,
 		private static final IllegalArgumentException ILLEGAL_DOMAIN_ID_ARGUMENT_EXCEPTION = new IllegalArgumentException("Domain ID for domain resource undefined");
 		private static final IllegalArgumentException ILLEGAL_DOMAIN_DAO_ARGUMENT_EXCEPTION = new IllegalArgumentException("Domain DAO for domain resource undefined");
 
+		/*
+		 * Null iff PDP warm-up on reload disabled
+		 */
+		private final ExecutorService pdpWarmUpExecutor;
+		private final ServerMetrics serverMetrics;
+		private final int decisionCoalescingWindowMillis;
+		private final PolicyContentHasher policyContentHasher;
+
+		private static PolicyContentHasher newDefaultPolicyContentHasher()
+		{
+			try
+			{
+				return new PolicyContentHasher(Runtime.getRuntime().availableProcessors());
+			}
+			catch (final TransformerConfigurationException e)
+			{
+				throw new RuntimeException("Failed to initialize the policy content hashing", e);
+			}
+		}
+
+		/**
+		 * Creates factory of domain resources that do not warm up the PDP after reloading it
+		 */
+		public Factory()
+		{
+			this(false);
+		}
+
+		/**
+		 * Creates factory of domain resources
+		 * 
+		 * @param warmUpPdpOnReload
+		 *            true iff the domain PDP must be warmed up (by evaluating a dummy request) after it is reloaded following a PAP change, in a background thread, i.e. without delaying the PAP change
+		 *            request. Enable this only if evaluating a request without any attribute has no side effect, e.g. no call to a remote attribute provider.
+		 */
+		public Factory(final boolean warmUpPdpOnReload)
+		{
+			this(warmUpPdpOnReload, new ServerMetrics(true));
+		}
+
+		/**
+		 * Creates factory of domain resources
+		 * 
+		 * @param warmUpPdpOnReload
+		 *            true iff the domain PDP must be warmed up (by evaluating a dummy request) after it is reloaded following a PAP change, in a background thread, i.e. without delaying the PAP change
+		 *            request. Enable this only if evaluating a request without any attribute has no side effect, e.g. no call to a remote attribute provider.
+		 * @param serverMetrics
+		 *            metrics registry where the domain resources record the decision latencies and outcomes
+		 */
+		public Factory(final boolean warmUpPdpOnReload, final ServerMetrics serverMetrics)
+		{
+			this(warmUpPdpOnReload, serverMetrics, 0);
+		}
+
+		/**
+		 * Creates factory of domain resources
+		 * 
+		 * @param warmUpPdpOnReload
+		 *            true iff the domain PDP must be warmed up (by evaluating a dummy request) after it is reloaded following a PAP change, in a background thread, i.e. without delaying the PAP change
+		 *            request. Enable this only if evaluating a request without any attribute has no side effect, e.g. no call to a remote attribute provider.
+		 * @param serverMetrics
+		 *            metrics registry where the domain resources record the decision latencies and outcomes
+		 * @param decisionCoalescingWindowMillis
+		 *            collapse window (ms) of the decision request coalescing: a decision request shares the evaluation of an identical request if the latter started less than this time ago and is still
+		 *            in progress. 0 or less disables the coalescing on all domains; else it is enabled on all domains by default, and may be disabled per domain.
+		 */
+		public Factory(final boolean warmUpPdpOnReload, final ServerMetrics serverMetrics, final int decisionCoalescingWindowMillis)
+		{
+			this(warmUpPdpOnReload, serverMetrics, decisionCoalescingWindowMillis, newDefaultPolicyContentHasher());
+		}
+
+		/**
+		 * Creates factory of domain resources
+		 * 
+		 * @param warmUpPdpOnReload
+		 *            true iff the domain PDP must be warmed up (by evaluating a dummy request) after it is reloaded following a PAP change, in a background thread, i.e. without delaying the PAP change
+		 *            request. Enable this only if evaluating a request without any attribute has no side effect, e.g. no call to a remote attribute provider.
+		 * @param serverMetrics
+		 *            metrics registry where the domain resources record the decision latencies and outcomes
+		 * @param decisionCoalescingWindowMillis
+		 *            collapse window (ms) of the decision request coalescing: a decision request shares the evaluation of an identical request if the latter started less than this time ago and is still
+		 *            in progress. 0 or less disables the coalescing on all domains; else it is enabled on all domains by default, and may be disabled per domain.
+		 * @param policyContentHasher
+		 *            content hash function of the policies (on their canonical form), used to compare an imported policy version with the existing one in snapshot imports
+		 */
+		@SuppressFBWarnings(value="EI_EXPOSE_REP2")
+		@ConstructorProperties({ "warmUpPdpOnReload", "serverMetrics", "decisionCoalescingWindowMillis", "policyContentHasher" })
+		public Factory(final boolean warmUpPdpOnReload, final ServerMetrics serverMetrics, final int decisionCoalescingWindowMillis, final PolicyContentHasher policyContentHasher)
+		{
+			if (policyContentHasher == null)
+			{
+				throw new IllegalArgumentException("Undefined policy content hasher");
+			}
+
+			/*
+			 * A single thread is enough since a PDP warm-up is a single decision evaluation, and there is at most one pending warm-up per domain.
+			 */
+			this.pdpWarmUpExecutor = warmUpPdpOnReload ? Executors.newSingleThreadExecutor(task -> {
+				final Thread thread = new Thread(task, "authzforce-pdp-warm-up-on-reload");
+				thread.setDaemon(true);
+				return thread;
+			}) : null;
+			this.serverMetrics = serverMetrics;
+			this.decisionCoalescingWindowMillis = decisionCoalescingWindowMillis;
+			this.policyContentHasher = policyContentHasher;
+		}
+
 		@Override
 		public DomainResourceImpl<DOMAIN_DAO> getInstance(final String domainId, final Builder<DOMAIN_DAO> domainDAO) throws IOException
 		{
@@ -115,7 +252,7 @@ public class DomainResourceImpl<DAO extends DomainDao<PolicyVersionResourceImpl,
 				throw ILLEGAL_DOMAIN_DAO_ARGUMENT_EXCEPTION;
 			}
 
-			return new DomainResourceImpl<>(domainId, domainDAO);
+			return new DomainResourceImpl<>(domainId, domainDAO, pdpWarmUpExecutor, serverMetrics, decisionCoalescingWindowMillis, policyContentHasher);
 		}
 
 		@Override
@@ -129,11 +266,226 @@ public class DomainResourceImpl<DAO extends DomainDao<PolicyVersionResourceImpl,
 	private final String domainId;
 	private final DAO domainDAO;
 
-	private DomainResourceImpl(final String domainId, final Builder<DAO> domainDaoBuilder) throws IOException
+	/*
+	 * Serializes the PAP write operations going through this resource, so that a policy transaction is never interleaved with other policy/PDP properties updates
+	 */
+	private final Object papWriteLock = new Object();
+
+	/*
+	 * Null iff PDP warm-up on reload disabled
+	 */
+	private final ExecutorService pdpWarmUpExecutor;
+	private final AtomicBoolean pdpWarmUpPending = new AtomicBoolean(false);
+	private final PdpReloadStats pdpReloadStats = new PdpReloadStats();
+	private final ServerMetrics serverMetrics;
+	private final DecisionMetrics decisionMetrics;
+
+	/*
+	 * Null iff decision coalescing disabled on the server
+	 */
+	private final DecisionCoalescer<Response> xacmlXmlDecisionCoalescer;
+	private final DecisionCoalescer<JSONObject> xacmlJsonDecisionCoalescer;
+	private volatile boolean decisionCoalescingEnabled;
+
+	private final PolicyContentHasher policyContentHasher;
+
+	/*
+	 * PAP write operation on the domain DAO that causes the DAO to build a new PDP (and replace the current one if needed)
+	 */
+	@FunctionalInterface
+	private interface PdpReloadingOperation<T>
 	{
-		assert domainDaoBuilder != null;
+		T apply() throws IOException, TooManyPoliciesException;
+	}
+
+	private DomainResourceImpl(final String domainId, final Builder<DAO> domainDaoBuilder, final ExecutorService pdpWarmUpExecutor, final ServerMetrics serverMetrics,
+	        final int decisionCoalescingWindowMillis, final PolicyContentHasher policyContentHasher) throws IOException
+	{
+		assert domainDaoBuilder != null && serverMetrics != null && policyContentHasher != null;
 		this.domainId = domainId;
 		this.domainDAO = domainDaoBuilder.build();
+		this.pdpWarmUpExecutor = pdpWarmUpExecutor;
+		this.serverMetrics = serverMetrics;
+		this.decisionMetrics = serverMetrics.getDecisionMetrics(domainId);
+		if (decisionCoalescingWindowMillis > 0)
+		{
+			this.xacmlXmlDecisionCoalescer = new DecisionCoalescer<>(decisionCoalescingWindowMillis);
+			this.xacmlJsonDecisionCoalescer = new DecisionCoalescer<>(decisionCoalescingWindowMillis);
+			this.decisionCoalescingEnabled = true;
+		}
+		else
+		{
+			this.xacmlXmlDecisionCoalescer = null;
+			this.xacmlJsonDecisionCoalescer = null;
+			this.decisionCoalescingEnabled = false;
+		}
+
+		this.policyContentHasher = policyContentHasher;
+	}
+
+	private <T> T reloadPdp(final PdpReloadingOperation<T> operation) throws IOException, TooManyPoliciesException
+	{
+		return reloadPdp(operation, result -> true);
+	}
+
+	/*
+	 * Runs a PAP write operation that reloads the PDP, and records the reload statistics. The DAO builds the new PDP while the current one keeps serving decision requests, and publishes it in a single
+	 * reference update, so decision requests are never blocked by this operation. Only the PAP write operations are serialized. The recorded duration is the one of the whole operation (validation and
+	 * storage of the change, PDP build), since the DAO does not expose the PDP build separately. A successful reload is recorded only if pdpRebuilt says so from the operation's result (e.g. not if a
+	 * policy was not added because of a conflict); a failed one if the operation fails, except on TooManyPoliciesException, thrown before any PDP build.
+	 */
+	private <T> T reloadPdp(final PdpReloadingOperation<T> operation, final Predicate<T> pdpRebuilt) throws IOException, TooManyPoliciesException
+	{
+		final Span span = Tracer.startChildSpan("pap.write").setAttribute(DOMAIN_ID_SPAN_ATTRIBUTE, domainId);
+		final long lockRequestNanos = System.nanoTime();
+		try
+		{
+			synchronized (papWriteLock)
+			{
+				final long startNanos = System.nanoTime();
+				span.setAttribute("pap.lock_wait_us", (startNanos - lockRequestNanos) / 1000);
+				boolean failed = true;
+				try
+				{
+					final T result = operation.apply();
+					failed = false;
+					if (pdpRebuilt.test(result))
+					{
+						pdpReloadStats.record(System.nanoTime() - startNanos, true);
+					}
+
+					return result;
+				}
+				catch (final TooManyPoliciesException e)
+				{
+					failed = false;
+					throw e;
+				}
+				finally
+				{
+					if (failed)
+					{
+						pdpReloadStats.record(System.nanoTime() - startNanos, false);
+					}
+				}
+			}
+		}
+		catch (final IOException | TooManyPoliciesException | RuntimeException e)
+		{
+			span.setError(e);
+			throw e;
+		}
+		finally
+		{
+			span.end();
+		}
+	}
+
+	/*
+	 * Schedules the evaluation of a dummy request on the (new) PDP in the background, if enabled, so that the next decision requests after a reload pay less for the lazy initializations. The DAO
+	 * publishes the new PDP before this is called, so the warm-up may race with the first decision requests; it does not delay the PAP change request though. At most one warm-up is pending per domain:
+	 * reloads in the meantime are covered by the pending one. Any evaluation error is ignored.
+	 */
+	private void warmUpPdp()
+	{
+		if (pdpWarmUpExecutor == null || !pdpWarmUpPending.compareAndSet(false, true))
+		{
+			return;
+		}
+
+		try
+		{
+			pdpWarmUpExecutor.execute(() -> {
+				// reset before the evaluation so that a reload during the evaluation schedules another warm-up
+				pdpWarmUpPending.set(false);
+				evaluatePdpWarmUpRequest();
+			});
+		}
+		catch (final RejectedExecutionException e)
+		{
+			pdpWarmUpPending.set(false);
+			LOGGER.debug("Domain '{}': PDP warm-up rejected", domainId, e);
+		}
+	}
+
+	/*
+	 * Evaluates a dummy request on the current PDP (if the XACML/XML profile is enabled), whether or not the PDP warm-up on reload is enabled. Any evaluation error is ignored.
+	 */
+	void evaluatePdpWarmUpRequest()
+	{
+		if (!domainDAO.isXacmlXmlSupported())
+		{
+			return;
+		}
+
+		try
+		{
+			domainDAO.evaluatePolicyDecision(PDP_WARM_UP_REQUEST);
+		}
+		catch (final RuntimeException e)
+		{
+			LOGGER.debug("Domain '{}': PDP warm-up request evaluation failed", domainId, e);
+		}
+	}
+
+	/**
+	 * Gets the statistics on the reloads of the domain's PDP triggered by PAP changes through this resource since the server started
+	 *
+	 * @return PDP reload metrics
+	 */
+	public PdpReloadMetrics getPdpReloadMetrics()
+	{
+		final long lastReloadTime = pdpReloadStats.getLastReloadTime();
+		final GregorianCalendar lastReloadCal;
+		if (lastReloadTime == 0)
+		{
+			lastReloadCal = null;
+		}
+		else
+		{
+			lastReloadCal = new GregorianCalendar(UTC_TZ);
+			lastReloadCal.setTimeInMillis(lastReloadTime);
+		}
+
+		return new PdpReloadMetrics(pdpReloadStats.getReloadCount(), pdpReloadStats.getFailedReloadCount(), pdpReloadStats.getLastWriteTimeMillis(), pdpReloadStats.getMaxWriteTimeMillis(),
+		        pdpReloadStats.getTotalWriteTimeMillis(), lastReloadCal == null ? null : XML_DATATYPE_FACTORY.newXMLGregorianCalendar(lastReloadCal));
+	}
+
+	/**
+	 * Gets the status of the coalescing of identical concurrent decision requests on this domain
+	 *
+	 * @return decision coalescing status
+	 */
+	public DecisionCoalescing getDecisionCoalescing()
+	{
+		if (xacmlXmlDecisionCoalescer == null)
+		{
+			return new DecisionCoalescing(false, 0, 0);
+		}
+
+		return new DecisionCoalescing(decisionCoalescingEnabled, xacmlXmlDecisionCoalescer.getCollapseWindowMillis(),
+		        xacmlXmlDecisionCoalescer.getCoalescedCount() + xacmlJsonDecisionCoalescer.getCoalescedCount());
+	}
+
+	/**
+	 * Enables/disables the coalescing of identical concurrent decision requests on this domain, e.g. disable it if the decisions depend on attributes that may change between two identical requests
+	 * within the collapse window. The setting is not persisted: it is reset to the server-wide setting when the server restarts.
+	 *
+	 * @param enabled
+	 *            true iff decision coalescing must be enabled
+	 * @return new decision coalescing status
+	 * @throws BadRequestException
+	 *             enabled is true whereas decision coalescing is disabled on the server
+	 */
+	public DecisionCoalescing setDecisionCoalescingEnabled(final boolean enabled)
+	{
+		if (enabled && xacmlXmlDecisionCoalescer == null)
+		{
+			throw new BadRequestException("Decision coalescing disabled on the server");
+		}
+
+		decisionCoalescingEnabled = enabled;
+		return getDecisionCoalescing();
 	}
 
 	@Override
@@ -227,6 +579,7 @@ public class DomainResourceImpl<DAO extends DomainDao<PolicyVersionResourceImpl,
 			throw NOT_FOUND_EXCEPTION;
 		}
 
+		serverMetrics.removeDomain(domainId);
 		return new DomainProperties(props.getDescription(), props.getExternalId());
 	}
 
@@ -252,13 +605,51 @@ public class DomainResourceImpl<DAO extends DomainDao<PolicyVersionResourceImpl,
 	@Override
 	public Response requestPolicyDecision(final Request request)
 	{
-		return domainDAO.evaluatePolicyDecision(request);
+		final Span span = Tracer.startChildSpan(PDP_EVALUATION_SPAN_NAME).setAttribute(DOMAIN_ID_SPAN_ATTRIBUTE, domainId);
+		try
+		{
+			final long startNanos = System.nanoTime();
+			/*
+			 * The XACML JAXB classes implement equals() and hashCode() on the whole content, so the request itself is the key of the coalescing
+			 */
+			final Response response = decisionCoalescingEnabled && request != null ? xacmlXmlDecisionCoalescer.evaluate(request, () -> domainDAO.evaluatePolicyDecision(request))
+			        : domainDAO.evaluatePolicyDecision(request);
+			decisionMetrics.record(System.nanoTime() - startNanos, response);
+			return response;
+		}
+		catch (final RuntimeException e)
+		{
+			span.setError(e);
+			throw e;
+		}
+		finally
+		{
+			span.end();
+		}
 	}
 
 	@Override
 	public JSONObject requestPolicyDecisionXacmlJson(final JSONObject request)
 	{
-		return domainDAO.evaluatePolicyDecision(request);
+		final Span span = Tracer.startChildSpan(PDP_EVALUATION_SPAN_NAME).setAttribute(DOMAIN_ID_SPAN_ATTRIBUTE, domainId);
+		try
+		{
+			final long startNanos = System.nanoTime();
+			final JSONObject response = decisionCoalescingEnabled && request != null
+			        ? xacmlJsonDecisionCoalescer.evaluate(new DecisionCoalescer.CanonicalJsonKey(request), () -> domainDAO.evaluatePolicyDecision(request))
+			        : domainDAO.evaluatePolicyDecision(request);
+			decisionMetrics.record(System.nanoTime() - startNanos, response);
+			return response;
+		}
+		catch (final RuntimeException e)
+		{
+			span.setError(e);
+			throw e;
+		}
+		finally
+		{
+			span.end();
+		}
 	}
 
 	@Override
@@ -376,7 +767,10 @@ public class DomainResourceImpl<DAO extends DomainDao<PolicyVersionResourceImpl,
 		final WritableDomainPropertiesImpl newProps = new WritableDomainPropertiesImpl(properties);
 		try
 		{
-			domainDAO.setDomainProperties(newProps);
+			synchronized (papWriteLock)
+			{
+				domainDAO.setDomainProperties(newProps);
+			}
 		}
 		catch (final IOException e)
 		{
@@ -416,9 +810,9 @@ public class DomainResourceImpl<DAO extends DomainDao<PolicyVersionResourceImpl,
 
 		try
 		{
-			domainDAO.setAttributeProviders(attributeproviders.getAttributeProviders());
+			reloadPdp(() -> domainDAO.setAttributeProviders(attributeproviders.getAttributeProviders()));
 		}
-		catch (final IOException e)
+		catch (final IOException | TooManyPoliciesException e)
 		{
 			throw new InternalServerErrorException("Error updating the attributeProviders configuration of domain '" + domainId + "'", e);
 		}
@@ -427,10 +821,136 @@ public class DomainResourceImpl<DAO extends DomainDao<PolicyVersionResourceImpl,
 			throw new BadRequestException(e);
 		}
 
+		warmUpPdp();
 		return attributeproviders;
 	}
 
 	@SuppressFBWarnings("CRLF_INJECTION_LOGS")
+	private static ImmutableMap<String, String> getInputXmlnsContexts()
+	{
+		final Object xmlnsContexts = PhaseInterceptorChain.getCurrentMessage().get(PolicyVersionResourceImpl.XML_NS_CONTEXTS_CXF_MESSAGE_CONTEXT_PROPERTY_NAME);
+
+		if(xmlnsContexts == null) {
+			LOGGER.warn("CXF MessageContext property '{}' is undefined. Expected instance of {}. Verify CXF JAXBElementProvider implementation/configuration.", PolicyVersionResourceImpl.XML_NS_CONTEXTS_CXF_MESSAGE_CONTEXT_PROPERTY_NAME, Map.class);
+			return ImmutableMap.of();
+		}
+
+		if(!(xmlnsContexts instanceof Map)) {
+			throw new RuntimeException("Invalid value type of injected CXF MessageContext property '"+ PolicyVersionResourceImpl.XML_NS_CONTEXTS_CXF_MESSAGE_CONTEXT_PROPERTY_NAME +"': " + xmlnsContexts + ". Expected: " + Map.class + "<String, String>");
+		}
+
+		return ImmutableMap.copyOf((Map<String, String>) xmlnsContexts);
+	}
+
+	private static Link newPolicyVersionLink(final PolicySet policy)
+	{
+		// Policy ID is xs:anyURI, therefore may contain invalid characters for
+		// URL paths -> needs escaping to be used as URL path segment
+		final String policyIdUrlPathSegment = URL_PATH_SEGMENT_ESCAPER.escape(policy.getPolicySetId());
+		return new Link(Relation.ITEM, null, policyIdUrlPathSegment + "/" + policy.getVersion(), null, "Policy '" + policy.getPolicySetId() + "' v" + policy.getVersion(), null, null);
+	}
+
+	/*
+	 * Returns true iff the new policy has the same content as the existing policy (same SHA-256 hash of the canonical form)
+	 */
+	private boolean hasSameContent(final AuthzPolicy newPolicy, final AuthzPolicy existingPolicy)
+	{
+		final HashCode newContentHash;
+		try
+		{
+			newContentHash = policyContentHasher.hash(newPolicy);
+		}
+		catch (final IllegalArgumentException e)
+		{
+			throw new BadRequestException(e);
+		}
+
+		final HashCode existingContentHash;
+		try
+		{
+			existingContentHash = policyContentHasher.hash(existingPolicy);
+		}
+		catch (final IllegalArgumentException e)
+		{
+			// not the client's policy
+			final PolicySet existingPolicySet = existingPolicy.toXacml();
+			throw new InternalServerErrorException(
+			        "Error computing the content hash of policy '" + existingPolicySet.getPolicySetId() + "' v" + existingPolicySet.getVersion() + " in domain '" + domainId + "'", e);
+		}
+
+		return newContentHash.equals(existingContentHash);
+	}
+
+	private static void collectPolicySetIdReferences(final PolicySet policySet, final Set<String> referencedPolicySetIds)
+	{
+		for (final Serializable child : policySet.getPolicySetsAndPoliciesAndPolicySetIdReferences())
+		{
+			if (child instanceof PolicySet childPolicySet)
+			{
+				collectPolicySetIdReferences(childPolicySet, referencedPolicySetIds);
+			}
+			else if (child instanceof JAXBElement<?> jaxbElement && jaxbElement.getValue() instanceof IdReferenceType idRef
+			        && XACML_POLICYSET_ID_REFERENCE_ELEMENT_NAME.equals(jaxbElement.getName().getLocalPart()))
+			{
+				referencedPolicySetIds.add(idRef.getValue());
+			}
+		}
+	}
+
+	private static void addInReferenceOrder(final String policyId, final Map<String, List<AuthzPolicy>> policiesById, final Set<String> visitedPolicyIds, final List<AuthzPolicy> orderedPolicies)
+	{
+		if (!visitedPolicyIds.add(policyId))
+		{
+			// already added, or reference cycle (rejected by the PDP anyway)
+			return;
+		}
+
+		final List<AuthzPolicy> policyVersions = policiesById.get(policyId);
+		final Set<String> referencedPolicyIds = new HashSet<>();
+		for (final AuthzPolicy policyVersion : policyVersions)
+		{
+			collectPolicySetIdReferences(policyVersion.toXacml(), referencedPolicyIds);
+		}
+
+		for (final String referencedPolicyId : referencedPolicyIds)
+		{
+			if (policiesById.containsKey(referencedPolicyId))
+			{
+				addInReferenceOrder(referencedPolicyId, policiesById, visitedPolicyIds, orderedPolicies);
+			}
+		}
+
+		orderedPolicies.addAll(policyVersions);
+	}
+
+	/*
+	 * Sorts the policies so that any policy referenced (PolicySetIdReference) by another one of the same transaction is added before, since the DAO validates each new policy against the ones already there.
+	 */
+	private static List<AuthzPolicy> sortByPolicyReferences(final List<AuthzPolicy> policies) throws IllegalArgumentException
+	{
+		final Map<String, List<AuthzPolicy>> policiesById = new LinkedHashMap<>();
+		final Set<String> policyIdVersionPairs = new HashSet<>();
+		for (final AuthzPolicy policy : policies)
+		{
+			final PolicySet policySet = policy.toXacml();
+			if (!policyIdVersionPairs.add(policySet.getPolicySetId() + "/" + policySet.getVersion()))
+			{
+				throw new IllegalArgumentException("Duplicate PolicySet in transaction: PolicySetId = '" + policySet.getPolicySetId() + "', Version = '" + policySet.getVersion() + "'");
+			}
+
+			policiesById.computeIfAbsent(policySet.getPolicySetId(), k -> new ArrayList<>()).add(policy);
+		}
+
+		final List<AuthzPolicy> orderedPolicies = new ArrayList<>(policies.size());
+		final Set<String> visitedPolicyIds = new HashSet<>();
+		for (final String policyId : policiesById.keySet())
+		{
+			addInReferenceOrder(policyId, policiesById, visitedPolicyIds, orderedPolicies);
+		}
+
+		return orderedPolicies;
+	}
+
 	@Override
 	public Link addPolicy(final PolicySet policy)
 	{
@@ -439,18 +959,46 @@ public class DomainResourceImpl<DAO extends DomainDao<PolicyVersionResourceImpl,
 			throw INVALID_ARG_BAD_REQUEST_EXCEPTION;
 		}
 
-		final Object xmlnsContexts = PhaseInterceptorChain.getCurrentMessage().get(PolicyVersionResourceImpl.XML_NS_CONTEXTS_CXF_MESSAGE_CONTEXT_PROPERTY_NAME);
+		final AuthzPolicy newPolicy;
+		try
+		{
+			newPolicy = new JaxbXacmlAuthzPolicy(policy, getInputXmlnsContexts());
+		}
+		catch (final IllegalArgumentException e)
+		{
+			throw new BadRequestException(e);
+		}
 
-		if(xmlnsContexts == null) {
-			LOGGER.warn("CXF MessageContext property '{}' is undefined. Expected instance of {}. Verify CXF JAXBElementProvider implementation/configuration.", PolicyVersionResourceImpl.XML_NS_CONTEXTS_CXF_MESSAGE_CONTEXT_PROPERTY_NAME, Map.class);
-		} else if(!(xmlnsContexts instanceof Map)) {
-			throw new RuntimeException("Invalid value type of injected CXF MessageContext property '"+ PolicyVersionResourceImpl.XML_NS_CONTEXTS_CXF_MESSAGE_CONTEXT_PROPERTY_NAME +"': " + xmlnsContexts + ". Expected: " + Map.class + "<String, String>");
+		return addPolicy(newPolicy);
+	}
+
+	/**
+	 * Adds a policy converted from another format than the one of the input message (e.g. XACML 2.0), therefore with its own namespace contexts
+	 *
+	 * @param policy
+	 *            converted policy
+	 * @return link to the new policy version
+	 */
+	Link addConvertedPolicy(final AuthzPolicy policy)
+	{
+		if (!domainDAO.isPapEnabled())
+		{
+			throw new ServerErrorException("PAP disabled", Status.NOT_IMPLEMENTED);
 		}
 
+		return addPolicy(policy);
+	}
+
+	private Link addPolicy(final AuthzPolicy newPolicy)
+	{
+		final PolicySet policySet = newPolicy.toXacml();
 		final AuthzPolicy conflictingPolicy;
 		try
 		{
-			conflictingPolicy = domainDAO.addPolicy(new JaxbXacmlAuthzPolicy(policy, xmlnsContexts == null? ImmutableMap.of(): ImmutableMap.copyOf( (Map<String, String>) xmlnsContexts)));
+			synchronized (papWriteLock)
+			{
+				conflictingPolicy = reloadPdp(() -> domainDAO.addPolicy(newPolicy), Objects::isNull);
+			}
 		}
 		catch (final IOException e)
 		{
@@ -470,10 +1018,8 @@ public class DomainResourceImpl<DAO extends DomainDao<PolicyVersionResourceImpl,
 			throw ADD_POLICY_CONFLICT_EXCEPTION;
 		}
 
-		// Policy ID is xs:anyURI, therefore may contain invalid characters for
-		// URL paths -> needs escaping to be used as URL path segment
-		final String policyIdUrlPathSegment = URL_PATH_SEGMENT_ESCAPER.escape(policy.getPolicySetId());
-        return new Link(Relation.ITEM, null, policyIdUrlPathSegment + "/" + policy.getVersion(), null, "Policy '" + policy.getPolicySetId() + "' v" + policy.getVersion(), null, null);
+		warmUpPdp();
+		return newPolicyVersionLink(policySet);
 	}
 
 	@Override
@@ -521,6 +1067,307 @@ public class DomainResourceImpl<DAO extends DomainDao<PolicyVersionResourceImpl,
 		return new Resources(policyResourceLinks);
 	}
 
+	private void rollbackAddedPolicies(final Deque<PolicySet> addedPolicies)
+	{
+		while (!addedPolicies.isEmpty())
+		{
+			final PolicySet addedPolicy = addedPolicies.pop();
+			try
+			{
+				domainDAO.removePolicyVersion(addedPolicy.getPolicySetId(), new PolicyVersion(addedPolicy.getVersion()));
+			}
+			catch (final IOException | IllegalArgumentException e)
+			{
+				LOGGER.error("Domain '{}': failed to roll back policy '{}' v{} added by aborted policy transaction", domainId, addedPolicy.getPolicySetId(), addedPolicy.getVersion(), e);
+			}
+		}
+	}
+
+	/*
+	 * Core of the policy transaction: see commitPolicyTransaction(). If skipIdenticalExistingVersions is true, the policy versions already in the domain are skipped if they have the same content (same
+	 * content hash of the canonical form), instead of causing a conflict. The policies are stored as is.
+	 */
+	private List<Link> applyPolicyTransaction(final List<AuthzPolicy> policies, final WritablePdpProperties pdpPropsUpdate, final boolean skipIdenticalExistingVersions)
+	{
+		final List<AuthzPolicy> orderedPolicies;
+		final Map<AuthzPolicy, PolicyVersion> policyVersions = new IdentityHashMap<>();
+		try
+		{
+			orderedPolicies = sortByPolicyReferences(policies);
+			for (final AuthzPolicy policy : orderedPolicies)
+			{
+				policyVersions.put(policy, new PolicyVersion(policy.toXacml().getVersion()));
+			}
+		}
+		catch (final IllegalArgumentException e)
+		{
+			throw new BadRequestException(e);
+		}
+
+		final List<Link> policyLinks = new ArrayList<>(orderedPolicies.size());
+		synchronized (papWriteLock)
+		{
+			// Check conflicts with existing policy versions before writing anything
+			final Set<AuthzPolicy> existingPolicies = Collections.newSetFromMap(new IdentityHashMap<>());
+			for (final AuthzPolicy policy : orderedPolicies)
+			{
+				final PolicySet policySet = policy.toXacml();
+				final AuthzPolicy existingPolicy;
+				try
+				{
+					existingPolicy = domainDAO.getPolicyVersion(policySet.getPolicySetId(), policyVersions.get(policy));
+				}
+				catch (final IOException e)
+				{
+					throw new InternalServerErrorException("Error getting policy '" + policySet.getPolicySetId() + "' v" + policySet.getVersion() + " in domain '" + domainId + "'", e);
+				}
+
+				if (existingPolicy == null)
+				{
+					continue;
+				}
+
+				// the new policy is hashed only if there is an existing version to compare with
+				if (!skipIdenticalExistingVersions || !hasSameContent(policy, existingPolicy))
+				{
+					throw new ClientErrorException("PolicySet already exists with same PolicySetId and Version: '" + policySet.getPolicySetId() + "' v" + policySet.getVersion(), Status.CONFLICT);
+				}
+
+				existingPolicies.add(policy);
+			}
+
+			final Deque<PolicySet> addedPolicies = new ArrayDeque<>(orderedPolicies.size());
+			boolean committed = false;
+			try
+			{
+				for (final AuthzPolicy policy : orderedPolicies)
+				{
+					final PolicySet policySet = policy.toXacml();
+					if (!existingPolicies.contains(policy))
+					{
+						final AuthzPolicy conflictingPolicy = reloadPdp(() -> domainDAO.addPolicy(policy), Objects::isNull);
+						if (conflictingPolicy != null)
+						{
+							// added by some other client in the meantime (e.g. directly on the filesystem)
+							throw ADD_POLICY_CONFLICT_EXCEPTION;
+						}
+
+						addedPolicies.push(policySet);
+					}
+
+					policyLinks.add(newPolicyVersionLink(policySet));
+				}
+
+				if (pdpPropsUpdate != null)
+				{
+					reloadPdp(() -> domainDAO.setOtherPdpProperties(pdpPropsUpdate));
+				}
+
+				committed = true;
+			}
+			catch (final IOException e)
+			{
+				throw new InternalServerErrorException("Error applying policy transaction to domain '" + domainId + "'", e);
+			}
+			catch (final IllegalArgumentException e)
+			{
+				throw new BadRequestException(e);
+			}
+			catch (final TooManyPoliciesException e)
+			{
+				throw new ForbiddenException(e);
+			}
+			finally
+			{
+				if (!committed)
+				{
+					rollbackAddedPolicies(addedPolicies);
+				}
+			}
+		}
+
+		return policyLinks;
+	}
+
+	/**
+	 * Adds a set of policies and applies an optional PDP properties update (e.g. new root policy) as a single unit of work. The policies are checked for duplicates and conflicts with existing versions
+	 * before anything is written, then added in policy reference order, and the PDP properties update is applied last. If any step fails, the policy versions already added by the transaction are
+	 * removed, so that the domain is left as it was before the transaction, except for older policy versions removed by version rolling (if enabled in PRP properties) in the meantime.
+	 * <p>
+	 * The transaction is serialized with the other PAP write operations of this resource. Decision requests keep being served by the current PDP while the transaction is applied.
+	 *
+	 * @param transaction
+	 *            policies and PDP properties update
+	 * @return links to the new policy versions, in the order in which they were added
+	 */
+	public Resources commitPolicyTransaction(final PolicyTransaction transaction)
+	{
+		if (transaction == null || transaction.getPolicySets().isEmpty())
+		{
+			throw INVALID_ARG_BAD_REQUEST_EXCEPTION;
+		}
+
+		if (!domainDAO.isPapEnabled())
+		{
+			throw new ServerErrorException("PAP disabled", Status.NOT_IMPLEMENTED);
+		}
+
+		final ImmutableMap<String, String> xmlnsContexts = getInputXmlnsContexts();
+		final List<AuthzPolicy> policies = new ArrayList<>(transaction.getPolicySets().size());
+		for (final PolicySet policySet : transaction.getPolicySets())
+		{
+			if (policySet == null)
+			{
+				throw new BadRequestException("Undefined PolicySet in transaction");
+			}
+
+			try
+			{
+				policies.add(new JaxbXacmlAuthzPolicy(policySet, xmlnsContexts));
+			}
+			catch (final IllegalArgumentException e)
+			{
+				throw new BadRequestException("Invalid PolicySet in transaction: PolicySetId = '" + policySet.getPolicySetId() + "', Version = " + policySet.getVersion(), e);
+			}
+		}
+
+		final PdpPropertiesUpdate pdpPropsUpdate = transaction.getPdpPropertiesUpdate();
+		final List<Link> policyLinks = applyPolicyTransaction(policies, pdpPropsUpdate == null ? null : new WritablePdpPropertiesImpl(pdpPropsUpdate), false);
+		warmUpPdp();
+		return new Resources(policyLinks);
+	}
+
+	/**
+	 * Gets a point-in-time snapshot of the domain. The snapshot is taken while holding the lock serializing the PAP write operations of this resource, so it is consistent unless the domain is modified by
+	 * other means in the meantime (policy removal, filesystem changes...).
+	 *
+	 * @return domain snapshot
+	 */
+	DomainSnapshot exportSnapshot()
+	{
+		if (!domainDAO.isPapEnabled())
+		{
+			throw new ServerErrorException("PAP disabled", Status.NOT_IMPLEMENTED);
+		}
+
+		synchronized (papWriteLock)
+		{
+			final DomainProperties domainProps = getDomainProperties();
+			final PrpProperties prpProps = getOtherPrpProperties();
+			final AttributeProviders attributeProviders = getAttributeProviderList();
+			final PdpProperties pdpProps = getOtherPdpProperties();
+			final List<AuthzPolicy> policies = new ArrayList<>();
+			try
+			{
+				for (final String policyId : domainDAO.getPolicyIdentifiers())
+				{
+					// Oldest versions first, so that version rolling (if enabled) removes the same versions on import
+					for (final PolicyVersion policyVersion : new TreeSet<>(domainDAO.getPolicyVersions(policyId)))
+					{
+						final AuthzPolicy policy = domainDAO.getPolicyVersion(policyId, policyVersion);
+						if (policy != null)
+						{
+							policies.add(policy);
+						}
+					}
+				}
+			}
+			catch (final IOException e)
+			{
+				throw new InternalServerErrorException("Error getting policies of domain '" + domainId + "'", e);
+			}
+
+			return new DomainSnapshot(domainProps, prpProps, attributeProviders, policies, new PdpPropertiesUpdate(pdpProps.getFeatures(), pdpProps.getRootPolicyRefExpression()));
+		}
+	}
+
+	private void restoreAfterFailedImport(final DomainProperties domainProps, final PrpProperties prpProps, final AttributeProviders attributeProviders)
+	{
+		try
+		{
+			if (attributeProviders != null)
+			{
+				updateAttributeProviderList(attributeProviders);
+			}
+
+			if (prpProps != null)
+			{
+				updateOtherPrpProperties(prpProps);
+			}
+
+			if (domainProps != null)
+			{
+				updateDomainProperties(domainProps);
+			}
+		}
+		catch (final RuntimeException e)
+		{
+			LOGGER.error("Domain '{}': failed to restore domain/PRP properties or attribute providers after aborted snapshot import", domainId, e);
+		}
+	}
+
+	/**
+	 * Imports a domain snapshot: applies the domain properties, PRP properties and attribute providers of the snapshot (if defined), then adds its policies and applies its PDP properties in a single policy
+	 * transaction (see {@link #commitPolicyTransaction(PolicyTransaction)}). If any step fails, the changes already applied are rolled back. Policy versions already in the domain are skipped if identical
+	 * (e.g. the default root policy of a new domain), else the import is rejected (409 Conflict).
+	 *
+	 * @param snapshot
+	 *            domain snapshot
+	 * @return links to the policy versions of the snapshot
+	 */
+	Resources importSnapshot(final DomainSnapshot snapshot)
+	{
+		if (snapshot == null)
+		{
+			throw INVALID_ARG_BAD_REQUEST_EXCEPTION;
+		}
+
+		if (!domainDAO.isPapEnabled())
+		{
+			throw new ServerErrorException("PAP disabled", Status.NOT_IMPLEMENTED);
+		}
+
+		final PdpPropertiesUpdate pdpPropsUpdate = snapshot.getPdpProperties();
+		final List<Link> policyLinks;
+		synchronized (papWriteLock)
+		{
+			final DomainProperties oldDomainProps = snapshot.getDomainProperties() == null ? null : getDomainProperties();
+			final PrpProperties oldPrpProps = snapshot.getPrpProperties() == null ? null : getOtherPrpProperties();
+			final AttributeProviders oldAttributeProviders = snapshot.getAttributeProviders() == null ? null : getAttributeProviderList();
+			boolean committed = false;
+			try
+			{
+				if (oldDomainProps != null)
+				{
+					updateDomainProperties(snapshot.getDomainProperties());
+				}
+
+				if (oldPrpProps != null)
+				{
+					updateOtherPrpProperties(snapshot.getPrpProperties());
+				}
+
+				if (oldAttributeProviders != null)
+				{
+					updateAttributeProviderList(snapshot.getAttributeProviders());
+				}
+
+				policyLinks = applyPolicyTransaction(snapshot.getPolicies(), pdpPropsUpdate == null ? null : new WritablePdpPropertiesImpl(pdpPropsUpdate), true);
+				committed = true;
+			}
+			finally
+			{
+				if (!committed)
+				{
+					restoreAfterFailedImport(oldDomainProps, oldPrpProps, oldAttributeProviders);
+				}
+			}
+		}
+
+		warmUpPdp();
+		return new Resources(policyLinks);
+	}
+
 	@SuppressFBWarnings(value="EI_EXPOSE_REP")
 	@Override
 	public DAO getDao()
@@ -578,9 +1425,9 @@ public class DomainResourceImpl<DAO extends DomainDao<PolicyVersionResourceImpl,
 		final ReadablePdpProperties allProps;
 		try
 		{
-			allProps = domainDAO.setOtherPdpProperties(propsUpdate);
+			allProps = reloadPdp(() -> domainDAO.setOtherPdpProperties(propsUpdate));
 		}
-		catch (final IOException e)
+		catch (final IOException | TooManyPoliciesException e)
 		{
 			throw new InternalServerErrorException("Error updating the properties of the PDP of domain '" + domainId + "'", e);
 		}
@@ -589,6 +1436,7 @@ public class DomainResourceImpl<DAO extends DomainDao<PolicyVersionResourceImpl,
 			throw new BadRequestException(e);
 		}
 
+		warmUpPdp();
 		final GregorianCalendar cal = new GregorianCalendar(UTC_TZ);
 		cal.setTimeInMillis(allProps.getLastModified());
 
@@ -620,7 +1468,10 @@ public class DomainResourceImpl<DAO extends DomainDao<PolicyVersionResourceImpl,
 		final PrpRwProperties allProps;
 		try
 		{
-			allProps = domainDAO.setOtherPrpProperties(propsUpdate);
+			synchronized (papWriteLock)
+			{
+				allProps = domainDAO.setOtherPrpProperties(propsUpdate);
+			}
 		}
 		catch (final IOException e)
 		{
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.jaxrs;
+
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+import org.ow2.authzforce.core.pap.api.dao.AuthzPolicy;
+import org.ow2.authzforce.rest.api.xmlns.AttributeProviders;
+import org.ow2.authzforce.rest.api.xmlns.DomainProperties;
+import org.ow2.authzforce.rest.api.xmlns.PdpPropertiesUpdate;
+import org.ow2.authzforce.rest.api.xmlns.PrpProperties;
+
+/**
+ * Point-in-time snapshot of a domain's configuration: domain properties, PRP properties, attribute providers, all policy versions and PDP properties (root policy, features). This is the entity of
+ * {@link DomainSnapshotResource}, serialized as a ZIP archive.
+ * <p>
+ * Any part may be undefined (null) except the policies, in which case it is left unchanged on import.
+ */
+public final class DomainSnapshot
+{
+	private final DomainProperties domainProperties;
+	private final PrpProperties prpProperties;
+	private final AttributeProviders attributeProviders;
+	private final List<AuthzPolicy> policies;
+	private final PdpPropertiesUpdate pdpProperties;
+
+	/**
+	 * Creates snapshot
+	 *
+	 * @param domainProperties
+	 *            domain properties (description, external ID)
+	 * @param prpProperties
+	 *            PRP properties
+	 * @param attributeProviders
+	 *            attribute providers
+	 * @param policies
+	 *            all versions of all policies, with the oldest versions of a given policy first
+	 * @param pdpProperties
+	 *            PDP properties (root policy reference, features)
+	 */
+	public DomainSnapshot(final DomainProperties domainProperties, final PrpProperties prpProperties, final AttributeProviders attributeProviders, final List<AuthzPolicy> policies,
+	        final PdpPropertiesUpdate pdpProperties)
+	{
+		this.domainProperties = domainProperties;
+		this.prpProperties = prpProperties;
+		this.attributeProviders = attributeProviders;
+		this.policies = policies == null ? ImmutableList.of() : ImmutableList.copyOf(policies);
+		this.pdpProperties = pdpProperties;
+	}
+
+	/**
+	 * @return domain properties; null if undefined
+	 */
+	public DomainProperties getDomainProperties()
+	{
+		return domainProperties;
+	}
+
+	/**
+	 * @return PRP properties; null if undefined
+	 */
+	public PrpProperties getPrpProperties()
+	{
+		return prpProperties;
+	}
+
+	/**
+	 * @return attribute providers; null if undefined
+	 */
+	public AttributeProviders getAttributeProviders()
+	{
+		return attributeProviders;
+	}
+
+	/**
+	 * @return policies (immutable, never null), oldest versions of a given policy first
+	 */
+	public List<AuthzPolicy> getPolicies()
+	{
+		return policies;
+	}
+
+	/**
+	 * @return PDP properties; null if undefined
+	 */
+	public PdpPropertiesUpdate getPdpProperties()
+	{
+		return pdpProperties;
+	}
+}
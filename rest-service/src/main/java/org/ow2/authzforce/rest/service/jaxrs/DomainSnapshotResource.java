@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.jaxrs;
+
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.PUT;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+
+import org.ow2.authzforce.rest.api.xmlns.Resources;
+
+/**
+ * Snapshot resource of a domain, i.e. '/domains/{domainId}/snapshot', for backing up, restoring or migrating the whole configuration of a domain in one request. The snapshot is a ZIP archive.
+ * <p>
+ * This is a root resource because the domain sub-resources of the standard API are resolved statically from the API model interfaces, which cannot be extended.
+ */
+@Path("domains/{domainId}/snapshot")
+public interface DomainSnapshotResource
+{
+	/**
+	 * Media type of domain snapshots
+	 */
+	String MEDIA_TYPE = "application/zip";
+
+	/**
+	 * Maximum number of entries in a domain snapshot (ZIP archive) received, to mitigate ZIP bombs
+	 */
+	int MAX_ENTRY_COUNT = 10_000;
+
+	/**
+	 * Maximum total uncompressed size (bytes) of a domain snapshot (ZIP archive) received, to mitigate ZIP bombs
+	 */
+	long MAX_UNCOMPRESSED_SIZE = 128L * 1024 * 1024;
+
+	/**
+	 * Exports a point-in-time snapshot of the domain
+	 *
+	 * @param domainId
+	 *            domain ID
+	 * @return domain snapshot
+	 */
+	@GET
+	@Produces(MEDIA_TYPE)
+	DomainSnapshot exportDomainSnapshot(@PathParam("domainId") String domainId);
+
+	/**
+	 * Imports a domain snapshot, typically into a new domain: applies the domain properties, PRP properties and attribute providers of the snapshot, then adds its policies and applies its PDP
+	 * properties in a single policy transaction. If any step fails, the changes already applied are rolled back. Policy versions already in the domain are skipped if identical, else the import is
+	 * rejected (409 Conflict).
+	 *
+	 * @param domainId
+	 *            domain ID
+	 * @param snapshot
+	 *            domain snapshot
+	 * @return links to the policy versions of the snapshot
+	 */
+	@PUT
+	@Consumes(MEDIA_TYPE)
+	@Produces({ "application/xml", "application/fastinfoset", "application/json" })
+	Resources importDomainSnapshot(@PathParam("domainId") String domainId, DomainSnapshot snapshot);
+}
@@ -59,6 +59,19 @@ public class DomainsResourceImpl implements DomainsResource
 
 	private final String anyResourceId;
 
+	/**
+	 * Creates the link to a domain resource, relative to the domains resource
+	 * 
+	 * @param domainId
+	 *            domain ID
+	 * @return link to the domain
+	 */
+	static Link newDomainLink(final String domainId)
+	{
+		final String encodedUrlPathSegment = DomainResourceImpl.URL_PATH_SEGMENT_ESCAPER.escape(domainId);
+		return new Link(Relation.ITEM, null, encodedUrlPathSegment, null, domainId, null, null);
+	}
+
 	/**
 	 * Constructor
 	 * 
@@ -111,8 +124,7 @@ public class DomainsResourceImpl implements DomainsResource
 			throw new BadRequestException(e);
 		}
 
-		final String encodedUrlPathSegment = DomainResourceImpl.URL_PATH_SEGMENT_ESCAPER.escape(domainId);
-        return new Link(Relation.ITEM, null, encodedUrlPathSegment, null, domainId, null, null);
+		return newDomainLink(domainId);
 	}
 
 	/*
@@ -193,9 +205,7 @@ public class DomainsResourceImpl implements DomainsResource
 		final List<Link> domainResourceLinks = new ArrayList<>(authorizedDomainIDs.size());
 		for (final String domainId : authorizedDomainIDs)
 		{
-			final String encodedUrlPathSegment = DomainResourceImpl.URL_PATH_SEGMENT_ESCAPER.escape(domainId);
-			final Link link = new Link(Relation.ITEM, null, encodedUrlPathSegment, null, domainId, null, null);
-			domainResourceLinks.add(link);
+			domainResourceLinks.add(newDomainLink(domainId));
 		}
 
 		return new Resources(domainResourceLinks);
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.jaxrs;
+
+import java.beans.ConstructorProperties;
+import java.util.ArrayList;
+import java.util.List;
+
+import jakarta.ws.rs.BadRequestException;
+import jakarta.ws.rs.ClientErrorException;
+import jakarta.ws.rs.core.Response.Status;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.Request;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.Response;
+import org.ow2.authzforce.core.pap.api.dao.DomainsDao;
+import org.ow2.authzforce.rest.service.api.jaxrs.PdpBatchResource;
+import org.ow2.authzforce.rest.service.api.xmlns.DecisionBatch;
+import org.ow2.authzforce.rest.service.api.xmlns.DecisionBatchResult;
+
+/**
+ * Implementation of {@link PdpBatchResource}, delegating each request to the {@link DomainResourceImpl} of the domain, so that the decision metrics and tracing spans are the same as for single
+ * decision requests
+ */
+public class PdpBatchResourceImpl extends DomainExtensionResourceSupport implements PdpBatchResource
+{
+	private static final BadRequestException INVALID_ARG_BAD_REQUEST_EXCEPTION = new BadRequestException("Invalid argument");
+
+	private final int maxBatchSize;
+
+	/**
+	 * Constructor
+	 *
+	 * @param domainsDao
+	 *            domain repository
+	 * @param maxBatchSize
+	 *            maximum number of XACML requests in a batch
+	 */
+	@SuppressFBWarnings(value="EI_EXPOSE_REP2")
+	@ConstructorProperties({ "domainsDao", "maxBatchSize" })
+	public PdpBatchResourceImpl(final DomainsDao<DomainResourceImpl<?>> domainsDao, final int maxBatchSize)
+	{
+		super(domainsDao);
+		if (maxBatchSize < 1)
+		{
+			throw new IllegalArgumentException("Invalid maxBatchSize: " + maxBatchSize + " (expected: >= 1)");
+		}
+
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	@Override
+	public DecisionBatchResult requestPolicyDecisions(final String domainId, final DecisionBatch batch)
+	{
+		if (batch == null || batch.getRequests().isEmpty())
+		{
+			throw INVALID_ARG_BAD_REQUEST_EXCEPTION;
+		}
+
+		final List<Request> requests = batch.getRequests();
+		if (requests.size() > maxBatchSize)
+		{
+			throw new ClientErrorException("Too many requests in batch (max: " + maxBatchSize + ")", Status.REQUEST_ENTITY_TOO_LARGE);
+		}
+
+		final DomainResourceImpl<?> domainRes = getDomainResource(domainId);
+		final List<Response> responses = new ArrayList<>(requests.size());
+		for (final Request request : requests)
+		{
+			if (request == null)
+			{
+				throw INVALID_ARG_BAD_REQUEST_EXCEPTION;
+			}
+
+			responses.add(domainRes.requestPolicyDecision(request));
+		}
+
+		return new DecisionBatchResult(responses);
+	}
+}
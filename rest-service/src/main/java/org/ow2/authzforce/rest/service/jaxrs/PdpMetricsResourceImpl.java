@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.jaxrs;
+
+import java.beans.ConstructorProperties;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import org.ow2.authzforce.core.pap.api.dao.DomainsDao;
+import org.ow2.authzforce.rest.service.api.jaxrs.PdpMetricsResource;
+import org.ow2.authzforce.rest.service.api.xmlns.PdpReloadMetrics;
+
+/**
+ * Implementation of {@link PdpMetricsResource}, delegating to the {@link DomainResourceImpl} of the domain
+ *
+ */
+public class PdpMetricsResourceImpl extends DomainExtensionResourceSupport implements PdpMetricsResource
+{
+	/**
+	 * Constructor
+	 *
+	 * @param domainsDao
+	 *            domain repository
+	 */
+	@SuppressFBWarnings(value="EI_EXPOSE_REP2")
+	@ConstructorProperties({ "domainsDao" })
+	public PdpMetricsResourceImpl(final DomainsDao<DomainResourceImpl<?>> domainsDao)
+	{
+		super(domainsDao);
+	}
+
+	@Override
+	public PdpReloadMetrics getPdpReloadMetrics(final String domainId)
+	{
+		return getDomainResource(domainId).getPdpReloadMetrics();
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.jaxrs;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe statistics on the reloads of a domain's PDP. Recording does not block the readers, i.e. the threads getting the metrics.
+ */
+final class PdpReloadStats
+{
+	private final LongAdder reloadCount = new LongAdder();
+	private final LongAdder failedReloadCount = new LongAdder();
+	private final LongAdder totalWriteNanos = new LongAdder();
+	private final LongAccumulator maxWriteNanos = new LongAccumulator(Math::max, 0);
+	private volatile long lastWriteNanos = 0;
+	/*
+	 * Epoch time (ms) of the last successful reload, 0 if none
+	 */
+	private volatile long lastReloadTime = 0;
+
+	/**
+	 * Records a PDP reload
+	 *
+	 * @param writeNanos
+	 *            duration of the PAP write operation that reloaded the PDP (including the PDP build), in nanoseconds
+	 * @param success
+	 *            true iff the new PDP replaced the previous one; false if the reload failed (previous PDP unchanged)
+	 */
+	void record(final long writeNanos, final boolean success)
+	{
+		if (!success)
+		{
+			failedReloadCount.increment();
+			return;
+		}
+
+		reloadCount.increment();
+		totalWriteNanos.add(writeNanos);
+		maxWriteNanos.accumulate(writeNanos);
+		lastWriteNanos = writeNanos;
+		lastReloadTime = System.currentTimeMillis();
+	}
+
+	long getReloadCount()
+	{
+		return reloadCount.sum();
+	}
+
+	long getFailedReloadCount()
+	{
+		return failedReloadCount.sum();
+	}
+
+	long getLastWriteTimeMillis()
+	{
+		return TimeUnit.NANOSECONDS.toMillis(lastWriteNanos);
+	}
+
+	long getMaxWriteTimeMillis()
+	{
+		return TimeUnit.NANOSECONDS.toMillis(maxWriteNanos.get());
+	}
+
+	long getTotalWriteTimeMillis()
+	{
+		return TimeUnit.NANOSECONDS.toMillis(totalWriteNanos.sum());
+	}
+
+	/**
+	 * @return epoch time (ms) of the last successful reload, 0 if none
+	 */
+	long getLastReloadTime()
+	{
+		return lastReloadTime;
+	}
+}
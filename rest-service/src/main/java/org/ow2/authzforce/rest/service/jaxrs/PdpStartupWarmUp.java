@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.jaxrs;
+
+import java.beans.ConstructorProperties;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ow2.authzforce.core.pap.api.dao.DomainsDao;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Warms up the PDPs of all the domains in parallel when created, i.e. during the server initialization, so that the first decision requests after a restart do not pay for the lazy initializations
+ * (domain loading if not already done, class loading, JIT compilation, etc.). The server is ready only once all the PDPs are warmed up. Any error on a domain is logged and ignored (the domain is not
+ * warmed up).
+ */
+public final class PdpStartupWarmUp
+{
+	private static final Logger LOGGER = LoggerFactory.getLogger(PdpStartupWarmUp.class);
+
+	private final int warmedUpDomainCount;
+
+	/**
+	 * Constructor, warms up the PDPs if enabled
+	 *
+	 * @param domainsDao
+	 *            domain repository
+	 * @param enabled
+	 *            true iff the PDPs must be warmed up; if false, this does nothing
+	 * @param parallelism
+	 *            maximum number of PDPs warmed up in parallel (number of threads); if not positive, the number of available processors is used
+	 */
+	@ConstructorProperties({ "domainsDao", "enabled", "parallelism" })
+	public PdpStartupWarmUp(final DomainsDao<DomainResourceImpl<?>> domainsDao, final boolean enabled, final int parallelism)
+	{
+		if (!enabled)
+		{
+			this.warmedUpDomainCount = 0;
+			return;
+		}
+
+		final Set<String> domainIds;
+		try
+		{
+			domainIds = domainsDao.getDomainIdentifiers(null);
+		}
+		catch (final IOException e)
+		{
+			LOGGER.warn("PDP warm-up skipped: error getting the domains from the domain repository", e);
+			this.warmedUpDomainCount = 0;
+			return;
+		}
+
+		if (domainIds.isEmpty())
+		{
+			this.warmedUpDomainCount = 0;
+			return;
+		}
+
+		final long startNanos = System.nanoTime();
+		final int threadCount = Math.min(domainIds.size(), parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+		final AtomicInteger threadIndex = new AtomicInteger();
+		final ExecutorService executor = Executors.newFixedThreadPool(threadCount, task -> {
+			final Thread thread = new Thread(task, "authzforce-pdp-warm-up-" + threadIndex.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		int count = 0;
+		try
+		{
+			final List<Future<Boolean>> results = new ArrayList<>(domainIds.size());
+			for (final String domainId : domainIds)
+			{
+				results.add(executor.submit(() -> {
+					final DomainResourceImpl<?> domainRes = domainsDao.getDomainDaoClient(domainId);
+					if (domainRes == null)
+					{
+						// removed in the meantime
+						return false;
+					}
+
+					domainRes.evaluatePdpWarmUpRequest();
+					return true;
+				}));
+			}
+
+			for (final Future<Boolean> result : results)
+			{
+				try
+				{
+					if (result.get())
+					{
+						count++;
+					}
+				}
+				catch (final ExecutionException e)
+				{
+					LOGGER.warn("PDP warm-up failed on a domain", e.getCause());
+				}
+			}
+		}
+		catch (final InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			LOGGER.warn("PDP warm-up interrupted");
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+
+		this.warmedUpDomainCount = count;
+		LOGGER.info("PDPs of {}/{} domains warmed up in {} ms ({} threads)", count, domainIds.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), threadCount);
+	}
+
+	/**
+	 * Gets the number of domains whose PDP was warmed up
+	 *
+	 * @return warmed-up domain count (0 if disabled)
+	 */
+	public int getWarmedUpDomainCount()
+	{
+		return warmedUpDomainCount;
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.jaxrs;
+
+import java.beans.ConstructorProperties;
+import java.io.IOException;
+import java.io.InputStream;
+
+import jakarta.ws.rs.BadRequestException;
+import jakarta.ws.rs.ClientErrorException;
+import jakarta.ws.rs.core.Response.Status;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import org.ow2.authzforce.core.pap.api.dao.AuthzPolicy;
+import org.ow2.authzforce.core.pap.api.dao.DomainsDao;
+import org.ow2.authzforce.rest.service.api.jaxrs.Xacml2PolicyResource;
+import org.ow2.authzforce.rest.service.upgrade.Xacml2PolicyConverter;
+import org.w3._2005.atom.Link;
+
+/**
+ * Implementation of {@link Xacml2PolicyResource}, converting the policies with a {@link Xacml2PolicyConverter} before adding them to the {@link DomainResourceImpl} of the domain
+ *
+ */
+public class Xacml2PolicyResourceImpl extends DomainExtensionResourceSupport implements Xacml2PolicyResource
+{
+	private final Xacml2PolicyConverter converter;
+	private final int maxPolicySize;
+
+	/**
+	 * Constructor
+	 *
+	 * @param domainsDao
+	 *            domain repository
+	 * @param converter
+	 *            XACML 2.0-to-3.0 policy converter
+	 * @param maxPolicySize
+	 *            maximum size (bytes) of a XACML 2.0 policy document
+	 */
+	@SuppressFBWarnings(value="EI_EXPOSE_REP2")
+	@ConstructorProperties({ "domainsDao", "converter", "maxPolicySize" })
+	public Xacml2PolicyResourceImpl(final DomainsDao<DomainResourceImpl<?>> domainsDao, final Xacml2PolicyConverter converter, final int maxPolicySize)
+	{
+		super(domainsDao);
+		assert converter != null;
+		if (maxPolicySize < 1 || maxPolicySize == Integer.MAX_VALUE)
+		{
+			throw new IllegalArgumentException("Invalid maxPolicySize: " + maxPolicySize + " (expected: >= 1 and < " + Integer.MAX_VALUE + ")");
+		}
+
+		this.converter = converter;
+		this.maxPolicySize = maxPolicySize;
+	}
+
+	@Override
+	public Link addXacml2Policy(final String domainId, final InputStream xacml2Policy)
+	{
+		final DomainResourceImpl<?> domainRes = getDomainResource(domainId);
+		final byte[] xacml2PolicyBytes;
+		try
+		{
+			// one byte more than the limit to detect a too large document, without reading the rest
+			xacml2PolicyBytes = xacml2Policy == null ? new byte[0] : xacml2Policy.readNBytes(maxPolicySize + 1);
+		}
+		catch (final IOException e)
+		{
+			throw new BadRequestException("Error reading the XACML 2.0 policy", e);
+		}
+
+		if (xacml2PolicyBytes.length > maxPolicySize)
+		{
+			throw new ClientErrorException("XACML 2.0 policy too large (max: " + maxPolicySize + " bytes)", Status.REQUEST_ENTITY_TOO_LARGE);
+		}
+
+		final AuthzPolicy policy;
+		try
+		{
+			policy = converter.convert(xacml2PolicyBytes);
+		}
+		catch (final IllegalArgumentException e)
+		{
+			throw new BadRequestException(e);
+		}
+
+		return domainRes.addConvertedPolicy(policy);
+	}
+}
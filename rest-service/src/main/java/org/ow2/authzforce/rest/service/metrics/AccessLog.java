@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.metrics;
+
+import java.beans.ConstructorProperties;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Structured access log of the REST API: one record per request, in logfmt format (space-separated key=value pairs), written to the logger {@value #LOGGER_NAME} at level INFO. Fields:
+ * <ul>
+ * <li>id: request sequence number (since the server start);</li>
+ * <li>method, path: HTTP method and request path;</li>
+ * <li>domain: domain ID if the request targets a domain resource;</li>
+ * <li>op: API operation, e.g. 'PdpResource.requestPolicyDecision';</li>
+ * <li>status: HTTP response status;</li>
+ * <li>req_type, req_bytes, resp_type, resp_bytes: media types and body sizes;</li>
+ * <li>decision: decision(s) of a decision request, comma-separated if multiple;</li>
+ * <li>duration_us: processing time in microseconds.</li>
+ * </ul>
+ * Unlike CXF logging interceptors, the payloads are not copied, except (optionally) the request body of a sample of the requests, in which case the first {@value #MAX_PAYLOAD_SIZE} bytes are written to
+ * the logger {@value #PAYLOAD_LOGGER_NAME}. The record is formatted on the request thread; the I/O is meant to be done asynchronously by the logging framework, e.g. with Logback AsyncAppender (bounded
+ * ring buffer) configured to never block.
+ */
+public final class AccessLog
+{
+	/**
+	 * Name of the logger of access records
+	 */
+	public static final String LOGGER_NAME = "org.ow2.authzforce.access";
+
+	/**
+	 * Name of the logger of sampled request payloads
+	 */
+	public static final String PAYLOAD_LOGGER_NAME = LOGGER_NAME + ".payload";
+
+	/**
+	 * Maximum number of bytes captured from a sampled request payload
+	 */
+	public static final int MAX_PAYLOAD_SIZE = 4096;
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(LOGGER_NAME);
+	private static final Logger PAYLOAD_LOGGER = LoggerFactory.getLogger(PAYLOAD_LOGGER_NAME);
+
+	/*
+	 * Reused to format the records without allocating a new buffer for each request
+	 */
+	private static final ThreadLocal<StringBuilder> RECORD_BUILDER = ThreadLocal.withInitial(() -> new StringBuilder(256));
+	private static final int MAX_RECORD_BUILDER_CAPACITY = 4096;
+
+	private final int payloadSamplingInterval;
+	private final AtomicLong requestCount = new AtomicLong();
+
+	/**
+	 * Constructor
+	 *
+	 * @param payloadSamplingInterval
+	 *            the request payload is logged every {@code payloadSamplingInterval} requests (first {@value #MAX_PAYLOAD_SIZE} bytes), if logger {@value #PAYLOAD_LOGGER_NAME} is enabled; 0 (or negative)
+	 *            disables payload logging.
+	 */
+	@ConstructorProperties({ "payloadSamplingInterval" })
+	public AccessLog(final int payloadSamplingInterval)
+	{
+		this.payloadSamplingInterval = payloadSamplingInterval;
+	}
+
+	/**
+	 * @return true iff access records are logged
+	 */
+	boolean isEnabled()
+	{
+		return LOGGER.isInfoEnabled();
+	}
+
+	/**
+	 * Gets the ID of a new request
+	 *
+	 * @return request sequence number
+	 */
+	long nextRequestId()
+	{
+		return requestCount.incrementAndGet();
+	}
+
+	/**
+	 * Tells whether the payload of a given request must be captured
+	 *
+	 * @param requestId
+	 *            request ID returned by {@link #nextRequestId()}
+	 * @return true iff the payload of request {@code requestId} must be captured for logging
+	 */
+	boolean isPayloadSampled(final long requestId)
+	{
+		return payloadSamplingInterval > 0 && requestId % payloadSamplingInterval == 0 && PAYLOAD_LOGGER.isInfoEnabled();
+	}
+
+	private static boolean needsQuoting(final String value)
+	{
+		if (value.isEmpty())
+		{
+			return true;
+		}
+
+		for (int i = 0; i < value.length(); i++)
+		{
+			final char c = value.charAt(i);
+			if (c <= ' ' || c == '"' || c == '=' || c == '\\' || c == 0x7f)
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/*
+	 * Values from the request (e.g. path, media type) are escaped to prevent log injection
+	 */
+	private static void appendField(final StringBuilder sb, final String key, final String value)
+	{
+		if (value == null)
+		{
+			return;
+		}
+
+		sb.append(' ').append(key).append('=');
+		if (!needsQuoting(value))
+		{
+			sb.append(value);
+			return;
+		}
+
+		sb.append('"');
+		for (int i = 0; i < value.length(); i++)
+		{
+			final char c = value.charAt(i);
+			switch (c)
+			{
+				case '"':
+					sb.append("\\\"");
+					break;
+				case '\\':
+					sb.append("\\\\");
+					break;
+				case '\n':
+					sb.append("\\n");
+					break;
+				case '\r':
+					sb.append("\\r");
+					break;
+				default:
+					sb.append(c < ' ' || c == 0x7f ? '?' : c);
+			}
+		}
+
+		sb.append('"');
+	}
+
+	private static void appendField(final StringBuilder sb, final String key, final long value)
+	{
+		sb.append(' ').append(key).append('=').append(value);
+	}
+
+	/**
+	 * Logs the access record of a request
+	 *
+	 * @param requestId
+	 *            request ID
+	 * @param httpMethod
+	 *            HTTP method
+	 * @param path
+	 *            request path
+	 * @param domainId
+	 *            domain ID (null if none)
+	 * @param operation
+	 *            API operation (null if none matched)
+	 * @param status
+	 *            HTTP response status
+	 * @param requestMediaType
+	 *            request body media type (null if none)
+	 * @param requestBodySize
+	 *            request body size in bytes
+	 * @param responseMediaType
+	 *            response body media type (null if none)
+	 * @param responseBodySize
+	 *            response body size in bytes
+	 * @param decision
+	 *            decision(s) (null if not a decision request)
+	 * @param durationNanos
+	 *            processing time (ns)
+	 */
+	void log(final long requestId, final String httpMethod, final String path, final String domainId, final String operation, final int status, final String requestMediaType,
+	        final long requestBodySize, final String responseMediaType, final long responseBodySize, final String decision, final long durationNanos)
+	{
+		final StringBuilder sb = RECORD_BUILDER.get();
+		sb.setLength(0);
+		sb.append("id=").append(requestId);
+		appendField(sb, "method", httpMethod);
+		appendField(sb, "path", path);
+		appendField(sb, "domain", domainId);
+		appendField(sb, "op", operation);
+		appendField(sb, "status", status);
+		appendField(sb, "req_type", requestMediaType);
+		appendField(sb, "req_bytes", requestBodySize);
+		appendField(sb, "resp_type", responseMediaType);
+		appendField(sb, "resp_bytes", responseBodySize);
+		appendField(sb, "decision", decision);
+		appendField(sb, "duration_us", durationNanos / 1000);
+		LOGGER.info(sb.toString());
+		if (sb.capacity() > MAX_RECORD_BUILDER_CAPACITY)
+		{
+			// do not keep an oversized buffer per thread (e.g. after a very long path)
+			RECORD_BUILDER.remove();
+		}
+	}
+
+	/**
+	 * Logs a captured request payload
+	 *
+	 * @param requestId
+	 *            request ID
+	 * @param payload
+	 *            payload buffer (at most {@value #MAX_PAYLOAD_SIZE} bytes)
+	 * @param length
+	 *            number of bytes of payload captured in {@code payload}
+	 * @param truncated
+	 *            true iff the actual payload is longer than {@code length}
+	 */
+	void logPayload(final long requestId, final byte[] payload, final int length, final boolean truncated)
+	{
+		final StringBuilder sb = new StringBuilder(length + 64);
+		sb.append("id=").append(requestId);
+		appendField(sb, "truncated", Boolean.toString(truncated));
+		// the payload may be binary (e.g. Fast Infoset), non-printable characters are replaced
+		appendField(sb, "payload", new String(payload, 0, length, StandardCharsets.UTF_8));
+		PAYLOAD_LOGGER.info(sb.toString());
+	}
+}
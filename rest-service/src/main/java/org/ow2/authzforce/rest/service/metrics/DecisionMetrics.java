@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.DecisionType;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.Response;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.Result;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Decision metrics of a domain's PDP: evaluation latency and count of decisions per outcome (one per Result in the case of Multiple Decision requests)
+ */
+public final class DecisionMetrics
+{
+	private static final DecisionType[] DECISION_TYPES = DecisionType.values();
+
+	private final Histogram latency = new Histogram(ServerMetrics.LATENCY_BUCKET_UPPER_BOUNDS_NANOS, ServerMetrics.NANOS_PER_SECOND);
+	private final LongAdder[] decisionCounts = new LongAdder[DECISION_TYPES.length];
+
+	DecisionMetrics()
+	{
+		for (int i = 0; i < decisionCounts.length; i++)
+		{
+			decisionCounts[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Records the evaluation of a XACML/XML request
+	 *
+	 * @param evalNanos
+	 *            evaluation time (ns)
+	 * @param response
+	 *            XACML response
+	 */
+	public void record(final long evalNanos, final Response response)
+	{
+		latency.record(evalNanos);
+		if (response == null)
+		{
+			return;
+		}
+
+		for (final Result result : response.getResults())
+		{
+			if (result.getDecision() != null)
+			{
+				decisionCounts[result.getDecision().ordinal()].increment();
+			}
+		}
+	}
+
+	/**
+	 * Records the evaluation of a XACML/JSON request
+	 *
+	 * @param evalNanos
+	 *            evaluation time (ns)
+	 * @param response
+	 *            XACML/JSON response
+	 */
+	public void record(final long evalNanos, final JSONObject response)
+	{
+		latency.record(evalNanos);
+		final JSONArray results = response == null ? null : response.optJSONArray("Response");
+		if (results == null)
+		{
+			return;
+		}
+
+		for (int i = 0; i < results.length(); i++)
+		{
+			final JSONObject result = results.optJSONObject(i);
+			final String decision = result == null ? null : result.optString("Decision", null);
+			if (decision != null)
+			{
+				try
+				{
+					decisionCounts[DecisionType.fromValue(decision).ordinal()].increment();
+				}
+				catch (final IllegalArgumentException e)
+				{
+					// not a valid decision, ignore
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the decision(s) of a decision response, e.g. for logging
+	 *
+	 * @param response
+	 *            XACML/XML ({@link Response}) or XACML/JSON ({@link JSONObject}) response
+	 * @return decisions, comma-separated if multiple (Multiple Decision Profile); null if {@code response} is not a XACML response
+	 */
+	static String getDecisions(final Object response)
+	{
+		final StringBuilder sb = new StringBuilder();
+		if (response instanceof Response)
+		{
+			for (final Result result : ((Response) response).getResults())
+			{
+				if (sb.length() > 0)
+				{
+					sb.append(',');
+				}
+
+				sb.append(result.getDecision() == null ? "" : result.getDecision().value());
+			}
+
+			return sb.toString();
+		}
+
+		final JSONArray results = response instanceof JSONObject ? ((JSONObject) response).optJSONArray("Response") : null;
+		if (results == null)
+		{
+			return null;
+		}
+
+		for (int i = 0; i < results.length(); i++)
+		{
+			if (i > 0)
+			{
+				sb.append(',');
+			}
+
+			final JSONObject result = results.optJSONObject(i);
+			sb.append(result == null ? "" : result.optString("Decision", ""));
+		}
+
+		return sb.toString();
+	}
+
+	void writeLatencyTo(final PrometheusTextWriter out, final String name, final String labels)
+	{
+		latency.writeTo(out, name, labels);
+	}
+
+	void writeDecisionCountsTo(final PrometheusTextWriter out, final String name, final String labels)
+	{
+		for (final DecisionType decisionType : DECISION_TYPES)
+		{
+			out.sample(name, labels + "," + PrometheusTextWriter.label("decision", decisionType.value()), decisionCounts[decisionType.ordinal()].sum());
+		}
+	}
+}
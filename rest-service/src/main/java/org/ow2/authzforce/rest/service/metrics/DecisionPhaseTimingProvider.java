@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.metrics;
+
+import java.beans.ConstructorProperties;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.Locale;
+
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.container.ContainerResponseFilter;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.ext.Provider;
+import jakarta.ws.rs.ext.ReaderInterceptor;
+import jakarta.ws.rs.ext.ReaderInterceptorContext;
+import jakarta.ws.rs.ext.WriterInterceptor;
+import jakarta.ws.rs.ext.WriterInterceptorContext;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import org.apache.cxf.jaxrs.model.OperationResourceInfo;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.phase.PhaseInterceptorChain;
+import org.ow2.authzforce.rest.api.jaxrs.PdpResource;
+
+/**
+ * JAX-RS provider measuring the time spent in each phase of the decision requests (PDP resource), regardless of the media type (XACML/XML, XACML/JSON, Fast Infoset):
+ * <ol>
+ * <li>receive: from the reception of the request (see {@link MetricsInInterceptor}) to the matching of the resource method;</li>
+ * <li>read: reading the request body, i.e. parsing, schema validation and unmarshalling by the message body reader;</li>
+ * <li>eval: invocation of the resource method, i.e. the PDP evaluation (including attribute providers);</li>
+ * <li>write: marshalling of the response by the message body writer.</li>
+ * </ol>
+ * Each phase duration is recorded in the {@link ServerMetrics}. Optionally, the receive, read and eval durations are returned in a <a href="https://www.w3.org/TR/server-timing/">Server-Timing</a>
+ * response header (the write phase is not since it starts after the headers are sent).
+ * <p>
+ * The requests slower than the {@link SlowDecisionLog} threshold are also recorded in the {@link SlowDecisionLog}, with their payload and decision.
+ */
+@Provider
+public final class DecisionPhaseTimingProvider implements ContainerRequestFilter, ContainerResponseFilter, ReaderInterceptor, WriterInterceptor
+{
+	/**
+	 * Server-Timing response header name
+	 */
+	public static final String SERVER_TIMING_HEADER = "Server-Timing";
+
+	private static final String TIMINGS_EXCHANGE_PROPERTY = DecisionPhaseTimingProvider.class.getName() + ".timings";
+
+	/*
+	 * Phase durations of a given request. An exchange is processed by one thread at a time, therefore no synchronization is required.
+	 */
+	private static final class PhaseTimings
+	{
+		private final long receiveNanos;
+		private long readNanos = 0;
+		private long readEndNanos;
+		private long evalNanos = 0;
+		private final String mediaType;
+		// request/response entities, kept for the slow decision log
+		private Object request = null;
+		private Object response = null;
+
+		private PhaseTimings(final long receiveNanos, final long matchedNanos, final String mediaType)
+		{
+			this.receiveNanos = receiveNanos;
+			this.readEndNanos = matchedNanos;
+			this.mediaType = mediaType;
+		}
+	}
+
+	private final ServerMetrics metrics;
+	private final boolean enabled;
+	private final boolean serverTimingHeader;
+	private final SlowDecisionLog slowDecisionLog;
+	private final boolean active;
+
+	/**
+	 * Constructor
+	 *
+	 * @param metrics
+	 *            metrics registry
+	 * @param enabled
+	 *            true iff the phase timing is enabled; else this provider does nothing
+	 * @param serverTimingHeader
+	 *            true iff the phase durations must be returned in a Server-Timing header of the decision responses (ignored if {@code enabled} is false). Beware that it exposes internal timings to the
+	 *            clients.
+	 */
+	public DecisionPhaseTimingProvider(final ServerMetrics metrics, final boolean enabled, final boolean serverTimingHeader)
+	{
+		this(metrics, enabled, serverTimingHeader, null);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param metrics
+	 *            metrics registry
+	 * @param enabled
+	 *            true iff the phase durations must be recorded in the metrics registry
+	 * @param serverTimingHeader
+	 *            true iff the phase durations must be returned in a Server-Timing header of the decision responses (ignored if {@code enabled} is false). Beware that it exposes internal timings to the
+	 *            clients.
+	 * @param slowDecisionLog
+	 *            slow decision log (null or disabled if none). If {@code enabled} is false and there is no slow decision log, this provider does nothing.
+	 */
+	@SuppressFBWarnings(value="EI_EXPOSE_REP2")
+	@ConstructorProperties({ "metrics", "enabled", "serverTimingHeader", "slowDecisionLog" })
+	public DecisionPhaseTimingProvider(final ServerMetrics metrics, final boolean enabled, final boolean serverTimingHeader, final SlowDecisionLog slowDecisionLog)
+	{
+		this.metrics = metrics;
+		this.enabled = enabled;
+		this.serverTimingHeader = enabled && serverTimingHeader;
+		this.slowDecisionLog = slowDecisionLog != null && slowDecisionLog.isEnabled() ? slowDecisionLog : null;
+		this.active = enabled || this.slowDecisionLog != null;
+	}
+
+	private static Exchange getCurrentExchange()
+	{
+		final Message message = PhaseInterceptorChain.getCurrentMessage();
+		return message == null ? null : message.getExchange();
+	}
+
+	private static PhaseTimings getCurrentTimings()
+	{
+		final Exchange exchange = getCurrentExchange();
+		if (exchange == null)
+		{
+			return null;
+		}
+
+		final Object timings = exchange.get(TIMINGS_EXCHANGE_PROPERTY);
+		return timings instanceof PhaseTimings ? (PhaseTimings) timings : null;
+	}
+
+	@Override
+	public void filter(final ContainerRequestContext requestContext)
+	{
+		if (!active)
+		{
+			return;
+		}
+
+		final long nowNanos = System.nanoTime();
+		final Exchange exchange = getCurrentExchange();
+		if (exchange == null)
+		{
+			return;
+		}
+
+		final OperationResourceInfo opResInfo = exchange.get(OperationResourceInfo.class);
+		final Method method = opResInfo == null ? null : opResInfo.getAnnotatedMethod();
+		if (method == null || method.getDeclaringClass() != PdpResource.class)
+		{
+			// not a decision request
+			return;
+		}
+
+		final Object startNanos = exchange.get(MetricsInInterceptor.START_NANOS_EXCHANGE_PROPERTY);
+		final MediaType mediaType = requestContext.getMediaType();
+		exchange.put(TIMINGS_EXCHANGE_PROPERTY, new PhaseTimings(startNanos instanceof Long ? nowNanos - (Long) startNanos : 0, nowNanos, mediaType == null ? null : mediaType.toString()));
+	}
+
+	@Override
+	public Object aroundReadFrom(final ReaderInterceptorContext context) throws IOException
+	{
+		final PhaseTimings timings = active ? getCurrentTimings() : null;
+		if (timings == null)
+		{
+			return context.proceed();
+		}
+
+		final long startNanos = System.nanoTime();
+		try
+		{
+			final Object request = context.proceed();
+			timings.request = request;
+			return request;
+		}
+		finally
+		{
+			timings.readEndNanos = System.nanoTime();
+			timings.readNanos += timings.readEndNanos - startNanos;
+		}
+	}
+
+	private static String formatMillis(final long nanos)
+	{
+		return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+	}
+
+	@Override
+	public void filter(final ContainerRequestContext requestContext, final ContainerResponseContext responseContext)
+	{
+		final PhaseTimings timings = active ? getCurrentTimings() : null;
+		if (timings == null)
+		{
+			return;
+		}
+
+		timings.response = responseContext.getEntity();
+		timings.evalNanos = System.nanoTime() - timings.readEndNanos;
+		if (serverTimingHeader)
+		{
+			responseContext.getHeaders().add(SERVER_TIMING_HEADER,
+			        "receive;dur=" + formatMillis(timings.receiveNanos) + ", read;dur=" + formatMillis(timings.readNanos) + ", eval;dur=" + formatMillis(timings.evalNanos));
+		}
+
+		if (!responseContext.hasEntity())
+		{
+			record(timings, 0);
+		}
+	}
+
+	@Override
+	public void aroundWriteTo(final WriterInterceptorContext context) throws IOException
+	{
+		final PhaseTimings timings = active ? getCurrentTimings() : null;
+		if (timings == null)
+		{
+			context.proceed();
+			return;
+		}
+
+		final long startNanos = System.nanoTime();
+		try
+		{
+			context.proceed();
+		}
+		finally
+		{
+			record(timings, System.nanoTime() - startNanos);
+		}
+	}
+
+	private void record(final PhaseTimings timings, final long writeNanos)
+	{
+		// record once per request
+		final Exchange exchange = getCurrentExchange();
+		exchange.remove(TIMINGS_EXCHANGE_PROPERTY);
+		if (enabled)
+		{
+			metrics.recordDecisionPhase("receive", timings.receiveNanos);
+			metrics.recordDecisionPhase("read", timings.readNanos);
+			metrics.recordDecisionPhase("eval", timings.evalNanos);
+			if (timings.response != null)
+			{
+				metrics.recordDecisionPhase("write", writeNanos);
+			}
+		}
+
+		if (slowDecisionLog != null && slowDecisionLog.isSlow(timings.receiveNanos + timings.readNanos + timings.evalNanos + writeNanos))
+		{
+			final Message inMessage = exchange.getInMessage();
+			slowDecisionLog.record(inMessage == null ? null : MetricsOutInterceptor.getDomainId(MetricsOutInterceptor.getPath(inMessage)), timings.mediaType, timings.request,
+			        DecisionMetrics.getDecisions(timings.response), timings.receiveNanos, timings.readNanos, timings.evalNanos, writeNanos);
+		}
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe histogram with fixed buckets, exported in Prometheus text format
+ */
+final class Histogram
+{
+	private final long[] upperBounds;
+	private final String[] upperBoundLabels;
+	/*
+	 * Non-cumulative count per bucket, the last one being the +Inf bucket
+	 */
+	private final LongAdder[] bucketCounts;
+	private final LongAdder sum = new LongAdder();
+	private final double unitsPerExportedUnit;
+
+	/**
+	 * Creates a histogram
+	 *
+	 * @param upperBounds
+	 *            bucket upper bounds (inclusive), in increasing order, in recorded unit
+	 * @param unitsPerExportedUnit
+	 *            number of recorded units in one exported unit, e.g. 1e9 to record nanoseconds and export seconds
+	 */
+	Histogram(final long[] upperBounds, final double unitsPerExportedUnit)
+	{
+		assert upperBounds.length > 0 && unitsPerExportedUnit > 0;
+		this.upperBounds = upperBounds.clone();
+		this.unitsPerExportedUnit = unitsPerExportedUnit;
+		this.upperBoundLabels = new String[upperBounds.length];
+		for (int i = 0; i < upperBounds.length; i++)
+		{
+			upperBoundLabels[i] = PrometheusTextWriter.formatDouble(upperBounds[i] / unitsPerExportedUnit);
+		}
+
+		this.bucketCounts = new LongAdder[upperBounds.length + 1];
+		for (int i = 0; i < bucketCounts.length; i++)
+		{
+			bucketCounts[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Records a value
+	 *
+	 * @param value
+	 *            value in recorded unit
+	 */
+	void record(final long value)
+	{
+		final int searchResult = Arrays.binarySearch(upperBounds, value);
+		bucketCounts[searchResult >= 0 ? searchResult : -searchResult - 1].increment();
+		sum.add(value);
+	}
+
+	/**
+	 * Writes the histogram samples
+	 *
+	 * @param out
+	 *            output
+	 * @param name
+	 *            metric name
+	 * @param labels
+	 *            labels (other than 'le') already formatted as 'name="value",...' (empty if none)
+	 */
+	void writeTo(final PrometheusTextWriter out, final String name, final String labels)
+	{
+		final String labelPrefix = labels.isEmpty() ? "" : labels + ",";
+		long cumulativeCount = 0;
+		for (int i = 0; i < upperBounds.length; i++)
+		{
+			cumulativeCount += bucketCounts[i].sum();
+			out.sample(name + "_bucket", labelPrefix + "le=\"" + upperBoundLabels[i] + "\"", cumulativeCount);
+		}
+
+		cumulativeCount += bucketCounts[upperBounds.length].sum();
+		out.sample(name + "_bucket", labelPrefix + "le=\"+Inf\"", cumulativeCount);
+		out.sample(name + "_sum", labels, sum.sum() / unitsPerExportedUnit);
+		out.sample(name + "_count", labels, cumulativeCount);
+	}
+}
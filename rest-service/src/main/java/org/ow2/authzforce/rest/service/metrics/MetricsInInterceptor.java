@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.metrics;
+
+import java.beans.ConstructorProperties;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.google.common.io.CountingInputStream;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.phase.AbstractPhaseInterceptor;
+import org.apache.cxf.phase.Phase;
+
+/**
+ * CXF interceptor for inbound messages that marks the reception time and counts the bytes of the request body, for {@link MetricsOutInterceptor} to record in the {@link ServerMetrics} and
+ * {@link AccessLog}
+ */
+public final class MetricsInInterceptor extends AbstractPhaseInterceptor<Message>
+{
+	static final String START_NANOS_EXCHANGE_PROPERTY = MetricsInInterceptor.class.getName() + ".startNanos";
+	static final String REQUEST_BODY_COUNTER_EXCHANGE_PROPERTY = MetricsInInterceptor.class.getName() + ".requestBodyCounter";
+	static final String REQUEST_ID_EXCHANGE_PROPERTY = MetricsInInterceptor.class.getName() + ".requestId";
+	static final String PAYLOAD_CAPTURE_EXCHANGE_PROPERTY = MetricsInInterceptor.class.getName() + ".payloadCapture";
+
+	/*
+	 * Input stream copying the first bytes read from the request body (up to AccessLog.MAX_PAYLOAD_SIZE) for payload logging
+	 */
+	static final class PayloadCapturingInputStream extends FilterInputStream
+	{
+		private final byte[] buffer = new byte[AccessLog.MAX_PAYLOAD_SIZE];
+		private int length = 0;
+		private boolean truncated = false;
+
+		private PayloadCapturingInputStream(final InputStream in)
+		{
+			super(in);
+		}
+
+		private void capture(final byte[] b, final int off, final int len)
+		{
+			final int capturedLen = Math.min(len, buffer.length - length);
+			System.arraycopy(b, off, buffer, length, capturedLen);
+			length += capturedLen;
+			if (capturedLen < len)
+			{
+				truncated = true;
+			}
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			final int b = in.read();
+			if (b >= 0)
+			{
+				if (length < buffer.length)
+				{
+					buffer[length++] = (byte) b;
+				}
+				else
+				{
+					truncated = true;
+				}
+			}
+
+			return b;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len) throws IOException
+		{
+			final int n = in.read(b, off, len);
+			if (n > 0)
+			{
+				capture(b, off, n);
+			}
+
+			return n;
+		}
+
+		@Override
+		public boolean markSupported()
+		{
+			// reset() would capture the same bytes twice
+			return false;
+		}
+
+		void logTo(final AccessLog accessLog, final long requestId)
+		{
+			accessLog.logPayload(requestId, buffer, length, truncated);
+		}
+	}
+
+	private final AccessLog accessLog;
+
+	/**
+	 * Registration of the interceptor to the first phase of inbound message processing, without access log
+	 */
+	public MetricsInInterceptor()
+	{
+		this(null);
+	}
+
+	/**
+	 * Registration of the interceptor to the first phase of inbound message processing
+	 *
+	 * @param accessLog
+	 *            access log, used to assign an ID to each request and capture the sampled request payloads; null if no access log
+	 */
+	@ConstructorProperties({ "accessLog" })
+	public MetricsInInterceptor(final AccessLog accessLog)
+	{
+		super(Phase.RECEIVE);
+		this.accessLog = accessLog;
+	}
+
+	@Override
+	public void handleMessage(final Message message)
+	{
+		final Exchange exchange = message.getExchange();
+		exchange.put(START_NANOS_EXCHANGE_PROPERTY, System.nanoTime());
+		final boolean payloadSampled;
+		if (accessLog != null && accessLog.isEnabled())
+		{
+			final long requestId = accessLog.nextRequestId();
+			exchange.put(REQUEST_ID_EXCHANGE_PROPERTY, requestId);
+			payloadSampled = accessLog.isPayloadSampled(requestId);
+		}
+		else
+		{
+			payloadSampled = false;
+		}
+
+		final InputStream in = message.getContent(InputStream.class);
+		if (in != null)
+		{
+			final CountingInputStream countingIn;
+			if (payloadSampled)
+			{
+				final PayloadCapturingInputStream capturingIn = new PayloadCapturingInputStream(in);
+				exchange.put(PAYLOAD_CAPTURE_EXCHANGE_PROPERTY, capturingIn);
+				countingIn = new CountingInputStream(capturingIn);
+			}
+			else
+			{
+				countingIn = new CountingInputStream(in);
+			}
+
+			message.setContent(InputStream.class, countingIn);
+			exchange.put(REQUEST_BODY_COUNTER_EXCHANGE_PROPERTY, countingIn);
+		}
+	}
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.metrics;
+
+import java.beans.ConstructorProperties;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.util.List;
+
+import com.google.common.io.CountingInputStream;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import org.apache.cxf.jaxrs.model.OperationResourceInfo;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageContentsList;
+import org.apache.cxf.phase.AbstractPhaseInterceptor;
+import org.apache.cxf.phase.Phase;
+
+/**
+ * CXF interceptor for outbound messages (normal or fault) that records the HTTP request metrics in the {@link ServerMetrics} once the response body is fully written: processing time since
+ * {@link MetricsInInterceptor}, request and response body sizes. Also writes the request record to the {@link AccessLog} if any.
+ */
+public final class MetricsOutInterceptor extends AbstractPhaseInterceptor<Message>
+{
+	private static final String DOMAINS_PATH_SEGMENT = "/domains/";
+
+	private final ServerMetrics metrics;
+	private final AccessLog accessLog;
+
+	/*
+	 * Output stream counting the bytes of the response body, and recording the metrics when closed, i.e. when the response is complete
+	 */
+	private final class MetricsRecordingOutputStream extends FilterOutputStream
+	{
+		private final Message outMessage;
+		private final long startNanos;
+		private final String decision;
+		private long count = 0;
+		private boolean closed = false;
+
+		private MetricsRecordingOutputStream(final OutputStream out, final Message outMessage, final long startNanos, final String decision)
+		{
+			super(out);
+			this.outMessage = outMessage;
+			this.startNanos = startNanos;
+			this.decision = decision;
+		}
+
+		@Override
+		public void write(final int b) throws IOException
+		{
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len) throws IOException
+		{
+			out.write(b, off, len);
+			count += len;
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			if (closed)
+			{
+				return;
+			}
+
+			closed = true;
+			try
+			{
+				super.close();
+			}
+			finally
+			{
+				record(outMessage, startNanos, count, decision);
+			}
+		}
+	}
+
+	/**
+	 * Constructor without access log
+	 *
+	 * @param metrics
+	 *            metrics registry
+	 */
+	public MetricsOutInterceptor(final ServerMetrics metrics)
+	{
+		this(metrics, null);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param metrics
+	 *            metrics registry
+	 * @param accessLog
+	 *            access log; null if none
+	 */
+	@SuppressFBWarnings(value="EI_EXPOSE_REP2")
+	@ConstructorProperties({ "metrics", "accessLog" })
+	public MetricsOutInterceptor(final ServerMetrics metrics, final AccessLog accessLog)
+	{
+		super(Phase.PRE_STREAM);
+		this.metrics = metrics;
+		this.accessLog = accessLog;
+	}
+
+	static String getPath(final Message inMessage)
+	{
+		final Object path = inMessage.get(Message.REQUEST_URI);
+		return path instanceof String ? (String) path : null;
+	}
+
+	/*
+	 * Domain ID is the path segment after '/domains/', if any
+	 */
+	static String getDomainId(final String path)
+	{
+		if (path == null)
+		{
+			return null;
+		}
+
+		final int domainsIndex = path.indexOf(DOMAINS_PATH_SEGMENT);
+		if (domainsIndex < 0)
+		{
+			return null;
+		}
+
+		final int domainIdStart = domainsIndex + DOMAINS_PATH_SEGMENT.length();
+		final int domainIdEnd = path.indexOf('/', domainIdStart);
+		return domainIdEnd < 0 ? path.substring(domainIdStart) : path.substring(domainIdStart, domainIdEnd);
+	}
+
+	/*
+	 * Decision(s) of the response entity (still unmarshalled in this phase), if the response is a decision response
+	 */
+	private static String getDecisions(final Message outMessage)
+	{
+		final List<Object> contents = MessageContentsList.getContentsList(outMessage);
+		if (contents == null || contents.isEmpty())
+		{
+			return null;
+		}
+
+		final Object content = contents.get(0);
+		return DecisionMetrics.getDecisions(content instanceof jakarta.ws.rs.core.Response ? ((jakarta.ws.rs.core.Response) content).getEntity() : content);
+	}
+
+	private static String getOperation(final Exchange exchange)
+	{
+		final OperationResourceInfo opResInfo = exchange.get(OperationResourceInfo.class);
+		if (opResInfo == null)
+		{
+			return null;
+		}
+
+		final Method method = opResInfo.getAnnotatedMethod();
+		return method == null ? null : method.getDeclaringClass().getSimpleName() + "." + method.getName();
+	}
+
+	private void record(final Message outMessage, final long startNanos, final long responseBodySize, final String decision)
+	{
+		final long elapsedNanos = System.nanoTime() - startNanos;
+		final Exchange exchange = outMessage.getExchange();
+		final Message inMessage = exchange.getInMessage();
+		final String httpMethod = inMessage == null ? null : (String) inMessage.get(Message.HTTP_REQUEST_METHOD);
+		final String operation = getOperation(exchange);
+		final Object statusObj = outMessage.get(Message.RESPONSE_CODE);
+		final int status = statusObj instanceof Integer ? (Integer) statusObj : 200;
+		metrics.recordHttpRequest(httpMethod, operation, status, elapsedNanos);
+
+		final Object requestBodyCounter = exchange.get(MetricsInInterceptor.REQUEST_BODY_COUNTER_EXCHANGE_PROPERTY);
+		final long requestBodySize = requestBodyCounter instanceof CountingInputStream ? ((CountingInputStream) requestBodyCounter).getCount() : 0;
+		final String requestMediaType = inMessage == null ? null : (String) inMessage.get(Message.CONTENT_TYPE);
+		if (requestBodySize > 0)
+		{
+			metrics.recordHttpRequestSize(requestMediaType, requestBodySize);
+		}
+
+		final String responseMediaType = (String) outMessage.get(Message.CONTENT_TYPE);
+		if (responseBodySize > 0)
+		{
+			metrics.recordHttpResponseSize(responseMediaType, responseBodySize);
+		}
+
+		final Object requestId = exchange.get(MetricsInInterceptor.REQUEST_ID_EXCHANGE_PROPERTY);
+		if (accessLog == null || !(requestId instanceof Long))
+		{
+			return;
+		}
+
+		final String path = inMessage == null ? null : getPath(inMessage);
+		accessLog.log((Long) requestId, httpMethod, path, getDomainId(path), operation, status, requestBodySize > 0 ? requestMediaType : null, requestBodySize,
+		        responseBodySize > 0 ? responseMediaType : null, responseBodySize, decision, elapsedNanos);
+		final Object payloadCapture = exchange.get(MetricsInInterceptor.PAYLOAD_CAPTURE_EXCHANGE_PROPERTY);
+		if (payloadCapture instanceof MetricsInInterceptor.PayloadCapturingInputStream)
+		{
+			((MetricsInInterceptor.PayloadCapturingInputStream) payloadCapture).logTo(accessLog, (Long) requestId);
+		}
+	}
+
+	@Override
+	public void handleMessage(final Message message)
+	{
+		// Remove the start time so that the request is recorded only once (normal or fault message)
+		final Object startNanos = message.getExchange().remove(MetricsInInterceptor.START_NANOS_EXCHANGE_PROPERTY);
+		if (!(startNanos instanceof Long))
+		{
+			return;
+		}
+
+		final String decision = accessLog == null || !accessLog.isEnabled() ? null : getDecisions(message);
+		final OutputStream out = message.getContent(OutputStream.class);
+		if (out == null)
+		{
+			record(message, (Long) startNanos, 0, decision);
+			return;
+		}
+
+		message.setContent(OutputStream.class, new MetricsRecordingOutputStream(out, message, (Long) startNanos, decision));
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.metrics;
+
+/**
+ * Writer of metrics in the Prometheus text exposition format (version 0.0.4)
+ */
+final class PrometheusTextWriter
+{
+	private final StringBuilder out;
+
+	PrometheusTextWriter(final StringBuilder out)
+	{
+		this.out = out;
+	}
+
+	static String formatDouble(final double value)
+	{
+		if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15)
+		{
+			return Long.toString((long) value);
+		}
+
+		return Double.toString(value);
+	}
+
+	/**
+	 * Escapes label value as required by the format: backslash, double-quote and line feed
+	 *
+	 * @param value
+	 *            label value
+	 * @return escaped value
+	 */
+	static String escapeLabelValue(final String value)
+	{
+		if (value.indexOf('\\') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0)
+		{
+			return value;
+		}
+
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+
+	static String label(final String name, final String value)
+	{
+		return name + "=\"" + escapeLabelValue(value) + "\"";
+	}
+
+	void header(final String name, final String type, final String help)
+	{
+		out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+	}
+
+	private void sampleName(final String name, final String labels)
+	{
+		out.append(name);
+		if (!labels.isEmpty())
+		{
+			out.append('{').append(labels).append('}');
+		}
+
+		out.append(' ');
+	}
+
+	void sample(final String name, final String labels, final long value)
+	{
+		sampleName(name, labels);
+		out.append(value).append('\n');
+	}
+
+	void sample(final String name, final String labels, final double value)
+	{
+		sampleName(name, labels);
+		out.append(formatDouble(value)).append('\n');
+	}
+}
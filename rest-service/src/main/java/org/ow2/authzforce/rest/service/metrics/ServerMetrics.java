@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.metrics;
+
+import java.beans.ConstructorProperties;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Registry of the server runtime metrics, exported in the Prometheus text format:
+ * <ul>
+ * <li>authzforce_decision_duration_seconds (histogram): PDP evaluation time, per domain;</li>
+ * <li>authzforce_decisions_total (counter): decisions per domain and outcome (Permit, Deny, NotApplicable, Indeterminate);</li>
+ * <li>authzforce_http_server_requests_seconds (histogram): HTTP request processing time (from reception to the end of the response body), per HTTP method, API operation and status. PAP write latency
+ * is given by the POST/PUT/DELETE operations of the PAP resources;</li>
+ * <li>authzforce_http_server_request_size_bytes and authzforce_http_server_response_size_bytes (histograms): HTTP message body sizes, per media type;</li>
+ * <li>authzforce_decision_phase_duration_seconds (histogram): time spent in each phase of the decision requests (receive, read, eval, write), if enabled (see {@link DecisionPhaseTimingProvider}).</li>
+ * </ul>
+ * Recording is lock-free (striped counters), so that it does not add contention to the decision requests.
+ */
+public final class ServerMetrics
+{
+	static final double NANOS_PER_SECOND = 1e9;
+
+	static final long[] LATENCY_BUCKET_UPPER_BOUNDS_NANOS = { 100_000L, 250_000L, 500_000L, 1_000_000L, 2_500_000L, 5_000_000L, 10_000_000L, 25_000_000L, 50_000_000L, 100_000_000L, 250_000_000L,
+	        500_000_000L, 1_000_000_000L, 2_500_000_000L, 5_000_000_000L, 10_000_000_000L };
+
+	/*
+	 * Decision request phases (e.g. request body parsing) may take only a few microseconds
+	 */
+	private static final long[] PHASE_LATENCY_BUCKET_UPPER_BOUNDS_NANOS = { 10_000L, 25_000L, 50_000L, 100_000L, 250_000L, 500_000L, 1_000_000L, 2_500_000L, 5_000_000L, 10_000_000L, 25_000_000L,
+	        50_000_000L, 100_000_000L, 250_000_000L, 500_000_000L, 1_000_000_000L, 2_500_000_000L, 5_000_000_000L, 10_000_000_000L };
+
+	private static final long[] SIZE_BUCKET_UPPER_BOUNDS = { 256, 1024, 4096, 16_384, 65_536, 262_144, 1_048_576, 4_194_304, 16_777_216 };
+
+	private static final Set<String> KNOWN_HTTP_METHODS = ImmutableSet.of("GET", "HEAD", "POST", "PUT", "DELETE", "OPTIONS", "PATCH");
+
+	/*
+	 * Media types are sent by clients, so the number of distinct media type labels must be bounded
+	 */
+	private static final int MAX_MEDIA_TYPE_COUNT = 16;
+	private static final String OTHER_LABEL_VALUE = "other";
+
+	/*
+	 * 'domain' label value when per-domain decision metrics are disabled
+	 */
+	private static final String ALL_DOMAINS_LABEL_VALUE = "*";
+
+	private final boolean perDomainDecisionMetrics;
+	private final DecisionMetrics allDomainsDecisionMetrics = new DecisionMetrics();
+	private final ConcurrentMap<String, DecisionMetrics> decisionMetricsByDomain = new ConcurrentHashMap<>();
+
+	/*
+	 * Keys are the formatted labels
+	 */
+	private final ConcurrentMap<String, Histogram> httpRequestLatencies = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, Histogram> httpRequestSizes = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, Histogram> httpResponseSizes = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, Histogram> decisionPhaseLatencies = new ConcurrentHashMap<>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param perDomainDecisionMetrics
+	 *            true iff decision metrics are recorded per domain; else they are aggregated for all domains (with 'domain' label = '*'). The number of exported samples grows linearly with the number of
+	 *            domains in the former case.
+	 */
+	@ConstructorProperties({ "perDomainDecisionMetrics" })
+	public ServerMetrics(final boolean perDomainDecisionMetrics)
+	{
+		this.perDomainDecisionMetrics = perDomainDecisionMetrics;
+	}
+
+	/**
+	 * Gets the decision metrics of a given domain
+	 *
+	 * @param domainId
+	 *            domain ID
+	 * @return decision metrics (shared by all domains if per-domain decision metrics are disabled)
+	 */
+	public DecisionMetrics getDecisionMetrics(final String domainId)
+	{
+		if (!perDomainDecisionMetrics)
+		{
+			return allDomainsDecisionMetrics;
+		}
+
+		return decisionMetricsByDomain.computeIfAbsent(domainId, k -> new DecisionMetrics());
+	}
+
+	/**
+	 * Removes the metrics of a domain (e.g. after removal of the domain)
+	 *
+	 * @param domainId
+	 *            domain ID
+	 */
+	public void removeDomain(final String domainId)
+	{
+		decisionMetricsByDomain.remove(domainId);
+	}
+
+	private static Histogram getHistogram(final ConcurrentMap<String, Histogram> histograms, final String labels, final long[] upperBounds, final double unitsPerExportedUnit)
+	{
+		final Histogram histogram = histograms.get(labels);
+		return histogram != null ? histogram : histograms.computeIfAbsent(labels, k -> new Histogram(upperBounds, unitsPerExportedUnit));
+	}
+
+	/**
+	 * Records the processing of a HTTP request
+	 *
+	 * @param httpMethod
+	 *            HTTP method
+	 * @param operation
+	 *            API operation, e.g. 'DomainResource.requestPolicyDecision'; null if no matching operation
+	 * @param status
+	 *            HTTP response status
+	 * @param nanos
+	 *            processing time (ns)
+	 */
+	public void recordHttpRequest(final String httpMethod, final String operation, final int status, final long nanos)
+	{
+		final String methodLabelValue = httpMethod != null && KNOWN_HTTP_METHODS.contains(httpMethod) ? httpMethod : OTHER_LABEL_VALUE;
+		final String labels = PrometheusTextWriter.label("method", methodLabelValue) + "," + PrometheusTextWriter.label("operation", operation == null ? "none" : operation) + ","
+		        + PrometheusTextWriter.label("status", Integer.toString(status));
+		getHistogram(httpRequestLatencies, labels, LATENCY_BUCKET_UPPER_BOUNDS_NANOS, NANOS_PER_SECOND).record(nanos);
+	}
+
+	private static String toMediaTypeLabels(final ConcurrentMap<String, Histogram> histograms, final String mediaType)
+	{
+		final String mediaTypeLabelValue;
+		if (mediaType == null)
+		{
+			mediaTypeLabelValue = "none";
+		}
+		else
+		{
+			final int paramsIndex = mediaType.indexOf(';');
+			final String labelsCandidate = PrometheusTextWriter.label("media_type", (paramsIndex < 0 ? mediaType : mediaType.substring(0, paramsIndex)).trim().toLowerCase(Locale.ROOT));
+			if (histograms.containsKey(labelsCandidate) || histograms.size() < MAX_MEDIA_TYPE_COUNT)
+			{
+				return labelsCandidate;
+			}
+
+			mediaTypeLabelValue = OTHER_LABEL_VALUE;
+		}
+
+		return PrometheusTextWriter.label("media_type", mediaTypeLabelValue);
+	}
+
+	/**
+	 * Records the size of a HTTP request body
+	 *
+	 * @param mediaType
+	 *            Content-Type (null if undefined)
+	 * @param bytes
+	 *            size in bytes
+	 */
+	public void recordHttpRequestSize(final String mediaType, final long bytes)
+	{
+		getHistogram(httpRequestSizes, toMediaTypeLabels(httpRequestSizes, mediaType), SIZE_BUCKET_UPPER_BOUNDS, 1).record(bytes);
+	}
+
+	/**
+	 * Records the size of a HTTP response body
+	 *
+	 * @param mediaType
+	 *            Content-Type (null if undefined)
+	 * @param bytes
+	 *            size in bytes
+	 */
+	public void recordHttpResponseSize(final String mediaType, final long bytes)
+	{
+		getHistogram(httpResponseSizes, toMediaTypeLabels(httpResponseSizes, mediaType), SIZE_BUCKET_UPPER_BOUNDS, 1).record(bytes);
+	}
+
+	/**
+	 * Records the time spent in a phase of a decision request
+	 *
+	 * @param phase
+	 *            phase name (from a fixed set of values)
+	 * @param nanos
+	 *            time spent in the phase (ns)
+	 */
+	void recordDecisionPhase(final String phase, final long nanos)
+	{
+		getHistogram(decisionPhaseLatencies, PrometheusTextWriter.label("phase", phase), PHASE_LATENCY_BUCKET_UPPER_BOUNDS_NANOS, NANOS_PER_SECOND).record(nanos);
+	}
+
+	private static void writeHistograms(final PrometheusTextWriter out, final String name, final String help, final Map<String, Histogram> histograms)
+	{
+		out.header(name, "histogram", help);
+		histograms.forEach((labels, histogram) -> histogram.writeTo(out, name, labels));
+	}
+
+	/**
+	 * Exports the current metrics in Prometheus text format
+	 *
+	 * @return metrics in Prometheus text format (version 0.0.4)
+	 */
+	public String toPrometheusText()
+	{
+		final StringBuilder sb = new StringBuilder(4096);
+		final PrometheusTextWriter out = new PrometheusTextWriter(sb);
+		final Map<String, DecisionMetrics> decisionMetrics = perDomainDecisionMetrics ? decisionMetricsByDomain : Map.of(ALL_DOMAINS_LABEL_VALUE, allDomainsDecisionMetrics);
+
+		out.header("authzforce_decision_duration_seconds", "histogram", "Time spent by the PDP evaluating decision requests");
+		decisionMetrics.forEach((domainId, metrics) -> metrics.writeLatencyTo(out, "authzforce_decision_duration_seconds", PrometheusTextWriter.label("domain", domainId)));
+
+		out.header("authzforce_decisions_total", "counter", "Decisions (XACML Results) per outcome");
+		decisionMetrics.forEach((domainId, metrics) -> metrics.writeDecisionCountsTo(out, "authzforce_decisions_total", PrometheusTextWriter.label("domain", domainId)));
+
+		writeHistograms(out, "authzforce_http_server_requests_seconds", "HTTP request processing time, from reception to the end of the response body", httpRequestLatencies);
+		writeHistograms(out, "authzforce_http_server_request_size_bytes", "HTTP request body size", httpRequestSizes);
+		writeHistograms(out, "authzforce_http_server_response_size_bytes", "HTTP response body size", httpResponseSizes);
+		if (!decisionPhaseLatencies.isEmpty())
+		{
+			writeHistograms(out, "authzforce_decision_phase_duration_seconds", "Time spent in each phase of the decision requests", decisionPhaseLatencies);
+		}
+
+		return sb.toString();
+	}
+}
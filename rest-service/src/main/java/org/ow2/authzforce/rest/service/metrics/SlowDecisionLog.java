@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.metrics;
+
+import java.beans.ConstructorProperties;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Marshaller;
+
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.Request;
+import org.json.JSONObject;
+import org.ow2.authzforce.rest.service.api.xmlns.SlowDecision;
+import org.ow2.authzforce.rest.service.api.xmlns.SlowDecisions;
+import org.ow2.authzforce.xacml.Xacml3JaxbHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded in-memory log of the last decision requests slower than a given threshold, with their payload, phase durations and decision, in order to reproduce and diagnose them offline. When full,
+ * the oldest entry is replaced.
+ * <p>
+ * The payload is serialized only for the slow requests, i.e. the fast path (request below the threshold) only costs a comparison.
+ */
+public final class SlowDecisionLog
+{
+	private static final Logger LOGGER = LoggerFactory.getLogger(SlowDecisionLog.class);
+
+	/**
+	 * Maximum size (number of characters) of the request payload kept in an entry; the rest is truncated
+	 */
+	public static final int MAX_REQUEST_LENGTH = 64 * 1024;
+
+	private static final DatatypeFactory XML_DATATYPE_FACTORY;
+
+	static
+	{
+		try
+		{
+			XML_DATATYPE_FACTORY = DatatypeFactory.newInstance();
+		}
+		catch (final DatatypeConfigurationException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	private final long thresholdMillis;
+	private final long thresholdNanos;
+	private final SlowDecision[] entries;
+	/*
+	 * Index of the next entry to be written
+	 */
+	private int next = 0;
+	private int size = 0;
+
+	/**
+	 * Constructor
+	 *
+	 * @param thresholdMillis
+	 *            minimum total processing time (ms) of a decision request to be logged. Negative value disables the log.
+	 * @param capacity
+	 *            maximum number of entries kept in memory. Zero disables the log.
+	 */
+	@ConstructorProperties({ "thresholdMillis", "capacity" })
+	public SlowDecisionLog(final long thresholdMillis, final int capacity)
+	{
+		if (capacity < 0)
+		{
+			throw new IllegalArgumentException("Invalid slow decision log capacity: " + capacity + " (expected: >= 0)");
+		}
+
+		this.thresholdMillis = thresholdMillis;
+		this.thresholdNanos = thresholdMillis < 0 ? -1 : TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+		this.entries = new SlowDecision[thresholdMillis < 0 ? 0 : capacity];
+	}
+
+	/**
+	 * Tells whether the log is enabled
+	 *
+	 * @return true iff enabled, i.e. threshold is non-negative and capacity is strictly positive
+	 */
+	public boolean isEnabled()
+	{
+		return entries.length > 0;
+	}
+
+	/**
+	 * Tells whether a decision request is slow enough to be logged
+	 *
+	 * @param totalNanos
+	 *            total processing time (ns)
+	 * @return true iff the log is enabled and {@code totalNanos} reaches the threshold
+	 */
+	boolean isSlow(final long totalNanos)
+	{
+		return entries.length > 0 && totalNanos >= thresholdNanos;
+	}
+
+	private static String serialize(final Object request)
+	{
+		if (request instanceof Request)
+		{
+			final StringWriter out = new StringWriter();
+			try
+			{
+				final Marshaller marshaller = Xacml3JaxbHelper.createXacml3Marshaller();
+				marshaller.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.TRUE);
+				marshaller.marshal(request, out);
+			}
+			catch (final JAXBException e)
+			{
+				LOGGER.warn("Failed to serialize slow decision request", e);
+				return "";
+			}
+
+			return out.toString();
+		}
+
+		return request == null ? "" : request.toString();
+	}
+
+	/**
+	 * Logs a decision request if slow enough (see {@link #isSlow(long)})
+	 *
+	 * @param domainId
+	 *            domain ID
+	 * @param mediaType
+	 *            request media type
+	 * @param request
+	 *            request (XACML/XML {@link Request} or XACML/JSON {@link JSONObject}), null if the request body could not be read
+	 * @param decision
+	 *            decision(s), null if unknown
+	 * @param receiveNanos
+	 *            receive time (ns)
+	 * @param readNanos
+	 *            read time (ns)
+	 * @param evalNanos
+	 *            evaluation time (ns)
+	 * @param writeNanos
+	 *            write time (ns)
+	 */
+	void record(final String domainId, final String mediaType, final Object request, final String decision, final long receiveNanos, final long readNanos, final long evalNanos,
+	        final long writeNanos)
+	{
+		final long totalNanos = receiveNanos + readNanos + evalNanos + writeNanos;
+		if (!isSlow(totalNanos))
+		{
+			return;
+		}
+
+		final String payload = serialize(request);
+		final boolean truncated = payload.length() > MAX_REQUEST_LENGTH;
+		final SlowDecision entry = new SlowDecision(truncated ? payload.substring(0, MAX_REQUEST_LENGTH) : payload, domainId, XML_DATATYPE_FACTORY.newXMLGregorianCalendar(new GregorianCalendar()),
+		        mediaType, decision, truncated, TimeUnit.NANOSECONDS.toMicros(receiveNanos), TimeUnit.NANOSECONDS.toMicros(readNanos), TimeUnit.NANOSECONDS.toMicros(evalNanos),
+		        TimeUnit.NANOSECONDS.toMicros(writeNanos), TimeUnit.NANOSECONDS.toMicros(totalNanos));
+		synchronized (entries)
+		{
+			entries[next] = entry;
+			next = (next + 1) % entries.length;
+			if (size < entries.length)
+			{
+				size++;
+			}
+		}
+	}
+
+	private List<SlowDecision> getEntries(final boolean clear)
+	{
+		final List<SlowDecision> result;
+		synchronized (entries)
+		{
+			result = new ArrayList<>(size);
+			// from the oldest to the latest
+			final int first = (next - size + entries.length) % Math.max(entries.length, 1);
+			for (int i = 0; i < size; i++)
+			{
+				result.add(entries[(first + i) % entries.length]);
+			}
+
+			if (clear)
+			{
+				for (int i = 0; i < entries.length; i++)
+				{
+					entries[i] = null;
+				}
+
+				next = 0;
+				size = 0;
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Gets the logged slow decisions
+	 *
+	 * @return slow decisions, from the oldest to the latest
+	 */
+	public SlowDecisions getSlowDecisions()
+	{
+		return new SlowDecisions(getEntries(false), thresholdMillis, entries.length);
+	}
+
+	/**
+	 * Removes all the logged slow decisions
+	 *
+	 * @return the removed slow decisions, from the oldest to the latest
+	 */
+	public SlowDecisions clear()
+	{
+		return new SlowDecisions(getEntries(true), thresholdMillis, entries.length);
+	}
+}
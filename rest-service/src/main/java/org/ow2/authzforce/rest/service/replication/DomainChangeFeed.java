@@ -0,0 +1,393 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.replication;
+
+import java.beans.ConstructorProperties;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.ow2.authzforce.rest.service.api.xmlns.DomainChange;
+import org.ow2.authzforce.rest.service.api.xmlns.DomainChanges;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Change feed of the domains of a primary server, for the pull-based replication to read-only PDP replicas ({@link DomainReplicator}). Thread-safe.
+ * <p>
+ * The changes are detected on the domain directories, whatever the way they are modified (REST API, domain upgrade, files modified directly): the fingerprint of a domain directory is the hash of the
+ * paths, sizes and modification times of its files, which requires no file content to be read. When the fingerprint of a domain changes (or the domain is removed), the domain gets the next sequence
+ * number, so that a replica only gets the domains changed since the latest sequence number it has seen. The domain directories are scanned at most once per scan interval, whatever the number of
+ * replicas polling the feed.
+ * <p>
+ * The sequence numbers are kept in memory, therefore a new epoch (feed ID) starts each time the server starts, and the replicas get all the domains again (full resynchronization).
+ */
+public final class DomainChangeFeed implements DomainChangeSource
+{
+	private static final Logger LOGGER = LoggerFactory.getLogger(DomainChangeFeed.class);
+
+	/**
+	 * Maximum depth of the files in a domain directory (policies/{policyId}/{version}.xml)
+	 */
+	static final int MAX_DOMAIN_FILE_DEPTH = 3;
+
+	/*
+	 * Maximum number of removed domains kept in the feed. Beyond that, the oldest are forgotten, and the replicas that have not seen them get a full resynchronization.
+	 */
+	private static final int MAX_REMOVED_DOMAIN_COUNT = 10000;
+
+	/*
+	 * Maximum number of attempts to get a consistent copy of the files of a domain being modified
+	 */
+	private static final int MAX_DOMAIN_FILES_READ_ATTEMPTS = 3;
+
+	/*
+	 * Fingerprint null iff domain removed
+	 */
+	private static final class DomainState
+	{
+		private final HashCode fingerprint;
+		private final long sequence;
+
+		private DomainState(final HashCode fingerprint, final long sequence)
+		{
+			this.fingerprint = fingerprint;
+			this.sequence = sequence;
+		}
+	}
+
+	private final Path domainsRoot;
+	private final boolean enabled;
+	private final long minScanIntervalNanos;
+	private final String epoch = UUID.randomUUID().toString();
+
+	/*
+	 * The following fields are guarded by 'this'
+	 */
+	private final Map<String, DomainState> domainStates = new HashMap<>();
+	private long latestSequence = 0;
+	/*
+	 * Changes since a lower sequence number may have been forgotten (removed domains)
+	 */
+	private long minValidSequence = 0;
+	private int removedDomainCount = 0;
+	private long lastScanNanos = 0;
+	private boolean scanned = false;
+
+	/**
+	 * Constructor
+	 *
+	 * @param domainsRoot
+	 *            root directory of the domain directories (data/domains)
+	 * @param enabled
+	 *            true iff the feed is enabled; if false, {@link #isEnabled()} returns false and nothing is scanned
+	 * @param minScanIntervalMillis
+	 *            minimum time (ms) between two scans of the domain directories, i.e. maximum staleness of the feed
+	 * @throws IllegalArgumentException
+	 *             invalid domains root directory
+	 */
+	@ConstructorProperties({ "domainsRoot", "enabled", "minScanIntervalMillis" })
+	public DomainChangeFeed(final Path domainsRoot, final boolean enabled, final long minScanIntervalMillis)
+	{
+		if (enabled && (domainsRoot == null || !Files.isDirectory(domainsRoot)))
+		{
+			throw new IllegalArgumentException("Invalid domains root directory for the domain change feed: " + domainsRoot);
+		}
+
+		this.domainsRoot = domainsRoot;
+		this.enabled = enabled;
+		this.minScanIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(minScanIntervalMillis, 0));
+	}
+
+	/**
+	 * Resolves the directory of a domain, rejecting the domain IDs that are not plain directory names
+	 *
+	 * @param domainsRoot
+	 *            root directory of the domain directories
+	 * @param domainId
+	 *            domain ID
+	 * @return domain directory; null if {@code domainId} is invalid
+	 */
+	static Path resolveDomainDirectory(final Path domainsRoot, final String domainId)
+	{
+		if (domainId == null || domainId.isEmpty() || domainId.equals(".") || domainId.equals("..") || domainId.indexOf('/') >= 0 || domainId.indexOf('\\') >= 0)
+		{
+			return null;
+		}
+
+		try
+		{
+			final Path domainDir = domainsRoot.resolve(domainId);
+			return domainsRoot.equals(domainDir.getParent()) ? domainDir : null;
+		}
+		catch (final InvalidPathException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Lists the files of a domain directory
+	 *
+	 * @param domainDir
+	 *            domain directory
+	 * @return regular files, sorted by path
+	 * @throws IOException
+	 *             error listing the files, e.g. directory removed in the meantime
+	 */
+	static List<Path> listDomainFiles(final Path domainDir) throws IOException
+	{
+		try (Stream<Path> paths = Files.walk(domainDir, MAX_DOMAIN_FILE_DEPTH))
+		{
+			return paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+		}
+		catch (final UncheckedIOException e)
+		{
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Gets the path of a domain file relative to the domain directory, with '/' as separator (ZIP entry name)
+	 *
+	 * @param domainDir
+	 *            domain directory
+	 * @param file
+	 *            domain file
+	 * @return relative path
+	 */
+	static String getRelativePath(final Path domainDir, final Path file)
+	{
+		return domainDir.relativize(file).toString().replace(domainDir.getFileSystem().getSeparator(), "/");
+	}
+
+	private static HashCode getFingerprint(final Path domainDir) throws IOException
+	{
+		final Hasher hasher = Hashing.murmur3_128().newHasher();
+		for (final Path file : listDomainFiles(domainDir))
+		{
+			final BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+			hasher.putString(getRelativePath(domainDir, file), StandardCharsets.UTF_8).putLong(attrs.size()).putLong(attrs.lastModifiedTime().toMillis());
+		}
+
+		return hasher.hash();
+	}
+
+	/**
+	 * Returns true iff the feed is enabled
+	 *
+	 * @return true iff enabled
+	 */
+	public boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	private void removeOldestRemovedDomains()
+	{
+		if (removedDomainCount <= MAX_REMOVED_DOMAIN_COUNT)
+		{
+			return;
+		}
+
+		final List<Map.Entry<String, DomainState>> removedDomains = new ArrayList<>(removedDomainCount);
+		for (final Map.Entry<String, DomainState> entry : domainStates.entrySet())
+		{
+			if (entry.getValue().fingerprint == null)
+			{
+				removedDomains.add(entry);
+			}
+		}
+
+		removedDomains.sort(Comparator.comparingLong(entry -> entry.getValue().sequence));
+		final Iterator<Map.Entry<String, DomainState>> removedDomainIterator = removedDomains.iterator();
+		while (removedDomainCount > MAX_REMOVED_DOMAIN_COUNT)
+		{
+			final Map.Entry<String, DomainState> entry = removedDomainIterator.next();
+			minValidSequence = entry.getValue().sequence;
+			domainStates.remove(entry.getKey());
+			removedDomainCount--;
+		}
+	}
+
+	/*
+	 * Must be called with the lock on 'this' held
+	 */
+	private void scanIfNeeded() throws IOException
+	{
+		final long startNanos = System.nanoTime();
+		if (scanned && startNanos - lastScanNanos < minScanIntervalNanos)
+		{
+			return;
+		}
+
+		final Set<String> existingDomainIds = new HashSet<>();
+		try (DirectoryStream<Path> domainDirs = Files.newDirectoryStream(domainsRoot, Files::isDirectory))
+		{
+			for (final Path domainDir : domainDirs)
+			{
+				final String domainId = domainDir.getFileName().toString();
+				final DomainState state = domainStates.get(domainId);
+				final HashCode fingerprint;
+				try
+				{
+					fingerprint = getFingerprint(domainDir);
+				}
+				catch (final IOException e)
+				{
+					// modified/removed during the scan: keep the previous state until the next scan
+					LOGGER.debug("Domain change feed: failed to scan domain directory '{}'", domainDir, e);
+					if (state != null && state.fingerprint != null)
+					{
+						existingDomainIds.add(domainId);
+					}
+
+					continue;
+				}
+
+				existingDomainIds.add(domainId);
+				if (state == null || !fingerprint.equals(state.fingerprint))
+				{
+					if (state != null && state.fingerprint == null)
+					{
+						removedDomainCount--;
+					}
+
+					latestSequence++;
+					domainStates.put(domainId, new DomainState(fingerprint, latestSequence));
+				}
+			}
+		}
+
+		for (final Map.Entry<String, DomainState> entry : domainStates.entrySet())
+		{
+			if (entry.getValue().fingerprint != null && !existingDomainIds.contains(entry.getKey()))
+			{
+				latestSequence++;
+				entry.setValue(new DomainState(null, latestSequence));
+				removedDomainCount++;
+			}
+		}
+
+		removeOldestRemovedDomains();
+		lastScanNanos = startNanos;
+		scanned = true;
+	}
+
+	@Override
+	public synchronized DomainChanges getChanges(final String epoch, final long since) throws IOException
+	{
+		if (!enabled)
+		{
+			throw new IllegalStateException("Domain change feed disabled");
+		}
+
+		scanIfNeeded();
+		final boolean fullResync = !this.epoch.equals(epoch) || since < minValidSequence || since > latestSequence;
+		final List<DomainChange> changes = new ArrayList<>();
+		for (final Map.Entry<String, DomainState> entry : domainStates.entrySet())
+		{
+			final DomainState state = entry.getValue();
+			if (fullResync ? state.fingerprint != null : state.sequence > since)
+			{
+				changes.add(new DomainChange(entry.getKey(), state.sequence, state.fingerprint == null));
+			}
+		}
+
+		changes.sort(Comparator.comparingLong(DomainChange::getSequence));
+		return new DomainChanges(changes, this.epoch, latestSequence, fullResync);
+	}
+
+	private static byte[] zipDomainFiles(final Path domainDir) throws IOException
+	{
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ZipOutputStream zipOut = new ZipOutputStream(bytes))
+		{
+			for (final Path file : listDomainFiles(domainDir))
+			{
+				zipOut.putNextEntry(new ZipEntry(getRelativePath(domainDir, file)));
+				Files.copy(file, zipOut);
+				zipOut.closeEntry();
+			}
+		}
+
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * If the domain is modified while its files are read, they are read again (a few times at most), so that a replica does not get an inconsistent set of files.
+	 */
+	@Override
+	public boolean writeDomainFiles(final String domainId, final OutputStream out) throws IOException
+	{
+		if (!enabled)
+		{
+			throw new IllegalStateException("Domain change feed disabled");
+		}
+
+		final Path domainDir = resolveDomainDirectory(domainsRoot, domainId);
+		if (domainDir == null || !Files.isDirectory(domainDir))
+		{
+			return false;
+		}
+
+		byte[] zip;
+		int attempt = 1;
+		while (true)
+		{
+			final HashCode fingerprint = getFingerprint(domainDir);
+			zip = zipDomainFiles(domainDir);
+			if (attempt == MAX_DOMAIN_FILES_READ_ATTEMPTS || fingerprint.equals(getFingerprint(domainDir)))
+			{
+				break;
+			}
+
+			attempt++;
+		}
+
+		out.write(zip);
+		return true;
+	}
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.replication;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.ow2.authzforce.rest.service.api.xmlns.DomainChanges;
+
+/**
+ * Source of domain change sets for the replication of the domains of a primary server to a read-only PDP replica: the primary server's change feed over HTTP ({@link HttpDomainChangeSource}), or the
+ * change feed itself ({@link DomainChangeFeed}) as a local stand-in
+ */
+public interface DomainChangeSource
+{
+	/**
+	 * Gets the domains changed since a given sequence number of the change feed
+	 *
+	 * @param epoch
+	 *            epoch of the change feed returned by the previous call, null if none
+	 * @param since
+	 *            latest sequence number returned by the previous call, 0 if none
+	 * @return domain changes; all the existing domains if {@code epoch} is not the current epoch or the changes since {@code since} are no longer available
+	 * @throws IOException
+	 *             error getting the changes
+	 */
+	DomainChanges getChanges(String epoch, long since) throws IOException;
+
+	/**
+	 * Writes the files of a domain, i.e. the domain change set, as a ZIP archive (entry names are the file paths relative to the domain directory)
+	 *
+	 * @param domainId
+	 *            domain ID
+	 * @param out
+	 *            output stream of the ZIP archive
+	 * @return false iff the domain does not exist (anymore)
+	 * @throws IOException
+	 *             error getting or writing the files
+	 */
+	boolean writeDomainFiles(String domainId, OutputStream out) throws IOException;
+}
@@ -0,0 +1,456 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.replication;
+
+import java.beans.ConstructorProperties;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import com.google.common.io.ByteStreams;
+import org.ow2.authzforce.core.pap.api.dao.DomainsDao;
+import org.ow2.authzforce.rest.service.api.xmlns.DomainChange;
+import org.ow2.authzforce.rest.service.api.xmlns.DomainChanges;
+import org.ow2.authzforce.rest.service.jaxrs.DomainSnapshotResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Replicates the domains of a primary server to this server (read-only PDP replica), by pulling the domain changes from the primary's change feed ({@link DomainChangeSource}) and applying them
+ * incrementally to the local domain directories, so that decision throughput can be scaled horizontally without shared filesystem or full copies of the domains directory.
+ * <p>
+ * For each domain changed since the last poll, the replica gets the domain files (change set) and writes only the files that differ from the local ones, each one atomically (written to a temporary
+ * file first), the policies first and the PDP configuration (pdp.xml) last, so that the root policy is always there when the new PDP configuration is loaded; then removes the local files that are no
+ * longer on the primary. A new domain is written to a staging directory, then moved into the domains directory in one step. The changes of existing domains are loaded by the domains DAO's
+ * synchronization with the filesystem, which must therefore be enabled; the new and removed domains are loaded/unloaded right away.
+ * <p>
+ * The replication state (feed epoch and latest sequence number) is kept in memory, therefore all the domains are compared again after a restart of the replica or the primary, but only the changed
+ * files are written. A failed poll is retried entirely on the next one.
+ */
+public final class DomainReplicator implements Closeable
+{
+	private static final Logger LOGGER = LoggerFactory.getLogger(DomainReplicator.class);
+
+	private static final String PDP_CONF_FILENAME = "pdp.xml";
+	private static final String POLICIES_DIRECTORY_PREFIX = "policies/";
+
+	private static final Duration PRIMARY_REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+	/*
+	 * Order in which the domain files are written: policies first, PDP configuration last
+	 */
+	private static final Comparator<String> DOMAIN_FILE_WRITE_ORDER = Comparator.comparingInt((String path) -> path.startsWith(POLICIES_DIRECTORY_PREFIX) ? 0 : path.equals(PDP_CONF_FILENAME) ? 2 : 1)
+	        .thenComparing(Comparator.naturalOrder());
+
+	private final DomainsDao<?> domainsDao;
+	private final Path domainsRoot;
+	/*
+	 * Staging directory of new domains and temporary files, outside the domains directory (so that the DAO never sees them) but on the same filesystem (for atomic moves)
+	 */
+	private final Path stagingDir;
+	private final DomainChangeSource source;
+	private final ScheduledExecutorService scheduler;
+
+	/*
+	 * Replication state, guarded by 'this'
+	 */
+	private String epoch = null;
+	private long latestSequence = 0;
+
+	/**
+	 * Creates a replicator that is not scheduled, i.e. replicates only when {@link #replicateOnce()} is called
+	 *
+	 * @param domainsDao
+	 *            domains DAO, requested to load/unload the new/removed domains right away; may be null (the DAO's synchronization with the filesystem does it then)
+	 * @param domainsRoot
+	 *            root directory of the local domain directories (data/domains)
+	 * @param source
+	 *            source of domain changes (change feed of the primary server)
+	 * @throws IllegalArgumentException
+	 *             invalid domains root directory or undefined source
+	 */
+	public DomainReplicator(final DomainsDao<?> domainsDao, final Path domainsRoot, final DomainChangeSource source)
+	{
+		if (domainsRoot == null || !Files.isDirectory(domainsRoot))
+		{
+			throw new IllegalArgumentException("Invalid domains root directory for the domain replication: " + domainsRoot);
+		}
+
+		if (source == null)
+		{
+			throw new IllegalArgumentException("Undefined source of domain changes for the domain replication");
+		}
+
+		this.domainsDao = domainsDao;
+		this.domainsRoot = domainsRoot;
+		this.stagingDir = domainsRoot.resolveSibling(domainsRoot.getFileName() + ".replication");
+		this.source = source;
+		this.scheduler = null;
+	}
+
+	/**
+	 * Creates a replicator of the domains of a primary server, polling the primary's change feed periodically, if replica mode enabled (primary URL defined)
+	 *
+	 * @param domainsDao
+	 *            domains DAO, requested to load/unload the new/removed domains right away
+	 * @param domainsRoot
+	 *            root directory of the local domain directories (data/domains)
+	 * @param primaryUrl
+	 *            base URL of the primary server's REST API; null or empty to disable the replica mode (this does nothing then)
+	 * @param pollIntervalSec
+	 *            interval (seconds) between the end of a poll and the start of the next one
+	 * @param pdpOnly
+	 *            true iff PAP features are disabled on this server (required in replica mode since the local changes would be overwritten)
+	 * @param domainsSyncIntervalSec
+	 *            interval of the domains DAO's synchronization with the filesystem (must be positive in replica mode, to load the changes of existing domains)
+	 * @throws IllegalArgumentException
+	 *             replica mode enabled with invalid arguments
+	 */
+	@ConstructorProperties({ "domainsDao", "domainsRoot", "primaryUrl", "pollIntervalSec", "pdpOnly", "domainsSyncIntervalSec" })
+	public DomainReplicator(final DomainsDao<?> domainsDao, final Path domainsRoot, final String primaryUrl, final int pollIntervalSec, final boolean pdpOnly, final int domainsSyncIntervalSec)
+	{
+		if (primaryUrl == null || primaryUrl.isEmpty())
+		{
+			this.domainsDao = null;
+			this.domainsRoot = null;
+			this.stagingDir = null;
+			this.source = null;
+			this.scheduler = null;
+			return;
+		}
+
+		if (!pdpOnly)
+		{
+			throw new IllegalArgumentException("Replica mode requires PDP-only mode (PAP disabled): the local PAP changes would be overwritten by the replication");
+		}
+
+		if (domainsSyncIntervalSec <= 0)
+		{
+			throw new IllegalArgumentException("Replica mode requires the domains synchronization with the filesystem (positive sync interval) to load the replicated changes of existing domains");
+		}
+
+		if (pollIntervalSec <= 0)
+		{
+			throw new IllegalArgumentException("Invalid poll interval for the domain replication: " + pollIntervalSec);
+		}
+
+		if (domainsRoot == null || !Files.isDirectory(domainsRoot))
+		{
+			throw new IllegalArgumentException("Invalid domains root directory for the domain replication: " + domainsRoot);
+		}
+
+		this.domainsDao = domainsDao;
+		this.domainsRoot = domainsRoot;
+		this.stagingDir = domainsRoot.resolveSibling(domainsRoot.getFileName() + ".replication");
+		this.source = new HttpDomainChangeSource(primaryUrl, PRIMARY_REQUEST_TIMEOUT);
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+			final Thread thread = new Thread(task, "authzforce-domain-replication");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.scheduler.scheduleWithFixedDelay(this::replicateAndLogErrors, 0, pollIntervalSec, TimeUnit.SECONDS);
+		LOGGER.info("Replica mode enabled: domains replicated from primary server '{}' every {} s", primaryUrl, pollIntervalSec);
+	}
+
+	private void replicateAndLogErrors()
+	{
+		try
+		{
+			replicateOnce();
+		}
+		catch (final IOException | RuntimeException e)
+		{
+			LOGGER.warn("Domain replication failed (retried on next poll)", e);
+		}
+	}
+
+	private static void deleteRecursively(final Path dir) throws IOException
+	{
+		final List<Path> paths;
+		try (Stream<Path> pathStream = Files.walk(dir))
+		{
+			paths = pathStream.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+		}
+
+		for (final Path path : paths)
+		{
+			Files.deleteIfExists(path);
+		}
+	}
+
+	private static Map<String, byte[]> unzipDomainFiles(final String domainId, final byte[] zip) throws IOException
+	{
+		final Map<String, byte[]> files = new LinkedHashMap<>();
+		// same limits as the domain snapshots
+		int entryCount = 0;
+		long remainingSize = DomainSnapshotResource.MAX_UNCOMPRESSED_SIZE;
+		try (ZipInputStream zipIn = new ZipInputStream(new ByteArrayInputStream(zip)))
+		{
+			ZipEntry entry;
+			while ((entry = zipIn.getNextEntry()) != null)
+			{
+				entryCount++;
+				if (entryCount > DomainSnapshotResource.MAX_ENTRY_COUNT)
+				{
+					throw new IOException("Too many files in change set of domain '" + domainId + "' (max: " + DomainSnapshotResource.MAX_ENTRY_COUNT + ")");
+				}
+
+				final String path = entry.getName();
+				if (entry.isDirectory() || path.startsWith("/") || path.indexOf('\\') >= 0 || Arrays.asList(path.split("/")).contains("..")
+				        || path.split("/").length > DomainChangeFeed.MAX_DOMAIN_FILE_DEPTH)
+				{
+					throw new IOException("Invalid file path in change set of domain '" + domainId + "': " + path);
+				}
+
+				// Read one more byte than allowed to detect overflow
+				final byte[] content = ByteStreams.toByteArray(ByteStreams.limit(zipIn, remainingSize + 1));
+				remainingSize -= content.length;
+				if (remainingSize < 0)
+				{
+					throw new IOException("Change set of domain '" + domainId + "' too big (max uncompressed size: " + DomainSnapshotResource.MAX_UNCOMPRESSED_SIZE + " bytes)");
+				}
+
+				files.put(path, content);
+			}
+		}
+
+		return files;
+	}
+
+	private void writeAtomically(final Path file, final byte[] content) throws IOException
+	{
+		Files.createDirectories(file.getParent());
+		final Path tmpFile = stagingDir.resolve(UUID.randomUUID() + ".tmp");
+		Files.write(tmpFile, content);
+		Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/*
+	 * Returns true iff the local domain was modified
+	 */
+	private boolean applyDomainFiles(final Path domainDir, final Map<String, byte[]> files) throws IOException
+	{
+		if (!Files.isDirectory(domainDir))
+		{
+			final Path stagedDomainDir = stagingDir.resolve(domainDir.getFileName().toString());
+			if (Files.exists(stagedDomainDir))
+			{
+				deleteRecursively(stagedDomainDir);
+			}
+
+			for (final Map.Entry<String, byte[]> file : files.entrySet())
+			{
+				final Path stagedFile = stagedDomainDir.resolve(file.getKey());
+				Files.createDirectories(stagedFile.getParent());
+				Files.write(stagedFile, file.getValue());
+			}
+
+			Files.move(stagedDomainDir, domainDir, StandardCopyOption.ATOMIC_MOVE);
+			return true;
+		}
+
+		boolean modified = false;
+		for (final String path : files.keySet().stream().sorted(DOMAIN_FILE_WRITE_ORDER).collect(Collectors.toList()))
+		{
+			final Path file = domainDir.resolve(path);
+			final byte[] content = files.get(path);
+			if (!Files.isRegularFile(file) || !Arrays.equals(Files.readAllBytes(file), content))
+			{
+				writeAtomically(file, content);
+				modified = true;
+			}
+		}
+
+		// files removed on the primary (e.g. old policy versions), then the directories left empty
+		for (final Path file : DomainChangeFeed.listDomainFiles(domainDir))
+		{
+			if (!files.containsKey(DomainChangeFeed.getRelativePath(domainDir, file)))
+			{
+				Files.delete(file);
+				modified = true;
+			}
+		}
+
+		final List<Path> dirs;
+		try (Stream<Path> paths = Files.walk(domainDir, DomainChangeFeed.MAX_DOMAIN_FILE_DEPTH))
+		{
+			dirs = paths.filter(path -> !path.equals(domainDir) && Files.isDirectory(path)).sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+		}
+
+		for (final Path dir : dirs)
+		{
+			try (DirectoryStream<Path> dirEntries = Files.newDirectoryStream(dir))
+			{
+				if (dirEntries.iterator().hasNext())
+				{
+					continue;
+				}
+			}
+
+			Files.delete(dir);
+			modified = true;
+		}
+
+		return modified;
+	}
+
+	private void removeDomain(final Path domainDir) throws IOException
+	{
+		// moved out of the domains directory first, so that the domain disappears in one step
+		final Path removedDomainDir = stagingDir.resolve(UUID.randomUUID() + ".removed");
+		Files.move(domainDir, removedDomainDir, StandardCopyOption.ATOMIC_MOVE);
+		deleteRecursively(removedDomainDir);
+	}
+
+	/**
+	 * Gets the domain changes since the last poll from the source, and applies them to the local domains
+	 *
+	 * @return number of local domains created, modified or removed
+	 * @throws IOException
+	 *             error getting or applying the changes, in which case the replication state is unchanged, i.e. the same changes are requested again on the next poll
+	 * @throws IllegalStateException
+	 *             replica mode disabled
+	 */
+	public synchronized int replicateOnce() throws IOException
+	{
+		if (source == null)
+		{
+			throw new IllegalStateException("Replica mode disabled");
+		}
+
+		final long startNanos = System.nanoTime();
+		final DomainChanges changes = source.getChanges(epoch, latestSequence);
+		Files.createDirectories(stagingDir);
+		final Set<String> replicatedDomainIds = new HashSet<>();
+		boolean domainSetModified = false;
+		int modifiedDomainCount = 0;
+		for (final DomainChange change : changes.getDomainChanges())
+		{
+			final Path domainDir = DomainChangeFeed.resolveDomainDirectory(domainsRoot, change.getDomainId());
+			if (domainDir == null)
+			{
+				LOGGER.warn("Domain replication: invalid domain ID from primary server ignored: '{}'", change.getDomainId());
+				continue;
+			}
+
+			replicatedDomainIds.add(change.getDomainId());
+			if (change.isRemoved())
+			{
+				if (Files.isDirectory(domainDir))
+				{
+					removeDomain(domainDir);
+					domainSetModified = true;
+					modifiedDomainCount++;
+				}
+
+				continue;
+			}
+
+			final ByteArrayOutputStream zip = new ByteArrayOutputStream();
+			if (!source.writeDomainFiles(change.getDomainId(), zip))
+			{
+				// removed in the meantime, reported by the next changes
+				continue;
+			}
+
+			final boolean isNewDomain = !Files.isDirectory(domainDir);
+			if (applyDomainFiles(domainDir, unzipDomainFiles(change.getDomainId(), zip.toByteArray())))
+			{
+				domainSetModified |= isNewDomain;
+				modifiedDomainCount++;
+			}
+		}
+
+		if (changes.isFullResync())
+		{
+			// remove the domains that are not on the primary (anymore)
+			try (DirectoryStream<Path> domainDirs = Files.newDirectoryStream(domainsRoot, Files::isDirectory))
+			{
+				for (final Path domainDir : domainDirs)
+				{
+					if (!replicatedDomainIds.contains(domainDir.getFileName().toString()))
+					{
+						removeDomain(domainDir);
+						domainSetModified = true;
+						modifiedDomainCount++;
+					}
+				}
+			}
+		}
+
+		if (domainSetModified && domainsDao != null)
+		{
+			// synchronizes the DAO's domains with the domain directories
+			domainsDao.getDomainIdentifiers(null);
+		}
+
+		this.epoch = changes.getEpoch();
+		this.latestSequence = changes.getLatestSequence();
+		if (modifiedDomainCount > 0 || changes.isFullResync())
+		{
+			LOGGER.info("Domain replication: {} domains created/modified/removed (changes until #{}{}) in {} ms", modifiedDomainCount, latestSequence, changes.isFullResync() ? ", full resync" : "",
+			        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+		}
+
+		return modifiedDomainCount;
+	}
+
+	/**
+	 * Gets the replication state
+	 *
+	 * @return latest sequence number of the primary's change feed applied to the local domains (0 if none)
+	 */
+	public synchronized long getLatestSequence()
+	{
+		return latestSequence;
+	}
+
+	/**
+	 * Stops the periodic replication, if any
+	 */
+	@Override
+	public void close()
+	{
+		if (scheduler != null)
+		{
+			scheduler.shutdownNow();
+		}
+	}
+}
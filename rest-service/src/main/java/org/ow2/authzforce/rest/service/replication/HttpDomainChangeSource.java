@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.replication;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBException;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.net.UrlEscapers;
+import org.ow2.authzforce.rest.service.api.xmlns.DomainChanges;
+import org.ow2.authzforce.rest.service.jaxrs.DomainSnapshotResource;
+
+/**
+ * Change feed of a primary server, accessed over HTTP(S) on its REST API (/admin/replication). Thread-safe.
+ */
+public final class HttpDomainChangeSource implements DomainChangeSource
+{
+	private static final JAXBContext JAXB_CONTEXT;
+	static
+	{
+		try
+		{
+			JAXB_CONTEXT = JAXBContext.newInstance(DomainChanges.class);
+		}
+		catch (final JAXBException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newFactory();
+	static
+	{
+		XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+	}
+
+	private static final int HTTP_OK = 200;
+	private static final int HTTP_NOT_FOUND = 404;
+
+	private final String replicationBaseUrl;
+	private final Duration requestTimeout;
+	private final HttpClient httpClient;
+
+	/**
+	 * Constructor
+	 *
+	 * @param primaryBaseUrl
+	 *            base URL of the primary server's REST API, e.g. https://primary:8443/authzforce-ce
+	 * @param requestTimeout
+	 *            connection and request timeout
+	 * @throws IllegalArgumentException
+	 *             invalid base URL
+	 */
+	public HttpDomainChangeSource(final String primaryBaseUrl, final Duration requestTimeout)
+	{
+		if (primaryBaseUrl == null || primaryBaseUrl.isEmpty())
+		{
+			throw new IllegalArgumentException("Undefined primary server URL");
+		}
+
+		// validate
+		URI.create(primaryBaseUrl);
+		this.replicationBaseUrl = (primaryBaseUrl.endsWith("/") ? primaryBaseUrl : primaryBaseUrl + "/") + "admin/replication/";
+		this.requestTimeout = requestTimeout;
+		this.httpClient = HttpClient.newBuilder().connectTimeout(requestTimeout).followRedirects(HttpClient.Redirect.NORMAL).build();
+	}
+
+	private HttpResponse<InputStream> get(final String relativeUrl, final String mediaType) throws IOException
+	{
+		final HttpRequest request = HttpRequest.newBuilder(URI.create(replicationBaseUrl + relativeUrl)).timeout(requestTimeout).header("Accept", mediaType).GET().build();
+		try
+		{
+			return httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+		}
+		catch (final InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted request to the primary server: " + request.uri());
+		}
+	}
+
+	@Override
+	public DomainChanges getChanges(final String epoch, final long since) throws IOException
+	{
+		final String relativeUrl = "changes?since=" + since + (epoch == null ? "" : "&epoch=" + UrlEscapers.urlFormParameterEscaper().escape(epoch));
+		final HttpResponse<InputStream> response = get(relativeUrl, "application/xml");
+		try (InputStream in = response.body())
+		{
+			if (response.statusCode() != HTTP_OK)
+			{
+				throw new IOException("Unexpected response from the primary server to GET " + response.uri() + ": HTTP " + response.statusCode());
+			}
+
+			final XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(in);
+			try
+			{
+				return JAXB_CONTEXT.createUnmarshaller().unmarshal(reader, DomainChanges.class).getValue();
+			}
+			finally
+			{
+				reader.close();
+			}
+		}
+		catch (final XMLStreamException | JAXBException e)
+		{
+			throw new IOException("Invalid domain changes from the primary server", e);
+		}
+	}
+
+	@Override
+	public boolean writeDomainFiles(final String domainId, final OutputStream out) throws IOException
+	{
+		final HttpResponse<InputStream> response = get("domains/" + UrlEscapers.urlPathSegmentEscaper().escape(domainId), "application/zip");
+		try (InputStream in = response.body())
+		{
+			if (response.statusCode() == HTTP_NOT_FOUND)
+			{
+				return false;
+			}
+
+			if (response.statusCode() != HTTP_OK)
+			{
+				throw new IOException("Unexpected response from the primary server to GET " + response.uri() + ": HTTP " + response.statusCode());
+			}
+
+			// the archive is compressed, so not bigger than the maximum uncompressed size of the domain files (see DomainReplicator)
+			if (ByteStreams.copy(ByteStreams.limit(in, DomainSnapshotResource.MAX_UNCOMPRESSED_SIZE + 1), out) > DomainSnapshotResource.MAX_UNCOMPRESSED_SIZE)
+			{
+				throw new IOException("Change set of domain '" + domainId + "' from the primary server too big (max: " + DomainSnapshotResource.MAX_UNCOMPRESSED_SIZE + " bytes)");
+			}
+
+			return true;
+		}
+	}
+}
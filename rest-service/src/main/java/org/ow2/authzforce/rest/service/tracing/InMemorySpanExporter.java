@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.tracing;
+
+import java.beans.ConstructorProperties;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Span exporter keeping the last ended spans in memory, for local testing
+ */
+public final class InMemorySpanExporter implements SpanExporter
+{
+	private final int capacity;
+	private final Deque<Span> spans;
+
+	/**
+	 * Constructor
+	 *
+	 * @param capacity
+	 *            maximum number of spans kept in memory (the oldest are removed first)
+	 */
+	@ConstructorProperties({ "capacity" })
+	public InMemorySpanExporter(final int capacity)
+	{
+		if (capacity < 1)
+		{
+			throw new IllegalArgumentException("Invalid span exporter capacity (expected: > 0): " + capacity);
+		}
+
+		this.capacity = capacity;
+		this.spans = new ArrayDeque<>(capacity);
+	}
+
+	@Override
+	public synchronized void export(final Span span)
+	{
+		if (spans.size() == capacity)
+		{
+			spans.removeFirst();
+		}
+
+		spans.addLast(span);
+	}
+
+	/**
+	 * Gets the spans in memory
+	 *
+	 * @return spans from the oldest to the latest ended
+	 */
+	public synchronized List<Span> getSpans()
+	{
+		return new ArrayList<>(spans);
+	}
+
+	/**
+	 * Removes all spans from memory
+	 */
+	public synchronized void clear()
+	{
+		spans.clear();
+	}
+}
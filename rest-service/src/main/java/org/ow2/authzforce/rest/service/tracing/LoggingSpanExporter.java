@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.tracing;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Span exporter writing each ended span as a JSON object (one per line) to the logger {@value #LOGGER_NAME} at level INFO, e.g. to a file (with an asynchronous appender) for local testing or
+ * collection by a log shipper. JSON keys: traceId, spanId, parentSpanId (if any), name, startTimeUnixMicros, durationMicros, error, attributes.
+ */
+public final class LoggingSpanExporter implements SpanExporter
+{
+	/**
+	 * Name of the logger of the spans
+	 */
+	public static final String LOGGER_NAME = "org.ow2.authzforce.tracing.spans";
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(LOGGER_NAME);
+
+	@Override
+	public void export(final Span span)
+	{
+		if (!LOGGER.isInfoEnabled())
+		{
+			return;
+		}
+
+		final JSONObject json = new JSONObject();
+		json.put("traceId", span.getTraceId());
+		json.put("spanId", span.getSpanId());
+		json.putOpt("parentSpanId", span.getParentSpanId());
+		json.put("name", span.getName());
+		json.put("startTimeUnixMicros", span.getStartEpochMicros());
+		json.put("durationMicros", span.getDurationNanos() / 1000);
+		json.put("error", span.isError());
+		json.put("attributes", span.getAttributes());
+		LOGGER.info(json.toString());
+	}
+}
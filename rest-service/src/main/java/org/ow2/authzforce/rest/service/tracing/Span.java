@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.tracing;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracing span, i.e. timed operation of a trace, identified according to the <a href="https://www.w3.org/TR/trace-context/">W3C Trace Context</a> specification. A span is used by the thread
+ * processing the request only, therefore it is not thread-safe.
+ * <p>
+ * Spans of requests that are not sampled are replaced with {@link #NOOP}, on which all methods do nothing.
+ */
+public final class Span implements AutoCloseable
+{
+	/**
+	 * No-op span, used when the request is not sampled (or tracing is disabled)
+	 */
+	public static final Span NOOP = new Span(null, null, null, null, null);
+
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	private final SpanExporter exporter;
+	private final String traceId;
+	private final String spanId;
+	private final String parentSpanId;
+	private String name;
+	private final long startEpochMicros;
+	private final long startNanos;
+	private long durationNanos = -1;
+	private boolean error = false;
+	private Map<String, Object> attributes = null;
+
+	Span(final SpanExporter exporter, final String traceId, final String spanId, final String parentSpanId, final String name)
+	{
+		this.exporter = exporter;
+		this.traceId = traceId;
+		this.spanId = spanId;
+		this.parentSpanId = parentSpanId;
+		this.name = name;
+		if (exporter == null)
+		{
+			this.startEpochMicros = 0;
+			this.startNanos = 0;
+		}
+		else
+		{
+			this.startEpochMicros = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+			this.startNanos = System.nanoTime();
+		}
+	}
+
+	private static void appendHex(final StringBuilder sb, final long value)
+	{
+		for (int shift = 60; shift >= 0; shift -= 4)
+		{
+			sb.append(HEX_DIGITS[(int) (value >>> shift) & 0xf]);
+		}
+	}
+
+	/*
+	 * Random ID of 'longCount' x 64 bits in lowercase hex. The last 64 bits are never zero, so that the ID is valid (not all zeros).
+	 */
+	static String newId(final int longCount)
+	{
+		final StringBuilder sb = new StringBuilder(longCount * 16);
+		final ThreadLocalRandom random = ThreadLocalRandom.current();
+		for (int i = 0; i < longCount; i++)
+		{
+			long value;
+			do
+			{
+				value = random.nextLong();
+			}
+			while (value == 0 && i == longCount - 1);
+
+			appendHex(sb, value);
+		}
+
+		return sb.toString();
+	}
+
+	/**
+	 * @return true iff this span is recorded, i.e. not {@link #NOOP}
+	 */
+	public boolean isRecording()
+	{
+		return exporter != null;
+	}
+
+	/**
+	 * Starts a child span
+	 *
+	 * @param childName
+	 *            child span name
+	 * @return child span; {@link #NOOP} if this span is not recording
+	 */
+	public Span startChild(final String childName)
+	{
+		return exporter == null ? NOOP : new Span(exporter, traceId, newId(1), spanId, childName);
+	}
+
+	/**
+	 * Renames the span, e.g. when the operation is known only after the span started
+	 *
+	 * @param name
+	 *            new name
+	 * @return this
+	 */
+	public Span setName(final String name)
+	{
+		if (exporter != null)
+		{
+			this.name = name;
+		}
+
+		return this;
+	}
+
+	/**
+	 * Sets an attribute
+	 *
+	 * @param key
+	 *            attribute key
+	 * @param value
+	 *            attribute value (String, Long, Boolean...); ignored if null
+	 * @return this
+	 */
+	public Span setAttribute(final String key, final Object value)
+	{
+		if (exporter != null && value != null)
+		{
+			if (attributes == null)
+			{
+				attributes = new LinkedHashMap<>();
+			}
+
+			attributes.put(key, value);
+		}
+
+		return this;
+	}
+
+	/**
+	 * Marks the span as failed
+	 *
+	 * @param cause
+	 *            error cause (optional)
+	 * @return this
+	 */
+	public Span setError(final Throwable cause)
+	{
+		if (exporter != null)
+		{
+			error = true;
+			if (cause != null)
+			{
+				setAttribute("exception.type", cause.getClass().getName());
+			}
+		}
+
+		return this;
+	}
+
+	/**
+	 * Ends the span and exports it. Calling this method more than once has no effect.
+	 */
+	public void end()
+	{
+		if (exporter == null || durationNanos >= 0)
+		{
+			return;
+		}
+
+		durationNanos = System.nanoTime() - startNanos;
+		exporter.export(this);
+	}
+
+	@Override
+	public void close()
+	{
+		end();
+	}
+
+	/**
+	 * @return trace ID (32 lowercase hex digits)
+	 */
+	public String getTraceId()
+	{
+		return traceId;
+	}
+
+	/**
+	 * @return span ID (16 lowercase hex digits)
+	 */
+	public String getSpanId()
+	{
+		return spanId;
+	}
+
+	/**
+	 * @return parent span ID (16 lowercase hex digits); null if root span
+	 */
+	public String getParentSpanId()
+	{
+		return parentSpanId;
+	}
+
+	/**
+	 * @return span name
+	 */
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * @return start time (microseconds since the epoch)
+	 */
+	public long getStartEpochMicros()
+	{
+		return startEpochMicros;
+	}
+
+	/**
+	 * @return duration (ns); -1 if not ended
+	 */
+	public long getDurationNanos()
+	{
+		return durationNanos;
+	}
+
+	/**
+	 * @return true iff the operation failed
+	 */
+	public boolean isError()
+	{
+		return error;
+	}
+
+	/**
+	 * @return attributes (immutable)
+	 */
+	public Map<String, Object> getAttributes()
+	{
+		return attributes == null ? Collections.emptyMap() : Collections.unmodifiableMap(attributes);
+	}
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.tracing;
+
+/**
+ * Exporter of ended spans, e.g. to a tracing backend, a file or memory. Implementations must be thread-safe and should not block the caller (the request thread).
+ */
+public interface SpanExporter
+{
+	/**
+	 * Exports an ended span
+	 *
+	 * @param span
+	 *            ended span
+	 */
+	void export(Span span);
+}
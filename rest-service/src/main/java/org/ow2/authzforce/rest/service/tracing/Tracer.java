@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.tracing;
+
+import java.beans.ConstructorProperties;
+import java.util.concurrent.ThreadLocalRandom;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.phase.PhaseInterceptorChain;
+
+/**
+ * Tracer creating the server spans of the requests, continuing the trace of the client (e.g. PEP) if the request has a <a href="https://www.w3.org/TR/trace-context/#traceparent-header">traceparent</a>
+ * header. Sampling is parent-based: a request with a traceparent is sampled iff the parent is sampled; else it is sampled with a given probability.
+ */
+public final class Tracer
+{
+	/**
+	 * W3C trace context header
+	 */
+	public static final String TRACEPARENT_HEADER = "traceparent";
+
+	static final String SPAN_EXCHANGE_PROPERTY = Tracer.class.getName() + ".span";
+
+	private static final int TRACEPARENT_LENGTH = 55;
+	private static final String ALL_ZERO_TRACE_ID = "00000000000000000000000000000000";
+	private static final String ALL_ZERO_SPAN_ID = "0000000000000000";
+
+	private final SpanExporter exporter;
+	private final double samplingRatio;
+
+	/**
+	 * Constructor
+	 *
+	 * @param exporter
+	 *            exporter of the ended spans
+	 * @param samplingRatio
+	 *            probability that a request without traceparent is sampled (0 to 1). If 0, tracing is disabled altogether, including the traceparent header processing.
+	 */
+	@SuppressFBWarnings(value="EI_EXPOSE_REP2")
+	@ConstructorProperties({ "exporter", "samplingRatio" })
+	public Tracer(final SpanExporter exporter, final double samplingRatio)
+	{
+		if (exporter == null)
+		{
+			throw new IllegalArgumentException("Undefined span exporter");
+		}
+
+		if (samplingRatio < 0 || samplingRatio > 1)
+		{
+			throw new IllegalArgumentException("Invalid tracing sampling ratio (expected: [0,1]): " + samplingRatio);
+		}
+
+		this.exporter = exporter;
+		this.samplingRatio = samplingRatio;
+	}
+
+	/**
+	 * @return true iff tracing is enabled (sampling ratio greater than 0)
+	 */
+	public boolean isEnabled()
+	{
+		return samplingRatio > 0;
+	}
+
+	private static boolean isLowerHex(final String s, final int beginIndex, final int endIndex)
+	{
+		for (int i = beginIndex; i < endIndex; i++)
+		{
+			final char c = s.charAt(i);
+			if (!(c >= '0' && c <= '9' || c >= 'a' && c <= 'f'))
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Starts the server span of a request
+	 *
+	 * @param traceparent
+	 *            value of the request's traceparent header; null if none
+	 * @param name
+	 *            span name
+	 * @return new span; {@link Span#NOOP} if tracing is disabled or the request is not sampled
+	 */
+	public Span startServerSpan(final String traceparent, final String name)
+	{
+		if (samplingRatio <= 0)
+		{
+			return Span.NOOP;
+		}
+
+		/*
+		 * traceparent = version "-" trace-id "-" parent-id "-" trace-flags, e.g. 00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01. Future versions may append fields, only version 'ff' is
+		 * invalid.
+		 */
+		if (traceparent != null && traceparent.length() >= TRACEPARENT_LENGTH && traceparent.charAt(2) == '-' && traceparent.charAt(35) == '-' && traceparent.charAt(52) == '-'
+		        && isLowerHex(traceparent, 0, 2) && !traceparent.startsWith("ff") && isLowerHex(traceparent, 3, 35) && isLowerHex(traceparent, 36, 52) && isLowerHex(traceparent, 53, 55)
+		        && (traceparent.length() == TRACEPARENT_LENGTH || !traceparent.startsWith("00") && traceparent.charAt(TRACEPARENT_LENGTH) == '-'))
+		{
+			final String traceId = traceparent.substring(3, 35);
+			final String parentSpanId = traceparent.substring(36, 52);
+			if (!traceId.equals(ALL_ZERO_TRACE_ID) && !parentSpanId.equals(ALL_ZERO_SPAN_ID))
+			{
+				final boolean parentSampled = (Character.digit(traceparent.charAt(54), 16) & 1) == 1;
+				return parentSampled ? new Span(exporter, traceId, Span.newId(1), parentSpanId, name) : Span.NOOP;
+			}
+		}
+
+		// no (valid) parent
+		return samplingRatio >= 1 || ThreadLocalRandom.current().nextDouble() < samplingRatio ? new Span(exporter, Span.newId(2), Span.newId(1), null, name) : Span.NOOP;
+	}
+
+	/**
+	 * Gets the server span of the request being processed by the current thread
+	 *
+	 * @return current server span; {@link Span#NOOP} if none
+	 */
+	public static Span getCurrentSpan()
+	{
+		final Message message = PhaseInterceptorChain.getCurrentMessage();
+		if (message == null)
+		{
+			return Span.NOOP;
+		}
+
+		final Object span = message.getExchange().get(SPAN_EXCHANGE_PROPERTY);
+		return span instanceof Span ? (Span) span : Span.NOOP;
+	}
+
+	/**
+	 * Starts a child span of the server span of the request being processed by the current thread
+	 *
+	 * @param name
+	 *            child span name
+	 * @return new child span; {@link Span#NOOP} if the current request is not traced
+	 */
+	public static Span startChildSpan(final String name)
+	{
+		return getCurrentSpan().startChild(name);
+	}
+}
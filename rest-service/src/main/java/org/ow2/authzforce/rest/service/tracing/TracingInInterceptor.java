@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.tracing;
+
+import java.beans.ConstructorProperties;
+import java.util.List;
+import java.util.Map;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.phase.AbstractPhaseInterceptor;
+import org.apache.cxf.phase.Phase;
+
+/**
+ * CXF interceptor for inbound messages that starts the server span of the request (see {@link Tracer}), ended by {@link TracingOutInterceptor}
+ */
+public final class TracingInInterceptor extends AbstractPhaseInterceptor<Message>
+{
+	private final Tracer tracer;
+
+	/**
+	 * Constructor
+	 *
+	 * @param tracer
+	 *            tracer
+	 */
+	@SuppressFBWarnings(value="EI_EXPOSE_REP2")
+	@ConstructorProperties({ "tracer" })
+	public TracingInInterceptor(final Tracer tracer)
+	{
+		super(Phase.RECEIVE);
+		this.tracer = tracer;
+	}
+
+	@Override
+	public void handleMessage(final Message message)
+	{
+		if (!tracer.isEnabled())
+		{
+			return;
+		}
+
+		@SuppressWarnings("unchecked")
+		final Map<String, List<String>> headers = (Map<String, List<String>>) message.get(Message.PROTOCOL_HEADERS);
+		final List<String> traceparentValues = headers == null ? null : headers.get(Tracer.TRACEPARENT_HEADER);
+		// The header must be ignored if there are multiple
+		final String traceparent = traceparentValues == null || traceparentValues.size() != 1 ? null : traceparentValues.get(0);
+
+		final String httpMethod = (String) message.get(Message.HTTP_REQUEST_METHOD);
+		final Span span = tracer.startServerSpan(traceparent, "HTTP " + httpMethod);
+		if (span.isRecording())
+		{
+			span.setAttribute("http.request.method", httpMethod).setAttribute("url.path", message.get(Message.REQUEST_URI));
+			message.getExchange().put(Tracer.SPAN_EXCHANGE_PROPERTY, span);
+		}
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.tracing;
+
+import java.beans.ConstructorProperties;
+import java.lang.reflect.Method;
+
+import org.apache.cxf.jaxrs.model.OperationResourceInfo;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.phase.AbstractPhaseInterceptor;
+import org.apache.cxf.phase.Phase;
+
+/**
+ * CXF interceptor for outbound messages that ends the server span started by {@link TracingInInterceptor}. For normal messages, it is registered to the last phase, i.e. after the response is sent.
+ * For fault messages, it is registered before the error handler (which aborts the fault interceptor chain after writing the error response).
+ */
+public final class TracingOutInterceptor extends AbstractPhaseInterceptor<Message>
+{
+	private final boolean faultChain;
+
+	/**
+	 * Constructor
+	 *
+	 * @param faultChain
+	 *            true iff the interceptor is registered for outbound fault messages (outFaultInterceptors)
+	 */
+	@ConstructorProperties({ "faultChain" })
+	public TracingOutInterceptor(final boolean faultChain)
+	{
+		super(faultChain ? Phase.PRE_LOGICAL : Phase.SETUP_ENDING);
+		this.faultChain = faultChain;
+	}
+
+	@Override
+	public void handleMessage(final Message message)
+	{
+		final Exchange exchange = message.getExchange();
+		// Remove the span so that it is ended only once (normal or fault message)
+		final Object spanObj = exchange.remove(Tracer.SPAN_EXCHANGE_PROPERTY);
+		if (!(spanObj instanceof Span))
+		{
+			return;
+		}
+
+		final Span span = (Span) spanObj;
+		final OperationResourceInfo opResInfo = exchange.get(OperationResourceInfo.class);
+		final Method method = opResInfo == null ? null : opResInfo.getAnnotatedMethod();
+		if (method != null)
+		{
+			span.setName(method.getDeclaringClass().getSimpleName() + "." + method.getName());
+		}
+
+		if (faultChain)
+		{
+			span.setError(message.getContent(Exception.class));
+		}
+		else
+		{
+			final Object status = message.get(Message.RESPONSE_CODE);
+			span.setAttribute("http.response.status_code", status);
+			if (status instanceof Integer && (Integer) status >= 500)
+			{
+				span.setError(null);
+			}
+		}
+
+		span.end();
+	}
+}
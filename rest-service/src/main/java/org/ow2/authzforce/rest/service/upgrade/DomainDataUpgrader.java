@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.upgrade;
+
+import java.beans.ConstructorProperties;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Upgrades the domains' data from older versions of AuthzForce Server (9.x, 10.x) in place, when the server starts and before the domains are loaded, so that a server can be upgraded by a simple
+ * (rolling) restart on the old data directory, instead of running the offline upgrader on all the data first.
+ * <p>
+ * For each domain, the format of the PDP configuration file (pdp.xml) is detected from the namespace of its root element, which requires to read the first element only. A file in an old format is
+ * transformed in memory with the same XSLT stylesheet as the upgrader, and the result replaces the file atomically (written to a temporary file first), so that an interrupted upgrade never leaves a
+ * partially written file and is resumed on the next startup. The domains are upgraded in parallel. Domains already in the current format are left untouched, therefore the cost of a startup on
+ * up-to-date data is one partial read of each pdp.xml.
+ * <p>
+ * The domain properties (properties.xml) and policies have the same format in 9.x, 10.x and the current version, so they are not modified. Any error on a domain is logged and ignored (the domain is
+ * not upgraded and fails to load like before).
+ */
+public final class DomainDataUpgrader
+{
+	private static final Logger LOGGER = LoggerFactory.getLogger(DomainDataUpgrader.class);
+
+	private static final String PDP_CONF_FILENAME = "pdp.xml";
+
+	/*
+	 * Namespace of PDP configurations of AuthzForce Server 9.x and 10.x
+	 */
+	private static final String OLD_PDP_CONF_NAMESPACE = "http://authzforce.github.io/core/xmlns/pdp/7";
+
+	private static final String PDP_CONF_UPGRADE_XSLT = "xslt/9.x,10.x/domain-pdp-upgrade.xsl";
+
+	private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newFactory();
+	static
+	{
+		XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+	}
+
+	private final Templates pdpConfUpgradeTemplates;
+	private final int upgradedDomainCount;
+
+	/**
+	 * Constructor, upgrades the domains if enabled
+	 *
+	 * @param domainsRoot
+	 *            root directory of the domain directories (data/domains)
+	 * @param enabled
+	 *            true iff the domains must be upgraded; if false, this does nothing
+	 * @param parallelism
+	 *            maximum number of domains upgraded in parallel (number of threads); if not positive, the number of available processors is used
+	 * @throws IllegalArgumentException
+	 *             invalid domains root directory
+	 * @throws TransformerConfigurationException
+	 *             invalid XSLT stylesheet
+	 */
+	@ConstructorProperties({ "domainsRoot", "enabled", "parallelism" })
+	public DomainDataUpgrader(final Path domainsRoot, final boolean enabled, final int parallelism) throws TransformerConfigurationException
+	{
+		if (!enabled)
+		{
+			this.pdpConfUpgradeTemplates = null;
+			this.upgradedDomainCount = 0;
+			return;
+		}
+
+		if (domainsRoot == null || !Files.isDirectory(domainsRoot))
+		{
+			throw new IllegalArgumentException("Invalid domains root directory for the domain upgrade: " + domainsRoot);
+		}
+
+		final URL xsltUrl = DomainDataUpgrader.class.getResource(PDP_CONF_UPGRADE_XSLT);
+		if (xsltUrl == null)
+		{
+			throw new TransformerConfigurationException("Domain upgrade XSLT not found on the classpath: " + PDP_CONF_UPGRADE_XSLT);
+		}
+
+		// Saxon required for XSLT 2.0
+		this.pdpConfUpgradeTemplates = new net.sf.saxon.TransformerFactoryImpl().newTemplates(new StreamSource(xsltUrl.toExternalForm()));
+
+		final long startNanos = System.nanoTime();
+		final int threadCount = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+		final AtomicInteger threadIndex = new AtomicInteger();
+		final ExecutorService executor = Executors.newFixedThreadPool(threadCount, task -> {
+			final Thread thread = new Thread(task, "authzforce-domain-upgrade-" + threadIndex.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		int domainCount = 0;
+		int count = 0;
+		try
+		{
+			final List<Future<Boolean>> results = new ArrayList<>();
+			try (DirectoryStream<Path> domainDirs = Files.newDirectoryStream(domainsRoot, Files::isDirectory))
+			{
+				for (final Path domainDir : domainDirs)
+				{
+					results.add(executor.submit(() -> upgradeDomain(domainDir)));
+				}
+			}
+			catch (final IOException e)
+			{
+				LOGGER.error("Domain upgrade: error listing the domain directories in '{}'", domainsRoot, e);
+			}
+
+			domainCount = results.size();
+			for (final Future<Boolean> result : results)
+			{
+				try
+				{
+					if (result.get())
+					{
+						count++;
+					}
+				}
+				catch (final ExecutionException e)
+				{
+					LOGGER.error("Domain upgrade failed on a domain", e.getCause());
+				}
+			}
+		}
+		catch (final InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			LOGGER.warn("Domain upgrade interrupted");
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+
+		this.upgradedDomainCount = count;
+		LOGGER.info("Domain upgrade: {}/{} domains upgraded from an older version in {} ms ({} threads)", count, domainCount, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos),
+				threadCount);
+	}
+
+	private static String getRootElementNamespace(final Path xmlFile) throws IOException, XMLStreamException
+	{
+		try (InputStream in = Files.newInputStream(xmlFile))
+		{
+			final XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(in);
+			try
+			{
+				while (reader.hasNext())
+				{
+					if (reader.next() == XMLStreamConstants.START_ELEMENT)
+					{
+						return reader.getNamespaceURI();
+					}
+				}
+
+				return null;
+			}
+			finally
+			{
+				reader.close();
+			}
+		}
+	}
+
+	/*
+	 * Returns true iff the domain was upgraded (false if already up-to-date)
+	 */
+	private boolean upgradeDomain(final Path domainDir) throws IOException, XMLStreamException, TransformerException
+	{
+		final Path pdpConfFile = domainDir.resolve(PDP_CONF_FILENAME);
+		if (!Files.isRegularFile(pdpConfFile) || !OLD_PDP_CONF_NAMESPACE.equals(getRootElementNamespace(pdpConfFile)))
+		{
+			return false;
+		}
+
+		LOGGER.info("Domain upgrade: upgrading PDP configuration '{}' from an older version", pdpConfFile);
+		final ByteArrayOutputStream out = new ByteArrayOutputStream((int) Files.size(pdpConfFile) + 512);
+		pdpConfUpgradeTemplates.newTransformer().transform(new StreamSource(pdpConfFile.toFile()), new StreamResult(out));
+		final Path tmpFile = pdpConfFile.resolveSibling(PDP_CONF_FILENAME + ".tmp");
+		Files.write(tmpFile, out.toByteArray());
+		Files.move(tmpFile, pdpConfFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return true;
+	}
+
+	/**
+	 * Gets the number of domains upgraded from an older version
+	 *
+	 * @return upgraded domain count (0 if disabled)
+	 */
+	public int getUpgradedDomainCount()
+	{
+		return upgradedDomainCount;
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.upgrade;
+
+import java.beans.ConstructorProperties;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Marshaller;
+import jakarta.xml.bind.util.JAXBSource;
+
+import com.google.common.hash.Funnels;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.ow2.authzforce.core.pap.api.dao.AuthzPolicy;
+import org.ow2.authzforce.xacml.Xacml3JaxbHelper;
+
+/**
+ * Computes content hashes of XACML 3.0 policies on their canonical form, as produced by the XSLT stylesheet of the upgrader (xacml3-policy-c14n.xsl), i.e. with the identifiers deprecated by XACML 3.0
+ * (functions, datatypes, combining algorithms, attributes) replaced with the new ones, so that equivalent policies have the same hash. The policies themselves are left as is. Thread-safe.
+ * <p>
+ * The stylesheet is compiled once, and the {@link Transformer}s are pooled along with the JAXB {@link Marshaller}s. The XSLT output is streamed to the hash function, without intermediate
+ * serialization.
+ */
+public final class PolicyContentHasher
+{
+	private static final String XSLT = "xslt/xacml3-policy-c14n.xsl";
+
+	/*
+	 * Not thread-safe, therefore pooled
+	 */
+	private static final class Worker
+	{
+		private final Marshaller marshaller;
+		private final Transformer transformer;
+
+		private Worker(final Marshaller marshaller, final Transformer transformer)
+		{
+			this.marshaller = marshaller;
+			this.transformer = transformer;
+		}
+	}
+
+	private final Templates templates;
+	private final BlockingQueue<Worker> workers;
+
+	/**
+	 * Constructor, compiles the XSLT stylesheet
+	 *
+	 * @param transformerPoolSize
+	 *            maximum number of idle XSLT transformers (and JAXB marshallers) kept in the pool (at least 1)
+	 * @throws TransformerConfigurationException
+	 *             invalid XSLT stylesheet
+	 */
+	@ConstructorProperties({ "transformerPoolSize" })
+	public PolicyContentHasher(final int transformerPoolSize) throws TransformerConfigurationException
+	{
+		final URL xsltUrl = PolicyContentHasher.class.getResource(XSLT);
+		if (xsltUrl == null)
+		{
+			throw new TransformerConfigurationException("XACML 3.0 policy canonicalization XSLT not found on the classpath: " + XSLT);
+		}
+
+		this.templates = new net.sf.saxon.TransformerFactoryImpl().newTemplates(new StreamSource(xsltUrl.toExternalForm()));
+		this.workers = new ArrayBlockingQueue<>(Math.max(transformerPoolSize, 1));
+	}
+
+	private Worker acquireWorker() throws TransformerConfigurationException, JAXBException
+	{
+		final Worker pooledWorker = workers.poll();
+		if (pooledWorker != null)
+		{
+			return pooledWorker;
+		}
+
+		final Transformer transformer = templates.newTransformer();
+		// no indentation, which would change the content of elements with mixed content (e.g. AttributeValue)
+		transformer.setOutputProperty(OutputKeys.INDENT, "no");
+		return new Worker(Xacml3JaxbHelper.createXacml3Marshaller(), transformer);
+	}
+
+	private void releaseWorker(final Worker worker)
+	{
+		// no reset(): it would discard the output properties, and no parameter is ever set
+		workers.offer(worker);
+	}
+
+	/**
+	 * Computes the content hash of a policy
+	 *
+	 * @param policy
+	 *            XACML 3.0 policy
+	 * @return SHA-256 hash of the canonical XML form of the policy (including PolicySetId and Version)
+	 * @throws IllegalArgumentException
+	 *             the policy cannot be serialized or canonicalized
+	 */
+	public HashCode hash(final AuthzPolicy policy) throws IllegalArgumentException
+	{
+		if (policy == null)
+		{
+			throw new IllegalArgumentException("Undefined policy");
+		}
+
+		final Hasher hasher = Hashing.sha256().newHasher();
+		try
+		{
+			final Worker worker = acquireWorker();
+			boolean reusable = false;
+			try (OutputStream out = Funnels.asOutputStream(hasher))
+			{
+				worker.transformer.transform(new JAXBSource(worker.marshaller, policy.toXacml()), new StreamResult(out));
+				reusable = true;
+			}
+			finally
+			{
+				// a transformer/marshaller that failed in the middle of a transformation may be left in an inconsistent state
+				if (reusable)
+				{
+					releaseWorker(worker);
+				}
+			}
+		}
+		catch (final TransformerException | JAXBException | IOException e)
+		{
+			throw new IllegalArgumentException("Failed to canonicalize policy '" + policy.toXacml().getPolicySetId() + "' v" + policy.toXacml().getVersion(), e);
+		}
+
+		return hasher.hash();
+	}
+}
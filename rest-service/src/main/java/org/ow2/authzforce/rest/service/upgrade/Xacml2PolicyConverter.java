@@ -0,0 +1,404 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.upgrade;
+
+import java.beans.ConstructorProperties;
+import java.io.ByteArrayInputStream;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.sax.SAXResult;
+import javax.xml.transform.sax.SAXSource;
+import javax.xml.transform.stream.StreamSource;
+
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Unmarshaller;
+import jakarta.xml.bind.UnmarshallerHandler;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.Policy;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.PolicySet;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.Target;
+import org.ow2.authzforce.core.pap.api.dao.AuthzPolicy;
+import org.ow2.authzforce.core.pap.api.dao.JaxbXacmlAuthzPolicy;
+import org.ow2.authzforce.xacml.Xacml3JaxbHelper;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+/**
+ * Converts XACML 2.0 policies (Policy or PolicySet) to XACML 3.0 with the XSLT stylesheet of the upgrader (xacml2To3Policy.xsl). Thread-safe.
+ * <ul>
+ * <li>The stylesheet is compiled once, and the {@link Transformer}s are pooled;</li>
+ * <li>The XSLT output is unmarshalled (and validated against the XACML 3.0 schema) on the fly, without intermediate serialization;</li>
+ * <li>The conversion results are cached by SHA-256 hash of the input, so that uploading the same XACML 2.0 policy again does not run the XSLT again. The cache is bounded by the total size of
+ * the cached inputs, the memory used by a converted policy being roughly proportional to the size of the input.</li>
+ * </ul>
+ * The input is parsed with the same limits as the other XML payloads of the API (org.apache.cxf.stax.* properties): element depth, number of child elements, number of attributes per element, size of
+ * attribute values and text nodes.
+ * Since the domains' PAP only stores PolicySets, a XACML 2.0 Policy is converted to a XACML 3.0 Policy enclosed in a PolicySet with the same ID and version, an empty Target and the
+ * first-applicable policy-combining algorithm, which returns the result of the Policy as is.
+ */
+public final class Xacml2PolicyConverter
+{
+	private static final String XACML_2_0_POLICY_NAMESPACE = "urn:oasis:names:tc:xacml:2.0:policy:schema:os";
+
+	private static final String XSLT = "xslt/xacml2To3Policy.xsl";
+
+	private static final String FIRST_APPLICABLE_POLICY_COMBINING_ALG_ID = "urn:oasis:names:tc:xacml:1.0:policy-combining-algorithm:first-applicable";
+
+	private static final SAXParserFactory SAX_PARSER_FACTORY = SAXParserFactory.newInstance();
+	static
+	{
+		SAX_PARSER_FACTORY.setNamespaceAware(true);
+		try
+		{
+			SAX_PARSER_FACTORY.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+			SAX_PARSER_FACTORY.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+		}
+		catch (final ParserConfigurationException | SAXException e)
+		{
+			throw new RuntimeException("Failed to secure the XML parser for XACML 2.0 policies", e);
+		}
+	}
+
+	/*
+	 * Checks that the root element is a XACML 2.0 Policy(Set), and enforces the parser limits (a limit <= 0 means no limit)
+	 */
+	private final class Xacml2InputCheckingFilter extends XMLFilterImpl
+	{
+		/*
+		 * Number of child elements of each element being parsed, by depth (index 0: root element)
+		 */
+		private int[] childCounts = new int[16];
+		private int depth = 0;
+		private long textLength = 0;
+
+		private Xacml2InputCheckingFilter(final XMLReader parent)
+		{
+			super(parent);
+		}
+
+		@Override
+		public void startElement(final String uri, final String localName, final String qName, final Attributes atts) throws SAXException
+		{
+			if (depth == 0)
+			{
+				if (!XACML_2_0_POLICY_NAMESPACE.equals(uri) || !(localName.equals("Policy") || localName.equals("PolicySet")))
+				{
+					throw new SAXException("Invalid root element: {" + uri + "}" + localName + " (expected: XACML 2.0 Policy or PolicySet)");
+				}
+			}
+			else
+			{
+				childCounts[depth - 1]++;
+				if (maxChildElements > 0 && childCounts[depth - 1] > maxChildElements)
+				{
+					throw new SAXException("Maximum number of child elements (" + maxChildElements + ") exceeded");
+				}
+			}
+
+			depth++;
+			if (maxElementDepth > 0 && depth > maxElementDepth)
+			{
+				throw new SAXException("Maximum element depth (" + maxElementDepth + ") exceeded");
+			}
+
+			if (maxAttributeCount > 0 && atts.getLength() > maxAttributeCount)
+			{
+				throw new SAXException("Maximum number of attributes per element (" + maxAttributeCount + ") exceeded");
+			}
+
+			if (maxAttributeSize > 0)
+			{
+				for (int i = 0; i < atts.getLength(); i++)
+				{
+					if (atts.getValue(i).length() > maxAttributeSize)
+					{
+						throw new SAXException("Maximum attribute size (" + maxAttributeSize + ") exceeded");
+					}
+				}
+			}
+
+			if (depth > childCounts.length)
+			{
+				childCounts = Arrays.copyOf(childCounts, childCounts.length * 2);
+			}
+
+			childCounts[depth - 1] = 0;
+			textLength = 0;
+			super.startElement(uri, localName, qName, atts);
+		}
+
+		@Override
+		public void endElement(final String uri, final String localName, final String qName) throws SAXException
+		{
+			depth--;
+			textLength = 0;
+			super.endElement(uri, localName, qName);
+		}
+
+		@Override
+		public void characters(final char[] ch, final int start, final int length) throws SAXException
+		{
+			// the text of a node may be split in several calls
+			textLength += length;
+			if (maxTextLength > 0 && textLength > maxTextLength)
+			{
+				throw new SAXException("Maximum text length (" + maxTextLength + ") exceeded");
+			}
+
+			super.characters(ch, start, length);
+		}
+	}
+
+	/*
+	 * Collects the namespace declarations on the root element of the XACML 3.0 output (namespace contexts of XPath expressions)
+	 */
+	private static final class XmlnsCollectingFilter extends XMLFilterImpl
+	{
+		private final Map<String, String> xmlnsPrefixToUriMap = new HashMap<>();
+		private boolean rootElementStarted = false;
+
+		@Override
+		public void startPrefixMapping(final String prefix, final String uri) throws SAXException
+		{
+			if (!rootElementStarted)
+			{
+				xmlnsPrefixToUriMap.put(prefix, uri);
+			}
+
+			super.startPrefixMapping(prefix, uri);
+		}
+
+		@Override
+		public void startElement(final String uri, final String localName, final String qName, final Attributes atts) throws SAXException
+		{
+			rootElementStarted = true;
+			super.startElement(uri, localName, qName, atts);
+		}
+	}
+
+	private static final class CachedPolicy
+	{
+		private final AuthzPolicy policy;
+		private final int inputSize;
+
+		private CachedPolicy(final AuthzPolicy policy, final int inputSize)
+		{
+			this.policy = policy;
+			this.inputSize = inputSize;
+		}
+	}
+
+	private final Templates templates;
+	private final BlockingQueue<Transformer> transformers;
+	private final int maxElementDepth;
+	private final int maxChildElements;
+	private final int maxAttributeCount;
+	private final int maxAttributeSize;
+	private final int maxTextLength;
+	private final long cacheMaxBytes;
+
+	/*
+	 * LRU cache (access order). Guarded by itself, like cachedBytes.
+	 */
+	private final Map<HashCode, CachedPolicy> cache;
+	private long cachedBytes = 0;
+
+	/**
+	 * Constructor, compiles the XSLT stylesheet
+	 *
+	 * @param transformerPoolSize
+	 *            maximum number of idle XSLT transformers kept in the pool (at least 1)
+	 * @param cacheMaxBytes
+	 *            maximum total size (bytes) of the XACML 2.0 inputs whose conversion results are in cache (the least recently used are removed first); 0 or less disables the cache
+	 * @param maxElementDepth
+	 *            maximum depth of the elements of the input (0 or less: no limit)
+	 * @param maxChildElements
+	 *            maximum number of child elements of an element of the input (0 or less: no limit)
+	 * @param maxAttributeCount
+	 *            maximum number of attributes of an element of the input (0 or less: no limit)
+	 * @param maxAttributeSize
+	 *            maximum size (characters) of an attribute value of the input (0 or less: no limit)
+	 * @param maxTextLength
+	 *            maximum size (characters) of a text node of the input (0 or less: no limit)
+	 * @throws TransformerConfigurationException
+	 *             invalid XSLT stylesheet
+	 */
+	@ConstructorProperties({ "transformerPoolSize", "cacheMaxBytes", "maxElementDepth", "maxChildElements", "maxAttributeCount", "maxAttributeSize", "maxTextLength" })
+	public Xacml2PolicyConverter(final int transformerPoolSize, final long cacheMaxBytes, final int maxElementDepth, final int maxChildElements, final int maxAttributeCount,
+			final int maxAttributeSize, final int maxTextLength) throws TransformerConfigurationException
+	{
+		final URL xsltUrl = Xacml2PolicyConverter.class.getResource(XSLT);
+		if (xsltUrl == null)
+		{
+			throw new TransformerConfigurationException("XACML 2.0 policy conversion XSLT not found on the classpath: " + XSLT);
+		}
+
+		this.templates = new net.sf.saxon.TransformerFactoryImpl().newTemplates(new StreamSource(xsltUrl.toExternalForm()));
+		this.transformers = new ArrayBlockingQueue<>(Math.max(transformerPoolSize, 1));
+		this.maxElementDepth = maxElementDepth;
+		this.maxChildElements = maxChildElements;
+		this.maxAttributeCount = maxAttributeCount;
+		this.maxAttributeSize = maxAttributeSize;
+		this.maxTextLength = maxTextLength;
+		this.cacheMaxBytes = cacheMaxBytes;
+		this.cache = cacheMaxBytes > 0 ? new LinkedHashMap<>(16, 0.75f, true) : null;
+	}
+
+	private Transformer acquireTransformer() throws TransformerConfigurationException
+	{
+		final Transformer transformer = transformers.poll();
+		return transformer == null ? templates.newTransformer() : transformer;
+	}
+
+	private void releaseTransformer(final Transformer transformer)
+	{
+		transformer.reset();
+		transformers.offer(transformer);
+	}
+
+	private AuthzPolicy doConvert(final byte[] xacml2Policy)
+	{
+		final Unmarshaller unmarshaller;
+		final XMLReader xmlReader;
+		try
+		{
+			unmarshaller = Xacml3JaxbHelper.createXacml3Unmarshaller();
+			unmarshaller.setSchema(Xacml3JaxbHelper.XACML_3_0_SCHEMA);
+			xmlReader = SAX_PARSER_FACTORY.newSAXParser().getXMLReader();
+		}
+		catch (final JAXBException | ParserConfigurationException | SAXException e)
+		{
+			throw new RuntimeException("Failed to initialize the XACML 2.0 policy conversion", e);
+		}
+
+		final UnmarshallerHandler unmarshallerHandler = unmarshaller.getUnmarshallerHandler();
+		final XmlnsCollectingFilter xmlnsFilter = new XmlnsCollectingFilter();
+		xmlnsFilter.setContentHandler(unmarshallerHandler);
+
+		final Object result;
+		try
+		{
+			final Transformer transformer = acquireTransformer();
+			try
+			{
+				transformer.transform(new SAXSource(new Xacml2InputCheckingFilter(xmlReader), new InputSource(new ByteArrayInputStream(xacml2Policy))), new SAXResult(xmlnsFilter));
+			}
+			finally
+			{
+				releaseTransformer(transformer);
+			}
+
+			result = unmarshallerHandler.getResult();
+		}
+		catch (final TransformerException | JAXBException | IllegalStateException e)
+		{
+			throw new IllegalArgumentException("Invalid XACML 2.0 policy or unsupported by the conversion to XACML 3.0", e);
+		}
+
+		final PolicySet policySet;
+		if (result instanceof PolicySet)
+		{
+			policySet = (PolicySet) result;
+		}
+		else if (result instanceof Policy)
+		{
+			final Policy policy = (Policy) result;
+			policySet = new PolicySet(policy.getDescription(), null, null, new Target(null), Collections.singletonList(policy), null, null,
+					policy.getPolicyId(), policy.getVersion(), FIRST_APPLICABLE_POLICY_COMBINING_ALG_ID, null);
+		}
+		else
+		{
+			throw new IllegalArgumentException("Invalid result of the conversion to XACML 3.0: " + result.getClass() + " (expected: Policy or PolicySet)");
+		}
+
+		return new JaxbXacmlAuthzPolicy(policySet, ImmutableMap.copyOf(xmlnsFilter.xmlnsPrefixToUriMap));
+	}
+
+	/**
+	 * Converts a XACML 2.0 policy to XACML 3.0, or gets the result from the cache if the same policy has already been converted
+	 *
+	 * @param xacml2Policy
+	 *            XACML 2.0 Policy or PolicySet document
+	 * @return XACML 3.0 PolicySet (enclosing the XACML 3.0 Policy if the input is a Policy) with the namespace contexts of its root element
+	 * @throws IllegalArgumentException
+	 *             the input is not a valid XACML 2.0 Policy(Set), or the conversion result is not a valid XACML 3.0 Policy(Set)
+	 */
+	public AuthzPolicy convert(final byte[] xacml2Policy) throws IllegalArgumentException
+	{
+		if (xacml2Policy == null || xacml2Policy.length == 0)
+		{
+			throw new IllegalArgumentException("Undefined XACML 2.0 policy");
+		}
+
+		if (cache == null)
+		{
+			return doConvert(xacml2Policy);
+		}
+
+		final HashCode hash = Hashing.sha256().hashBytes(xacml2Policy);
+		synchronized (cache)
+		{
+			final CachedPolicy cachedPolicy = cache.get(hash);
+			if (cachedPolicy != null)
+			{
+				return cachedPolicy.policy;
+			}
+		}
+
+		final AuthzPolicy policy = doConvert(xacml2Policy);
+		if (xacml2Policy.length <= cacheMaxBytes)
+		{
+			synchronized (cache)
+			{
+				final CachedPolicy replacedPolicy = cache.put(hash, new CachedPolicy(policy, xacml2Policy.length));
+				cachedBytes += xacml2Policy.length - (replacedPolicy == null ? 0 : replacedPolicy.inputSize);
+				// evict the least recently used
+				final Iterator<CachedPolicy> cachedPolicyIterator = cache.values().iterator();
+				while (cachedBytes > cacheMaxBytes)
+				{
+					cachedBytes -= cachedPolicyIterator.next().inputSize;
+					cachedPolicyIterator.remove();
+				}
+			}
+		}
+
+		return policy;
+	}
+}
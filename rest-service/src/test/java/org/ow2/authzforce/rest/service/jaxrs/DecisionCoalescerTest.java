@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.jaxrs;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.testng.annotations.Test;
+
+/**
+ * Tests the sharing of an evaluation's result or error by {@link DecisionCoalescer}
+ */
+public class DecisionCoalescerTest
+{
+	/*
+	 * Runs an evaluation blocked until released, and an identical request joining it; returns the outcomes of both
+	 */
+	private static Future<?>[] evaluateConcurrently(final DecisionCoalescer<String> coalescer, final Supplier<String> evaluation, final AtomicInteger evaluationCount) throws InterruptedException
+	{
+		final CountDownLatch evaluationStarted = new CountDownLatch(1);
+		final CountDownLatch evaluationRelease = new CountDownLatch(1);
+		final Supplier<String> blockingEvaluation = () -> {
+			evaluationCount.incrementAndGet();
+			evaluationStarted.countDown();
+			try
+			{
+				evaluationRelease.await();
+			}
+			catch (final InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+
+			return evaluation.get();
+		};
+
+		final ExecutorService executor = Executors.newFixedThreadPool(2);
+		try
+		{
+			final Future<String> first = executor.submit(() -> coalescer.evaluate("request", blockingEvaluation));
+			assertTrue(evaluationStarted.await(5, TimeUnit.SECONDS), "Evaluation not started");
+			final Future<String> second = executor.submit(() -> coalescer.evaluate("request", blockingEvaluation));
+			// let the second request join the evaluation in progress
+			Thread.sleep(200);
+			evaluationRelease.countDown();
+			return new Future<?>[] { first, second };
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void shareResult() throws Exception
+	{
+		final AtomicInteger evaluationCount = new AtomicInteger(0);
+		final Future<?>[] outcomes = evaluateConcurrently(new DecisionCoalescer<>(60000), () -> "Permit", evaluationCount);
+		for (final Future<?> outcome : outcomes)
+		{
+			assertEquals(outcome.get(5, TimeUnit.SECONDS), "Permit");
+		}
+
+		assertEquals(evaluationCount.get(), 1, "Number of evaluations");
+	}
+
+	@Test
+	public void shareError() throws Exception
+	{
+		final AtomicInteger evaluationCount = new AtomicInteger(0);
+		final Error error = new AssertionError("Evaluation error");
+		final Future<?>[] outcomes = evaluateConcurrently(new DecisionCoalescer<>(60000), () -> {
+			throw error;
+		}, evaluationCount);
+		for (final Future<?> outcome : outcomes)
+		{
+			try
+			{
+				// the request that joined the evaluation must not wait forever
+				outcome.get(5, TimeUnit.SECONDS);
+				fail("Evaluation error not propagated");
+			}
+			catch (final ExecutionException e)
+			{
+				assertSame(e.getCause(), error);
+			}
+		}
+
+		assertEquals(evaluationCount.get(), 1, "Number of evaluations");
+	}
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.tracing;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.cxf.bus.managers.PhaseManagerImpl;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.ExchangeImpl;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageImpl;
+import org.apache.cxf.phase.AbstractPhaseInterceptor;
+import org.apache.cxf.phase.Phase;
+import org.apache.cxf.phase.PhaseInterceptorChain;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the W3C traceparent header processing and the sampling of {@link Tracer}, and the server/child spans created by the tracing interceptors for a request
+ */
+public class TracerTest
+{
+	private static final String TRACE_ID = "4bf92f3577b34da6a3ce929d0e0e4736";
+	private static final String PARENT_SPAN_ID = "00f067aa0ba902b7";
+	private static final String SAMPLED_TRACEPARENT = "00-" + TRACE_ID + "-" + PARENT_SPAN_ID + "-01";
+
+	private InMemorySpanExporter exporter = null;
+
+	@BeforeMethod
+	public void setUp()
+	{
+		exporter = new InMemorySpanExporter(10);
+	}
+
+	private static void assertRootSpan(final Span span)
+	{
+		assertTrue(span.isRecording(), "Request without valid traceparent not sampled (sampling ratio = 1)");
+		assertNull(span.getParentSpanId(), "Parent span ID of a span without valid traceparent");
+		assertTrue(span.getTraceId().matches("[0-9a-f]{32}"), "Invalid trace ID: " + span.getTraceId());
+		assertNotEquals(span.getTraceId(), TRACE_ID, "Trace ID taken from an invalid traceparent");
+	}
+
+	@Test
+	public void startServerSpanWithSampledParent()
+	{
+		final Span span = new Tracer(exporter, 1).startServerSpan(SAMPLED_TRACEPARENT, "test");
+		assertTrue(span.isRecording());
+		assertEquals(span.getTraceId(), TRACE_ID);
+		assertEquals(span.getParentSpanId(), PARENT_SPAN_ID);
+		assertTrue(span.getSpanId().matches("[0-9a-f]{16}"), "Invalid span ID: " + span.getSpanId());
+		assertNotEquals(span.getSpanId(), PARENT_SPAN_ID);
+	}
+
+	@Test
+	public void startServerSpanWithSampledParentWhatever0Ratio()
+	{
+		// ratio 0 disables tracing altogether
+		assertSame(new Tracer(exporter, 0).startServerSpan(SAMPLED_TRACEPARENT, "test"), Span.NOOP);
+	}
+
+	@Test
+	public void startServerSpanWithFutureVersion()
+	{
+		// future versions may append fields
+		final Span span = new Tracer(exporter, 1).startServerSpan("cc-" + TRACE_ID + "-" + PARENT_SPAN_ID + "-01-whatever", "test");
+		assertEquals(span.getTraceId(), TRACE_ID);
+		assertEquals(span.getParentSpanId(), PARENT_SPAN_ID);
+	}
+
+	@Test
+	public void startServerSpanWithUnsampledParent()
+	{
+		assertSame(new Tracer(exporter, 1).startServerSpan("00-" + TRACE_ID + "-" + PARENT_SPAN_ID + "-00", "test"), Span.NOOP, "Request with unsampled parent sampled");
+		// only the 'sampled' flag matters
+		assertSame(new Tracer(exporter, 1).startServerSpan("00-" + TRACE_ID + "-" + PARENT_SPAN_ID + "-02", "test"), Span.NOOP, "Request with unsampled parent sampled");
+	}
+
+	@DataProvider(name = "invalidTraceparents")
+	public Object[][] invalidTraceparents()
+	{
+		return new Object[][] {
+		        // missing
+		        { null }, { "" },
+		        // malformed
+		        { "garbage" }, { "00-" + TRACE_ID + "-" + PARENT_SPAN_ID }, { "00-" + TRACE_ID + "-" + PARENT_SPAN_ID + "-1" }, { "00_" + TRACE_ID + "_" + PARENT_SPAN_ID + "_01" },
+		        { "00-" + TRACE_ID.toUpperCase() + "-" + PARENT_SPAN_ID + "-01" }, { "00-" + TRACE_ID + "-" + PARENT_SPAN_ID + "-0g" }, { "00-" + TRACE_ID + "0-" + PARENT_SPAN_ID + "-01" },
+		        // version 00 does not allow extra fields
+		        { SAMPLED_TRACEPARENT + "-extra" },
+		        // future version but extra fields not separated with a dash
+		        { "01-" + TRACE_ID + "-" + PARENT_SPAN_ID + "-01extra" },
+		        // invalid version
+		        { "ff-" + TRACE_ID + "-" + PARENT_SPAN_ID + "-01" },
+		        // all-zero IDs
+		        { "00-00000000000000000000000000000000-" + PARENT_SPAN_ID + "-01" }, { "00-" + TRACE_ID + "-0000000000000000-01" } };
+	}
+
+	@Test(dataProvider = "invalidTraceparents")
+	public void startServerSpanWithInvalidTraceparent(final String traceparent)
+	{
+		// invalid traceparent ignored, i.e. new trace
+		assertRootSpan(new Tracer(exporter, 1).startServerSpan(traceparent, "test"));
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void createTracerWithInvalidSamplingRatio()
+	{
+		new Tracer(exporter, 1.5);
+	}
+
+	@Test
+	public void sampleWithRatio()
+	{
+		final Tracer disabledTracer = new Tracer(exporter, 0);
+		assertFalse(disabledTracer.isEnabled());
+		assertSame(disabledTracer.startServerSpan(null, "test"), Span.NOOP);
+
+		final Tracer tracer = new Tracer(exporter, 0.25);
+		assertTrue(tracer.isEnabled());
+		final int requestCount = 20000;
+		int sampledCount = 0;
+		for (int i = 0; i < requestCount; i++)
+		{
+			if (tracer.startServerSpan(null, "test").isRecording())
+			{
+				sampledCount++;
+			}
+		}
+
+		// standard deviation of the ratio ~ 0.003
+		final double actualRatio = (double) sampledCount / requestCount;
+		assertTrue(actualRatio > 0.22 && actualRatio < 0.28, "Actual sampling ratio too far from 0.25: " + actualRatio);
+	}
+
+	@Test
+	public void traceRequestThroughInterceptors()
+	{
+		final Tracer tracer = new Tracer(exporter, 1);
+		final PhaseManagerImpl phaseManager = new PhaseManagerImpl();
+
+		// inbound: server span started on RECEIVE, child span (e.g. PDP evaluation) when the request is processed
+		final PhaseInterceptorChain inChain = new PhaseInterceptorChain(phaseManager.getInPhases());
+		inChain.add(new TracingInInterceptor(tracer));
+		inChain.add(new AbstractPhaseInterceptor<Message>(Phase.INVOKE)
+		{
+			@Override
+			public void handleMessage(final Message message)
+			{
+				Tracer.startChildSpan("pdp.evaluate").end();
+			}
+		});
+
+		final Exchange exchange = new ExchangeImpl();
+		final Message inMessage = new MessageImpl();
+		inMessage.setExchange(exchange);
+		exchange.setInMessage(inMessage);
+		final Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		headers.put(Tracer.TRACEPARENT_HEADER, Collections.singletonList(SAMPLED_TRACEPARENT));
+		inMessage.put(Message.PROTOCOL_HEADERS, headers);
+		inMessage.put(Message.HTTP_REQUEST_METHOD, "POST");
+		inMessage.put(Message.REQUEST_URI, "/domains/test/pdp");
+		inChain.doIntercept(inMessage);
+
+		// outbound: server span ended after the response is sent
+		final PhaseInterceptorChain outChain = new PhaseInterceptorChain(phaseManager.getOutPhases());
+		outChain.add(new TracingOutInterceptor(false));
+		final Message outMessage = new MessageImpl();
+		outMessage.setExchange(exchange);
+		exchange.setOutMessage(outMessage);
+		outMessage.put(Message.RESPONSE_CODE, 200);
+		outChain.doIntercept(outMessage);
+
+		final List<Span> spans = exporter.getSpans();
+		assertEquals(spans.size(), 2, "Wrong number of exported spans");
+		final Span childSpan = spans.get(0);
+		final Span serverSpan = spans.get(1);
+		assertEquals(serverSpan.getTraceId(), TRACE_ID, "Trace ID of the server span not taken from traceparent");
+		assertEquals(serverSpan.getParentSpanId(), PARENT_SPAN_ID, "Parent span ID of the server span not taken from traceparent");
+		assertEquals(serverSpan.getAttributes().get("http.response.status_code"), 200);
+		assertFalse(serverSpan.isError());
+		assertEquals(childSpan.getName(), "pdp.evaluate");
+		assertEquals(childSpan.getTraceId(), TRACE_ID, "Trace ID of the child span");
+		assertEquals(childSpan.getParentSpanId(), serverSpan.getSpanId(), "Parent span ID of the child span");
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.rest.service.upgrade;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+
+import javax.xml.transform.TransformerConfigurationException;
+
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.PolicySet;
+import org.ow2.authzforce.core.pap.api.dao.AuthzPolicy;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the XACML 2.0 policy conversion of {@link Xacml2PolicyConverter}, its parser limits and the size limit of its cache
+ */
+public class Xacml2PolicyConverterTest
+{
+	private static final int MAX_ELEMENT_DEPTH = 10;
+	private static final int MAX_CHILD_ELEMENTS = 5;
+	private static final int MAX_ATTRIBUTE_COUNT = 5;
+	private static final int MAX_ATTRIBUTE_SIZE = 100;
+	private static final int MAX_TEXT_LENGTH = 100;
+
+	private static final String POLICY_START = "<Policy xmlns=\"urn:oasis:names:tc:xacml:2.0:policy:schema:os\" PolicyId=\"urn:example:xacml2:policy\" Version=\"1.0\""
+			+ " RuleCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:rule-combining-algorithm:permit-overrides\">";
+
+	private static final String POLICY_END = "<Target /><Rule RuleId=\"deny\" Effect=\"Deny\" /></Policy>";
+
+	private static byte[] newPolicy(final String description)
+	{
+		return (POLICY_START + "<Description>" + description + "</Description>" + POLICY_END).getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static Xacml2PolicyConverter newConverter(final long cacheMaxBytes) throws TransformerConfigurationException
+	{
+		return new Xacml2PolicyConverter(1, cacheMaxBytes, MAX_ELEMENT_DEPTH, MAX_CHILD_ELEMENTS, MAX_ATTRIBUTE_COUNT, MAX_ATTRIBUTE_SIZE, MAX_TEXT_LENGTH);
+	}
+
+	@Test
+	public void convertPolicy() throws TransformerConfigurationException
+	{
+		final PolicySet policySet = newConverter(0).convert(newPolicy("test")).toXacml();
+		assertEquals(policySet.getPolicySetId(), "urn:example:xacml2:policy");
+		assertEquals(policySet.getVersion(), "1.0");
+		assertEquals(policySet.getPolicySetsAndPoliciesAndPolicySetIdReferences().size(), 1);
+	}
+
+	@DataProvider(name = "inputsExceedingLimits")
+	public Object[][] inputsExceedingLimits()
+	{
+		final StringBuilder deepElements = new StringBuilder(POLICY_START);
+		for (int i = 0; i < MAX_ELEMENT_DEPTH; i++)
+		{
+			deepElements.append("<Target>");
+		}
+
+		for (int i = 0; i < MAX_ELEMENT_DEPTH; i++)
+		{
+			deepElements.append("</Target>");
+		}
+
+		deepElements.append(POLICY_END);
+
+		final StringBuilder manyChildElements = new StringBuilder(POLICY_START).append("<Target />");
+		for (int i = 0; i < MAX_CHILD_ELEMENTS; i++)
+		{
+			manyChildElements.append("<Rule RuleId=\"deny").append(i).append("\" Effect=\"Deny\" />");
+		}
+
+		manyChildElements.append("</Policy>");
+
+		final String manyAttributes = POLICY_START.replace(" Version=\"1.0\"", " Version=\"1.0\" a=\"1\" b=\"2\" c=\"3\"") + POLICY_END;
+		final String largeAttribute = POLICY_START.replace("urn:example:xacml2:policy", "urn:example:" + "x".repeat(MAX_ATTRIBUTE_SIZE)) + POLICY_END;
+		// text split by an entity reference, still a single text node
+		final String largeText = new String(newPolicy("x".repeat(MAX_TEXT_LENGTH / 2) + "&amp;" + "x".repeat(MAX_TEXT_LENGTH / 2)), StandardCharsets.UTF_8);
+		return new Object[][] { { deepElements.toString(), "depth" }, { manyChildElements.toString(), "child elements" }, { manyAttributes, "attributes" },
+				{ largeAttribute, "attribute size" }, { largeText, "text length" } };
+	}
+
+	@Test(dataProvider = "inputsExceedingLimits")
+	public void convertInputExceedingLimit(final String xacml2Policy, final String limitName) throws TransformerConfigurationException
+	{
+		try
+		{
+			newConverter(0).convert(xacml2Policy.getBytes(StandardCharsets.UTF_8));
+			fail("Input exceeding the limit on " + limitName + " accepted");
+		}
+		catch (final IllegalArgumentException e)
+		{
+			Throwable cause = e;
+			while (cause.getCause() != null && !cause.getMessage().startsWith("Maximum"))
+			{
+				cause = cause.getCause();
+			}
+
+			assertTrue(cause.getMessage().startsWith("Maximum") && cause.getMessage().contains(limitName), "Unexpected error: " + cause);
+		}
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void convertXacml3Policy() throws TransformerConfigurationException
+	{
+		newConverter(0).convert(POLICY_START.replace("xacml:2.0:policy:schema:os", "xacml:3.0:core:schema:wd-17").concat(POLICY_END).getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void cacheBoundedBySize() throws TransformerConfigurationException
+	{
+		final byte[] policy1 = newPolicy("policy1");
+		final byte[] policy2 = newPolicy("policy2");
+		// room for one policy only
+		final Xacml2PolicyConverter converter = newConverter(policy1.length + policy2.length - 1);
+		final AuthzPolicy convertedPolicy1 = converter.convert(policy1);
+		assertSame(converter.convert(policy1.clone()), convertedPolicy1, "Conversion result not cached");
+
+		// policy1 evicted
+		final AuthzPolicy convertedPolicy2 = converter.convert(policy2);
+		assertSame(converter.convert(policy2), convertedPolicy2, "Conversion result not cached");
+		assertNotSame(converter.convert(policy1), convertedPolicy1, "Least recently used conversion result not evicted");
+	}
+
+	@Test
+	public void cacheSkipsLargerInput() throws TransformerConfigurationException
+	{
+		final byte[] policy = newPolicy("policy");
+		final Xacml2PolicyConverter converter = newConverter(policy.length - 1);
+		assertNotSame(converter.convert(policy), converter.convert(policy), "Input larger than the cache cached");
+	}
+}
@@ -0,0 +1,457 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.upgrader;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Upgrades the domain template and the domains of an old AuthzForce Server installation (data and conf directories) to a new one, equivalent to the Ant script (build.xml) but much faster on large
+ * numbers of domains:
+ * <ul>
+ * <li>The XSLT stylesheets are compiled once (Saxon {@link Templates}) and reused by all the transformations;</li>
+ * <li>Domains are upgraded in parallel (one thread per available processor by default), the domain directories being listed and submitted as the upgrade goes, so the memory use does not depend on
+ * the number of domains;</li>
+ * <li>Each transformation reads the input file and writes the output file directly (no intermediate DOM tree or string), the output being written to a temporary file first and then moved to the final
+ * location, so that an interrupted upgrade never leaves a partially written file;</li>
+ * <li>The upgrade is resumable: each domain is recorded in a checkpoint file once completely upgraded and skipped if the upgrade is run again with the same checkpoint file;</li>
+ * <li>The progress (upgraded/failed domains, throughput, estimated remaining time) is logged at regular intervals.</li>
+ * </ul>
+ * A domain that fails to be upgraded is logged and skipped (not recorded in the checkpoint file), the other domains are still upgraded.
+ * <p>
+ * Command-line usage (same properties as the Ant script, plus optional ones):
+ * 
+ * <pre>
+ * java -Dold.version=9.0.0 -Dold.install.dir=/path/to/old -Dnew.install.dir=/path/to/new [-Dxslt.dir=xslt] [-Dupgrade.threads=8] [-Dupgrade.checkpoint.file=/path/to/checkpoint] \
+ *   [-Dupgrade.progress.interval=10] -cp "lib/*" org.ow2.authzforce.upgrader.DomainsUpgrader
+ * </pre>
+ */
+public final class DomainsUpgrader
+{
+	private static final Logger LOGGER = LoggerFactory.getLogger(DomainsUpgrader.class);
+
+	private static final Pattern OLD_VERSION_9_10_PATTERN = Pattern.compile("(9|10)\\..*");
+
+	/*
+	 * Checkpoint entry for the domain template (cannot be a domain directory name, which is base64url-encoded)
+	 */
+	private static final String DOMAIN_TMPL_CHECKPOINT_ITEM = "conf/domain.tmpl";
+
+	private static final String PDP_FILENAME = "pdp.xml";
+	private static final String DOMAIN_PROPERTIES_FILENAME = "properties.xml";
+	private static final String POLICIES_DIRNAME = "policies";
+
+	/**
+	 * Result of an upgrade
+	 */
+	public static final class Result
+	{
+		private final int upgradedCount;
+		private final int skippedCount;
+		private final int failedCount;
+
+		private Result(final int upgradedCount, final int skippedCount, final int failedCount)
+		{
+			this.upgradedCount = upgradedCount;
+			this.skippedCount = skippedCount;
+			this.failedCount = failedCount;
+		}
+
+		/**
+		 * @return number of domains upgraded by this upgrade
+		 */
+		public int getUpgradedCount()
+		{
+			return upgradedCount;
+		}
+
+		/**
+		 * @return number of domains skipped because already upgraded according to the checkpoint file
+		 */
+		public int getSkippedCount()
+		{
+			return skippedCount;
+		}
+
+		/**
+		 * @return number of domains that failed to be upgraded
+		 */
+		public int getFailedCount()
+		{
+			return failedCount;
+		}
+	}
+
+	private final Path oldInstallDir;
+	private final Path newInstallDir;
+	private final Templates pdpUpgradeTemplates;
+	private final Templates domainPropertiesUpgradeTemplates;
+	private final Map<String, String> xsltParameters;
+	private final int parallelism;
+	private final Path checkpointFile;
+	private final long progressIntervalMillis;
+
+	/**
+	 * Creates the upgrader and compiles the XSLT stylesheets
+	 *
+	 * @param oldVersion
+	 *            old AuthzForce Server version (9.x or 10.x)
+	 * @param oldInstallDir
+	 *            old installation directory, containing the 'conf' and 'data' folders
+	 * @param newInstallDir
+	 *            new installation directory, containing the 'conf' and 'data' folders
+	 * @param xsltDir
+	 *            directory of the XSLT stylesheets, i.e. containing one subdirectory per old version range (e.g. '9.x,10.x')
+	 * @param xsltParameters
+	 *            XSLT parameters passed to all transformations (same as the Ant script), in addition to 'basedir' (old domain directory)
+	 * @param parallelism
+	 *            maximum number of domains upgraded in parallel (number of threads); if not positive, the number of available processors is used
+	 * @param checkpointFile
+	 *            checkpoint file (created if it does not exist) recording the domains already upgraded, for resuming an interrupted upgrade
+	 * @param progressIntervalMillis
+	 *            interval between two progress reports (ms)
+	 * @throws IllegalArgumentException
+	 *             invalid old version or installation directory
+	 * @throws TransformerConfigurationException
+	 *             invalid XSLT stylesheet
+	 */
+	public DomainsUpgrader(final String oldVersion, final Path oldInstallDir, final Path newInstallDir, final Path xsltDir, final Map<String, String> xsltParameters, final int parallelism,
+			final Path checkpointFile, final long progressIntervalMillis) throws TransformerConfigurationException
+	{
+		if (oldVersion == null || !OLD_VERSION_9_10_PATTERN.matcher(oldVersion).matches())
+		{
+			throw new IllegalArgumentException("Invalid old version: '" + oldVersion + "' does not match one of these patterns: 9.x, 10.x");
+		}
+
+		if (!Files.isDirectory(oldInstallDir))
+		{
+			throw new IllegalArgumentException("Invalid old installation directory: '" + oldInstallDir + "' is not a directory");
+		}
+
+		if (!Files.isDirectory(newInstallDir))
+		{
+			throw new IllegalArgumentException("Invalid new installation directory: '" + newInstallDir + "' is not a directory");
+		}
+
+		this.oldInstallDir = oldInstallDir;
+		this.newInstallDir = newInstallDir;
+		this.xsltParameters = xsltParameters == null ? Map.of() : Map.copyOf(xsltParameters);
+		this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+		this.checkpointFile = checkpointFile;
+		this.progressIntervalMillis = progressIntervalMillis;
+
+		final Path versionXsltDir = xsltDir.resolve("9.x,10.x");
+		// Saxon required for XSLT 2.0
+		final TransformerFactory transformerFactory = new net.sf.saxon.TransformerFactoryImpl();
+		this.pdpUpgradeTemplates = transformerFactory.newTemplates(new StreamSource(versionXsltDir.resolve("domain-pdp-upgrade.xsl").toFile()));
+		this.domainPropertiesUpgradeTemplates = transformerFactory.newTemplates(new StreamSource(versionXsltDir.resolve("domain-properties-upgrade.xsl").toFile()));
+	}
+
+	private void transform(final Templates templates, final Path oldDomainDir, final Path inputFile, final Path outputFile) throws TransformerException, IOException
+	{
+		final Transformer transformer = templates.newTransformer();
+		transformer.setParameter("basedir", oldDomainDir.toString());
+		xsltParameters.forEach(transformer::setParameter);
+		final Path tmpFile = outputFile.resolveSibling(outputFile.getFileName() + ".tmp");
+		transformer.transform(new StreamSource(inputFile.toFile()), new StreamResult(tmpFile.toFile()));
+		Files.move(tmpFile, outputFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static void copyDir(final Path srcDir, final Path destDir) throws IOException
+	{
+		Files.walkFileTree(srcDir, new SimpleFileVisitor<>()
+		{
+			@Override
+			public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) throws IOException
+			{
+				Files.createDirectories(destDir.resolve(srcDir.relativize(dir).toString()));
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException
+			{
+				Files.copy(file, destDir.resolve(srcDir.relativize(file).toString()), StandardCopyOption.REPLACE_EXISTING);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	private static void deleteRecursively(final Path path) throws IOException
+	{
+		if (!Files.exists(path))
+		{
+			return;
+		}
+
+		Files.walkFileTree(path, new SimpleFileVisitor<>()
+		{
+			@Override
+			public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException
+			{
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(final Path dir, final IOException exc) throws IOException
+			{
+				if (exc != null)
+				{
+					throw exc;
+				}
+
+				Files.delete(dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/*
+	 * Same as target 'upgrade-domain-tmpl' of the Ant script
+	 */
+	private void upgradeDomainTemplate() throws TransformerException, IOException
+	{
+		final Path oldDomainDir = oldInstallDir.resolve("conf/domain.tmpl");
+		final Path newDomainDir = newInstallDir.resolve("conf/domain.tmpl");
+		LOGGER.info("Upgrading domain template directory '{}' --> '{}'", oldDomainDir, newDomainDir);
+		final Path backupDir = newInstallDir.resolve("conf/domain.tmpl.old");
+		// if the backup exists, the upgrade was interrupted and the backup is the original one
+		if (Files.exists(backupDir))
+		{
+			LOGGER.info("Backup of the current domain template directory already exists: '{}'", backupDir);
+		}
+		else
+		{
+			LOGGER.info("Creating backup of the current domain template directory for recovery: '{}'", backupDir);
+			copyDir(newDomainDir, backupDir);
+		}
+
+		deleteRecursively(newDomainDir.resolve(POLICIES_DIRNAME));
+		Files.deleteIfExists(newDomainDir.resolve(PDP_FILENAME));
+		final Path oldPoliciesDir = oldDomainDir.resolve(POLICIES_DIRNAME);
+		if (Files.isDirectory(oldPoliciesDir))
+		{
+			copyDir(oldPoliciesDir, newDomainDir.resolve(POLICIES_DIRNAME));
+		}
+
+		transform(pdpUpgradeTemplates, oldDomainDir, oldDomainDir.resolve(PDP_FILENAME), newDomainDir.resolve(PDP_FILENAME));
+	}
+
+	/*
+	 * Same as target 'upgrade-domain' of the Ant script
+	 */
+	private void upgradeDomain(final Path oldDomainDir, final Path newDomainDir) throws TransformerException, IOException
+	{
+		LOGGER.debug("Upgrading domain directory '{}' --> '{}'", oldDomainDir, newDomainDir);
+		Files.createDirectories(newDomainDir);
+		final Path oldPoliciesDir = oldDomainDir.resolve(POLICIES_DIRNAME);
+		if (Files.isDirectory(oldPoliciesDir))
+		{
+			copyDir(oldPoliciesDir, newDomainDir.resolve(POLICIES_DIRNAME));
+		}
+
+		transform(domainPropertiesUpgradeTemplates, oldDomainDir, oldDomainDir.resolve(DOMAIN_PROPERTIES_FILENAME), newDomainDir.resolve(DOMAIN_PROPERTIES_FILENAME));
+		transform(pdpUpgradeTemplates, oldDomainDir, oldDomainDir.resolve(PDP_FILENAME), newDomainDir.resolve(PDP_FILENAME));
+	}
+
+	private static long countDirectories(final Path dir) throws IOException
+	{
+		long count = 0;
+		try (DirectoryStream<Path> dirStream = Files.newDirectoryStream(dir, Files::isDirectory))
+		{
+			for (final Path ignored : dirStream)
+			{
+				count++;
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Runs the upgrade: domain template, then all the domains in parallel
+	 *
+	 * @return upgrade result
+	 * @throws IOException
+	 *             error reading/writing the checkpoint file or listing the domains
+	 * @throws TransformerException
+	 *             error upgrading the domain template
+	 * @throws InterruptedException
+	 *             interrupted while waiting for the domain upgrades to complete
+	 */
+	public Result upgrade() throws IOException, TransformerException, InterruptedException
+	{
+		try (UpgradeCheckpoint checkpoint = new UpgradeCheckpoint(checkpointFile))
+		{
+			if (checkpoint.getDoneCount() > 0)
+			{
+				LOGGER.info("Resuming upgrade from checkpoint file '{}' ({} items already upgraded)", checkpointFile, checkpoint.getDoneCount());
+			}
+
+			if (!checkpoint.isDone(DOMAIN_TMPL_CHECKPOINT_ITEM))
+			{
+				upgradeDomainTemplate();
+				checkpoint.markDone(DOMAIN_TMPL_CHECKPOINT_ITEM);
+			}
+
+			final Path oldDomainsDir = oldInstallDir.resolve("data/domains");
+			final Path newDomainsDir = newInstallDir.resolve("data/domains");
+			final long totalCount = countDirectories(oldDomainsDir);
+			LOGGER.info("Upgrading {} domains from '{}' to '{}' ({} threads)", totalCount, oldDomainsDir, newDomainsDir, parallelism);
+
+			final AtomicInteger upgradedCount = new AtomicInteger();
+			final AtomicInteger failedCount = new AtomicInteger();
+			final AtomicInteger skippedCount = new AtomicInteger();
+			final long startNanos = System.nanoTime();
+			final ScheduledExecutorService progressReporter = Executors.newSingleThreadScheduledExecutor(task -> {
+				final Thread thread = new Thread(task, "authzforce-upgrade-progress");
+				thread.setDaemon(true);
+				return thread;
+			});
+			progressReporter.scheduleAtFixedRate(() -> logProgress(totalCount, upgradedCount.get(), skippedCount.get(), failedCount.get(), startNanos), progressIntervalMillis, progressIntervalMillis,
+					TimeUnit.MILLISECONDS);
+
+			final ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+			// bounds the number of submitted domains waiting for a thread, so that the directory listing does not get ahead of the upgrade
+			final Semaphore pendingDomains = new Semaphore(parallelism * 2);
+			try (DirectoryStream<Path> oldDomainDirs = Files.newDirectoryStream(oldDomainsDir, Files::isDirectory))
+			{
+				for (final Path oldDomainDir : oldDomainDirs)
+				{
+					final String domainDirName = oldDomainDir.getFileName().toString();
+					if (checkpoint.isDone(domainDirName))
+					{
+						skippedCount.incrementAndGet();
+						continue;
+					}
+
+					pendingDomains.acquire();
+					executor.execute(() -> {
+						try
+						{
+							upgradeDomain(oldDomainDir, newDomainsDir.resolve(domainDirName));
+							checkpoint.markDone(domainDirName);
+							upgradedCount.incrementAndGet();
+						}
+						catch (final TransformerException | IOException | RuntimeException e)
+						{
+							failedCount.incrementAndGet();
+							LOGGER.error("Failed to upgrade domain directory '{}'", oldDomainDir, e);
+						}
+						finally
+						{
+							pendingDomains.release();
+						}
+					});
+				}
+			}
+			finally
+			{
+				executor.shutdown();
+				executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+				progressReporter.shutdownNow();
+			}
+
+			logProgress(totalCount, upgradedCount.get(), skippedCount.get(), failedCount.get(), startNanos);
+			return new Result(upgradedCount.get(), skippedCount.get(), failedCount.get());
+		}
+	}
+
+	private static void logProgress(final long totalCount, final int upgradedCount, final int skippedCount, final int failedCount, final long startNanos)
+	{
+		final long elapsedMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+		final double domainsPerSec = upgradedCount * 1000.0 / elapsedMillis;
+		final long remainingCount = totalCount - upgradedCount - skippedCount - failedCount;
+		final String eta = remainingCount == 0 ? "0 s" : domainsPerSec > 0 ? (long) (remainingCount / domainsPerSec) + " s" : "unknown";
+		LOGGER.info("Domains upgraded: {}/{} (already upgraded: {}, failed: {}), {} domains/s, remaining time: {}", upgradedCount + skippedCount, totalCount, skippedCount, failedCount,
+				String.format("%.1f", domainsPerSec), eta);
+	}
+
+	/*
+	 * Collects the XSLT parameters of the Ant script from system properties with the same names as the Ant properties (if defined)
+	 */
+	private static Map<String, String> getXsltParametersFromSystemProperties()
+	{
+		final Map<String, String> params = new HashMap<>();
+		final String[][] antPropertyToXsltParam = { { "ignore.domain.name", "ignoreDomainName" }, { "pdp.max.var.ref.depth", "maxVariableRefDepth" },
+				{ "pdp.max.policy.ref.depth", "maxPolicyRefDepth" }, { "pdp.request.preproc", "requestPreproc" } };
+		for (final String[] mapping : antPropertyToXsltParam)
+		{
+			final String value = System.getProperty(mapping[0]);
+			if (value != null)
+			{
+				params.put(mapping[1], value);
+			}
+		}
+
+		return params;
+	}
+
+	/**
+	 * Command-line entry point, configured with system properties (see class description). Exits with status 1 if any domain failed to be upgraded.
+	 *
+	 * @param args
+	 *            ignored
+	 * @throws Exception
+	 *             upgrade error
+	 */
+	public static void main(final String[] args) throws Exception
+	{
+		final String newInstallDirPath = System.getProperty("new.install.dir", "");
+		final Path newInstallDir = Path.of(newInstallDirPath);
+		final String checkpointFilePath = System.getProperty("upgrade.checkpoint.file");
+		final DomainsUpgrader upgrader = new DomainsUpgrader(System.getProperty("old.version"), Path.of(System.getProperty("old.install.dir", "")), newInstallDir,
+				Path.of(System.getProperty("xslt.dir", "xslt")), getXsltParametersFromSystemProperties(), Integer.getInteger("upgrade.threads", 0),
+				checkpointFilePath == null ? newInstallDir.resolve("upgrade-checkpoint.txt") : Path.of(checkpointFilePath),
+				TimeUnit.SECONDS.toMillis(Long.getLong("upgrade.progress.interval", 10)));
+		final Result result = upgrader.upgrade();
+		if (result.getFailedCount() > 0)
+		{
+			LOGGER.error("{} domains failed to be upgraded (see errors above). Fix the issues and run the upgrade again with the same checkpoint file to upgrade them.", result.getFailedCount());
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.upgrader;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Checkpoint file of an upgrade, i.e. the list of items (domain directory names) already upgraded, one per line, so that an interrupted upgrade can be resumed where it stopped. Each item is appended
+ * (and flushed) once it is completely upgraded. Thread-safe.
+ */
+final class UpgradeCheckpoint implements AutoCloseable
+{
+	private final Set<String> doneItems = ConcurrentHashMap.newKeySet();
+	private final BufferedWriter writer;
+
+	/**
+	 * Opens the checkpoint file, creating it if it does not exist
+	 *
+	 * @param file
+	 *            checkpoint file
+	 * @throws IOException
+	 *             error reading/opening the file
+	 */
+	UpgradeCheckpoint(final Path file) throws IOException
+	{
+		if (Files.exists(file))
+		{
+			try (Stream<String> lines = Files.lines(file, StandardCharsets.UTF_8))
+			{
+				lines.filter(line -> !line.isEmpty()).forEach(doneItems::add);
+			}
+		}
+
+		this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+	}
+
+	/**
+	 * @param item
+	 *            item name
+	 * @return true iff the item has been marked done (in this upgrade or a previous one)
+	 */
+	boolean isDone(final String item)
+	{
+		return doneItems.contains(item);
+	}
+
+	/**
+	 * @return number of items done
+	 */
+	int getDoneCount()
+	{
+		return doneItems.size();
+	}
+
+	/**
+	 * Marks an item as done
+	 *
+	 * @param item
+	 *            item name (must not contain line separators)
+	 * @throws IOException
+	 *             error writing the checkpoint file
+	 */
+	void markDone(final String item) throws IOException
+	{
+		if (!doneItems.add(item))
+		{
+			return;
+		}
+
+		synchronized (writer)
+		{
+			writer.write(item);
+			writer.newLine();
+			writer.flush();
+		}
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		synchronized (writer)
+		{
+			writer.close();
+		}
+	}
+}
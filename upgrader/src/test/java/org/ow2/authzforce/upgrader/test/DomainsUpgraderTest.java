@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.upgrader.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.ow2.authzforce.upgrader.DomainsUpgrader;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+/**
+ * Tests the Java upgrader against the result of the Ant upgrader (run before the tests by the maven-antrun-plugin) on the same data
+ */
+public class DomainsUpgraderTest
+{
+	private static final Path OLD_INSTALL_DIR = Path.of("src/test/server/9.x,10.x");
+	private static final Path ANT_UPGRADED_INSTALL_DIR = Path.of("target/server/from-9.x,10.x");
+	private static final Path NEW_INSTALL_DIR = Path.of("target/server/java-from-9.x,10.x");
+	private static final Path CHECKPOINT_FILE = Path.of("target/server/java-from-9.x,10.x.checkpoint");
+
+	private long oldDomainCount;
+
+	private static void copyDir(final Path srcDir, final Path destDir) throws IOException
+	{
+		try (Stream<Path> paths = Files.walk(srcDir))
+		{
+			for (final Path path : paths.collect(Collectors.toList()))
+			{
+				final Path destPath = destDir.resolve(srcDir.relativize(path).toString());
+				if (Files.isDirectory(path))
+				{
+					Files.createDirectories(destPath);
+				}
+				else
+				{
+					Files.copy(path, destPath);
+				}
+			}
+		}
+	}
+
+	private static void deleteDir(final Path dir) throws IOException
+	{
+		if (!Files.exists(dir))
+		{
+			return;
+		}
+
+		try (Stream<Path> paths = Files.walk(dir))
+		{
+			for (final Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList()))
+			{
+				Files.delete(path);
+			}
+		}
+	}
+
+	private static DomainsUpgrader newUpgrader() throws Exception
+	{
+		return new DomainsUpgrader("9.0.0", OLD_INSTALL_DIR, NEW_INSTALL_DIR, Path.of("src/main/xslt"), Collections.emptyMap(), 2, CHECKPOINT_FILE, 1000);
+	}
+
+	/*
+	 * Removes the whitespace-only text nodes and comments, so that XML files differing only by indentation are equal
+	 */
+	private static void normalize(final Node node)
+	{
+		Node child = node.getFirstChild();
+		while (child != null)
+		{
+			final Node next = child.getNextSibling();
+			if (child.getNodeType() == Node.COMMENT_NODE || child.getNodeType() == Node.TEXT_NODE && child.getNodeValue().isBlank())
+			{
+				node.removeChild(child);
+			}
+			else
+			{
+				normalize(child);
+			}
+
+			child = next;
+		}
+	}
+
+	private static Document parse(final DocumentBuilder docBuilder, final Path file) throws Exception
+	{
+		final Document doc = docBuilder.parse(file.toFile());
+		normalize(doc);
+		return doc;
+	}
+
+	@BeforeClass
+	public void setUp() throws IOException
+	{
+		deleteDir(NEW_INSTALL_DIR);
+		Files.deleteIfExists(CHECKPOINT_FILE);
+		copyDir(OLD_INSTALL_DIR.resolve("conf"), NEW_INSTALL_DIR.resolve("conf"));
+		Files.createDirectories(NEW_INSTALL_DIR.resolve("data/domains"));
+		try (Stream<Path> oldDomainDirs = Files.list(OLD_INSTALL_DIR.resolve("data/domains")))
+		{
+			oldDomainCount = oldDomainDirs.filter(Files::isDirectory).count();
+		}
+	}
+
+	@Test
+	public void upgrade() throws Exception
+	{
+		final DomainsUpgrader.Result result = newUpgrader().upgrade();
+		assertEquals(result.getUpgradedCount(), oldDomainCount);
+		assertEquals(result.getFailedCount(), 0);
+
+		// same result as the Ant upgrader
+		final DocumentBuilderFactory docBuilderFactory = DocumentBuilderFactory.newInstance();
+		docBuilderFactory.setNamespaceAware(true);
+		final DocumentBuilder docBuilder = docBuilderFactory.newDocumentBuilder();
+		final List<Path> antUpgradedFiles;
+		try (Stream<Path> paths = Files.walk(ANT_UPGRADED_INSTALL_DIR))
+		{
+			antUpgradedFiles = paths.filter(path -> path.toString().endsWith(".xml") && !path.toString().contains(File.separator + "conf" + File.separator + "domain.tmpl.old"))
+					.collect(Collectors.toList());
+		}
+
+		assertTrue(antUpgradedFiles.size() > 0);
+		for (final Path antUpgradedFile : antUpgradedFiles)
+		{
+			final Path javaUpgradedFile = NEW_INSTALL_DIR.resolve(ANT_UPGRADED_INSTALL_DIR.relativize(antUpgradedFile).toString());
+			assertTrue(Files.exists(javaUpgradedFile), "Missing file upgraded by the Java upgrader: " + javaUpgradedFile);
+			assertTrue(parse(docBuilder, javaUpgradedFile).isEqualNode(parse(docBuilder, antUpgradedFile)), "Java and Ant upgrade results differ: " + javaUpgradedFile + " vs. " + antUpgradedFile);
+		}
+	}
+
+	@Test(dependsOnMethods = { "upgrade" })
+	public void resumeUpgrade() throws Exception
+	{
+		// all domains already upgraded according to the checkpoint file
+		final DomainsUpgrader.Result result = newUpgrader().upgrade();
+		assertEquals(result.getUpgradedCount(), 0);
+		assertEquals(result.getSkippedCount(), oldDomainCount);
+		assertEquals(result.getFailedCount(), 0);
+	}
+}
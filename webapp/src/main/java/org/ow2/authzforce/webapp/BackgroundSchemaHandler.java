@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.webapp;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import javax.xml.validation.Schema;
+
+import org.apache.cxf.Bus;
+import org.apache.cxf.BusFactory;
+import org.apache.cxf.jaxrs.utils.schemas.SchemaHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link SchemaHandler} that compiles the schema in a background thread as soon as the schema locations are set (the catalog location must be set before), instead of blocking the Spring context
+ * initialization. The schema is only waited for on the first call to {@link #getSchema()}, i.e. when the JAX-RS providers using it are created. Therefore, if this bean is declared early in the Spring
+ * context, the schema compilation runs in parallel with the initialization of the other beans (PDP model handler, domains loading, etc.), which reduces the startup time.
+ */
+public class BackgroundSchemaHandler extends SchemaHandler
+{
+	private static final Logger LOGGER = LoggerFactory.getLogger(BackgroundSchemaHandler.class);
+
+	private Bus bus = null;
+	private String catalogLocation = null;
+	private volatile CompletableFuture<Schema> schemaFuture = null;
+
+	@Override
+	public void setBus(final Bus bus)
+	{
+		super.setBus(bus);
+		this.bus = bus;
+	}
+
+	@Override
+	public void setCatalogLocation(final String name)
+	{
+		super.setCatalogLocation(name);
+		this.catalogLocation = name;
+	}
+
+	@Override
+	public void setSchemaLocations(final List<String> locations)
+	{
+		// the thread default bus is thread-local, therefore resolved on the calling thread (like the superclass)
+		final Bus schemaBus = bus == null ? BusFactory.getThreadDefaultBus() : bus;
+		final String catalog = catalogLocation;
+		this.schemaFuture = CompletableFuture.supplyAsync(() -> {
+			final long startNanos = System.nanoTime();
+			final Schema schema = createSchema(locations, catalog, schemaBus);
+			LOGGER.info("Schema {} compiled in {} ms", locations, (System.nanoTime() - startNanos) / 1_000_000);
+			return schema;
+		}, task -> {
+			// the new thread inherits the context classloader of the calling thread
+			final Thread thread = new Thread(task, "authzforce-schema-init");
+			thread.setDaemon(true);
+			thread.start();
+		});
+	}
+
+	@Override
+	public Schema getSchema()
+	{
+		final CompletableFuture<Schema> future = schemaFuture;
+		if (future == null)
+		{
+			return super.getSchema();
+		}
+
+		try
+		{
+			return future.join();
+		}
+		catch (final CompletionException e)
+		{
+			final Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+			{
+				throw (RuntimeException) cause;
+			}
+
+			throw new RuntimeException("Failed to compile schema", cause);
+		}
+	}
+}
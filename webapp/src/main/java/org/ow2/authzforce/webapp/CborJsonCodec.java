@@ -0,0 +1,643 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.webapp;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Codec between <a href="https://www.rfc-editor.org/rfc/rfc8949">CBOR</a> (Concise Binary Object Representation) and the {@link JSONObject} model used for the JSON Profile of XACML, according to
+ * the CBOR-to-JSON mapping of RFC 8949 (section 6): maps with text string keys, arrays, text strings, integers (including bignums, tags 2 and 3), floating-point numbers, booleans and null. Byte strings
+ * are not supported since they do not have any equivalent in the XACML JSON model.
+ * <p>
+ * The decoder checks the same limits as the hardened JSON parser ({@link org.ow2.authzforce.xacml.json.model.LimitsCheckingJSONObject}) while decoding, i.e. before allocating any large structure.
+ * <p>
+ * Instances are immutable and thread-safe.
+ */
+public final class CborJsonCodec
+{
+	private static final int MAJOR_TYPE_UNSIGNED_INT = 0;
+	private static final int MAJOR_TYPE_NEGATIVE_INT = 1;
+	private static final int MAJOR_TYPE_BYTE_STRING = 2;
+	private static final int MAJOR_TYPE_TEXT_STRING = 3;
+	private static final int MAJOR_TYPE_ARRAY = 4;
+	private static final int MAJOR_TYPE_MAP = 5;
+	private static final int MAJOR_TYPE_TAG = 6;
+	private static final int MAJOR_TYPE_SIMPLE_OR_FLOAT = 7;
+
+	private static final int INDEFINITE_LENGTH = 31;
+	private static final int BREAK = 0xff;
+
+	private static final int FALSE = 0xf4;
+	private static final int TRUE = 0xf5;
+	private static final int NULL = 0xf6;
+	private static final int DOUBLE = 0xfb;
+
+	private static final long TAG_POSITIVE_BIGNUM = 2;
+	private static final long TAG_NEGATIVE_BIGNUM = 3;
+
+	/*
+	 * Maximum number of bytes in the UTF-8 encoding of a char
+	 */
+	private static final int MAX_UTF8_BYTES_PER_CHAR = 3;
+
+	/*
+	 * Marker for the 'break' stop code of indefinite-length items
+	 */
+	private static final Object BREAK_MARKER = new Object();
+
+	private static final BigInteger TWO_POW_64 = BigInteger.ONE.shiftLeft(64);
+
+	private final boolean checkLimits;
+	private final int maxStringSize;
+	private final int maxNumOfImmediateChildren;
+	private final int maxDepth;
+
+	/**
+	 * Creates a codec with limits on the decoded structures
+	 *
+	 * @param maxStringSize
+	 *            allowed maximum size of map keys and text strings. Negative or zero values disable limit checking altogether (the other max*** arguments have no effect).
+	 * @param maxNumOfImmediateChildren
+	 *            allowed maximum number of entries in a map, or items in an array. Negative or zero values disable limit checking altogether (the other max*** arguments have no effect).
+	 * @param maxDepth
+	 *            allowed maximum depth of nested maps/arrays/tags. Negative or zero values disable limit checking altogether (the other max*** arguments have no effect).
+	 */
+	public CborJsonCodec(final int maxStringSize, final int maxNumOfImmediateChildren, final int maxDepth)
+	{
+		this.checkLimits = maxStringSize > 0 && maxNumOfImmediateChildren > 0 && maxDepth > 0;
+		this.maxStringSize = maxStringSize;
+		this.maxNumOfImmediateChildren = maxNumOfImmediateChildren;
+		this.maxDepth = maxDepth;
+	}
+
+	/**
+	 * Creates a codec without any limit on the decoded structures. Only for trusted input.
+	 */
+	public CborJsonCodec()
+	{
+		this(-1, -1, -1);
+	}
+
+	private static void writeTypeAndArgument(final OutputStream out, final int majorType, final long argument) throws IOException
+	{
+		final int initialByte = majorType << 5;
+		// argument is an unsigned 64-bit integer, i.e. negative values are above Long.MAX_VALUE
+		if (argument >= 0 && argument < 24)
+		{
+			out.write(initialByte | (int) argument);
+		}
+		else if (argument >= 0 && argument <= 0xffL)
+		{
+			out.write(initialByte | 24);
+			out.write((int) argument);
+		}
+		else if (argument >= 0 && argument <= 0xffffL)
+		{
+			out.write(initialByte | 25);
+			out.write((int) (argument >>> 8));
+			out.write((int) argument);
+		}
+		else if (argument >= 0 && argument <= 0xffffffffL)
+		{
+			out.write(initialByte | 26);
+			for (int shift = 24; shift >= 0; shift -= 8)
+			{
+				out.write((int) (argument >>> shift));
+			}
+		}
+		else
+		{
+			out.write(initialByte | 27);
+			for (int shift = 56; shift >= 0; shift -= 8)
+			{
+				out.write((int) (argument >>> shift));
+			}
+		}
+	}
+
+	private static void writeBigInteger(final OutputStream out, final BigInteger value) throws IOException
+	{
+		if (value.bitLength() < 64)
+		{
+			writeLong(out, value.longValue());
+			return;
+		}
+
+		final boolean negative = value.signum() < 0;
+		// for negative n, CBOR encodes -1 - n
+		final BigInteger argument = negative ? value.negate().subtract(BigInteger.ONE) : value;
+		if (argument.compareTo(TWO_POW_64) < 0)
+		{
+			writeTypeAndArgument(out, negative ? MAJOR_TYPE_NEGATIVE_INT : MAJOR_TYPE_UNSIGNED_INT, argument.longValue());
+			return;
+		}
+
+		writeTypeAndArgument(out, MAJOR_TYPE_TAG, negative ? TAG_NEGATIVE_BIGNUM : TAG_POSITIVE_BIGNUM);
+		final byte[] magnitude = argument.toByteArray();
+		// skip the sign byte if any
+		final int offset = magnitude[0] == 0 ? 1 : 0;
+		writeTypeAndArgument(out, MAJOR_TYPE_BYTE_STRING, magnitude.length - offset);
+		out.write(magnitude, offset, magnitude.length - offset);
+	}
+
+	private static void writeLong(final OutputStream out, final long value) throws IOException
+	{
+		if (value >= 0)
+		{
+			writeTypeAndArgument(out, MAJOR_TYPE_UNSIGNED_INT, value);
+		}
+		else
+		{
+			writeTypeAndArgument(out, MAJOR_TYPE_NEGATIVE_INT, -1 - value);
+		}
+	}
+
+	private static void writeDouble(final OutputStream out, final double value) throws IOException
+	{
+		out.write(DOUBLE);
+		final long bits = Double.doubleToLongBits(value);
+		for (int shift = 56; shift >= 0; shift -= 8)
+		{
+			out.write((int) (bits >>> shift));
+		}
+	}
+
+	private static void writeValue(final OutputStream out, final Object value) throws IOException
+	{
+		if (value == null || JSONObject.NULL.equals(value))
+		{
+			out.write(NULL);
+		}
+		else if (value instanceof String)
+		{
+			final byte[] utf8 = ((String) value).getBytes(StandardCharsets.UTF_8);
+			writeTypeAndArgument(out, MAJOR_TYPE_TEXT_STRING, utf8.length);
+			out.write(utf8);
+		}
+		else if (value instanceof JSONObject)
+		{
+			final JSONObject map = (JSONObject) value;
+			writeTypeAndArgument(out, MAJOR_TYPE_MAP, map.length());
+			for (final String key : map.keySet())
+			{
+				writeValue(out, key);
+				writeValue(out, map.opt(key));
+			}
+		}
+		else if (value instanceof JSONArray)
+		{
+			final JSONArray array = (JSONArray) value;
+			writeTypeAndArgument(out, MAJOR_TYPE_ARRAY, array.length());
+			for (final Object item : array)
+			{
+				writeValue(out, item);
+			}
+		}
+		else if (value instanceof Boolean)
+		{
+			out.write((Boolean) value ? TRUE : FALSE);
+		}
+		else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte)
+		{
+			writeLong(out, ((Number) value).longValue());
+		}
+		else if (value instanceof BigInteger)
+		{
+			writeBigInteger(out, (BigInteger) value);
+		}
+		else if (value instanceof BigDecimal && ((BigDecimal) value).stripTrailingZeros().scale() <= 0)
+		{
+			writeBigInteger(out, ((BigDecimal) value).toBigIntegerExact());
+		}
+		else if (value instanceof Number)
+		{
+			writeDouble(out, ((Number) value).doubleValue());
+		}
+		else if (value instanceof Map)
+		{
+			writeValue(out, new JSONObject((Map<?, ?>) value));
+		}
+		else if (value instanceof Collection)
+		{
+			writeValue(out, new JSONArray((Collection<?>) value));
+		}
+		else
+		{
+			writeValue(out, value.toString());
+		}
+	}
+
+	/**
+	 * Encodes a JSON object as CBOR
+	 *
+	 * @param json
+	 *            JSON object
+	 * @param out
+	 *            output stream (not closed by this method)
+	 * @throws IOException
+	 *             error writing to {@code out}
+	 */
+	public void encode(final JSONObject json, final OutputStream out) throws IOException
+	{
+		final BufferedOutputStream bufferedOut = new BufferedOutputStream(out, 8192);
+		writeValue(bufferedOut, json);
+		bufferedOut.flush();
+	}
+
+	/*
+	 * Decoder state for a given input
+	 */
+	private final class Decoder
+	{
+		private final InputStream in;
+
+		private Decoder(final InputStream in)
+		{
+			this.in = in;
+		}
+
+		private int readByte() throws IOException
+		{
+			final int b = in.read();
+			if (b < 0)
+			{
+				throw new JSONException("Unexpected end of CBOR input");
+			}
+
+			return b;
+		}
+
+		private byte[] readBytes(final int length) throws IOException
+		{
+			// readNBytes allocates as data is read, not upfront
+			final byte[] bytes = in.readNBytes(length);
+			if (bytes.length != length)
+			{
+				throw new JSONException("Unexpected end of CBOR input");
+			}
+
+			return bytes;
+		}
+
+		/*
+		 * Argument of the initial byte as unsigned 64-bit integer (negative if above Long.MAX_VALUE)
+		 */
+		private long readArgument(final int additionalInfo) throws IOException
+		{
+			if (additionalInfo < 24)
+			{
+				return additionalInfo;
+			}
+
+			final int byteCount;
+			switch (additionalInfo)
+			{
+				case 24:
+					byteCount = 1;
+					break;
+				case 25:
+					byteCount = 2;
+					break;
+				case 26:
+					byteCount = 4;
+					break;
+				case 27:
+					byteCount = 8;
+					break;
+				default:
+					throw new JSONException("Invalid CBOR additional information: " + additionalInfo);
+			}
+
+			long value = 0;
+			for (int i = 0; i < byteCount; i++)
+			{
+				value = value << 8 | readByte();
+			}
+
+			return value;
+		}
+
+		private int readLength(final int additionalInfo) throws IOException
+		{
+			final long length = readArgument(additionalInfo);
+			if (length < 0 || length > Integer.MAX_VALUE)
+			{
+				throw new JSONException("CBOR item length too large: " + Long.toUnsignedString(length));
+			}
+
+			return (int) length;
+		}
+
+		private void checkStringSize(final long size)
+		{
+			if (checkLimits && size > maxStringSize)
+			{
+				throw new IllegalArgumentException("Size of string exceeds the maximum (" + maxStringSize + ")");
+			}
+		}
+
+		private void checkChildCount(final long count)
+		{
+			if (checkLimits && count > maxNumOfImmediateChildren)
+			{
+				throw new IllegalArgumentException("Number of entries/items of map/array exceeds the maximum (" + maxNumOfImmediateChildren + ")");
+			}
+		}
+
+		private String readTextString(final int additionalInfo) throws IOException
+		{
+			final String value;
+			if (additionalInfo == INDEFINITE_LENGTH)
+			{
+				// concatenation of definite-length text string chunks
+				final StringBuilder sb = new StringBuilder();
+				int initialByte;
+				while ((initialByte = readByte()) != BREAK)
+				{
+					if (initialByte >>> 5 != MAJOR_TYPE_TEXT_STRING || (initialByte & 0x1f) == INDEFINITE_LENGTH)
+					{
+						throw new JSONException("Invalid chunk in CBOR indefinite-length text string");
+					}
+
+					sb.append(readTextString(initialByte & 0x1f));
+					checkStringSize(sb.length());
+				}
+
+				value = sb.toString();
+			}
+			else
+			{
+				final int byteLength = readLength(additionalInfo);
+				// check before reading: a string of maxStringSize chars takes at most MAX_UTF8_BYTES_PER_CHAR bytes per char
+				if (checkLimits && byteLength > (long) maxStringSize * MAX_UTF8_BYTES_PER_CHAR)
+				{
+					checkStringSize(byteLength);
+				}
+
+				value = new String(readBytes(byteLength), StandardCharsets.UTF_8);
+			}
+
+			checkStringSize(value.length());
+			return value;
+		}
+
+		private Object toNumber(final long value)
+		{
+			return value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE ? Integer.valueOf((int) value) : Long.valueOf(value);
+		}
+
+		private Object readBignum(final long tag) throws IOException
+		{
+			final int initialByte = readByte();
+			if (initialByte >>> 5 != MAJOR_TYPE_BYTE_STRING || (initialByte & 0x1f) == INDEFINITE_LENGTH)
+			{
+				throw new JSONException("Invalid CBOR bignum: expected definite-length byte string");
+			}
+
+			final int length = readLength(initialByte & 0x1f);
+			// bignums are not expected in XACML requests, same limit as strings
+			checkStringSize(length);
+			final BigInteger magnitude = new BigInteger(1, readBytes(length));
+			return tag == TAG_POSITIVE_BIGNUM ? magnitude : magnitude.negate().subtract(BigInteger.ONE);
+		}
+
+		private double halfToDouble(final int half)
+		{
+			final int exponent = half >>> 10 & 0x1f;
+			final int mantissa = half & 0x3ff;
+			final double value;
+			if (exponent == 0)
+			{
+				value = Math.scalb((double) mantissa, -24);
+			}
+			else if (exponent == 31)
+			{
+				value = mantissa == 0 ? Double.POSITIVE_INFINITY : Double.NaN;
+			}
+			else
+			{
+				value = Math.scalb((double) (mantissa + 1024), exponent - 25);
+			}
+
+			return (half & 0x8000) == 0 ? value : -value;
+		}
+
+		private JSONArray readArray(final int additionalInfo, final int depth) throws IOException
+		{
+			final JSONArray array = new JSONArray();
+			if (additionalInfo == INDEFINITE_LENGTH)
+			{
+				Object item;
+				while ((item = readValue(depth + 1)) != BREAK_MARKER)
+				{
+					array.put(item);
+					checkChildCount(array.length());
+				}
+			}
+			else
+			{
+				final int length = readLength(additionalInfo);
+				checkChildCount(length);
+				for (int i = 0; i < length; i++)
+				{
+					array.put(checkNotBreak(readValue(depth + 1)));
+				}
+			}
+
+			return array;
+		}
+
+		private JSONObject readMap(final int additionalInfo, final int depth) throws IOException
+		{
+			final JSONObject map = new JSONObject();
+			final int length = additionalInfo == INDEFINITE_LENGTH ? -1 : readLength(additionalInfo);
+			checkChildCount(length);
+			for (int i = 0; length < 0 || i < length; i++)
+			{
+				final Object key = readValue(depth + 1);
+				if (key == BREAK_MARKER && length < 0)
+				{
+					break;
+				}
+
+				if (!(key instanceof String))
+				{
+					throw new JSONException("Invalid CBOR map key: only text strings are supported");
+				}
+
+				if (map.has((String) key))
+				{
+					throw new JSONException("Duplicate key \"" + key + "\"");
+				}
+
+				map.put((String) key, checkNotBreak(readValue(depth + 1)));
+				checkChildCount(map.length());
+			}
+
+			return map;
+		}
+
+		private Object checkNotBreak(final Object value)
+		{
+			if (value == BREAK_MARKER)
+			{
+				throw new JSONException("Unexpected CBOR break stop code");
+			}
+
+			return value;
+		}
+
+		/*
+		 * depth: depth of the value, i.e. number of enclosing maps/arrays/tags
+		 */
+		private Object readValue(final int depth) throws IOException
+		{
+			return readValue(readByte(), depth);
+		}
+
+		private void checkDepth(final int depth)
+		{
+			if (checkLimits && depth > maxDepth)
+			{
+				throw new IllegalArgumentException("Depth of nested maps/arrays/tags exceeds the maximum (" + maxDepth + ")");
+			}
+		}
+
+		private Object readValue(final int initialByte, final int depth) throws IOException
+		{
+			final int majorType = initialByte >>> 5;
+			final int additionalInfo = initialByte & 0x1f;
+			switch (majorType)
+			{
+				case MAJOR_TYPE_UNSIGNED_INT:
+				{
+					final long value = readArgument(additionalInfo);
+					return value < 0 ? new BigInteger(Long.toUnsignedString(value)) : toNumber(value);
+				}
+
+				case MAJOR_TYPE_NEGATIVE_INT:
+				{
+					final long argument = readArgument(additionalInfo);
+					return argument < 0 ? new BigInteger(Long.toUnsignedString(argument)).negate().subtract(BigInteger.ONE) : toNumber(-1 - argument);
+				}
+
+				case MAJOR_TYPE_BYTE_STRING:
+					throw new JSONException("CBOR byte strings not supported");
+
+				case MAJOR_TYPE_TEXT_STRING:
+					return readTextString(additionalInfo);
+
+				case MAJOR_TYPE_ARRAY:
+				case MAJOR_TYPE_MAP:
+					checkDepth(depth + 1);
+					return majorType == MAJOR_TYPE_ARRAY ? readArray(additionalInfo, depth) : readMap(additionalInfo, depth);
+
+				case MAJOR_TYPE_TAG:
+				{
+					/*
+					 * Other tags than bignums (e.g. self-described CBOR) are ignored, only the tagged value is kept. Each tag counts as a nesting level like a map/array, and a chain of tags is read in a
+					 * loop, not recursively, so that it cannot exhaust the stack even without limits.
+					 */
+					long tag = readArgument(additionalInfo);
+					int valueDepth = depth;
+					while (tag != TAG_POSITIVE_BIGNUM && tag != TAG_NEGATIVE_BIGNUM)
+					{
+						valueDepth++;
+						checkDepth(valueDepth);
+						final int nextInitialByte = readByte();
+						if (nextInitialByte >>> 5 != MAJOR_TYPE_TAG)
+						{
+							return checkNotBreak(readValue(nextInitialByte, valueDepth));
+						}
+
+						tag = readArgument(nextInitialByte & 0x1f);
+					}
+
+					return readBignum(tag);
+				}
+
+				default:
+					// MAJOR_TYPE_SIMPLE_OR_FLOAT
+					switch (additionalInfo)
+					{
+						case 20:
+							return Boolean.FALSE;
+						case 21:
+							return Boolean.TRUE;
+						case 22:
+						case 23:
+							// null, undefined
+							return JSONObject.NULL;
+						case 25:
+							return halfToDouble((int) readArgument(additionalInfo));
+						case 26:
+							return (double) Float.intBitsToFloat((int) readArgument(additionalInfo));
+						case 27:
+							return Double.longBitsToDouble(readArgument(additionalInfo));
+						case INDEFINITE_LENGTH:
+							return BREAK_MARKER;
+						default:
+							throw new JSONException("Unsupported CBOR simple value: " + additionalInfo);
+					}
+			}
+		}
+	}
+
+	/**
+	 * Decodes a CBOR map into a JSON object
+	 *
+	 * @param in
+	 *            CBOR input, expected to contain a single map, read until the end
+	 * @return JSON object
+	 * @throws JSONException
+	 *             invalid CBOR input, or CBOR not mappable to JSON (e.g. byte strings, non-text map keys)
+	 * @throws IllegalArgumentException
+	 *             CBOR input exceeds one of the limits
+	 * @throws IOException
+	 *             error reading {@code in}
+	 */
+	public JSONObject decode(final InputStream in) throws IOException
+	{
+		final Decoder decoder = new Decoder(in);
+		final Object value = decoder.readValue(0);
+		if (!(value instanceof JSONObject))
+		{
+			throw new JSONException("Invalid CBOR input: expected map as top-level item");
+		}
+
+		if (in.read() >= 0)
+		{
+			throw new JSONException("Invalid CBOR input: unexpected data after top-level item");
+		}
+
+		return (JSONObject) value;
+	}
+}
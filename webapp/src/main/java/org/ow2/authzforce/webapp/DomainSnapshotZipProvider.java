@@ -0,0 +1,361 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.webapp;
+
+import java.beans.ConstructorProperties;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import javax.xml.stream.StreamFilter;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.validation.Schema;
+
+import jakarta.ws.rs.BadRequestException;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.ext.MessageBodyReader;
+import jakarta.ws.rs.ext.MessageBodyWriter;
+import jakarta.ws.rs.ext.Provider;
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Marshaller;
+import jakarta.xml.bind.Unmarshaller;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.PolicySet;
+import org.apache.cxf.staxutils.StaxUtils;
+import org.ow2.authzforce.core.pap.api.dao.AuthzPolicy;
+import org.ow2.authzforce.core.pap.api.dao.JaxbXacmlAuthzPolicy;
+import org.ow2.authzforce.pap.dao.flatfile.XmlnsAppendingDelegatingXMLStreamWriter;
+import org.ow2.authzforce.rest.api.xmlns.AttributeProviders;
+import org.ow2.authzforce.rest.api.xmlns.DomainProperties;
+import org.ow2.authzforce.rest.api.xmlns.PdpPropertiesUpdate;
+import org.ow2.authzforce.rest.api.xmlns.PrpProperties;
+import org.ow2.authzforce.rest.service.jaxrs.DomainSnapshot;
+import org.ow2.authzforce.rest.service.jaxrs.DomainSnapshotResource;
+
+/**
+ * JAX-RS entity provider for {@link DomainSnapshot}, serialized as a ZIP archive of XML documents (validated against the API schema on input):
+ * <ul>
+ * <li>{@value #DOMAIN_PROPERTIES_ENTRY_NAME}: domain properties</li>
+ * <li>{@value #PRP_PROPERTIES_ENTRY_NAME}: PRP properties</li>
+ * <li>{@value #ATTRIBUTE_PROVIDERS_ENTRY_NAME}: attribute providers</li>
+ * <li>{@value #PDP_PROPERTIES_ENTRY_NAME}: PDP properties (features, root policy reference)</li>
+ * <li>{@value #POLICIES_ENTRY_NAME_PREFIX}{base64url(PolicySetId)}/{Version}.xml: one entry per policy version</li>
+ * </ul>
+ * Input archives are limited in number of entries ({@link DomainSnapshotResource#MAX_ENTRY_COUNT}) and total uncompressed size ({@link DomainSnapshotResource#MAX_UNCOMPRESSED_SIZE}) to mitigate
+ * ZIP bombs. The name of a policy entry must match the PolicySetId and Version of the PolicySet in it.
+ */
+@Provider
+@Produces(DomainSnapshotResource.MEDIA_TYPE)
+@Consumes(DomainSnapshotResource.MEDIA_TYPE)
+public final class DomainSnapshotZipProvider implements MessageBodyReader<DomainSnapshot>, MessageBodyWriter<DomainSnapshot>
+{
+	static final String DOMAIN_PROPERTIES_ENTRY_NAME = "properties.xml";
+	static final String PRP_PROPERTIES_ENTRY_NAME = "prp.xml";
+	static final String ATTRIBUTE_PROVIDERS_ENTRY_NAME = "attributeProviders.xml";
+	static final String PDP_PROPERTIES_ENTRY_NAME = "pdp.xml";
+	static final String POLICIES_ENTRY_NAME_PREFIX = "policies/";
+	private static final String POLICY_ENTRY_NAME_SUFFIX = ".xml";
+
+	private static final Base64.Encoder POLICY_ID_ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+	private static final class XmlnsStreamFilter implements StreamFilter
+	{
+		private final Map<String, String> xmlnsPrefixToUriMap = new HashMap<>();
+
+		@Override
+		public boolean accept(final XMLStreamReader reader)
+		{
+			if (reader.isStartElement())
+			{
+				for (int i = 0; i < reader.getNamespaceCount(); i++)
+				{
+					xmlnsPrefixToUriMap.put(reader.getNamespacePrefix(i) == null ? "" : reader.getNamespacePrefix(i), reader.getNamespaceURI(i));
+				}
+			}
+
+			return true;
+		}
+	}
+
+	private final JAXBContext jaxbCtx;
+	private final Schema schema;
+
+	/**
+	 * Constructor
+	 *
+	 * @param extraJaxbClasses
+	 *            extra JAXB classes, e.g. attribute provider extensions' configuration classes
+	 * @param schema
+	 *            schema for validating the XML documents of input archives (null if no validation)
+	 * @throws JAXBException
+	 *             error creating the JAXB context
+	 */
+	@ConstructorProperties({ "extraJaxbClasses", "schema" })
+	public DomainSnapshotZipProvider(final Class<?>[] extraJaxbClasses, final Schema schema) throws JAXBException
+	{
+		final List<Class<?>> jaxbClasses = new ArrayList<>();
+		jaxbClasses.add(DomainProperties.class);
+		jaxbClasses.add(PrpProperties.class);
+		jaxbClasses.add(AttributeProviders.class);
+		jaxbClasses.add(PdpPropertiesUpdate.class);
+		jaxbClasses.add(PolicySet.class);
+		if (extraJaxbClasses != null)
+		{
+			jaxbClasses.addAll(Arrays.asList(extraJaxbClasses));
+		}
+
+		this.jaxbCtx = JAXBContext.newInstance(jaxbClasses.toArray(new Class<?>[0]));
+		this.schema = schema;
+	}
+
+	@Override
+	public boolean isWriteable(final Class<?> type, final Type genericType, final Annotation[] annotations, final MediaType mediaType)
+	{
+		return DomainSnapshot.class.isAssignableFrom(type);
+	}
+
+	private static String getPolicyEntryName(final String policySetId, final String version)
+	{
+		return POLICIES_ENTRY_NAME_PREFIX + POLICY_ID_ENCODER.encodeToString(policySetId.getBytes(StandardCharsets.UTF_8)) + "/" + version + POLICY_ENTRY_NAME_SUFFIX;
+	}
+
+	private void marshal(final Marshaller marshaller, final ZipOutputStream zipOut, final String entryName, final Object jaxbObj) throws IOException, JAXBException
+	{
+		zipOut.putNextEntry(new ZipEntry(entryName));
+		marshaller.marshal(jaxbObj, zipOut);
+		zipOut.closeEntry();
+	}
+
+	@Override
+	public void writeTo(final DomainSnapshot snapshot, final Class<?> type, final Type genericType, final Annotation[] annotations, final MediaType mediaType, final MultivaluedMap<String, Object> httpHeaders,
+	        final OutputStream entityStream) throws IOException, WebApplicationException
+	{
+		final ZipOutputStream zipOut = new ZipOutputStream(entityStream, StandardCharsets.UTF_8);
+		try
+		{
+			final Marshaller marshaller = jaxbCtx.createMarshaller();
+			if (snapshot.getDomainProperties() != null)
+			{
+				marshal(marshaller, zipOut, DOMAIN_PROPERTIES_ENTRY_NAME, snapshot.getDomainProperties());
+			}
+
+			if (snapshot.getPrpProperties() != null)
+			{
+				marshal(marshaller, zipOut, PRP_PROPERTIES_ENTRY_NAME, snapshot.getPrpProperties());
+			}
+
+			if (snapshot.getAttributeProviders() != null)
+			{
+				marshal(marshaller, zipOut, ATTRIBUTE_PROVIDERS_ENTRY_NAME, snapshot.getAttributeProviders());
+			}
+
+			if (snapshot.getPdpProperties() != null)
+			{
+				marshal(marshaller, zipOut, PDP_PROPERTIES_ENTRY_NAME, snapshot.getPdpProperties());
+			}
+
+			for (final AuthzPolicy policy : snapshot.getPolicies())
+			{
+				final PolicySet policySet = policy.toXacml();
+				zipOut.putNextEntry(new ZipEntry(getPolicyEntryName(policySet.getPolicySetId(), policySet.getVersion())));
+				/*
+				 * Add back the XPath namespace contexts if any as namespace declarations (xmlns:prefix="uri")
+				 */
+				final XMLStreamWriter xmlStreamWriter = StaxUtils.createXMLStreamWriter(zipOut);
+				final Map<String, String> xpathNamespaceContexts = policy.getXPathNamespaceContexts();
+				final XMLStreamWriter finalWriter = xpathNamespaceContexts == null || xpathNamespaceContexts.isEmpty() ? xmlStreamWriter
+				        : new XmlnsAppendingDelegatingXMLStreamWriter(xmlStreamWriter, ImmutableMap.copyOf(xpathNamespaceContexts));
+				try
+				{
+					marshaller.marshal(policySet, finalWriter);
+					finalWriter.flush();
+				}
+				finally
+				{
+					// XMLStreamWriter#close() does not close the underlying stream (zipOut)
+					finalWriter.close();
+				}
+
+				zipOut.closeEntry();
+			}
+		}
+		catch (final JAXBException | XMLStreamException e)
+		{
+			throw new IOException("Error serializing domain snapshot", e);
+		}
+
+		zipOut.finish();
+	}
+
+	@Override
+	public boolean isReadable(final Class<?> type, final Type genericType, final Annotation[] annotations, final MediaType mediaType)
+	{
+		return DomainSnapshot.class.isAssignableFrom(type);
+	}
+
+	private static <V> V unmarshal(final Unmarshaller unmarshaller, final String entryName, final byte[] entryContent, final Class<V> expectedType, final XmlnsStreamFilter xmlnsFilter)
+	{
+		XMLStreamReader xmlReader = null;
+		final Object result;
+		try
+		{
+			xmlReader = StaxUtils.createXMLStreamReader(new ByteArrayInputStream(entryContent));
+			result = unmarshaller.unmarshal(xmlnsFilter == null ? xmlReader : StaxUtils.createFilteredReader(xmlReader, xmlnsFilter));
+		}
+		catch (final JAXBException | RuntimeException e)
+		{
+			throw new BadRequestException("Invalid XML in domain snapshot entry '" + entryName + "'", e);
+		}
+		finally
+		{
+			try
+			{
+				StaxUtils.close(xmlReader);
+			}
+			catch (final XMLStreamException e)
+			{
+				// ignore
+			}
+		}
+
+		if (!expectedType.isInstance(result))
+		{
+			throw new BadRequestException("Invalid domain snapshot entry '" + entryName + "': expected " + expectedType.getSimpleName());
+		}
+
+		return expectedType.cast(result);
+	}
+
+	private static void checkNoDuplicate(final Object previousValue, final String entryName)
+	{
+		if (previousValue != null)
+		{
+			throw new BadRequestException("Duplicate entry in domain snapshot: '" + entryName + "'");
+		}
+	}
+
+	@Override
+	public DomainSnapshot readFrom(final Class<DomainSnapshot> type, final Type genericType, final Annotation[] annotations, final MediaType mediaType, final MultivaluedMap<String, String> httpHeaders,
+	        final InputStream entityStream) throws IOException, WebApplicationException
+	{
+		final Unmarshaller unmarshaller;
+		try
+		{
+			unmarshaller = jaxbCtx.createUnmarshaller();
+		}
+		catch (final JAXBException e)
+		{
+			throw new IOException("Error creating JAXB unmarshaller", e);
+		}
+
+		unmarshaller.setSchema(schema);
+
+		DomainProperties domainProps = null;
+		PrpProperties prpProps = null;
+		AttributeProviders attributeProviders = null;
+		PdpPropertiesUpdate pdpProps = null;
+		final List<AuthzPolicy> policies = new ArrayList<>();
+		int entryCount = 0;
+		long remainingSize = DomainSnapshotResource.MAX_UNCOMPRESSED_SIZE;
+		final ZipInputStream zipIn = new ZipInputStream(entityStream, StandardCharsets.UTF_8);
+		ZipEntry entry;
+		while ((entry = zipIn.getNextEntry()) != null)
+		{
+			if (entry.isDirectory())
+			{
+				continue;
+			}
+
+			entryCount++;
+			if (entryCount > DomainSnapshotResource.MAX_ENTRY_COUNT)
+			{
+				throw new BadRequestException("Too many entries in domain snapshot (max: " + DomainSnapshotResource.MAX_ENTRY_COUNT + ")");
+			}
+
+			final String entryName = entry.getName();
+			// Read one more byte than allowed to detect overflow
+			final byte[] entryContent = ByteStreams.toByteArray(ByteStreams.limit(zipIn, remainingSize + 1));
+			remainingSize -= entryContent.length;
+			if (remainingSize < 0)
+			{
+				throw new BadRequestException("Domain snapshot too big (max uncompressed size: " + DomainSnapshotResource.MAX_UNCOMPRESSED_SIZE + " bytes)");
+			}
+
+			switch (entryName)
+			{
+				case DOMAIN_PROPERTIES_ENTRY_NAME:
+					checkNoDuplicate(domainProps, entryName);
+					domainProps = unmarshal(unmarshaller, entryName, entryContent, DomainProperties.class, null);
+					break;
+				case PRP_PROPERTIES_ENTRY_NAME:
+					checkNoDuplicate(prpProps, entryName);
+					prpProps = unmarshal(unmarshaller, entryName, entryContent, PrpProperties.class, null);
+					break;
+				case ATTRIBUTE_PROVIDERS_ENTRY_NAME:
+					checkNoDuplicate(attributeProviders, entryName);
+					attributeProviders = unmarshal(unmarshaller, entryName, entryContent, AttributeProviders.class, null);
+					break;
+				case PDP_PROPERTIES_ENTRY_NAME:
+					checkNoDuplicate(pdpProps, entryName);
+					pdpProps = unmarshal(unmarshaller, entryName, entryContent, PdpPropertiesUpdate.class, null);
+					break;
+				default:
+					if (!entryName.startsWith(POLICIES_ENTRY_NAME_PREFIX) || !entryName.endsWith(POLICY_ENTRY_NAME_SUFFIX))
+					{
+						throw new BadRequestException("Unexpected entry in domain snapshot: '" + entryName + "'");
+					}
+
+					final XmlnsStreamFilter xmlnsFilter = new XmlnsStreamFilter();
+					final PolicySet policySet = unmarshal(unmarshaller, entryName, entryContent, PolicySet.class, xmlnsFilter);
+					final String expectedEntryName = getPolicyEntryName(policySet.getPolicySetId(), policySet.getVersion());
+					if (!entryName.equals(expectedEntryName))
+					{
+						throw new BadRequestException("Domain snapshot entry '" + entryName + "' does not match the PolicySetId ('" + policySet.getPolicySetId() + "') and Version ('" + policySet.getVersion()
+						        + "') of the PolicySet in it (expected entry name: '" + expectedEntryName + "')");
+					}
+
+					policies.add(new JaxbXacmlAuthzPolicy(policySet, ImmutableMap.copyOf(xmlnsFilter.xmlnsPrefixToUriMap)));
+			}
+		}
+
+		return new DomainSnapshot(domainProps, prpProps, attributeProviders, policies, pdpProps);
+	}
+}
@@ -18,20 +18,30 @@
  */
 package org.ow2.authzforce.webapp;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import jakarta.servlet.ServletOutputStream;
 import jakarta.servlet.http.HttpServletResponse;
+import jakarta.ws.rs.core.MediaType;
 import jakarta.xml.bind.JAXBContext;
 import jakarta.xml.bind.JAXBException;
 import jakarta.xml.bind.Marshaller;
 
 import org.apache.cxf.interceptor.Fault;
+import org.apache.cxf.jaxrs.utils.JAXRSUtils;
 import org.apache.cxf.message.Message;
 import org.apache.cxf.phase.AbstractPhaseInterceptor;
 import org.apache.cxf.phase.Phase;
 import org.apache.cxf.transport.http.AbstractHTTPDestination;
 import org.everit.json.schema.ValidationException;
+import org.json.JSONObject;
 import org.ow2.authzforce.jaxrs.util.JaxbErrorMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -40,6 +50,12 @@ import org.slf4j.LoggerFactory;
  * 
  * CXF Interceptor for outbound faults that handles internal server errors. In particular, it remove sensitive info and maps it to Bad Request status code when it is actually a bad request. Based on
  * the CXF CustomOutFaultInterceptor example.
+ * <p>
+ * Since a misbehaving client may flood the server with bad requests, the error path is kept cheap: the error bodies are serialized once and for all at class initialization (per media type), only the
+ * error message of a Bad Request being escaped and inserted in the pre-serialized template at runtime; and full stack traces are logged at most once per interval and per status code, the
+ * suppressed ones being counted and reported with the next one.
+ * <p>
+ * The error body is serialized in JSON ({"error": "..."}, i.e. same as {@link JsonRiCxfJaxrsProvider}) if the client accepts JSON (before XML), else in XML.
  * 
  * @see <a href="http://svn.apache.org/repos/asf/cxf/trunk/systests/jaxrs/src/test/java/org/apache/cxf/systest/jaxrs/CustomOutFaultInterceptor.java">org.apache.
  *      cxf.systest.jaxrs.CustomOutFaultInterceptor</a>
@@ -49,25 +65,236 @@ public class ErrorHandlerInterceptor extends AbstractPhaseInterceptor<Message>
 	private final static Logger LOGGER = LoggerFactory.getLogger(ErrorHandlerInterceptor.class);
 	private final static String INTERNAL_SERVER_ERROR_MSG = "Internal Server error. Retry later or contact the administrator.";
 	private final static RuntimeException INTERNAL_SERVER_ERROR = new RuntimeException(INTERNAL_SERVER_ERROR_MSG);
-	private final static JAXBContext AUTHZ_API_JAXB_CONTEXT;
+
+	/**
+	 * Default minimum interval between two full stack traces logged for the same response status (ms)
+	 */
+	public static final long DEFAULT_STACK_TRACE_LOG_INTERVAL_MILLIS = 1000;
+
+	/**
+	 * Pre-serialized error body, split around the error message
+	 */
+	private static final class ErrorBodyTemplate
+	{
+		private final String contentType;
+		private final byte[] prefix;
+		private final byte[] suffix;
+		/*
+		 * Complete body for Internal Server Error (constant message)
+		 */
+		private final byte[] internalServerErrorBody;
+
+		private ErrorBodyTemplate(final String contentType, final byte[] serializedWithPlaceholder, final byte[] placeholder)
+		{
+			this.contentType = contentType;
+			final int placeholderIndex = indexOf(serializedWithPlaceholder, placeholder);
+			if (placeholderIndex < 0)
+			{
+				throw new IllegalArgumentException("Error message placeholder not found in serialized error body: " + new String(serializedWithPlaceholder, StandardCharsets.UTF_8));
+			}
+
+			this.prefix = Arrays.copyOfRange(serializedWithPlaceholder, 0, placeholderIndex);
+			this.suffix = Arrays.copyOfRange(serializedWithPlaceholder, placeholderIndex + placeholder.length, serializedWithPlaceholder.length);
+			this.internalServerErrorBody = concat(INTERNAL_SERVER_ERROR_MSG);
+		}
+
+		private byte[] concat(final String escapedMessage)
+		{
+			final byte[] msgBytes = escapedMessage.getBytes(StandardCharsets.UTF_8);
+			final byte[] body = new byte[prefix.length + msgBytes.length + suffix.length];
+			System.arraycopy(prefix, 0, body, 0, prefix.length);
+			System.arraycopy(msgBytes, 0, body, prefix.length, msgBytes.length);
+			System.arraycopy(suffix, 0, body, prefix.length + msgBytes.length, suffix.length);
+			return body;
+		}
+
+		private static int indexOf(final byte[] array, final byte[] target)
+		{
+			outer: for (int i = 0; i <= array.length - target.length; i++)
+			{
+				for (int j = 0; j < target.length; j++)
+				{
+					if (array[i + j] != target[j])
+					{
+						continue outer;
+					}
+				}
+
+				return i;
+			}
+
+			return -1;
+		}
+	}
+
+	private final static ErrorBodyTemplate XML_ERROR_BODY_TEMPLATE;
+	private final static ErrorBodyTemplate JSON_ERROR_BODY_TEMPLATE;
 	static
 	{
+		// alphanumeric only, so that it is left as is by both the XML and JSON serializers
+		final String placeholder = "AUTHZFORCEERRORMESSAGEPLACEHOLDER";
+		final byte[] placeholderBytes = placeholder.getBytes(StandardCharsets.UTF_8);
+		final ByteArrayOutputStream xmlOut = new ByteArrayOutputStream();
 		try
 		{
-			AUTHZ_API_JAXB_CONTEXT = JAXBContext.newInstance(JaxbErrorMessage.class);
+			final Marshaller marshaller = JAXBContext.newInstance(JaxbErrorMessage.class).createMarshaller();
+			marshaller.setProperty(Marshaller.JAXB_ENCODING, StandardCharsets.UTF_8.name());
+			marshaller.marshal(new JaxbErrorMessage(placeholder, null), xmlOut);
 		}
 		catch (final JAXBException e)
 		{
 			throw new RuntimeException("Failed to initialize Authorization API schema's JAXB context for marshalling Error elements", e);
 		}
+
+		XML_ERROR_BODY_TEMPLATE = new ErrorBodyTemplate(MediaType.APPLICATION_XML, xmlOut.toByteArray(), placeholderBytes);
+		JSON_ERROR_BODY_TEMPLATE = new ErrorBodyTemplate(MediaType.APPLICATION_JSON, new JSONObject().put("error", placeholder).toString().getBytes(StandardCharsets.UTF_8), placeholderBytes);
 	}
 
 	/**
-	 * Registration of the interceptor to a specific CXF message processing phase
+	 * Logs full stack traces at most once per interval, counting the other ones
+	 */
+	private static final class ThrottledErrorLogger
+	{
+		private final long intervalNanos;
+		private final AtomicLong nextLogTime;
+		private final LongAdder suppressedCount = new LongAdder();
+
+		private ThrottledErrorLogger(final long intervalMillis)
+		{
+			this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+			this.nextLogTime = new AtomicLong(System.nanoTime());
+		}
+
+		private void log(final int respStatus, final Throwable error)
+		{
+			if (intervalNanos > 0)
+			{
+				final long now = System.nanoTime();
+				final long next = nextLogTime.get();
+				if (now - next < 0 || !nextLogTime.compareAndSet(next, now + intervalNanos))
+				{
+					suppressedCount.increment();
+					if (LOGGER.isDebugEnabled())
+					{
+						LOGGER.debug("CXF service error (HTTP status {}, stack trace suppressed): {}", respStatus, error.toString());
+					}
+
+					return;
+				}
+			}
+
+			final long suppressed = suppressedCount.sumThenReset();
+			if (suppressed > 0)
+			{
+				LOGGER.error("Fatal CXF service error (HTTP status {}; {} similar errors since the last logged one)", respStatus, suppressed, error);
+			}
+			else
+			{
+				LOGGER.error("Fatal CXF service error (HTTP status {})", respStatus, error);
+			}
+		}
+	}
+
+	private final ThrottledErrorLogger badRequestErrorLogger;
+	private final ThrottledErrorLogger internalServerErrorLogger;
+
+	/**
+	 * Registration of the interceptor to a specific CXF message processing phase, logging stack traces at most once every {@value #DEFAULT_STACK_TRACE_LOG_INTERVAL_MILLIS} ms per response status
 	 */
 	public ErrorHandlerInterceptor()
+	{
+		this(DEFAULT_STACK_TRACE_LOG_INTERVAL_MILLIS);
+	}
+
+	/**
+	 * Registration of the interceptor to a specific CXF message processing phase
+	 * 
+	 * @param stackTraceLogIntervalMillis
+	 *            minimum interval between two full stack traces logged for the same response status (Bad Request / Internal Server Error), in milliseconds. The errors occurring in the meantime are
+	 *            counted and only logged at DEBUG level, without the stack trace. Zero or negative means every stack trace is logged.
+	 */
+	public ErrorHandlerInterceptor(final long stackTraceLogIntervalMillis)
 	{
 		super(Phase.POST_LOGICAL);
+		this.badRequestErrorLogger = new ThrottledErrorLogger(stackTraceLogIntervalMillis);
+		this.internalServerErrorLogger = new ThrottledErrorLogger(stackTraceLogIntervalMillis);
+	}
+
+	private static ErrorBodyTemplate getErrorBodyTemplate(final Message inMessage)
+	{
+		final Object accept = inMessage.get(Message.ACCEPT_CONTENT_TYPE);
+		if (!(accept instanceof String) || ((String) accept).indexOf("json") < 0)
+		{
+			// fast path: JSON not accepted at all
+			return XML_ERROR_BODY_TEMPLATE;
+		}
+
+		final List<MediaType> acceptedTypes = JAXRSUtils.sortMediaTypes((String) accept, JAXRSUtils.MEDIA_TYPE_Q_PARAM);
+		for (final MediaType acceptedType : acceptedTypes)
+		{
+			final String subtype = acceptedType.getSubtype();
+			if (subtype.equals("json") || subtype.endsWith("+json"))
+			{
+				return JSON_ERROR_BODY_TEMPLATE;
+			}
+
+			if (subtype.equals("xml") || subtype.endsWith("+xml") || acceptedType.isWildcardType())
+			{
+				return XML_ERROR_BODY_TEMPLATE;
+			}
+		}
+
+		return XML_ERROR_BODY_TEMPLATE;
+	}
+
+	private static String escape(final String errMsg, final ErrorBodyTemplate template)
+	{
+		if (template == JSON_ERROR_BODY_TEMPLATE)
+		{
+			// JSONObject.quote() adds the enclosing double quotes, already in the template
+			final String quoted = JSONObject.quote(errMsg);
+			return quoted.substring(1, quoted.length() - 1);
+		}
+
+		StringBuilder escaped = null;
+		for (int i = 0; i < errMsg.length(); i++)
+		{
+			final char c = errMsg.charAt(i);
+			final String replacement;
+			switch (c)
+			{
+				case '&':
+					replacement = "&amp;";
+					break;
+				case '<':
+					replacement = "&lt;";
+					break;
+				case '>':
+					replacement = "&gt;";
+					break;
+				case '\r':
+					replacement = "&#xD;";
+					break;
+				default:
+					replacement = null;
+			}
+
+			if (replacement != null)
+			{
+				if (escaped == null)
+				{
+					escaped = new StringBuilder(errMsg.length() + 16).append(errMsg, 0, i);
+				}
+
+				escaped.append(replacement);
+			}
+			else if (escaped != null)
+			{
+				escaped.append(c);
+			}
+		}
+
+		return escaped == null ? errMsg : escaped.toString();
 	}
 
 	@Override
@@ -77,10 +304,11 @@ public class ErrorHandlerInterceptor extends AbstractPhaseInterceptor<Message>
 		// this is a fault message, override with minimal fault string to hide any internal info
 		if (ex != null)
 		{
-			LOGGER.error("Fatal CXF service error", ex);
-			final HttpServletResponse response = (HttpServletResponse) message.getExchange().getInMessage().get(AbstractHTTPDestination.HTTP_RESPONSE);
+			final Message inMessage = message.getExchange().getInMessage();
+			final HttpServletResponse response = (HttpServletResponse) inMessage.get(AbstractHTTPDestination.HTTP_RESPONSE);
+			final ErrorBodyTemplate bodyTemplate = getErrorBodyTemplate(inMessage);
 			final int respStatus;
-			final String errMsg;
+			final byte[] msgBytes;
 
 			final Throwable cause = ex.getCause();
 			/*
@@ -89,24 +317,38 @@ public class ErrorHandlerInterceptor extends AbstractPhaseInterceptor<Message>
 			if (cause instanceof IllegalArgumentException || cause instanceof ValidationException)
 			{
 				respStatus = HttpServletResponse.SC_BAD_REQUEST;
+				badRequestErrorLogger.log(respStatus, ex);
 				final Throwable causeBehind = cause.getCause();
-				errMsg = cause.getMessage() + (causeBehind == null ? "" : ": " + causeBehind.getMessage());
+				final String errMsg = cause.getMessage() + (causeBehind == null ? "" : ": " + causeBehind.getMessage());
+				msgBytes = escape(errMsg, bodyTemplate).getBytes(StandardCharsets.UTF_8);
 			}
 			else
 			{
 				respStatus = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
-				errMsg = INTERNAL_SERVER_ERROR_MSG;
+				internalServerErrorLogger.log(respStatus, ex);
+				msgBytes = null;
 			}
 
-			final JaxbErrorMessage errorEntity = new JaxbErrorMessage(errMsg, null);
 			response.setStatus(respStatus);
+			response.setContentType(bodyTemplate.contentType);
 			try (ServletOutputStream out = response.getOutputStream())
 			{
-				final Marshaller marshaller = AUTHZ_API_JAXB_CONTEXT.createMarshaller();
-				marshaller.marshal(errorEntity, out);
+				if (msgBytes == null)
+				{
+					response.setContentLength(bodyTemplate.internalServerErrorBody.length);
+					out.write(bodyTemplate.internalServerErrorBody);
+				}
+				else
+				{
+					response.setContentLength(bodyTemplate.prefix.length + msgBytes.length + bodyTemplate.suffix.length);
+					out.write(bodyTemplate.prefix);
+					out.write(msgBytes);
+					out.write(bodyTemplate.suffix);
+				}
+
 				out.flush();
 			}
-			catch (JAXBException | IOException | IllegalStateException e)
+			catch (IOException | IllegalStateException e)
 			{
 				LOGGER.error("Failed to override service response", e);
 				throw INTERNAL_SERVER_ERROR;
@@ -27,6 +27,8 @@ import org.ow2.authzforce.pap.dao.flatfile.XmlnsAppendingDelegatingXMLStreamWrit
 import org.ow2.authzforce.rest.service.jaxrs.PolicyVersionResourceImpl;
 
 import jakarta.ws.rs.core.MediaType;
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBElement;
 import jakarta.xml.bind.JAXBException;
 import jakarta.xml.bind.Marshaller;
 import jakarta.xml.bind.Unmarshaller;
@@ -39,14 +41,27 @@ import java.io.OutputStream;
 import java.io.Reader;
 import java.io.Writer;
 import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 
 /**
  * {@link org.apache.cxf.jaxrs.provider.JAXBElementProvider} that collects all namespace declarations (prefix-URI mappings) on parsing input XML in order to pass it Saxon XPath evaluator when XPath is enabled and XPath expressions are used in XACML
+ * <p>
+ * Also, instead of creating a new {@link Marshaller}/{@link Unmarshaller} for each request like the parent class, this provider caches one of each per thread (for the last JAXB context used on the
+ * thread, i.e. the single JAXB context in practice when singleJaxbContext=true), so the cache is bounded by the number of request-processing threads. A cached instance is only given back to the cache
+ * after a successful (un)marshalling, after resetting the per-request settings (attachment (un)marshaller, JAXB fragment mode), and the encoding is set again on each request. A marshaller with a
+ * namespace prefix mapper (set by the parent class for collections of namespace-qualified elements, or if namespacePrefixes is configured) is not given back to the cache, since the JAXB RI does not
+ * allow to unset it. Other custom per-request marshaller settings (XML processing instructions) are not supported, i.e. not reset, so they must not be configured on this provider.
  */
 public final class NamespaceCollectingCxfJAXBElementProvider<T> extends JAXBElementProvider<T>
 {
+    /*
+     * Marshaller property set by CXF (JAXBUtils#setNamespaceMapper) with the JAXB RI
+     */
+    private static final String NAMESPACE_PREFIX_MAPPER_PROPERTY = "org.glassfish.jaxb.namespacePrefixMapper";
+
     private static final class XmlnsStreamFilter implements StreamFilter
     {
 
@@ -67,6 +82,131 @@ public final class NamespaceCollectingCxfJAXBElementProvider<T> extends JAXBElem
         }
     }
 
+    /*
+     * Per-thread cache of (un)marshallers for a given JAXB context
+     */
+    private static final class JaxbThreadCache
+    {
+        private JAXBContext context = null;
+        private Marshaller marshaller = null;
+        private Unmarshaller unmarshaller = null;
+
+        /*
+         * Instances lent to the request in progress, to be given back (cached) if successful. Any nested (un)marshalling on the same thread replaces it, in which case the outer one is simply discarded.
+         */
+        private Marshaller lentMarshaller = null;
+        private JAXBContext lentMarshallerContext = null;
+        private Unmarshaller lentUnmarshaller = null;
+        private JAXBContext lentUnmarshallerContext = null;
+
+        private void setContext(final JAXBContext newContext)
+        {
+            if (newContext != context)
+            {
+                // cached instances bound to the previous context
+                context = newContext;
+                marshaller = null;
+                unmarshaller = null;
+            }
+        }
+    }
+
+    private final ThreadLocal<JaxbThreadCache> jaxbThreadCache = ThreadLocal.withInitial(JaxbThreadCache::new);
+
+    @Override
+    protected Unmarshaller createUnmarshaller(Class<?> cls, Type genericType, boolean isCollection) throws JAXBException
+    {
+        final JAXBContext context = isCollection ? getCollectionContext(cls) : getJAXBContext(cls, genericType);
+        final JaxbThreadCache cache = jaxbThreadCache.get();
+        final Unmarshaller unmarshaller;
+        if (cache.unmarshaller != null && cache.context == context)
+        {
+            // configured by the parent class when created, same settings for the same context
+            unmarshaller = cache.unmarshaller;
+            cache.unmarshaller = null;
+        } else
+        {
+            unmarshaller = super.createUnmarshaller(cls, genericType, isCollection);
+        }
+
+        cache.lentUnmarshaller = unmarshaller;
+        cache.lentUnmarshallerContext = context;
+        return unmarshaller;
+    }
+
+    private void releaseUnmarshaller(final Unmarshaller unmarshaller)
+    {
+        final JaxbThreadCache cache = jaxbThreadCache.get();
+        if (unmarshaller != cache.lentUnmarshaller)
+        {
+            return;
+        }
+
+        final JAXBContext context = cache.lentUnmarshallerContext;
+        cache.lentUnmarshaller = null;
+        cache.lentUnmarshallerContext = null;
+        // reset the per-request settings
+        unmarshaller.setAttachmentUnmarshaller(null);
+        cache.setContext(context);
+        cache.unmarshaller = unmarshaller;
+    }
+
+    @Override
+    protected Marshaller createMarshaller(Object obj, Class<?> cls, Type genericType, String enc) throws JAXBException
+    {
+        final Class<?> objClass = JAXBElement.class.isAssignableFrom(cls) ? ((JAXBElement<?>) obj).getDeclaredType() : cls;
+        final JAXBContext context = getJAXBContext(objClass, genericType);
+        final JaxbThreadCache cache = jaxbThreadCache.get();
+        final Marshaller marshaller;
+        if (cache.marshaller != null && cache.context == context)
+        {
+            marshaller = cache.marshaller;
+            cache.marshaller = null;
+            // same as the parent class on a new instance (listener already set on creation)
+            marshaller.setProperty(Marshaller.JAXB_ENCODING, enc == null ? StandardCharsets.UTF_8.name() : enc);
+            validateObjectIfNeeded(marshaller, cls, obj);
+        } else
+        {
+            marshaller = super.createMarshaller(obj, cls, genericType, enc);
+        }
+
+        cache.lentMarshaller = marshaller;
+        cache.lentMarshallerContext = context;
+        return marshaller;
+    }
+
+    private void releaseMarshaller(final Marshaller marshaller)
+    {
+        final JaxbThreadCache cache = jaxbThreadCache.get();
+        if (marshaller != cache.lentMarshaller)
+        {
+            return;
+        }
+
+        final JAXBContext context = cache.lentMarshallerContext;
+        cache.lentMarshaller = null;
+        cache.lentMarshallerContext = null;
+        // reset the per-request settings
+        try
+        {
+            marshaller.setAttachmentMarshaller(null);
+            // set by the parent class when marshalling collection members
+            marshaller.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.FALSE);
+            if (marshaller.getProperty(NAMESPACE_PREFIX_MAPPER_PROPERTY) != null)
+            {
+                // set for this request (not on creation), cannot be reset to null
+                return;
+            }
+        } catch (JAXBException e)
+        {
+            // not reusable
+            return;
+        }
+
+        cache.setContext(context);
+        cache.marshaller = marshaller;
+    }
+
     @Override
     protected Object unmarshalFromReader(Unmarshaller unmarshaller, XMLStreamReader reader, Annotation[] anns, MediaType mt) throws JAXBException
     {
@@ -78,6 +218,7 @@ public final class NamespaceCollectingCxfJAXBElementProvider<T> extends JAXBElem
             final Object result = unmarshaller.unmarshal(filteringReader);
             final MessageContext msgCtx = getContext();
             msgCtx.put(PolicyVersionResourceImpl.XML_NS_CONTEXTS_CXF_MESSAGE_CONTEXT_PROPERTY_NAME, xmlStreamFilter.xmlnsPrefixToUriMap);
+            releaseUnmarshaller(unmarshaller);
             return result;
         } finally {
             try
@@ -122,6 +263,7 @@ public final class NamespaceCollectingCxfJAXBElementProvider<T> extends JAXBElem
                 msgCtx.put(PolicyVersionResourceImpl.XML_NS_CONTEXTS_CXF_MESSAGE_CONTEXT_PROPERTY_NAME, xmlStreamFilter.xmlnsPrefixToUriMap);
             }
 
+            releaseUnmarshaller(unmarshaller);
             return result;
         } finally
         {
@@ -147,6 +289,7 @@ public final class NamespaceCollectingCxfJAXBElementProvider<T> extends JAXBElem
         final XMLStreamWriter finalWriter = xpathNamespaceContexts == null || xpathNamespaceContexts.isEmpty()? writer: new XmlnsAppendingDelegatingXMLStreamWriter(writer, ImmutableMap.copyOf(xpathNamespaceContexts));
         PolicyVersionResourceImpl.OUTPUT_POLICY_XPATH_NAMESPACE_CONTEXT.remove();
         ms.marshal(obj, finalWriter);
+        releaseMarshaller(ms);
     }
 
     @Override
@@ -180,5 +323,7 @@ public final class NamespaceCollectingCxfJAXBElementProvider<T> extends JAXBElem
                 StaxUtils.close(xmlStreamWriter);
             }
         }
+
+        releaseMarshaller(ms);
     }
 }
@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.webapp;
+
+import java.beans.ConstructorProperties;
+import java.io.IOException;
+import java.util.List;
+
+import jakarta.annotation.Priority;
+import jakarta.ws.rs.BadRequestException;
+import jakarta.ws.rs.ClientErrorException;
+import jakarta.ws.rs.Priorities;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.container.PreMatching;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.core.Response.Status;
+import jakarta.ws.rs.ext.Provider;
+import jakarta.ws.rs.ext.ReaderInterceptor;
+import jakarta.ws.rs.ext.ReaderInterceptorContext;
+import jakarta.ws.rs.ext.WriterInterceptor;
+import jakarta.ws.rs.ext.WriterInterceptorContext;
+
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.phase.PhaseInterceptorChain;
+import org.everit.json.schema.Schema;
+import org.everit.json.schema.ValidationException;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * JAX-RS provider adding support for the {@value #MEDIA_TYPE} media type on the resources supporting the JSON Profile of XACML ({@value #XACML_JSON_MEDIA_TYPE}), i.e. the PDP resource. The CBOR
+ * payload has the same structure as the XACML/JSON one, but it is decoded directly into the {@link JSONObject} consumed by the PDP (resp. the PDP's {@link JSONObject} response is encoded directly as
+ * CBOR), without any intermediate JSON text. This saves the cost of JSON text parsing/serialization for the PEPs (and the PDP) and makes the messages smaller.
+ * <p>
+ * The request matching is done on the XACML/JSON media type: the {@value #MEDIA_TYPE} Content-Type and Accept headers are replaced with {@value #XACML_JSON_MEDIA_TYPE} before matching, and the
+ * request/response body is decoded/encoded by the reader/writer interceptor of this provider (instead of the XACML/JSON message body reader/writer). Error responses are not encoded in CBOR.
+ * <p>
+ * The CBOR input is subject to the same limits and JSON schema validation as the XACML/JSON input.
+ */
+@Provider
+@PreMatching
+@Priority(Priorities.USER + 1000)
+public final class XacmlCborProvider implements ContainerRequestFilter, ReaderInterceptor, WriterInterceptor
+{
+	/**
+	 * CBOR media type for XACML requests/responses
+	 */
+	public static final String MEDIA_TYPE = "application/xacml+cbor";
+
+	/**
+	 * Media type of the JSON Profile of XACML
+	 */
+	public static final String XACML_JSON_MEDIA_TYPE = "application/xacml+json";
+
+	private static final MediaType CBOR_MEDIA_TYPE = MediaType.valueOf(MEDIA_TYPE);
+	private static final MediaType XACML_JSON_MEDIA_TYPE_OBJECT = MediaType.valueOf(XACML_JSON_MEDIA_TYPE);
+
+	private static final String CBOR_REQUEST_EXCHANGE_PROPERTY = XacmlCborProvider.class.getName() + ".request";
+	private static final String CBOR_RESPONSE_EXCHANGE_PROPERTY = XacmlCborProvider.class.getName() + ".response";
+
+	private final Schema schema;
+	private final CborJsonCodec codec;
+
+	/**
+	 * Constructor
+	 *
+	 * @param schema
+	 *            JSON schema of the (decoded) requests, null iff no schema validation shall occur
+	 * @param maxJsonStringSize
+	 *            allowed maximum size of map keys and text strings. Negative or zero values disable limit checking altogether (the other max*** arguments have no effect).
+	 * @param maxNumOfImmediateChildren
+	 *            allowed maximum number of entries in a map, or items in an array. Negative or zero values disable limit checking altogether (the other max*** arguments have no effect).
+	 * @param maxDepth
+	 *            allowed maximum depth of nested maps/arrays/tags. Negative or zero values disable limit checking altogether (the other max*** arguments have no effect).
+	 */
+	@SuppressFBWarnings(value="EI_EXPOSE_REP2")
+	@ConstructorProperties({ "schema", "maxJsonStringSize", "maxNumOfImmediateChildren", "maxDepth" })
+	public XacmlCborProvider(final Schema schema, final int maxJsonStringSize, final int maxNumOfImmediateChildren, final int maxDepth)
+	{
+		this.schema = schema;
+		this.codec = new CborJsonCodec(maxJsonStringSize, maxNumOfImmediateChildren, maxDepth);
+	}
+
+	private static Exchange getCurrentExchange()
+	{
+		final Message message = PhaseInterceptorChain.getCurrentMessage();
+		return message == null ? null : message.getExchange();
+	}
+
+	private static boolean isCbor(final MediaType mediaType)
+	{
+		return mediaType != null && mediaType.isCompatible(CBOR_MEDIA_TYPE) && !mediaType.isWildcardType() && !mediaType.isWildcardSubtype();
+	}
+
+	@Override
+	public void filter(final ContainerRequestContext requestContext)
+	{
+		final Exchange exchange = getCurrentExchange();
+		if (exchange == null)
+		{
+			return;
+		}
+
+		final Message inMessage = exchange.getInMessage();
+		final MultivaluedMap<String, String> headers = requestContext.getHeaders();
+		if (isCbor(requestContext.getMediaType()))
+		{
+			headers.putSingle(HttpHeaders.CONTENT_TYPE, XACML_JSON_MEDIA_TYPE);
+			inMessage.put(Message.CONTENT_TYPE, XACML_JSON_MEDIA_TYPE);
+			exchange.put(CBOR_REQUEST_EXCHANGE_PROPERTY, Boolean.TRUE);
+		}
+
+		/*
+		 * Respond with CBOR iff it is the preferred acceptable media type (ignoring wildcards); in this case, accept XACML/JSON for matching the resource method.
+		 */
+		final List<MediaType> acceptableMediaTypes = requestContext.getAcceptableMediaTypes();
+		if (!acceptableMediaTypes.isEmpty() && isCbor(acceptableMediaTypes.get(0)))
+		{
+			headers.putSingle(HttpHeaders.ACCEPT, XACML_JSON_MEDIA_TYPE);
+			inMessage.put(Message.ACCEPT_CONTENT_TYPE, XACML_JSON_MEDIA_TYPE);
+			exchange.put(CBOR_RESPONSE_EXCHANGE_PROPERTY, Boolean.TRUE);
+		}
+	}
+
+	@Override
+	public Object aroundReadFrom(final ReaderInterceptorContext context) throws IOException
+	{
+		final Exchange exchange = getCurrentExchange();
+		if (exchange == null || exchange.get(CBOR_REQUEST_EXCHANGE_PROPERTY) == null || context.getType() != JSONObject.class)
+		{
+			return context.proceed();
+		}
+
+		final JSONObject jsonObj;
+		try
+		{
+			jsonObj = codec.decode(context.getInputStream());
+			if (schema != null)
+			{
+				schema.validate(jsonObj);
+			}
+		}
+		catch (final JSONException | ValidationException e)
+		{
+			/*
+			 * JSONException and ValidationException extend RuntimeException so they are not caught as IllegalArgumentException
+			 */
+			throw new BadRequestException(e);
+		}
+		catch (final IllegalArgumentException e)
+		{
+			// exception related to limits checking
+			throw new ClientErrorException(Status.REQUEST_ENTITY_TOO_LARGE, e);
+		}
+
+		return jsonObj;
+	}
+
+	@Override
+	public void aroundWriteTo(final WriterInterceptorContext context) throws IOException
+	{
+		final Exchange exchange = getCurrentExchange();
+		if (exchange == null || exchange.get(CBOR_RESPONSE_EXCHANGE_PROPERTY) == null || !(context.getEntity() instanceof JSONObject)
+				|| context.getMediaType() == null || !XACML_JSON_MEDIA_TYPE_OBJECT.isCompatible(context.getMediaType()))
+		{
+			// not a XACML/JSON response, e.g. error message
+			context.proceed();
+			return;
+		}
+
+		context.setMediaType(CBOR_MEDIA_TYPE);
+		codec.encode((JSONObject) context.getEntity(), context.getOutputStream());
+	}
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.webapp;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+
+import org.jvnet.fastinfoset.Vocabulary;
+
+import com.sun.xml.fastinfoset.vocab.ParserVocabulary;
+import com.sun.xml.fastinfoset.vocab.SerializerVocabulary;
+
+/**
+ * External <a href="https://www.itu.int/rec/T-REC-X.891">Fast Infoset</a> vocabulary pre-seeded with the XACML 3.0 core, AuthzForce REST API and Atom namespaces, element and attribute names, and
+ * the standard XACML identifiers (attribute categories, attribute IDs, datatypes, status codes) and decisions. A Fast Infoset document referring to this vocabulary (by {@link #URI}) does not
+ * need to include (and index) these strings, therefore is smaller and faster to parse.
+ * <p>
+ * The use of this vocabulary is negotiated per client with the {@value #HTTP_HEADER} HTTP header: the server accepts Fast Infoset requests referring to it anyway, and uses it for the responses iff
+ * the request has this header set to {@link #URI} (then the response has the same header). Therefore, this vocabulary must never change once published: any change requires a new {@link #URI}.
+ */
+public final class XacmlFastInfosetVocabulary
+{
+	/**
+	 * URI of this external vocabulary
+	 */
+	public static final String URI = "urn:ow2:authzforce:fastinfoset:vocabulary:xacml:3.0:v1";
+
+	/**
+	 * HTTP header used to negotiate the use of this vocabulary, with {@link #URI} as value
+	 */
+	public static final String HTTP_HEADER = "FastInfoset-Vocabulary";
+
+	private static final String XACML_3_0_NS = "urn:oasis:names:tc:xacml:3.0:core:schema:wd-17";
+	private static final String AUTHZ_API_NS = "http://authzforce.github.io/rest-api-model/xmlns/authz/5";
+	private static final String AUTHZ_API_EXT_NS = "http://authzforce.github.io/server/xmlns/api/1";
+	private static final String ATOM_NS = "http://www.w3.org/2005/Atom";
+
+	private static final List<String> XACML_ELEMENTS = Arrays.asList(
+			// Request/Response context
+			"Request", "RequestDefaults", "XPathVersion", "Attributes", "Content", "Attribute", "AttributeValue", "MultiRequests", "RequestReference", "AttributesReference", "Response", "Result",
+			"Decision", "Status", "StatusCode", "StatusMessage", "StatusDetail", "MissingAttributeDetail", "Obligations", "Obligation", "AssociatedAdvice", "Advice", "AttributeAssignment",
+			"PolicyIdentifierList", "PolicyIdReference", "PolicySetIdReference",
+			// policies
+			"PolicySet", "Policy", "Description", "PolicyIssuer", "PolicySetDefaults", "PolicyDefaults", "Target", "AnyOf", "AllOf", "Match", "AttributeDesignator", "AttributeSelector", "Rule",
+			"Condition", "Apply", "Function", "VariableDefinition", "VariableReference", "ObligationExpressions", "ObligationExpression", "AdviceExpressions", "AdviceExpression",
+			"AttributeAssignmentExpression", "CombinerParameters", "CombinerParameter", "RuleCombinerParameters", "PolicyCombinerParameters", "PolicySetCombinerParameters");
+
+	private static final List<String> XACML_ATTRIBUTES = Arrays.asList("ReturnPolicyIdList", "CombinedDecision", "Category", "AttributeId", "Issuer", "IncludeInResult", "DataType", "MustBePresent",
+			"Path", "ContextSelectorId", "ReferenceId", "Version", "EarliestVersion", "LatestVersion", "PolicySetId", "PolicyId", "RuleId", "Effect", "PolicyCombiningAlgId", "RuleCombiningAlgId",
+			"MaxDelegationDepth", "FunctionId", "MatchId", "VariableId", "ObligationId", "AdviceId", "FulfillOn", "AppliesTo", "ParameterName", "Value");
+
+	private static final List<String> AUTHZ_API_ELEMENTS = Arrays.asList("resources", "childResources", "productMetadata", "domain", "properties", "domainProperties", "description", "pdpProperties",
+			"pdpPropertiesUpdate", "prpProperties", "feature", "rootPolicyRef", "rootPolicyRefExpression", "refPolicyRef", "applicablePolicies", "attributeProviders", "attributeProvider",
+			"maxPolicyCount", "maxVersionCountPerPolicy", "versionRollingEnabled");
+
+	private static final List<String> AUTHZ_API_ATTRIBUTES = Arrays.asList("externalId", "enabled", "type", "version", "name", "doc", "uptime", "lastModifiedTime",
+			// Atom link
+			"href", "rel", "title");
+
+	/*
+	 * Standard XACML identifiers, hard-coded (not taken from the XACML model library's enums) so that this vocabulary does not change if the library adds identifiers or reorders them
+	 */
+	private static final List<String> XACML_ATTRIBUTE_CATEGORIES = Arrays.asList(
+			"urn:oasis:names:tc:xacml:1.0:subject-category:access-subject", "urn:oasis:names:tc:xacml:1.0:subject-category:codebase",
+			"urn:oasis:names:tc:xacml:1.0:subject-category:intermediary-subject", "urn:oasis:names:tc:xacml:1.0:subject-category:recipient-subject",
+			"urn:oasis:names:tc:xacml:1.0:subject-category:requesting-machine", "urn:oasis:names:tc:xacml:3.0:attribute-category:resource",
+			"urn:oasis:names:tc:xacml:3.0:attribute-category:action", "urn:oasis:names:tc:xacml:3.0:attribute-category:environment");
+
+	private static final List<String> XACML_ATTRIBUTE_IDS = Arrays.asList(
+			"urn:oasis:names:tc:xacml:1.0:subject:authn-locality:dns-name", "urn:oasis:names:tc:xacml:1.0:subject:authn-locality:ip-address",
+			"urn:oasis:names:tc:xacml:1.0:subject:authentication-method", "urn:oasis:names:tc:xacml:1.0:subject:authentication-time",
+			"urn:oasis:names:tc:xacml:1.0:subject:key-info", "urn:oasis:names:tc:xacml:1.0:subject:request-time",
+			"urn:oasis:names:tc:xacml:1.0:subject:session-start-time", "urn:oasis:names:tc:xacml:1.0:subject:subject-id",
+			"urn:oasis:names:tc:xacml:1.0:subject:subject-id-qualifier", "urn:oasis:names:tc:xacml:2.0:subject:role",
+			"urn:oasis:names:tc:xacml:1.0:resource:resource-id", "urn:oasis:names:tc:xacml:1.0:resource:resource-location",
+			"urn:oasis:names:tc:xacml:1.0:resource:simple-file-name", "urn:oasis:names:tc:xacml:2.0:resource:target-namespace",
+			"urn:oasis:names:tc:xacml:2.0:resource:scope", "urn:oasis:names:tc:xacml:3.0:profile:multiple:content-selector",
+			"urn:oasis:names:tc:xacml:1.0:action:action-id", "urn:oasis:names:tc:xacml:1.0:action:action-namespace",
+			"urn:oasis:names:tc:xacml:1.0:action:implied-action", "urn:oasis:names:tc:xacml:1.0:environment:current-time",
+			"urn:oasis:names:tc:xacml:1.0:environment:current-date", "urn:oasis:names:tc:xacml:1.0:environment:current-dateTime");
+
+	private static final List<String> XACML_DATATYPES = Arrays.asList(
+			"http://www.w3.org/2001/XMLSchema#string", "http://www.w3.org/2001/XMLSchema#boolean", "http://www.w3.org/2001/XMLSchema#integer",
+			"http://www.w3.org/2001/XMLSchema#double", "http://www.w3.org/2001/XMLSchema#time", "http://www.w3.org/2001/XMLSchema#date",
+			"http://www.w3.org/2001/XMLSchema#dateTime", "http://www.w3.org/2001/XMLSchema#dayTimeDuration", "http://www.w3.org/2001/XMLSchema#yearMonthDuration",
+			"http://www.w3.org/2001/XMLSchema#anyURI", "http://www.w3.org/2001/XMLSchema#hexBinary", "http://www.w3.org/2001/XMLSchema#base64Binary",
+			"urn:oasis:names:tc:xacml:1.0:data-type:rfc822Name", "urn:oasis:names:tc:xacml:1.0:data-type:x500Name", "urn:oasis:names:tc:xacml:2.0:data-type:ipAddress",
+			"urn:oasis:names:tc:xacml:2.0:data-type:dnsName", "urn:oasis:names:tc:xacml:3.0:data-type:xpathExpression");
+
+	private static final List<String> XACML_STATUS_CODES = Arrays.asList(
+			"urn:oasis:names:tc:xacml:1.0:status:ok", "urn:oasis:names:tc:xacml:1.0:status:missing-attribute",
+			"urn:oasis:names:tc:xacml:1.0:status:syntax-error", "urn:oasis:names:tc:xacml:1.0:status:processing-error");
+
+	private static final List<String> DECISIONS = Arrays.asList("Permit", "Deny", "NotApplicable", "Indeterminate", "true", "false");
+
+	private static final Vocabulary VOCABULARY = newVocabulary();
+
+	private static final SerializerVocabulary SERIALIZER_VOCABULARY = new SerializerVocabulary(VOCABULARY, true);
+
+	private static final ParserVocabulary PARSER_VOCABULARY = new ParserVocabulary(VOCABULARY);
+
+	private XacmlFastInfosetVocabulary()
+	{
+		// prevent instantiation
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Vocabulary newVocabulary()
+	{
+		final Vocabulary vocabulary = new Vocabulary();
+		vocabulary.prefixes.add("xacml");
+		vocabulary.prefixes.add("ns2");
+		vocabulary.prefixes.add("ns3");
+		vocabulary.prefixes.add("ns4");
+		vocabulary.namespaceNames.add(XACML_3_0_NS);
+		vocabulary.namespaceNames.add(AUTHZ_API_NS);
+		vocabulary.namespaceNames.add(AUTHZ_API_EXT_NS);
+		vocabulary.namespaceNames.add(ATOM_NS);
+		vocabulary.namespaceNames.add(XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI);
+
+		XACML_ELEMENTS.forEach(localName -> vocabulary.elements.add(new QName(XACML_3_0_NS, localName)));
+		XACML_ATTRIBUTES.forEach(localName -> vocabulary.attributes.add(new QName(localName)));
+		AUTHZ_API_ELEMENTS.forEach(localName -> vocabulary.elements.add(new QName(AUTHZ_API_NS, localName)));
+		vocabulary.elements.add(new QName(ATOM_NS, "link"));
+		AUTHZ_API_ATTRIBUTES.forEach(localName -> vocabulary.attributes.add(new QName(localName)));
+
+		// local names of the element/attribute QNames
+		vocabulary.elements.forEach(qname -> vocabulary.localNames.add(((QName) qname).getLocalPart()));
+		vocabulary.attributes.forEach(qname -> vocabulary.localNames.add(((QName) qname).getLocalPart()));
+
+		vocabulary.attributeValues.addAll(XACML_ATTRIBUTE_CATEGORIES);
+		vocabulary.attributeValues.addAll(XACML_ATTRIBUTE_IDS);
+		vocabulary.attributeValues.addAll(XACML_DATATYPES);
+		vocabulary.attributeValues.addAll(XACML_STATUS_CODES);
+
+		vocabulary.characterContentChunks.addAll(DECISIONS);
+		return vocabulary;
+	}
+
+	/**
+	 * Creates a new serializer vocabulary referring to this external vocabulary, for serializing a single document (a serializer vocabulary is modified during serialization, therefore cannot be
+	 * reused for another document)
+	 *
+	 * @return serializer vocabulary to be set on the Fast Infoset serializer before writing the document
+	 */
+	public static SerializerVocabulary newSerializerVocabulary()
+	{
+		final SerializerVocabulary vocabulary = new SerializerVocabulary();
+		// shared read-only vocabulary (not cloned): only read by the serializers
+		vocabulary.setExternalVocabulary(URI, SERIALIZER_VOCABULARY, false);
+		return vocabulary;
+	}
+
+	/**
+	 * Gets the parser vocabulary, to be registered as external vocabulary on the Fast Infoset parsers (by {@link #URI}). It is read-only, therefore may be shared by all parsers.
+	 *
+	 * @return parser vocabulary
+	 */
+	public static ParserVocabulary getParserVocabulary()
+	{
+		return PARSER_VOCABULARY;
+	}
+}
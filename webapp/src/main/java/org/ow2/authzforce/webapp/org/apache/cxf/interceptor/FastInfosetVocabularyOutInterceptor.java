@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.webapp.org.apache.cxf.interceptor;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.xml.stream.XMLStreamWriter;
+
+import org.apache.cxf.interceptor.FIStaxOutInterceptor;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageUtils;
+import org.apache.cxf.phase.AbstractPhaseInterceptor;
+import org.apache.cxf.phase.Phase;
+import org.ow2.authzforce.webapp.XacmlFastInfosetVocabulary;
+
+import com.sun.xml.fastinfoset.stax.StAXDocumentSerializer;
+
+/**
+ * Makes the Fast Infoset serializer created by {@link FIStaxOutInterceptor} refer to the {@link XacmlFastInfosetVocabulary}, so that the XACML/API names and identifiers are not written to the
+ * output document:
+ * <ul>
+ * <li>on the server side, iff the client requested it (see {@link JAXRSSubResourceCompatibleFIStaxInInterceptor}); then the {@value XacmlFastInfosetVocabulary#HTTP_HEADER} header is added to the
+ * response;</li>
+ * <li>on the client side, always; then the {@value XacmlFastInfosetVocabulary#HTTP_HEADER} header is added to the request so that the server uses the vocabulary for the response as well (the client
+ * must register the vocabulary on its parser, e.g. by using {@link JAXRSSubResourceCompatibleFIStaxInInterceptor}).</li>
+ * </ul>
+ */
+public final class FastInfosetVocabularyOutInterceptor extends AbstractPhaseInterceptor<Message>
+{
+	/**
+	 * Exchange property set to {@link Boolean#TRUE} iff the {@link XacmlFastInfosetVocabulary} must be used for the response
+	 */
+	public static final String VOCABULARY_ENABLED = FastInfosetVocabularyOutInterceptor.class.getName() + ".enabled";
+
+	/**
+	 * Default constructor
+	 */
+	public FastInfosetVocabularyOutInterceptor()
+	{
+		super(Phase.PRE_STREAM);
+		// the serializer is created by FIStaxOutInterceptor
+		addAfter(FIStaxOutInterceptor.class.getName());
+	}
+
+	@Override
+	public void handleMessage(final Message message)
+	{
+		final XMLStreamWriter writer = message.getContent(XMLStreamWriter.class);
+		if (!(writer instanceof StAXDocumentSerializer))
+		{
+			// not Fast Infoset
+			return;
+		}
+
+		final boolean isRequestor = MessageUtils.isRequestor(message);
+		if (!isRequestor && message.getExchange().get(VOCABULARY_ENABLED) == null)
+		{
+			return;
+		}
+
+		// nothing written yet, the document header (including the external vocabulary URI) is written on writeStartDocument()
+		((StAXDocumentSerializer) writer).setVocabulary(XacmlFastInfosetVocabulary.newSerializerVocabulary());
+
+		@SuppressWarnings("unchecked")
+		Map<String, List<String>> headers = (Map<String, List<String>>) message.get(Message.PROTOCOL_HEADERS);
+		if (headers == null)
+		{
+			headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+			message.put(Message.PROTOCOL_HEADERS, headers);
+		}
+
+		headers.put(XacmlFastInfosetVocabulary.HTTP_HEADER, Collections.singletonList(XacmlFastInfosetVocabulary.URI));
+	}
+}
@@ -19,6 +19,9 @@
 package org.ow2.authzforce.webapp.org.apache.cxf.interceptor;
 
 import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 import javax.xml.stream.XMLStreamReader;
 
@@ -29,6 +32,7 @@ import org.apache.cxf.interceptor.StaxInEndingInterceptor;
 import org.apache.cxf.jaxrs.provider.JAXBElementProvider;
 import org.apache.cxf.message.Message;
 import org.apache.cxf.phase.Phase;
+import org.ow2.authzforce.webapp.XacmlFastInfosetVocabulary;
 
 import com.sun.xml.fastinfoset.stax.StAXDocumentParser;
 
@@ -38,7 +42,8 @@ import com.sun.xml.fastinfoset.stax.StAXDocumentParser;
  * used by {@link FIStaxInInterceptor} applies to pre-invoke phase, and therefore removes the FastInfoset {@link StAXDocumentParser} before any operation on a JAX-RS subresource is called and actually
  * needs/uses it to unmarshal the XML inputstream in argument, resulting in error.
  * 
- * This class also makes some optimizations compared to {@link FIStaxInInterceptor}.
+ * This class also makes some optimizations compared to {@link FIStaxInInterceptor}, and registers the {@link XacmlFastInfosetVocabulary} as external vocabulary on the parser. If the message has the
+ * {@value XacmlFastInfosetVocabulary#HTTP_HEADER} header set to {@link XacmlFastInfosetVocabulary#URI}, the {@link FastInfosetVocabularyOutInterceptor} uses the vocabulary for the response.
  * 
  * FIXME: report the issue to CXF team to get it fixed and remove this workaround
  *
@@ -48,15 +53,39 @@ public final class JAXRSSubResourceCompatibleFIStaxInInterceptor extends FIStaxI
 	// private final static Logger LOGGER = LoggerFactory.getLogger(JAXRSSubResourceCompatibleFIStaxInInterceptor.class);
 	private static final StaxInEndingInterceptor ENDING_INTERCEPTOR = new StaxInEndingInterceptor(Phase.POST_INVOKE);
 
+	private static final Map<String, Object> EXTERNAL_VOCABULARIES = Collections.singletonMap(XacmlFastInfosetVocabulary.URI, XacmlFastInfosetVocabulary.getParserVocabulary());
+
 	private static XMLStreamReader getParser(InputStream in)
 	{
 		final StAXDocumentParser parser = new StAXDocumentParser(in);
 		parser.setStringInterning(true);
 		parser.setForceStreamClose(true);
+		parser.setExternalVocabularies(EXTERNAL_VOCABULARIES);
 		parser.setInputStream(in);
 		return parser;
 	}
 
+	private static boolean isVocabularyRequested(final Message message)
+	{
+		@SuppressWarnings("unchecked")
+		final Map<String, List<String>> headers = (Map<String, List<String>>) message.get(Message.PROTOCOL_HEADERS);
+		if (headers == null)
+		{
+			return false;
+		}
+
+		// header names are case-insensitive
+		for (final Map.Entry<String, List<String>> header : headers.entrySet())
+		{
+			if (XacmlFastInfosetVocabulary.HTTP_HEADER.equalsIgnoreCase(header.getKey()) && header.getValue() != null && header.getValue().contains(XacmlFastInfosetVocabulary.URI))
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
 	/**
 	 * Default constructor. Enables FastInfoset support.
 	 */
@@ -68,6 +97,12 @@ public final class JAXRSSubResourceCompatibleFIStaxInInterceptor extends FIStaxI
 	@Override
 	public void handleMessage(Message message)
 	{
+		// the vocabulary may be requested for the response only, e.g. on GET requests
+		if (!isRequestor(message) && isVocabularyRequested(message))
+		{
+			message.getExchange().put(FastInfosetVocabularyOutInterceptor.VOCABULARY_ENABLED, Boolean.TRUE);
+		}
+
 		if (message.getContent(XMLStreamReader.class) != null || !isHttpVerbSupported(message))
 		{
 			return;
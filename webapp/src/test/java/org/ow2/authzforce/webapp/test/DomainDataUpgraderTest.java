@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.webapp.test;
+
+import static org.testng.Assert.assertEquals;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import javax.xml.transform.stream.StreamSource;
+
+import org.ow2.authzforce.core.pdp.impl.PdpModelHandler;
+import org.ow2.authzforce.core.xmlns.pdp.Pdp;
+import org.ow2.authzforce.pap.dao.flatfile.FlatFileDAOUtils;
+import org.ow2.authzforce.rest.service.upgrade.DomainDataUpgrader;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the upgrade of domains from older versions on server startup, on the 9.x/10.x sample data of the upgrader
+ */
+public class DomainDataUpgraderTest
+{
+	private static final Path OLD_DOMAINS_DIR = Paths.get("../upgrader/src/test/server/9.x,10.x/data/domains");
+
+	private static final Path DOMAINS_DIR = Paths.get("target/upgrade/domains");
+
+	private Path oldDomainDir = null;
+
+	@BeforeClass
+	public void setUp() throws Exception
+	{
+		if (Files.exists(DOMAINS_DIR))
+		{
+			FlatFileDAOUtils.deleteDirectory(DOMAINS_DIR, 4);
+		}
+
+		Files.createDirectories(DOMAINS_DIR);
+		oldDomainDir = DOMAINS_DIR.resolve("A0bdIbmGEeWhFwcKrC9gSQ");
+		FlatFileDAOUtils.copyDirectory(OLD_DOMAINS_DIR.resolve("A0bdIbmGEeWhFwcKrC9gSQ"), oldDomainDir, 3);
+		// domain already in the current format
+		FlatFileDAOUtils.copyDirectory(RestServiceTest.SAMPLE_DOMAIN_DIR, DOMAINS_DIR.resolve("currentFormat"), 3);
+	}
+
+	@Test
+	public void upgrade() throws Exception
+	{
+		final DomainDataUpgrader upgrader = new DomainDataUpgrader(DOMAINS_DIR, true, 2);
+		assertEquals(upgrader.getUpgradedDomainCount(), 1, "Wrong number of upgraded domains");
+
+		// the upgraded PDP configuration must be valid against the current schema
+		final PdpModelHandler pdpModelHandler = new PdpModelHandler("src/test/resources/authzforce-ce-server/conf/catalog.xml", "src/test/resources/authzforce-ce-server/conf/authzforce-ext.xsd");
+		final Pdp pdpConf = pdpModelHandler.unmarshal(new StreamSource(oldDomainDir.resolve(RestServiceTest.DOMAIN_PDP_CONF_FILENAME).toFile()), Pdp.class);
+		assertEquals(pdpConf.getVersion(), "8.0", "Wrong version of upgraded PDP configuration");
+		assertEquals(pdpConf.getPolicyProviders().size(), 1, "Policy provider missing from upgraded PDP configuration");
+	}
+
+	@Test(dependsOnMethods = "upgrade")
+	public void upgradeAlreadyUpgraded() throws Exception
+	{
+		final DomainDataUpgrader upgrader = new DomainDataUpgrader(DOMAINS_DIR, true, 2);
+		assertEquals(upgrader.getUpgradedDomainCount(), 0, "Domains upgraded twice");
+	}
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.webapp.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.ow2.authzforce.pap.dao.flatfile.FlatFileDAOUtils;
+import org.ow2.authzforce.rest.service.api.xmlns.DomainChange;
+import org.ow2.authzforce.rest.service.api.xmlns.DomainChanges;
+import org.ow2.authzforce.rest.service.jaxrs.DomainSnapshotResource;
+import org.ow2.authzforce.rest.service.replication.DomainChangeFeed;
+import org.ow2.authzforce.rest.service.replication.DomainChangeSource;
+import org.ow2.authzforce.rest.service.replication.DomainReplicator;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the replication of domains from a primary server's change feed to a read-only PDP replica, with the primary's feed used locally as the source (no HTTP)
+ */
+public class DomainReplicatorTest
+{
+	private static final Path PRIMARY_DOMAINS_DIR = Paths.get("target/replication/primary/domains");
+
+	private static final Path REPLICA_DOMAINS_DIR = Paths.get("target/replication/replica/domains");
+
+	private static final String DOMAIN_ID = "sampleDomain";
+
+	private DomainChangeFeed feed = null;
+	private DomainReplicator replicator = null;
+
+	@BeforeClass
+	public void setUp() throws Exception
+	{
+		for (final Path dir : new Path[] { PRIMARY_DOMAINS_DIR, REPLICA_DOMAINS_DIR })
+		{
+			if (Files.exists(dir))
+			{
+				FlatFileDAOUtils.deleteDirectory(dir, 4);
+			}
+
+			Files.createDirectories(dir);
+		}
+
+		FlatFileDAOUtils.copyDirectory(RestServiceTest.SAMPLE_DOMAIN_DIR, PRIMARY_DOMAINS_DIR.resolve(DOMAIN_ID), 3);
+		feed = new DomainChangeFeed(PRIMARY_DOMAINS_DIR, true, 0);
+		replicator = new DomainReplicator(null, REPLICA_DOMAINS_DIR, feed);
+	}
+
+	private static boolean isReplicated(final String relativePath) throws Exception
+	{
+		final Path replicaFile = REPLICA_DOMAINS_DIR.resolve(relativePath);
+		return Files.isRegularFile(replicaFile) && Files.mismatch(PRIMARY_DOMAINS_DIR.resolve(relativePath), replicaFile) == -1;
+	}
+
+	@Test
+	public void replicateInitialDomains() throws Exception
+	{
+		assertEquals(replicator.replicateOnce(), 1, "Wrong number of replicated domains");
+		assertTrue(isReplicated(DOMAIN_ID + "/" + RestServiceTest.DOMAIN_PDP_CONF_FILENAME), "PDP configuration not replicated");
+		assertEquals(replicator.replicateOnce(), 0, "Domain replicated again without change");
+	}
+
+	@Test(dependsOnMethods = "replicateInitialDomains")
+	public void replicateModifiedDomain() throws Exception
+	{
+		final Path pdpConfFile = PRIMARY_DOMAINS_DIR.resolve(DOMAIN_ID).resolve(RestServiceTest.DOMAIN_PDP_CONF_FILENAME);
+		// make sure the modification time changes on filesystems with low timestamp resolution
+		Thread.sleep(1000);
+		Files.writeString(pdpConfFile, Files.readString(pdpConfFile) + System.lineSeparator());
+		assertEquals(replicator.replicateOnce(), 1, "Modified domain not replicated");
+		assertTrue(isReplicated(DOMAIN_ID + "/" + RestServiceTest.DOMAIN_PDP_CONF_FILENAME), "Modified PDP configuration not replicated");
+	}
+
+	@Test(dependsOnMethods = "replicateModifiedDomain")
+	public void replicateRemovedDomain() throws Exception
+	{
+		FlatFileDAOUtils.deleteDirectory(PRIMARY_DOMAINS_DIR.resolve(DOMAIN_ID), 4);
+		assertEquals(replicator.replicateOnce(), 1, "Domain removal not replicated");
+		assertFalse(Files.exists(REPLICA_DOMAINS_DIR.resolve(DOMAIN_ID)), "Removed domain still on the replica");
+	}
+
+	@Test(dependsOnMethods = "replicateRemovedDomain")
+	public void replicateAfterReplicaRestart() throws Exception
+	{
+		FlatFileDAOUtils.copyDirectory(RestServiceTest.SAMPLE_DOMAIN_DIR, PRIMARY_DOMAINS_DIR.resolve(DOMAIN_ID), 3);
+		assertEquals(replicator.replicateOnce(), 1, "New domain not replicated");
+
+		// new replicator (replica restarted): full resync, already up-to-date
+		final DomainReplicator restartedReplicator = new DomainReplicator(null, REPLICA_DOMAINS_DIR, feed);
+		assertEquals(restartedReplicator.replicateOnce(), 0, "Up-to-date domains replicated again after restart");
+	}
+
+	@Test
+	public void replicateDomainWithTooManyFiles() throws Exception
+	{
+		final String domainId = "tooManyFilesDomain";
+		final DomainChangeSource source = new DomainChangeSource()
+		{
+			@Override
+			public DomainChanges getChanges(final String epoch, final long since)
+			{
+				return new DomainChanges(Collections.singletonList(new DomainChange(domainId, 1, false)), "testEpoch", 1, false);
+			}
+
+			@Override
+			public boolean writeDomainFiles(final String changedDomainId, final OutputStream out) throws IOException
+			{
+				// one file more than allowed in a domain snapshot
+				try (ZipOutputStream zipOut = new ZipOutputStream(out))
+				{
+					for (int i = 0; i <= DomainSnapshotResource.MAX_ENTRY_COUNT; i++)
+					{
+						zipOut.putNextEntry(new ZipEntry("file" + i + ".xml"));
+						zipOut.closeEntry();
+					}
+				}
+
+				return true;
+			}
+		};
+
+		try
+		{
+			new DomainReplicator(null, REPLICA_DOMAINS_DIR, source).replicateOnce();
+			fail("Change set with too many files replicated");
+		}
+		catch (final IOException e)
+		{
+			// expected
+		}
+
+		assertFalse(Files.exists(REPLICA_DOMAINS_DIR.resolve(domainId)), "Domain with too many files created on the replica");
+	}
+
+	@Test
+	public void getDomainFilesOutsideDomainsRoot() throws Exception
+	{
+		assertFalse(feed.writeDomainFiles("../primary", new ByteArrayOutputStream()), "Directory outside the domains root exported");
+	}
+}
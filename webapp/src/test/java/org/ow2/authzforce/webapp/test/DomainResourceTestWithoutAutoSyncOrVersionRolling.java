@@ -24,6 +24,8 @@ import org.apache.cxf.jaxrs.client.ClientConfiguration;
 import org.apache.cxf.jaxrs.client.WebClient;
 import org.apache.cxf.jaxrs.provider.BinaryDataProvider;
 import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.ow2.authzforce.core.pap.api.dao.AuthzPolicy;
 import org.ow2.authzforce.core.pdp.impl.io.MultiDecisionXacmlJaxbRequestPreprocessor;
 import org.ow2.authzforce.core.pdp.impl.io.SingleDecisionXacmlJaxbRequestPreprocessor;
 import org.ow2.authzforce.core.pdp.testutil.ext.TestCombinedDecisionXacmlJaxbResultPostprocessor;
@@ -36,11 +38,25 @@ import org.ow2.authzforce.pap.dao.flatfile.FlatFileBasedDomainsDao;
 import org.ow2.authzforce.pap.dao.flatfile.FlatFileBasedDomainsDao.PdpCoreFeature;
 import org.ow2.authzforce.pap.dao.flatfile.FlatFileBasedDomainsDao.PdpFeatureType;
 import org.ow2.authzforce.pap.dao.flatfile.FlatFileDAOUtils;
+import org.ow2.authzforce.pep.client.PepClient;
 import org.ow2.authzforce.rest.api.jaxrs.*;
 import org.ow2.authzforce.rest.api.xmlns.*;
+import org.ow2.authzforce.rest.service.api.xmlns.DecisionBatch;
+import org.ow2.authzforce.rest.service.api.xmlns.DecisionBatchResult;
+import org.ow2.authzforce.rest.service.api.xmlns.DecisionCoalescing;
+import org.ow2.authzforce.rest.service.api.xmlns.PdpReloadMetrics;
+import org.ow2.authzforce.rest.service.api.xmlns.PolicyTransaction;
+import org.ow2.authzforce.rest.service.api.xmlns.SlowDecision;
+import org.ow2.authzforce.rest.service.api.xmlns.SlowDecisions;
+import org.ow2.authzforce.rest.service.jaxrs.DomainSnapshot;
+import org.ow2.authzforce.rest.service.jaxrs.DomainSnapshotResource;
+import org.ow2.authzforce.rest.service.metrics.DecisionPhaseTimingProvider;
+import org.ow2.authzforce.webapp.CborJsonCodec;
 import org.ow2.authzforce.webapp.JsonRiCxfJaxrsProvider;
+import org.ow2.authzforce.webapp.XacmlCborProvider;
 import org.ow2.authzforce.xacml.identifiers.XPathVersion;
 import org.ow2.authzforce.xacml.identifiers.XacmlAttributeCategory;
+import org.ow2.authzforce.xacml.json.model.XacmlJsonUtils;
 import org.ow2.authzforce.xmlns.pdp.ext.AbstractAttributeProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -54,10 +70,21 @@ import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response.Status;
 import jakarta.xml.bind.JAXBElement;
 import jakarta.xml.bind.JAXBException;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import static org.testng.Assert.*;
 
@@ -720,6 +747,30 @@ public class DomainResourceTestWithoutAutoSyncOrVersionRolling extends RestServi
 		}
 	}
 
+	@Test(dependsOnMethods = { "addAndGetPolicy" })
+	public void addPolicyWithDeprecatedIdentifiers()
+	{
+		final PolicySet policySet = new PolicySet(null, null, null, new Target(null), null, null, null, "testAddPolicyWithDeprecatedIdentifiers", "1.0",
+		        "urn:oasis:names:tc:xacml:1.0:policy-combining-algorithm:deny-overrides", null);
+		final PoliciesResource policiesRes = testDomain.getPapResource().getPoliciesResource();
+		policiesRes.addPolicy(policySet);
+
+		// stored as uploaded (only the content hash is computed on the canonical form)
+		final PolicySet getRespPolicySet = policiesRes.getPolicyResource(policySet.getPolicySetId()).getPolicyVersionResource(policySet.getVersion()).getPolicyVersion();
+		assertEquals(getRespPolicySet.getPolicyCombiningAlgId(), "urn:oasis:names:tc:xacml:1.0:policy-combining-algorithm:deny-overrides", "Uploaded policy modified");
+
+		// re-upload of the same policy version must still be rejected
+		try
+		{
+			policiesRes.addPolicy(policySet);
+			fail("Adding the same policy did not fail with HTTP 409 Conflict as expected");
+		}
+		catch (final ClientErrorException e)
+		{
+			assertEquals(e.getResponse().getStatus(), Status.CONFLICT.getStatusCode());
+		}
+	}
+
 	private static final String TEST_POLICY_DELETE_ID = "testPolicyDelete";
 
 	@Test(dependsOnMethods = { "addAndGetPolicy" })
@@ -1066,6 +1117,260 @@ public class DomainResourceTestWithoutAutoSyncOrVersionRolling extends RestServi
 
 	}
 
+	@Test(dependsOnMethods = { "setRootPolicyWithBadFunctionId" })
+	public void commitPolicyTransactionWithRootPolicyRefUpdate() throws JAXBException
+	{
+		testDomainHelper.resetPdpAndPrp();
+
+		final PolicySet refPolicySet = testDomainHelper.unmarshalXacml(new File(RestServiceTest.XACML_SAMPLES_DIR, "pdp/default_features/xml/PolicyReference.Valid/refPolicies/pps-employee.xml"),
+		        PolicySet.class).getValue();
+		final PolicySet policySetWithRef = testDomainHelper.unmarshalXacml(new File(RestServiceTest.XACML_SAMPLES_DIR, "pdp/default_features/xml/PolicyReference.Valid/policy.xml"), PolicySet.class)
+		        .getValue();
+		final IdReferenceType newRootPolicyRef = new IdReferenceType(policySetWithRef.getPolicySetId(), policySetWithRef.getVersion(), null, null);
+
+		// referencing policy first on purpose, the server must add the referenced one first
+		final Resources newPolicyLinks = policyTransactionResClient.commitPolicyTransaction(testDomainId,
+		        new PolicyTransaction(Arrays.asList(policySetWithRef, refPolicySet), new PdpPropertiesUpdate(null, newRootPolicyRef)));
+		assertEquals(newPolicyLinks.getLinks().size(), 2, "Invalid number of policy links returned by policy transaction");
+
+		assertEquals(testDomain.getPapResource().getPdpPropertiesResource().getOtherPdpProperties().getApplicablePolicies().getRootPolicyRef(), newRootPolicyRef,
+		        "rootPolicyRef not updated by policy transaction");
+		assertNotNull(testDomainHelper.getPolicy(refPolicySet.getPolicySetId(), refPolicySet.getVersion()));
+	}
+
+	@Test(dependsOnMethods = { "commitPolicyTransactionWithRootPolicyRefUpdate" })
+	public void commitPolicyTransactionWithRefToMissingPolicy() throws JAXBException
+	{
+		testDomainHelper.resetPdpAndPrp();
+		final IdReferenceType rootPolicyRef = testDomain.getPapResource().getPdpPropertiesResource().getOtherPdpProperties().getApplicablePolicies().getRootPolicyRef();
+
+		final PolicySet validPolicySet = RestServiceTest.createDumbXacmlPolicySet("policyTransactionRollback", "1.0");
+		final PolicySet policySetWithRefs = testDomainHelper.unmarshalXacml(new File(RestServiceTest.XACML_SAMPLES_DIR, "PolicyReference.Undef/policy.xml"), PolicySet.class).getValue();
+		try
+		{
+			policyTransactionResClient.commitPolicyTransaction(testDomainId, new PolicyTransaction(Arrays.asList(validPolicySet, policySetWithRefs),
+			        new PdpPropertiesUpdate(null, new IdReferenceType(policySetWithRefs.getPolicySetId(), policySetWithRefs.getVersion(), null, null))));
+			fail("Policy transaction with invalid policy (with invalid references) accepted");
+		}
+		catch (final BadRequestException e)
+		{
+			// Bad request as expected
+		}
+
+		// make sure nothing was applied
+		assertEquals(rootPolicyRef, testDomain.getPapResource().getPdpPropertiesResource().getOtherPdpProperties().getApplicablePolicies().getRootPolicyRef(),
+		        "rootPolicyRef changed although policy transaction rejected");
+		try
+		{
+			testDomainHelper.getPolicy(validPolicySet.getPolicySetId(), validPolicySet.getVersion());
+			fail("Policy added by rejected policy transaction was not rolled back");
+		}
+		catch (final NotFoundException e)
+		{
+			// rolled back as expected
+		}
+	}
+
+	@Test(dependsOnMethods = { "commitPolicyTransactionWithRootPolicyRefUpdate" })
+	public void commitPolicyTransactionWithExistingPolicyVersion() throws JAXBException
+	{
+		testDomainHelper.resetPdpAndPrp();
+
+		final PolicySet existingPolicySet = RestServiceTest.createDumbXacmlPolicySet("policyTransactionConflict", "1.0");
+		testDomainHelper.testAddAndGetPolicy(existingPolicySet);
+		final PolicySet newPolicySet = RestServiceTest.createDumbXacmlPolicySet("policyTransactionNoConflict", "1.0");
+		try
+		{
+			policyTransactionResClient.commitPolicyTransaction(testDomainId, new PolicyTransaction(Arrays.asList(newPolicySet, existingPolicySet), null));
+			fail("Policy transaction with existing policy version did not fail with HTTP 409 Conflict as expected");
+		}
+		catch (final ClientErrorException e)
+		{
+			assertEquals(e.getResponse().getStatus(), Status.CONFLICT.getStatusCode());
+		}
+
+		try
+		{
+			testDomainHelper.getPolicy(newPolicySet.getPolicySetId(), newPolicySet.getVersion());
+			fail("Policy of conflicting policy transaction was added anyway");
+		}
+		catch (final NotFoundException e)
+		{
+			// not added as expected
+		}
+	}
+
+	@Test(dependsOnMethods = { "commitPolicyTransactionWithRootPolicyRefUpdate" })
+	public void addXacml2Policy() throws IOException, JAXBException
+	{
+		testDomainHelper.resetPdpAndPrp();
+
+		final byte[] xacml2Policy = Files.readAllBytes(new File(XACML_SAMPLES_DIR, "xacml2Policy.xml").toPath());
+		final jakarta.ws.rs.core.Response httpResponse = httpClient.reset().path("domains").path(testDomainId).path("pap").path("policies.xacml2").type("application/xml").accept("application/xml")
+				.post(xacml2Policy);
+		assertEquals(httpResponse.getStatus(), Status.OK.getStatusCode());
+
+		// XACML 2.0 Policy converted and enclosed in a PolicySet with same ID and version
+		final PolicySet policySet = testDomainHelper.getPolicy("urn:example:xacml2:policy", "1.0");
+		assertEquals(policySet.getPolicyCombiningAlgId(), "urn:oasis:names:tc:xacml:1.0:policy-combining-algorithm:first-applicable");
+		assertEquals(policySet.getPolicySetsAndPoliciesAndPolicySetIdReferences().size(), 1);
+		final Policy policy = (Policy) policySet.getPolicySetsAndPoliciesAndPolicySetIdReferences().get(0);
+		assertEquals(policy.getPolicyId(), "urn:example:xacml2:policy");
+		assertEquals(policy.getCombinerParametersAndRuleCombinerParametersAndVariableDefinitions().size(), 2);
+
+		// same policy again (conversion result from cache) -> same policy version -> conflict
+		assertEquals(httpClient.reset().path("domains").path(testDomainId).path("pap").path("policies.xacml2").type("application/xml").accept("application/xml").post(xacml2Policy).getStatus(),
+				Status.CONFLICT.getStatusCode());
+	}
+
+	@Test(dependsOnMethods = { "addXacml2Policy" })
+	public void addXacml2PolicyWithXacml3Policy()
+	{
+		final jakarta.ws.rs.core.Response httpResponse = httpClient.reset().path("domains").path(testDomainId).path("pap").path("policies.xacml2").type("application/xml").accept("application/xml")
+				.post("<PolicySet xmlns=\"urn:oasis:names:tc:xacml:3.0:core:schema:wd-17\" PolicySetId=\"xacml3\" Version=\"1.0\" PolicyCombiningAlgId=\"urn:oasis:names:tc:xacml:3.0:policy-combining-algorithm:deny-unless-permit\"><Target/></PolicySet>".getBytes(StandardCharsets.UTF_8));
+		assertEquals(httpResponse.getStatus(), Status.BAD_REQUEST.getStatusCode());
+	}
+
+	@Test(dependsOnMethods = { "addXacml2Policy" })
+	public void addXacml2PolicyTooLarge()
+	{
+		// valid XML, too large only because of the trailing whitespace
+		final String xacml2Policy = "<Policy xmlns=\"urn:oasis:names:tc:xacml:2.0:policy:schema:os\" PolicyId=\"urn:example:xacml2:large\" Version=\"1.0\" RuleCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:rule-combining-algorithm:permit-overrides\"><Target /></Policy>";
+		final byte[] largeXacml2Policy = (xacml2Policy + " ".repeat(XACML2_MAX_POLICY_SIZE)).getBytes(StandardCharsets.UTF_8);
+		final jakarta.ws.rs.core.Response httpResponse = httpClient.reset().path("domains").path(testDomainId).path("pap").path("policies.xacml2").type("application/xml").accept("application/xml")
+				.post(largeXacml2Policy);
+		assertEquals(httpResponse.getStatus(), Status.REQUEST_ENTITY_TOO_LARGE.getStatusCode());
+	}
+
+	@Test(dependsOnMethods = { "setRootPolicyWithBadFunctionId" })
+	public void getPdpReloadMetrics() throws JAXBException
+	{
+		final PdpReloadMetrics metricsBefore = pdpMetricsResClient.getPdpReloadMetrics(testDomainId);
+
+		final PolicySet policySet = RestServiceTest.createDumbXacmlPolicySet("pdpReloadMetricsTest", "1.0");
+		testDomainHelper.testAddAndGetPolicy(policySet);
+
+		final PolicySet badPolicy = testDomainHelper.unmarshalXacml(new File(RestServiceTest.XACML_SAMPLES_DIR, "policyWithBadCombiningAlgId.xml"), PolicySet.class).getValue();
+		try
+		{
+			testDomain.getPapResource().getPoliciesResource().addPolicy(badPolicy);
+			fail("Invalid PolicySet (with invalid CombiningAlgId) accepted");
+		}
+		catch (final BadRequestException e)
+		{
+			// failed PDP reload as expected
+		}
+
+		// conflict: PDP not rebuilt, therefore neither a successful nor a failed reload
+		try
+		{
+			testDomain.getPapResource().getPoliciesResource().addPolicy(policySet);
+			fail("Adding the same policy did not fail with HTTP 409 Conflict as expected");
+		}
+		catch (final ClientErrorException e)
+		{
+			assertEquals(e.getResponse().getStatus(), Status.CONFLICT.getStatusCode());
+		}
+
+		final PdpReloadMetrics metricsAfter = pdpMetricsResClient.getPdpReloadMetrics(testDomainId);
+		assertEquals(metricsAfter.getReloadCount(), metricsBefore.getReloadCount() + 1);
+		assertEquals(metricsAfter.getFailedReloadCount(), metricsBefore.getFailedReloadCount() + 1);
+		assertNotNull(metricsAfter.getLastReload());
+		assertTrue(metricsAfter.getMaxWriteTime() >= metricsAfter.getLastWriteTime());
+		assertTrue(metricsAfter.getTotalWriteTime() >= metricsAfter.getMaxWriteTime());
+	}
+
+	@Test
+	public void getPdpReloadMetricsOfUnknownDomain()
+	{
+		try
+		{
+			pdpMetricsResClient.getPdpReloadMetrics("unknownDomainId");
+			fail("PDP metrics of unknown domain did not fail with HTTP 404 Not Found as expected");
+		}
+		catch (final NotFoundException e)
+		{
+			// expected
+		}
+	}
+
+	@Test(dependsOnMethods = { "setRootPolicyWithGoodRefs" })
+	public void exportAndImportDomainSnapshot()
+	{
+		final DomainSnapshot snapshot = domainSnapshotResClient.exportDomainSnapshot(testDomainId);
+		assertNotNull(snapshot.getDomainProperties());
+		assertNotNull(snapshot.getPdpProperties());
+		assertFalse(snapshot.getPolicies().isEmpty(), "No policy in domain snapshot");
+
+		final Link newDomainLink = domainsAPIProxyClient.addDomain(new DomainProperties("Domain imported from snapshot", null));
+		final String newDomainId = newDomainLink.getHref();
+		final DomainResource newDomain = domainsAPIProxyClient.getDomainResource(newDomainId);
+		try
+		{
+			/*
+			 * Domain properties left out: the externalId of the exported domain must remain unique
+			 */
+			final Resources policyLinks = domainSnapshotResClient.importDomainSnapshot(newDomainId,
+			        new DomainSnapshot(null, snapshot.getPrpProperties(), snapshot.getAttributeProviders(), snapshot.getPolicies(), snapshot.getPdpProperties()));
+			assertEquals(policyLinks.getLinks().size(), snapshot.getPolicies().size());
+
+			assertEquals(newDomain.getPapResource().getPdpPropertiesResource().getOtherPdpProperties().getApplicablePolicies().getRootPolicyRef(),
+			        testDomain.getPapResource().getPdpPropertiesResource().getOtherPdpProperties().getApplicablePolicies().getRootPolicyRef(), "Root policy of imported domain does not match the exported one");
+			for (final AuthzPolicy policy : snapshot.getPolicies())
+			{
+				final PolicySet policySet = policy.toXacml();
+				assertEquals(newDomain.getPapResource().getPoliciesResource().getPolicyResource(policySet.getPolicySetId()).getPolicyVersionResource(policySet.getVersion()).getPolicyVersion(),
+				        policySet, "Policy of imported domain does not match the exported one");
+			}
+
+			assertEquals(newDomain.getDomainPropertiesResource().getDomainProperties().getDescription(), "Domain imported from snapshot");
+		}
+		finally
+		{
+			newDomain.deleteDomain();
+		}
+	}
+
+	@Test
+	public void importInvalidDomainSnapshot() throws IOException
+	{
+		final ByteArrayOutputStream zipBytes = new ByteArrayOutputStream();
+		try (ZipOutputStream zipOut = new ZipOutputStream(zipBytes))
+		{
+			zipOut.putNextEntry(new ZipEntry("unexpected.xml"));
+			zipOut.write("<unexpected/>".getBytes(StandardCharsets.UTF_8));
+			zipOut.closeEntry();
+		}
+
+		final jakarta.ws.rs.core.Response resp = httpClient.reset().path("domains").path(testDomainId).path("snapshot").accept(MediaType.APPLICATION_XML_TYPE)
+		        .type(DomainSnapshotResource.MEDIA_TYPE).put(zipBytes.toByteArray());
+		assertEquals(resp.getStatusInfo().getStatusCode(), Status.BAD_REQUEST.getStatusCode(), "Server did not return 400 Bad Request as expected for invalid domain snapshot");
+	}
+
+	@Test
+	public void importDomainSnapshotWithMismatchedPolicyEntryName() throws IOException
+	{
+		final String policySet = "<PolicySet xmlns=\"urn:oasis:names:tc:xacml:3.0:core:schema:wd-17\" PolicySetId=\"snapshotPolicy\" Version=\"1.0\" PolicyCombiningAlgId=\"urn:oasis:names:tc:xacml:3.0:policy-combining-algorithm:deny-unless-permit\"><Target/></PolicySet>";
+		final String encodedPolicyId = Base64.getUrlEncoder().withoutPadding().encodeToString("snapshotPolicy".getBytes(StandardCharsets.UTF_8));
+		final String otherEncodedPolicyId = Base64.getUrlEncoder().withoutPadding().encodeToString("otherPolicy".getBytes(StandardCharsets.UTF_8));
+		// wrong Version, then wrong PolicySetId in the entry name
+		for (final String entryName : Arrays.asList("policies/" + encodedPolicyId + "/2.0.xml", "policies/" + otherEncodedPolicyId + "/1.0.xml"))
+		{
+			final ByteArrayOutputStream zipBytes = new ByteArrayOutputStream();
+			try (ZipOutputStream zipOut = new ZipOutputStream(zipBytes))
+			{
+				zipOut.putNextEntry(new ZipEntry(entryName));
+				zipOut.write(policySet.getBytes(StandardCharsets.UTF_8));
+				zipOut.closeEntry();
+			}
+
+			final jakarta.ws.rs.core.Response resp = httpClient.reset().path("domains").path(testDomainId).path("snapshot").accept(MediaType.APPLICATION_XML_TYPE)
+			        .type(DomainSnapshotResource.MEDIA_TYPE).put(zipBytes.toByteArray());
+			assertEquals(resp.getStatusInfo().getStatusCode(), Status.BAD_REQUEST.getStatusCode(), "Server did not return 400 Bad Request as expected for domain snapshot entry '" + entryName
+			        + "' not matching the PolicySetId and Version");
+		}
+	}
+
 	@Test(dependsOnMethods = { "setRootPolicyWithBadFunctionId" })
 	public void addPolicyWithBadCombiningAlgId() throws JAXBException
 	{
@@ -1606,6 +1911,37 @@ public class DomainResourceTestWithoutAutoSyncOrVersionRolling extends RestServi
 		testDomain.getPdpResource().requestPolicyDecision(xacmlReq);
 	}
 
+	@Parameters({ "enableFastInfoset" })
+	@Test(dependsOnMethods = { "requestPDPDumb" })
+	public void requestPDPWithServerTiming(@Optional("false") final Boolean enableFastInfoset)
+	{
+		if (enableFastInfoset)
+		{
+			return;
+		}
+
+		// Decision phase timing and Server-Timing header enabled in test setup
+		final String xacmlReq = "<Request xmlns=\"urn:oasis:names:tc:xacml:3.0:core:schema:wd-17\" CombinedDecision=\"false\" ReturnPolicyIdList=\"false\"><Attributes Category=\"urn:oasis:names:tc:xacml:1.0:subject-category:access-subject\" /></Request>";
+		final jakarta.ws.rs.core.Response resp = httpClient.reset().path("domains").path(testDomainId).path("pdp").type(MediaType.APPLICATION_XML_TYPE).accept(MediaType.APPLICATION_XML_TYPE).post(xacmlReq);
+		assertEquals(resp.getStatus(), Status.OK.getStatusCode());
+		final String serverTiming = resp.getHeaderString(DecisionPhaseTimingProvider.SERVER_TIMING_HEADER);
+		assertNotNull(serverTiming, "Missing Server-Timing header in decision response");
+		assertTrue(serverTiming.contains("read;dur=") && serverTiming.contains("eval;dur="), "Invalid Server-Timing header in decision response: " + serverTiming);
+	}
+
+	@Test(dependsOnMethods = { "requestPDPDumb" })
+	public void getSlowDecisions()
+	{
+		// slow decision threshold set to 0 in test setup, i.e. all decisions are logged
+		final SlowDecisions slowDecisions = slowDecisionsResClient.getSlowDecisions();
+		assertEquals(slowDecisions.getThreshold(), 0);
+		assertTrue(slowDecisions.getCapacity() > 0);
+		final java.util.Optional<SlowDecision> slowDecision = slowDecisions.getSlowDecisions().stream().filter(entry -> testDomainId.equals(entry.getDomainId())).findAny();
+		assertTrue(slowDecision.isPresent(), "No decision of domain '" + testDomainId + "' in slow decision log");
+		assertFalse(slowDecision.get().getRequest().isEmpty(), "Missing request payload in slow decision log entry");
+		assertTrue(slowDecision.get().getTotalTime() >= slowDecision.get().getEvalTime());
+	}
+
 	@Parameters({ "useJSON" })
 	@Test(dependsOnMethods = { "requestPDPDumb" })
 	public void requestXacmlJsonPDPDumb(@Optional final Boolean useJSON) throws Exception
@@ -1622,6 +1958,152 @@ public class DomainResourceTestWithoutAutoSyncOrVersionRolling extends RestServi
 		testDomainHelper.requestXacmlJsonPDP(testDir, Collections.emptyList(), !IS_EMBEDDED_SERVER_STARTED.get(), httpClient);
 	}
 
+	@Parameters({ "useJSON" })
+	@Test(dependsOnMethods = { "requestXacmlJsonPDPDumb" })
+	public void requestXacmlCborPDP(@Optional final Boolean useJSON) throws Exception
+	{
+		if (!useJSON)
+		{
+			return;
+		}
+
+		// root policy of the domain set by requestXacmlJsonPDPDumb
+		final File testDir = new File(RestServiceTest.XACML_SAMPLES_DIR, "pdp/default_features/xml/IIA001(PolicySet)");
+		final CborJsonCodec cborCodec = new CborJsonCodec();
+		final ByteArrayOutputStream cborRequest = new ByteArrayOutputStream();
+		try (final InputStream jsonIn = new FileInputStream(new File(testDir, "request.json")))
+		{
+			cborCodec.encode(new JSONObject(new JSONTokener(jsonIn)), cborRequest);
+		}
+
+		final jakarta.ws.rs.core.Response httpResponse = httpClient.reset().path("domains").path(testDomainId).path("pdp").type(XacmlCborProvider.MEDIA_TYPE).accept(XacmlCborProvider.MEDIA_TYPE)
+				.post(cborRequest.toByteArray());
+		assertEquals(httpResponse.getStatus(), Status.OK.getStatusCode());
+		assertTrue(MediaType.valueOf(XacmlCborProvider.MEDIA_TYPE).isCompatible(httpResponse.getMediaType()), "Unexpected response media type: " + httpResponse.getMediaType());
+		final JSONObject actualResponse = cborCodec.decode(httpResponse.readEntity(InputStream.class));
+
+		final JSONObject expectedResponse;
+		try (final InputStream jsonIn = new FileInputStream(new File(testDir, "response.json")))
+		{
+			expectedResponse = new JSONObject(new JSONTokener(jsonIn));
+		}
+
+		assertTrue(XacmlJsonUtils.canonicalizeResponse(actualResponse).similar(XacmlJsonUtils.canonicalizeResponse(expectedResponse)), "Actual and expected XACML/CBOR responses don't match");
+
+		// invalid CBOR (truncated)
+		final jakarta.ws.rs.core.Response badHttpResponse = httpClient.reset().path("domains").path(testDomainId).path("pdp").type(XacmlCborProvider.MEDIA_TYPE)
+				.accept(XacmlCborProvider.MEDIA_TYPE).post(Arrays.copyOf(cborRequest.toByteArray(), cborRequest.size() / 2));
+		assertEquals(badHttpResponse.getStatus(), Status.BAD_REQUEST.getStatusCode());
+
+		// deeply tagged CBOR (tag 6 repeated), rejected by the nesting limit if any, else as truncated, but never a server error (stack overflow)
+		final byte[] deeplyTaggedRequest = new byte[100000];
+		Arrays.fill(deeplyTaggedRequest, (byte) 0xc6);
+		final jakarta.ws.rs.core.Response deeplyTaggedHttpResponse = httpClient.reset().path("domains").path(testDomainId).path("pdp").type(XacmlCborProvider.MEDIA_TYPE)
+				.accept(XacmlCborProvider.MEDIA_TYPE).post(deeplyTaggedRequest);
+		assertTrue(deeplyTaggedHttpResponse.getStatus() == Status.REQUEST_ENTITY_TOO_LARGE.getStatusCode() || deeplyTaggedHttpResponse.getStatus() == Status.BAD_REQUEST.getStatusCode(),
+				"Unexpected status of deeply tagged CBOR request: " + deeplyTaggedHttpResponse.getStatus());
+	}
+
+	@Parameters({ "useJSON" })
+	@Test(dependsOnMethods = { "requestXacmlJsonPDPDumb" })
+	public void requestXacmlJsonPDPWithInvalidRequest(@Optional final Boolean useJSON)
+	{
+		if (!useJSON)
+		{
+			return;
+		}
+
+		// JSON schema-invalid XACML/JSON request: the error must be returned in JSON as well
+		final jakarta.ws.rs.core.Response httpResponse = httpClient.reset().path("domains").path(testDomainId).path("pdp").type("application/xacml+json").accept("application/xacml+json")
+				.post("{\"Request\": {\"Category\": \"invalid\"}}");
+		assertEquals(httpResponse.getStatus(), Status.BAD_REQUEST.getStatusCode());
+		assertTrue(MediaType.APPLICATION_JSON_TYPE.isCompatible(httpResponse.getMediaType()), "Unexpected error response media type: " + httpResponse.getMediaType());
+		final JSONObject errorBody = new JSONObject(httpResponse.readEntity(String.class));
+		assertTrue(errorBody.has("error"), "Missing 'error' in error response: " + errorBody);
+	}
+
+	@Test(dependsOnMethods = { "requestPDPDumb" })
+	public void updateDecisionCoalescing()
+	{
+		final Request xacmlReq = new Request(new RequestDefaults(XPathVersion.V2_0.getURI()),
+		        Collections.singletonList(new Attributes(null, Collections.emptyList(), XacmlAttributeCategory.XACML_1_0_ACCESS_SUBJECT.value(), null)), null, false, false);
+		final DecisionType expectedDecision = testDomain.getPdpResource().requestPolicyDecision(xacmlReq).getResults().get(0).getDecision();
+
+		// coalescing enabled on all domains in test setup
+		final DecisionCoalescing coalescing = pdpCoalescingResClient.getDecisionCoalescing(testDomainId);
+		assertTrue(coalescing.isEnabled(), "Decision coalescing not enabled");
+		assertEquals(coalescing.getCollapseWindow().longValue(), DECISION_COALESCING_WINDOW_MILLIS);
+
+		final DecisionCoalescing disabledCoalescing = pdpCoalescingResClient.updateDecisionCoalescing(testDomainId, new DecisionCoalescing(false));
+		assertFalse(disabledCoalescing.isEnabled(), "Decision coalescing not disabled");
+		assertEquals(testDomain.getPdpResource().requestPolicyDecision(xacmlReq).getResults().get(0).getDecision(), expectedDecision);
+
+		assertTrue(pdpCoalescingResClient.updateDecisionCoalescing(testDomainId, new DecisionCoalescing(true)).isEnabled(), "Decision coalescing not re-enabled");
+	}
+
+	@Test(dependsOnMethods = { "requestPDPDumb" })
+	public void requestPdpBatch()
+	{
+		final Request xacmlReq = new Request(new RequestDefaults(XPathVersion.V2_0.getURI()),
+		        Collections.singletonList(new Attributes(null, Collections.emptyList(), XacmlAttributeCategory.XACML_1_0_ACCESS_SUBJECT.value(), null)), null, false, false);
+		final DecisionType expectedDecision = testDomain.getPdpResource().requestPolicyDecision(xacmlReq).getResults().get(0).getDecision();
+		final DecisionBatchResult batchResult = pdpBatchResClient.requestPolicyDecisions(testDomainId, new DecisionBatch(Arrays.asList(xacmlReq, xacmlReq, xacmlReq)));
+		assertEquals(batchResult.getResponses().size(), 3, "Wrong number of responses to batch decision request");
+		for (final Response response : batchResult.getResponses())
+		{
+			assertEquals(response.getResults().get(0).getDecision(), expectedDecision);
+		}
+	}
+
+	@Test(dependsOnMethods = { "requestPdpBatch" }, expectedExceptions = BadRequestException.class)
+	public void requestPdpBatchEmpty()
+	{
+		pdpBatchResClient.requestPolicyDecisions(testDomainId, new DecisionBatch(Collections.emptyList()));
+	}
+
+	@Test(dependsOnMethods = { "requestPdpBatch" })
+	public void requestPdpWithPepClient() throws Exception
+	{
+		/*
+		 * Root policy with deterministic result (Deny for any request), so that the decisions are cached; the previous root policy is restored afterwards
+		 */
+		final PdpPropertiesResource propsRes = testDomain.getPapResource().getPdpPropertiesResource();
+		final IdReferenceType oldRootPolicyRef = propsRes.getOtherPdpProperties().getApplicablePolicies().getRootPolicyRef();
+		final PolicySet denyAllPolicySet = RestServiceTest.createDumbXacmlPolicySet("pepClientTestRoot", "1.0");
+		testDomainHelper.setRootPolicy(denyAllPolicySet, false);
+
+		// batches of up to 4 requests, cached decisions
+		final ExecutorService executor = Executors.newFixedThreadPool(8);
+		try (final PepClient pepClient = new PepClient(serverBaseAddress, testDomainId, Collections.singletonList(clientJaxbProvider), 100, 60, 4, 10, 10000))
+		{
+			final List<Future<Result>> futures = new ArrayList<>();
+			for (int i = 0; i < 32; i++)
+			{
+				final String resourceId = "/documents/" + (i % 4);
+				futures.add(executor.submit(() -> pepClient.getDecision("alice", Collections.singleton("admin"), resourceId, "GET")));
+			}
+
+			for (final Future<Result> future : futures)
+			{
+				assertEquals(future.get().getDecision(), DecisionType.DENY);
+			}
+
+			assertEquals(pepClient.getCacheSize(), 4, "Wrong number of cached decisions");
+			final Result result = pepClient.getDecision("alice", Collections.singleton("admin"), "/documents/0", "GET");
+			assertEquals(result.getDecision(), DecisionType.DENY);
+			assertSame(pepClient.getDecision("alice", Collections.singleton("admin"), "/documents/0", "GET"), result, "Decision not cached");
+
+			pepClient.clearCache();
+			assertEquals(pepClient.getCacheSize(), 0);
+		}
+		finally
+		{
+			executor.shutdown();
+			propsRes.updateOtherPdpProperties(new PdpPropertiesUpdate(propsRes.getOtherPdpProperties().getFeatures(), oldRootPolicyRef));
+			testDomain.getPapResource().getPoliciesResource().getPolicyResource(denyAllPolicySet.getPolicySetId()).deletePolicy();
+		}
+	}
+
 	@Test(dependsOnMethods = { "setRootPolicyWithGoodRefs" }, dataProvider = "pdpTestFiles")
 	public void requestPDPWithoutMDP(final File testDirectory) throws Exception
 	{
@@ -0,0 +1,542 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.webapp.test;
+
+import com.sun.xml.fastinfoset.tools.XML_SAX_FI;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.Response.Status;
+import org.apache.cxf.jaxrs.client.WebClient;
+import org.ow2.authzforce.rest.api.xmlns.DomainProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.*;
+import org.w3._2005.atom.Link;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Load test: starts the webapp (embedded Tomcat), provisions a number of domains from the domain template with generated policies, then drives a mix of decision requests (XACML/XML, XACML/JSON or
+ * Fast Infoset) and PAP writes (new versions of the root policy, i.e. PDP reloads) from many client threads for a given duration. Reports the throughput, latency percentiles and errors per operation,
+ * and the GC activity during the run.
+ * <p>
+ * Not part of the default test suites. Run with: {@code mvn test -P load-test [-Dload.threads=32 -Dload.durationSec=120 ...]} (see src/test/suites/load.xml for all parameters).
+ * <p>
+ * The client threads run in the same JVM as the server, therefore the GC statistics include the client-side garbage, and the client and the server compete for the same CPUs. Results are meant to be
+ * compared between runs on the same machine, not as absolute figures.
+ */
+public class LoadTest extends RestServiceTest
+{
+	private static final Logger LOGGER = LoggerFactory.getLogger(LoadTest.class);
+
+	private static final String TEST_CONSOLE_SEPARATOR = "*******************************************************************************";
+
+	private static final String XACML_NS = "urn:oasis:names:tc:xacml:3.0:core:schema:wd-17";
+	private static final String STRING_DATATYPE = "http://www.w3.org/2001/XMLSchema#string";
+	private static final String STRING_EQUAL_FUNCTION = "urn:oasis:names:tc:xacml:1.0:function:string-equal";
+	private static final String SUBJECT_CATEGORY = "urn:oasis:names:tc:xacml:1.0:subject-category:access-subject";
+	private static final String RESOURCE_CATEGORY = "urn:oasis:names:tc:xacml:3.0:attribute-category:resource";
+	private static final String ACTION_CATEGORY = "urn:oasis:names:tc:xacml:3.0:attribute-category:action";
+	private static final String SUBJECT_ID = "urn:oasis:names:tc:xacml:1.0:subject:subject-id";
+	private static final String RESOURCE_ID = "urn:oasis:names:tc:xacml:1.0:resource:resource-id";
+	private static final String ACTION_ID = "urn:oasis:names:tc:xacml:1.0:action:action-id";
+
+	private static final String ROOT_POLICY_ID = "root";
+
+	private static final String XACML_JSON_MEDIA_TYPE = "application/xacml+json";
+	private static final String FASTINFOSET_MEDIA_TYPE = "application/fastinfoset";
+
+	/*
+	 * Number of pre-generated request payloads per media type, so that the clients do not spend time generating them during the run
+	 */
+	private static final int REQUEST_POOL_SIZE = 256;
+
+	private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+
+	private enum Operation
+	{
+		XML_DECISION("xml"), JSON_DECISION("json"), FASTINFOSET_DECISION("fastinfoset"), PAP_WRITE("pap");
+
+		private final String mixKey;
+
+		Operation(final String mixKey)
+		{
+			this.mixKey = mixKey;
+		}
+	}
+
+	/*
+	 * Latencies of a given operation recorded by a single client thread (not thread-safe)
+	 */
+	private static final class LatencyRecorder
+	{
+		private long[] latencies = new long[1024];
+		private int count = 0;
+		private int errorCount = 0;
+
+		private void record(final long nanos, final boolean error)
+		{
+			if (error)
+			{
+				errorCount++;
+				return;
+			}
+
+			if (count == latencies.length)
+			{
+				latencies = Arrays.copyOf(latencies, count * 2);
+			}
+
+			latencies[count++] = nanos;
+		}
+
+		private void addAll(final LatencyRecorder other)
+		{
+			if (count + other.count > latencies.length)
+			{
+				latencies = Arrays.copyOf(latencies, count + other.count);
+			}
+
+			System.arraycopy(other.latencies, 0, latencies, count, other.count);
+			count += other.count;
+			errorCount += other.errorCount;
+		}
+	}
+
+	private final String testDomainExternalIdPrefix = "load" + PRNG.nextInt(100) + "-";
+
+	private final List<String> domainIds = new ArrayList<>();
+	private final Map<String, AtomicInteger> rootPolicyVersions = new HashMap<>();
+	private final Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+	private final Map<Operation, List<Object>> requestPools = new EnumMap<>(Operation.class);
+	private String appBaseUrl = null;
+	private int policiesPerDomain;
+	private int rulesPerPolicy;
+
+	/**
+	 * Test parameters from testng.xml are ignored when executing with maven surefire plugin, so we use default values for all. They may be overridden with system properties of the same name.
+	 * <p>
+	 * WARNING: the BeforeTest-annotated method must be in the test class, not in a super class although the same method logic is used in other test class
+	 *
+	 * @param remoteAppBaseUrl
+	 *            base URL of remote app
+	 * @param mix
+	 *            operation mix, i.e. comma-separated list of 'operation=weight', where operation is one of: xml, json, fastinfoset (XACML/XML, XACML/JSON, Fast Infoset decision request), pap (PAP
+	 *            write). 'json' and 'fastinfoset' are mutually exclusive since the server supports either XML/JSON or XML/Fast Infoset.
+	 * @throws Exception
+	 *             error
+	 */
+	@Parameters({ "remote.base.url", "load.mix" })
+	@BeforeTest()
+	public void beforeTest(@Optional final String remoteAppBaseUrl, @Optional("xml=60,json=39,pap=1") final String mix) throws Exception
+	{
+		for (final String entry : mix.split(","))
+		{
+			final String[] keyAndWeight = entry.trim().split("=");
+			final Operation op = Arrays.stream(Operation.values()).filter(o -> o.mixKey.equals(keyAndWeight[0].trim())).findFirst()
+			        .orElseThrow(() -> new IllegalArgumentException("Invalid load.mix operation: '" + keyAndWeight[0] + "'. Expected one of: xml, json, fastinfoset, pap"));
+			final int weight = keyAndWeight.length == 2 ? Integer.parseInt(keyAndWeight[1].trim()) : 1;
+			if (weight > 0)
+			{
+				this.mix.put(op, weight);
+			}
+		}
+
+		if (this.mix.isEmpty())
+		{
+			throw new IllegalArgumentException("Invalid load.mix: '" + mix + "' (no operation with positive weight)");
+		}
+
+		final boolean enableFastInfoset = this.mix.containsKey(Operation.FASTINFOSET_DECISION);
+		if (enableFastInfoset && this.mix.containsKey(Operation.JSON_DECISION))
+		{
+			throw new IllegalArgumentException("Invalid load.mix: '" + mix + "' ('json' and 'fastinfoset' are mutually exclusive)");
+		}
+
+		startServerAndInitCLient(remoteAppBaseUrl, enableFastInfoset ? ClientType.FAST_INFOSET : ClientType.XML, "", false, -1, false, false);
+		appBaseUrl = WebClient.getConfig(domainsAPIProxyClient).getEndpoint().getEndpointInfo().getAddress();
+	}
+
+	/**
+	 *
+	 * WARNING: the AfterTest-annotated method must be in the test class, not in a super class although the same method logic is used in other test class
+	 *
+	 * @throws Exception
+	 *             error
+	 */
+	@AfterTest
+	public void afterTest() throws Exception
+	{
+		shutdownServer();
+	}
+
+	private static void appendMatch(final StringBuilder sb, final String category, final String attributeId, final String value)
+	{
+		sb.append("<Match MatchId=\"").append(STRING_EQUAL_FUNCTION).append("\"><AttributeValue DataType=\"").append(STRING_DATATYPE).append("\">").append(value)
+		        .append("</AttributeValue><AttributeDesignator Category=\"").append(category).append("\" AttributeId=\"").append(attributeId).append("\" DataType=\"").append(STRING_DATATYPE)
+		        .append("\" MustBePresent=\"false\" /></Match>");
+	}
+
+	/*
+	 * Root PolicySet with one Policy per resource, each with one Permit rule per (subject, action)
+	 */
+	private String createRootPolicySet(final String version)
+	{
+		final StringBuilder sb = new StringBuilder();
+		sb.append("<PolicySet xmlns=\"").append(XACML_NS).append("\" PolicySetId=\"").append(ROOT_POLICY_ID).append("\" Version=\"").append(version)
+		        .append("\" PolicyCombiningAlgId=\"urn:oasis:names:tc:xacml:3.0:policy-combining-algorithm:deny-unless-permit\"><Target />");
+		for (int i = 0; i < policiesPerDomain; i++)
+		{
+			sb.append("<Policy PolicyId=\"resource-").append(i).append("\" Version=\"1.0\" RuleCombiningAlgId=\"urn:oasis:names:tc:xacml:3.0:rule-combining-algorithm:deny-unless-permit\"><Target><AnyOf><AllOf>");
+			appendMatch(sb, RESOURCE_CATEGORY, RESOURCE_ID, "resource-" + i);
+			sb.append("</AllOf></AnyOf></Target>");
+			for (int j = 0; j < rulesPerPolicy; j++)
+			{
+				sb.append("<Rule RuleId=\"rule-").append(j).append("\" Effect=\"Permit\"><Target><AnyOf><AllOf>");
+				appendMatch(sb, SUBJECT_CATEGORY, SUBJECT_ID, "user-" + j);
+				appendMatch(sb, ACTION_CATEGORY, ACTION_ID, j % 2 == 0 ? "read" : "write");
+				sb.append("</AllOf></AnyOf></Target></Rule>");
+			}
+
+			sb.append("</Policy>");
+		}
+
+		return sb.append("</PolicySet>").toString();
+	}
+
+	private static String createXmlRequest(final String subject, final String resource, final String action)
+	{
+		final StringBuilder sb = new StringBuilder();
+		sb.append("<Request xmlns=\"").append(XACML_NS).append("\" CombinedDecision=\"false\" ReturnPolicyIdList=\"false\">");
+		for (final String[] attribute : new String[][] { { SUBJECT_CATEGORY, SUBJECT_ID, subject }, { RESOURCE_CATEGORY, RESOURCE_ID, resource }, { ACTION_CATEGORY, ACTION_ID, action } })
+		{
+			sb.append("<Attributes Category=\"").append(attribute[0]).append("\"><Attribute AttributeId=\"").append(attribute[1]).append("\" IncludeInResult=\"false\"><AttributeValue DataType=\"")
+			        .append(STRING_DATATYPE).append("\">").append(attribute[2]).append("</AttributeValue></Attribute></Attributes>");
+		}
+
+		return sb.append("</Request>").toString();
+	}
+
+	private static String createJsonRequest(final String subject, final String resource, final String action)
+	{
+		final StringBuilder sb = new StringBuilder();
+		sb.append("{\"Request\":{\"ReturnPolicyIdList\":false,\"CombinedDecision\":false,\"Category\":[");
+		boolean first = true;
+		for (final String[] attribute : new String[][] { { SUBJECT_CATEGORY, SUBJECT_ID, subject }, { RESOURCE_CATEGORY, RESOURCE_ID, resource }, { ACTION_CATEGORY, ACTION_ID, action } })
+		{
+			if (!first)
+			{
+				sb.append(',');
+			}
+
+			first = false;
+			sb.append("{\"CategoryId\":\"").append(attribute[0]).append("\",\"Attribute\":[{\"IncludeInResult\":false,\"AttributeId\":\"").append(attribute[1]).append("\",\"DataType\":\"")
+			        .append(STRING_DATATYPE).append("\",\"Value\":[\"").append(attribute[2]).append("\"]}]}");
+		}
+
+		return sb.append("]}}").toString();
+	}
+
+	private static byte[] toFastInfoset(final String xml) throws Exception
+	{
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new XML_SAX_FI().convert(new StringReader(xml), out);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Provisions the domains and generates the request payloads
+	 *
+	 * @param domainCount
+	 *            number of domains
+	 * @param policiesPerDomain
+	 *            number of policies (one per resource) in each domain's root PolicySet
+	 * @param rulesPerPolicy
+	 *            number of rules (one per subject) per policy
+	 * @throws Exception
+	 *             error
+	 */
+	@Parameters({ "load.domains", "load.policiesPerDomain", "load.rulesPerPolicy" })
+	@BeforeClass
+	public void addDomains(@Optional("10") final int domainCount, @Optional("10") final int policiesPerDomain, @Optional("20") final int rulesPerPolicy) throws Exception
+	{
+		this.policiesPerDomain = policiesPerDomain;
+		this.rulesPerPolicy = rulesPerPolicy;
+		final WebClient client = WebClient.create(appBaseUrl);
+		final String rootPolicySet = createRootPolicySet("1.0");
+		for (int i = 0; i < domainCount; i++)
+		{
+			final Link domainLink = domainsAPIProxyClient.addDomain(new DomainProperties("Load test domain", testDomainExternalIdPrefix + i));
+			assertNotNull(domainLink, "Domain creation failure");
+			final String domainId = domainLink.getHref();
+			try (final Response response = client.reset().path("domains").path(domainId).path("pap").path("policies").type("application/xml").accept("application/xml").post(rootPolicySet))
+			{
+				assertTrue(response.getStatus() == Status.OK.getStatusCode(), "Failed to add root policy to domain " + domainId + ": HTTP status " + response.getStatus());
+			}
+
+			domainIds.add(domainId);
+			rootPolicyVersions.put(domainId, new AtomicInteger(0));
+		}
+
+		LOGGER.info("Added {} domains with {} policies x {} rules", domainCount, policiesPerDomain, rulesPerPolicy);
+
+		final Random random = new Random(0);
+		for (final Operation op : mix.keySet())
+		{
+			if (op == Operation.PAP_WRITE)
+			{
+				continue;
+			}
+
+			final List<Object> pool = new ArrayList<>(REQUEST_POOL_SIZE);
+			for (int i = 0; i < REQUEST_POOL_SIZE; i++)
+			{
+				// subjects and resources slightly outside the policy ranges to get NotApplicable decisions as well
+				final String subject = "user-" + random.nextInt(rulesPerPolicy + 2);
+				final String resource = "resource-" + random.nextInt(policiesPerDomain + 1);
+				final String action = random.nextBoolean() ? "read" : "write";
+				final String xmlRequest = createXmlRequest(subject, resource, action);
+				pool.add(op == Operation.JSON_DECISION ? createJsonRequest(subject, resource, action) : op == Operation.FASTINFOSET_DECISION ? toFastInfoset(xmlRequest) : xmlRequest);
+			}
+
+			requestPools.put(op, pool);
+		}
+	}
+
+	@AfterClass
+	public void deleteDomains()
+	{
+		for (final String domainId : domainIds)
+		{
+			domainsAPIProxyClient.getDomainResource(domainId).deleteDomain();
+		}
+	}
+
+	private Operation nextOperation(final ThreadLocalRandom random, final int totalWeight)
+	{
+		int value = random.nextInt(totalWeight);
+		for (final Map.Entry<Operation, Integer> entry : mix.entrySet())
+		{
+			value -= entry.getValue();
+			if (value < 0)
+			{
+				return entry.getKey();
+			}
+		}
+
+		throw new IllegalStateException("Invalid operation mix weights");
+	}
+
+	/*
+	 * Sends one request, returns true iff successful
+	 */
+	private boolean execute(final WebClient client, final Operation op, final ThreadLocalRandom random)
+	{
+		final String domainId = domainIds.get(random.nextInt(domainIds.size()));
+		final Response response;
+		switch (op)
+		{
+			case PAP_WRITE:
+				// new root policy version -> PDP reload
+				final String version = "1." + rootPolicyVersions.get(domainId).incrementAndGet();
+				response = client.reset().path("domains").path(domainId).path("pap").path("policies").type("application/xml").accept("application/xml").post(createRootPolicySet(version));
+				break;
+
+			case JSON_DECISION:
+				response = client.reset().path("domains").path(domainId).path("pdp").type(XACML_JSON_MEDIA_TYPE).accept(XACML_JSON_MEDIA_TYPE).post(pickRequest(op, random));
+				break;
+
+			case FASTINFOSET_DECISION:
+				response = client.reset().path("domains").path(domainId).path("pdp").type(FASTINFOSET_MEDIA_TYPE).accept(FASTINFOSET_MEDIA_TYPE).post(pickRequest(op, random));
+				break;
+
+			default:
+				response = client.reset().path("domains").path(domainId).path("pdp").type("application/xml").accept("application/xml").post(pickRequest(op, random));
+		}
+
+		try (response)
+		{
+			// consume the body to include the response transfer in the latency
+			response.readEntity(byte[].class);
+			return response.getStatus() == Status.OK.getStatusCode();
+		}
+	}
+
+	private Object pickRequest(final Operation op, final ThreadLocalRandom random)
+	{
+		final List<Object> pool = requestPools.get(op);
+		return pool.get(random.nextInt(pool.size()));
+	}
+
+	private static long getGcCount()
+	{
+		return ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(GarbageCollectorMXBean::getCollectionCount).filter(count -> count > 0).sum();
+	}
+
+	private static long getGcTimeMillis()
+	{
+		return ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(GarbageCollectorMXBean::getCollectionTime).filter(time -> time > 0).sum();
+	}
+
+	private static double percentileMillis(final long[] sortedLatencies, final int count, final double percentile)
+	{
+		if (count == 0)
+		{
+			return 0;
+		}
+
+		final int index = (int) Math.ceil(percentile / 100 * count) - 1;
+		return sortedLatencies[Math.max(0, Math.min(index, count - 1))] / 1e6;
+	}
+
+	/**
+	 * Runs the load: warm-up then measurement
+	 *
+	 * @param threadCount
+	 *            number of client threads
+	 * @param warmUpSec
+	 *            warm-up duration (s), not measured
+	 * @param durationSec
+	 *            measurement duration (s)
+	 * @param maxErrorRate
+	 *            maximum acceptable ratio of failed requests (0 to 1)
+	 * @param maxP99Millis
+	 *            maximum acceptable 99th percentile latency (ms) of any operation, negative to disable the check
+	 * @throws Exception
+	 *             error
+	 */
+	@Parameters({ "load.threads", "load.warmUpSec", "load.durationSec", "load.maxErrorRate", "load.maxP99Millis" })
+	@Test
+	public void runLoad(@Optional("16") final int threadCount, @Optional("10") final int warmUpSec, @Optional("60") final int durationSec, @Optional("0") final double maxErrorRate,
+	        @Optional("-1") final double maxP99Millis) throws Exception
+	{
+		final int totalWeight = mix.values().stream().mapToInt(Integer::intValue).sum();
+		final long startNanos = System.nanoTime();
+		final long measureStartNanos = startNanos + TimeUnit.SECONDS.toNanos(warmUpSec);
+		final long endNanos = measureStartNanos + TimeUnit.SECONDS.toNanos(durationSec);
+		final CountDownLatch measureStarted = new CountDownLatch(threadCount);
+		final ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+		final List<Future<Map<Operation, LatencyRecorder>>> futures = new ArrayList<>(threadCount);
+		for (int i = 0; i < threadCount; i++)
+		{
+			futures.add(executor.submit(() -> {
+				// One WebClient per thread since WebClient is not thread-safe
+				final WebClient client = WebClient.create(appBaseUrl);
+				final ThreadLocalRandom random = ThreadLocalRandom.current();
+				final Map<Operation, LatencyRecorder> recorders = new EnumMap<>(Operation.class);
+				mix.keySet().forEach(op -> recorders.put(op, new LatencyRecorder()));
+				boolean measuring = false;
+				long now = System.nanoTime();
+				while (now < endNanos)
+				{
+					if (!measuring && now >= measureStartNanos)
+					{
+						measuring = true;
+						measureStarted.countDown();
+					}
+
+					final Operation op = nextOperation(random, totalWeight);
+					boolean error;
+					try
+					{
+						error = !execute(client, op, random);
+					}
+					catch (final RuntimeException e)
+					{
+						LOGGER.debug("Request failed", e);
+						error = true;
+					}
+
+					final long end = System.nanoTime();
+					if (measuring)
+					{
+						recorders.get(op).record(end - now, error);
+					}
+
+					now = end;
+				}
+
+				if (!measuring)
+				{
+					measureStarted.countDown();
+				}
+
+				client.close();
+				return recorders;
+			}));
+		}
+
+		measureStarted.await();
+		final long gcCountAtStart = getGcCount();
+		final long gcTimeMillisAtStart = getGcTimeMillis();
+
+		final Map<Operation, LatencyRecorder> results = new EnumMap<>(Operation.class);
+		mix.keySet().forEach(op -> results.put(op, new LatencyRecorder()));
+		for (final Future<Map<Operation, LatencyRecorder>> future : futures)
+		{
+			future.get().forEach((op, recorder) -> results.get(op).addAll(recorder));
+		}
+
+		executor.shutdown();
+		final long gcCount = getGcCount() - gcCountAtStart;
+		final long gcTimeMillis = getGcTimeMillis() - gcTimeMillisAtStart;
+
+		final StringBuilder report = new StringBuilder();
+		report.append(String.format(Locale.ROOT, "%n%s%nLoad test: %d domains, %d threads, %d s (after %d s warm-up), mix: %s%n", TEST_CONSOLE_SEPARATOR, domainIds.size(), threadCount, durationSec,
+		        warmUpSec, mix));
+		report.append(String.format(Locale.ROOT, "%-12s %10s %8s %10s %9s %9s %9s %9s %9s%n", "operation", "count", "errors", "req/s", "p50(ms)", "p90(ms)", "p99(ms)", "p99.9(ms)", "max(ms)"));
+		long totalCount = 0;
+		long totalErrors = 0;
+		double worstP99Millis = 0;
+		for (final Map.Entry<Operation, LatencyRecorder> entry : results.entrySet())
+		{
+			final LatencyRecorder recorder = entry.getValue();
+			final long[] sorted = Arrays.copyOf(recorder.latencies, recorder.count);
+			Arrays.sort(sorted);
+			final double[] percentiles = Arrays.stream(PERCENTILES).map(p -> percentileMillis(sorted, sorted.length, p)).toArray();
+			worstP99Millis = Math.max(worstP99Millis, percentiles[2]);
+			totalCount += recorder.count + recorder.errorCount;
+			totalErrors += recorder.errorCount;
+			report.append(String.format(Locale.ROOT, "%-12s %10d %8d %10.1f %9.3f %9.3f %9.3f %9.3f %9.3f%n", entry.getKey().mixKey, recorder.count + recorder.errorCount, recorder.errorCount,
+			        (recorder.count + recorder.errorCount) / (double) durationSec, percentiles[0], percentiles[1], percentiles[2], percentiles[3], sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1e6));
+		}
+
+		report.append(String.format(Locale.ROOT, "Total: %d requests, %.1f req/s, %d errors%n", totalCount, totalCount / (double) durationSec, totalErrors));
+		report.append(String.format(Locale.ROOT, "GC (client and server): %d collections, %d ms total, %.2f%% of the time%n%s", gcCount, gcTimeMillis, gcTimeMillis * 100.0 / TimeUnit.SECONDS.toMillis(durationSec),
+		        TEST_CONSOLE_SEPARATOR));
+		final String reportStr = report.toString();
+		LOGGER.info(reportStr);
+		System.out.println(reportStr);
+
+		assertTrue(totalCount > 0, "No request completed during the measurement");
+		assertTrue(totalErrors <= maxErrorRate * totalCount, "Error rate above " + maxErrorRate + ": " + totalErrors + "/" + totalCount);
+		if (maxP99Millis >= 0)
+		{
+			assertTrue(worstP99Millis <= maxP99Millis, "99th percentile latency above " + maxP99Millis + " ms: " + worstP99Millis + " ms");
+		}
+	}
+}
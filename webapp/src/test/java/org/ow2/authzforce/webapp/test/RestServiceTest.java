@@ -51,6 +51,14 @@ import org.ow2.authzforce.pap.dao.flatfile.xmlns.DomainProperties;
 import org.ow2.authzforce.rest.api.jaxrs.DomainsResource;
 import org.ow2.authzforce.rest.api.jaxrs.ProductMetadataResource;
 import org.ow2.authzforce.rest.api.xmlns.Resources;
+import org.ow2.authzforce.rest.service.api.jaxrs.DomainBatchResource;
+import org.ow2.authzforce.rest.service.api.jaxrs.PdpBatchResource;
+import org.ow2.authzforce.rest.service.api.jaxrs.PdpCoalescingResource;
+import org.ow2.authzforce.rest.service.api.jaxrs.PdpMetricsResource;
+import org.ow2.authzforce.rest.service.api.jaxrs.PolicyTransactionResource;
+import org.ow2.authzforce.rest.service.api.jaxrs.SlowDecisionsResource;
+import org.ow2.authzforce.rest.service.jaxrs.DomainSnapshotResource;
+import org.ow2.authzforce.webapp.DomainSnapshotZipProvider;
 import org.ow2.authzforce.webapp.org.apache.cxf.jaxrs.provider.json.JSONProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -101,6 +109,10 @@ abstract class RestServiceTest extends AbstractTestNGSpringContextTests
 	private static final int XML_MAX_ATTRIBUTE_SIZE = 500;
 	protected static final int XML_MAX_ATTRIBUTE_SIZE_EFFECTIVE = 911;
 
+	protected static final int DECISION_COALESCING_WINDOW_MILLIS = 100;
+
+	protected static final int XACML2_MAX_POLICY_SIZE = 65536;
+
 	protected static final File DOMAINS_DIR = new File("target/tomcat/authzforce-ce-server/data/domains");
 
 	private static final MediaType FASTINFOSET_MEDIA_TYPE = new MediaType("application", "fastinfoset");
@@ -232,10 +244,22 @@ abstract class RestServiceTest extends AbstractTestNGSpringContextTests
 	@Qualifier("clientJaxbProviderFI")
 	protected JAXBElementProvider<?> clientJaxbProviderFI;
 
+	@Autowired
+	@Qualifier("clientDomainSnapshotProvider")
+	private DomainSnapshotZipProvider clientDomainSnapshotProvider;
+
 	protected Unmarshaller unmarshaller = null;
 
 	protected DomainsResource domainsAPIProxyClient = null;
 	protected ProductMetadataResource prodMetadataResClient = null;
+	protected PolicyTransactionResource policyTransactionResClient = null;
+	protected PdpMetricsResource pdpMetricsResClient = null;
+	protected SlowDecisionsResource slowDecisionsResClient = null;
+	protected DomainSnapshotResource domainSnapshotResClient = null;
+	protected DomainBatchResource domainBatchResClient = null;
+	protected PdpBatchResource pdpBatchResClient = null;
+	protected PdpCoalescingResource pdpCoalescingResClient = null;
+	protected String serverBaseAddress = null;
 
 	private static ContextEnvironment newJndiEnvEntry(final String name, final Class<?> type, final String value)
 	{
@@ -262,7 +286,7 @@ abstract class RestServiceTest extends AbstractTestNGSpringContextTests
 	 * @throws LifecycleException Tomcat startup error
 	 */
 	private static Tomcat startServer(final int port, final boolean enableFastInfoset, final String xacmlJsonSchemaRelativePath, final boolean enableDoSMitigation, final int domainSyncIntervalSec, final boolean enablePdpOnly,
-	        final boolean addSampleDomain) throws IllegalArgumentException, IOException, LifecycleException
+	        final boolean addSampleDomain, final boolean enableDiagnostics) throws IllegalArgumentException, IOException, LifecycleException
 	{
 		/*
 		 * Make sure the domains directory exists and is empty
@@ -353,6 +377,24 @@ abstract class RestServiceTest extends AbstractTestNGSpringContextTests
 		webappNamingResources.addEnvironment(newJndiEnvEntry("org.ow2.authzforce.webapp.jsonKeysWithArrays", String.class, ""));
 
 		webappNamingResources.addEnvironment(newJndiEnvEntry("org.ow2.authzforce.webapp.badReqErrVerbosity", Integer.class, "10"));
+		// coalescing of identical concurrent decision requests
+		webappNamingResources.addEnvironment(newJndiEnvEntry("org.ow2.authzforce.domains.pdp.coalescingWindowMillis", Integer.class, Integer.toString(DECISION_COALESCING_WINDOW_MILLIS)));
+		webappNamingResources.addEnvironment(newJndiEnvEntry("org.ow2.authzforce.domains.pap.xacml2MaxPolicySize", Integer.class, Integer.toString(XACML2_MAX_POLICY_SIZE)));
+		// parallel warm-up of the domains' PDPs (if any, e.g. when the server is restarted by a test)
+		webappNamingResources.addEnvironment(newJndiEnvEntry("org.ow2.authzforce.domains.warmUpPdpOnStartup", Boolean.class, Boolean.TRUE.toString()));
+		// upgrade of the domains from older versions (none here, the domains directory is created empty)
+		webappNamingResources.addEnvironment(newJndiEnvEntry("org.ow2.authzforce.domains.upgradeOnStartup", Boolean.class, Boolean.TRUE.toString()));
+		// deflate coding of the responses (in addition to gzip)
+		webappNamingResources.addEnvironment(newJndiEnvEntry("org.ow2.authzforce.webapp.compression.deflate", Boolean.class, Boolean.TRUE.toString()));
+
+		if (enableDiagnostics)
+		{
+			// enable decision phase timing to test the Server-Timing header
+			webappNamingResources.addEnvironment(newJndiEnvEntry("org.ow2.authzforce.webapp.metrics.decisionPhases", Boolean.class, Boolean.TRUE.toString()));
+			webappNamingResources.addEnvironment(newJndiEnvEntry("org.ow2.authzforce.webapp.metrics.serverTimingHeader", Boolean.class, Boolean.TRUE.toString()));
+			// log all decisions in the slow decision log
+			webappNamingResources.addEnvironment(newJndiEnvEntry("org.ow2.authzforce.webapp.slowDecisions.thresholdMillis", Integer.class, "0"));
+		}
 
 		if (enableDoSMitigation)
 		{
@@ -379,6 +421,16 @@ abstract class RestServiceTest extends AbstractTestNGSpringContextTests
 
 	protected void startServerAndInitCLient(final String remoteAppBaseUrl, final ClientType clientType, final String xacmlJsonSchemaRelativePath, final boolean enableDoSMitigation, final int domainSyncIntervalSec, final boolean enablePdpOnly)
 	        throws Exception
+	{
+		startServerAndInitCLient(remoteAppBaseUrl, clientType, xacmlJsonSchemaRelativePath, enableDoSMitigation, domainSyncIntervalSec, enablePdpOnly, true);
+	}
+
+	/**
+	 * Same as {@link #startServerAndInitCLient(String, ClientType, String, boolean, int, boolean)} with an option to disable the server diagnostic features enabled for testing (decision phase timing,
+	 * Server-Timing header, logging of every decision in the slow decision log), which would distort load measurements
+	 */
+	protected void startServerAndInitCLient(final String remoteAppBaseUrl, final ClientType clientType, final String xacmlJsonSchemaRelativePath, final boolean enableDoSMitigation, final int domainSyncIntervalSec, final boolean enablePdpOnly,
+	        final boolean enableDiagnostics) throws Exception
 	{
 		/*
 		 * If embedded server not started and remoteAppBaseUrl null/empty (i.e. server/app to be started locally (embedded))
@@ -386,7 +438,7 @@ abstract class RestServiceTest extends AbstractTestNGSpringContextTests
 		if (!IS_EMBEDDED_SERVER_STARTED.get() && (remoteAppBaseUrl == null || remoteAppBaseUrl.isEmpty()))
 		{
 			// Not a remote server -> start the embedded server (local)
-			embeddedServer = startServer(-1, clientType == ClientType.FAST_INFOSET, xacmlJsonSchemaRelativePath, enableDoSMitigation, domainSyncIntervalSec, enablePdpOnly, false);
+			embeddedServer = startServer(-1, clientType == ClientType.FAST_INFOSET, xacmlJsonSchemaRelativePath, enableDoSMitigation, domainSyncIntervalSec, enablePdpOnly, false, enableDiagnostics);
 			IS_EMBEDDED_SERVER_STARTED.set(true);
 		}
 
@@ -407,7 +459,6 @@ abstract class RestServiceTest extends AbstractTestNGSpringContextTests
 		 * WARNING: if tests are to be multi-threaded, modify according to Thread-safety section of CXF JAX-RS client API documentation http://cxf
 		 * .apache.org/docs/jax-rs-client-api.html#JAX-RSClientAPI-ThreadSafety
 		 */
-		final String serverBaseAddress;
 		/*
 		 * Test if server is running embedded or not, i.e. remoteAppBaseUrl null/empty -> server embedded.
 		 * 
@@ -433,6 +484,13 @@ abstract class RestServiceTest extends AbstractTestNGSpringContextTests
 			case XML:
 				domainsAPIProxyClient = JAXRSClientFactory.create(serverBaseAddress, DomainsResource.class, Collections.singletonList(clientJaxbProvider), features, null);
 				prodMetadataResClient = JAXRSClientFactory.create(serverBaseAddress, ProductMetadataResource.class, Collections.singletonList(clientJaxbProvider), features, null);
+				policyTransactionResClient = JAXRSClientFactory.create(serverBaseAddress, PolicyTransactionResource.class, Collections.singletonList(clientJaxbProvider), features, null);
+				pdpMetricsResClient = JAXRSClientFactory.create(serverBaseAddress, PdpMetricsResource.class, Collections.singletonList(clientJaxbProvider), features, null);
+				slowDecisionsResClient = JAXRSClientFactory.create(serverBaseAddress, SlowDecisionsResource.class, Collections.singletonList(clientJaxbProvider), features, null);
+				domainSnapshotResClient = JAXRSClientFactory.create(serverBaseAddress, DomainSnapshotResource.class, Arrays.asList(clientDomainSnapshotProvider, clientJaxbProvider), features, null);
+				domainBatchResClient = JAXRSClientFactory.create(serverBaseAddress, DomainBatchResource.class, Collections.singletonList(clientJaxbProvider), features, null);
+				pdpBatchResClient = JAXRSClientFactory.create(serverBaseAddress, PdpBatchResource.class, Collections.singletonList(clientJaxbProvider), features, null);
+				pdpCoalescingResClient = JAXRSClientFactory.create(serverBaseAddress, PdpCoalescingResource.class, Collections.singletonList(clientJaxbProvider), features, null);
 
 				/*
 				 * WARNING: XmlMediaTypeHeaderSetter forces Accept header to be "application/xml" only; else if Accept "application/fastinfoset" sent as well, the server returns fastinfoset which
@@ -448,6 +506,13 @@ abstract class RestServiceTest extends AbstractTestNGSpringContextTests
 				 */
 				domainsAPIProxyClient = JAXRSClientFactory.create(serverBaseAddress, DomainsResourceFastInfoset.class, Collections.singletonList(clientJaxbProviderFI), features, null);
 				prodMetadataResClient = JAXRSClientFactory.create(serverBaseAddress, ProductMetadataResource.class, Collections.singletonList(clientJaxbProviderFI), features, null);
+				policyTransactionResClient = JAXRSClientFactory.create(serverBaseAddress, PolicyTransactionResourceFastInfoset.class, Collections.singletonList(clientJaxbProviderFI), features, null);
+				pdpMetricsResClient = JAXRSClientFactory.create(serverBaseAddress, PdpMetricsResource.class, Collections.singletonList(clientJaxbProviderFI), features, null);
+				slowDecisionsResClient = JAXRSClientFactory.create(serverBaseAddress, SlowDecisionsResource.class, Collections.singletonList(clientJaxbProviderFI), features, null);
+				domainSnapshotResClient = JAXRSClientFactory.create(serverBaseAddress, DomainSnapshotResource.class, Arrays.asList(clientDomainSnapshotProvider, clientJaxbProviderFI), features, null);
+				domainBatchResClient = JAXRSClientFactory.create(serverBaseAddress, DomainBatchResourceFastInfoset.class, Collections.singletonList(clientJaxbProviderFI), features, null);
+				pdpBatchResClient = JAXRSClientFactory.create(serverBaseAddress, PdpBatchResourceFastInfoset.class, Collections.singletonList(clientJaxbProviderFI), features, null);
+				pdpCoalescingResClient = JAXRSClientFactory.create(serverBaseAddress, PdpCoalescingResourceFastInfoset.class, Collections.singletonList(clientJaxbProviderFI), features, null);
 				/*
 				 * WARNING: MediaTypeHeaderSetter forces Content-type header to be "application/fastinfoset"; if not (with CXF 3.1.0), the first mediatype declared in WADL, i.e. Consume annotation of
 				 * the service class ("application/xml") is set as Content-type, which causes exception on server-side such as: com.ctc.wstx.exc.WstxIOException: Invalid UTF-8 middle byte 0x0 (at char
@@ -460,6 +525,13 @@ abstract class RestServiceTest extends AbstractTestNGSpringContextTests
 			case JSON:
 				domainsAPIProxyClient = JAXRSClientFactory.create(serverBaseAddress, DomainsResource.class, Collections.singletonList(clientJsonJaxbProvider), features, null);
 				prodMetadataResClient = JAXRSClientFactory.create(serverBaseAddress, ProductMetadataResource.class, Collections.singletonList(clientJsonJaxbProvider), features, null);
+				policyTransactionResClient = JAXRSClientFactory.create(serverBaseAddress, PolicyTransactionResource.class, Collections.singletonList(clientJsonJaxbProvider), features, null);
+				pdpMetricsResClient = JAXRSClientFactory.create(serverBaseAddress, PdpMetricsResource.class, Collections.singletonList(clientJsonJaxbProvider), features, null);
+				slowDecisionsResClient = JAXRSClientFactory.create(serverBaseAddress, SlowDecisionsResource.class, Collections.singletonList(clientJsonJaxbProvider), features, null);
+				domainSnapshotResClient = JAXRSClientFactory.create(serverBaseAddress, DomainSnapshotResource.class, Arrays.asList(clientDomainSnapshotProvider, clientJsonJaxbProvider), features, null);
+				domainBatchResClient = JAXRSClientFactory.create(serverBaseAddress, DomainBatchResource.class, Collections.singletonList(clientJsonJaxbProvider), features, null);
+				pdpBatchResClient = JAXRSClientFactory.create(serverBaseAddress, PdpBatchResource.class, Collections.singletonList(clientJsonJaxbProvider), features, null);
+				pdpCoalescingResClient = JAXRSClientFactory.create(serverBaseAddress, PdpCoalescingResource.class, Collections.singletonList(clientJsonJaxbProvider), features, null);
 				/*
 				 * WARNING: MediaTypeHeaderSetter forces Content-type header to be "application/json"
 				 */
@@ -472,7 +544,7 @@ abstract class RestServiceTest extends AbstractTestNGSpringContextTests
 				throw new RuntimeException("Invalid client type: not one of: " + Arrays.toString(ClientType.values()));
 		}
 
-		final ClientConfiguration[] proxyClientConfs = { WebClient.getConfig(domainsAPIProxyClient), WebClient.getConfig(prodMetadataResClient) };
+		final ClientConfiguration[] proxyClientConfs = { WebClient.getConfig(domainsAPIProxyClient), WebClient.getConfig(prodMetadataResClient), WebClient.getConfig(policyTransactionResClient), WebClient.getConfig(pdpMetricsResClient), WebClient.getConfig(domainBatchResClient), WebClient.getConfig(slowDecisionsResClient), WebClient.getConfig(pdpBatchResClient), WebClient.getConfig(pdpCoalescingResClient) };
 		Arrays.stream(proxyClientConfs).forEach(clientConf -> {
 			clientConf.getOutInterceptors().add(new MediaTypeHeaderSetter(clientFixedContentMediaType));
 			clientConf.getHttpConduit().getClient().setAccept(clientFixedContentMediaType.toString());
@@ -483,6 +555,11 @@ abstract class RestServiceTest extends AbstractTestNGSpringContextTests
 			clientConf.getHttpConduit().getClient().setReceiveTimeout(0);
 		});
 
+		/*
+		 * The snapshot client is not in proxyClientConfs because the Content-Type of snapshot import is the archive type, whereas the response is in the client's fixed media type
+		 */
+		WebClient.client(domainSnapshotResClient).accept(DomainSnapshotResource.MEDIA_TYPE, clientFixedContentMediaType.toString());
+
 		// Unmarshaller
 		final Schema apiSchema = this.clientApiSchemaHandler.getSchema();
 
@@ -559,7 +636,7 @@ abstract class RestServiceTest extends AbstractTestNGSpringContextTests
 			}
 		}
 
-		final Tomcat tomcat = startServer(port, enableFastInfoset, "", enableDoSMitigation, domainSyncIntervalSec, enablePdpOnly, true);
+		final Tomcat tomcat = startServer(port, enableFastInfoset, "", enableDoSMitigation, domainSyncIntervalSec, enablePdpOnly, true, true);
 		System.out.println("Server up and listening!");
 		tomcat.getServer().await();
 	}
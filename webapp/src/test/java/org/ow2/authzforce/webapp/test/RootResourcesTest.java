@@ -21,28 +21,46 @@ package org.ow2.authzforce.webapp.test;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
 
 import jakarta.ws.rs.BadRequestException;
 import jakarta.ws.rs.ClientErrorException;
 import jakarta.ws.rs.NotFoundException;
 import jakarta.ws.rs.ServerErrorException;
 import jakarta.ws.rs.client.ClientBuilder;
+import jakarta.ws.rs.client.Entity;
 import jakarta.ws.rs.client.Invocation;
 import jakarta.ws.rs.client.WebTarget;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response.Status;
+import jakarta.xml.bind.JAXBContext;
 import jakarta.xml.bind.JAXBException;
 
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
 import org.apache.cxf.ext.logging.LoggingFeature;
 import org.apache.cxf.jaxrs.client.WebClient;
 import org.ow2.authzforce.pap.dao.flatfile.FlatFileDAOUtils;
@@ -51,6 +69,12 @@ import org.ow2.authzforce.rest.api.xmlns.Domain;
 import org.ow2.authzforce.rest.api.xmlns.DomainProperties;
 import org.ow2.authzforce.rest.api.xmlns.ProductMetadata;
 import org.ow2.authzforce.rest.api.xmlns.Resources;
+import org.ow2.authzforce.rest.service.api.xmlns.DomainBatch;
+import org.ow2.authzforce.rest.service.api.xmlns.DomainBatchItemResult;
+import org.ow2.authzforce.rest.service.api.xmlns.DomainBatchResult;
+import org.ow2.authzforce.rest.service.metrics.AccessLog;
+import org.ow2.authzforce.webapp.XacmlFastInfosetVocabulary;
+import org.ow2.authzforce.webapp.org.apache.cxf.interceptor.JAXRSSubResourceCompatibleFIStaxInInterceptor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.testng.SkipException;
@@ -74,6 +98,13 @@ public class RootResourcesTest extends RestServiceTest
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(RootResourcesTest.class);
 
+	/*
+	 * Samples of the decision counters (any domain and decision) and of the HTTP request counter of successful policy additions (PAP writes reloading the PDP) in GET /metrics
+	 */
+	private static final Pattern DECISION_COUNT_SAMPLE_PATTERN = Pattern.compile("^authzforce_decisions_total\\{[^}]*\\} (\\d+)$", Pattern.MULTILINE);
+	private static final Pattern POLICY_ADD_COUNT_SAMPLE_PATTERN = Pattern.compile("^authzforce_http_server_requests_seconds_count\\{method=\"POST\",operation=\"[^\"]*\\.addPolicy\",status=\"200\"\\} (\\d+)$",
+	        Pattern.MULTILINE);
+
 	private int nextCreatedDomainIndex = 0;
 	private final Set<String> createdDomainIds = new HashSet<>();
 
@@ -129,6 +160,142 @@ public class RootResourcesTest extends RestServiceTest
 		}
 	}
 
+	@Parameters({ "remote.base.url" })
+	@Test
+	public void getWADLCompressed(@Optional final String remoteAppBaseUrlParam) throws IOException
+	{
+		final String remoteAppBaseUrl = remoteAppBaseUrlParam == null || remoteAppBaseUrlParam.isEmpty() ? WebClient.getConfig(domainsAPIProxyClient).getEndpoint().getEndpointInfo().getAddress()
+		        : remoteAppBaseUrlParam;
+		final WebTarget target = ClientBuilder.newClient().target(remoteAppBaseUrl).queryParam("_wadl", "");
+		final Invocation.Builder builder = target.request().header("Accept-Encoding", "gzip");
+		try (final jakarta.ws.rs.core.Response response = builder.get())
+		{
+			assertEquals(response.getStatus(), jakarta.ws.rs.core.Response.Status.OK.getStatusCode());
+			// the WADL is bigger than the default compression threshold
+			assertEquals(response.getHeaderString("Content-Encoding"), "gzip");
+			assertEquals(response.getHeaderString("Vary"), "Accept-Encoding");
+			try (final InputStream in = new GZIPInputStream(response.readEntity(InputStream.class)))
+			{
+				final String wadl = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+				assertTrue(wadl.contains("<application"), "Invalid decompressed WADL");
+			}
+		}
+	}
+
+	@Parameters({ "remote.base.url" })
+	@Test
+	public void getWADLDeflateCompressed(@Optional final String remoteAppBaseUrlParam) throws IOException
+	{
+		final String remoteAppBaseUrl = remoteAppBaseUrlParam == null || remoteAppBaseUrlParam.isEmpty() ? WebClient.getConfig(domainsAPIProxyClient).getEndpoint().getEndpointInfo().getAddress()
+		        : remoteAppBaseUrlParam;
+		final WebTarget target = ClientBuilder.newClient().target(remoteAppBaseUrl).queryParam("_wadl", "");
+		// deflate is enabled on the test server and preferred to gzip with same quality
+		final Invocation.Builder builder = target.request().header("Accept-Encoding", "gzip, deflate");
+		try (final jakarta.ws.rs.core.Response response = builder.get())
+		{
+			assertEquals(response.getStatus(), jakarta.ws.rs.core.Response.Status.OK.getStatusCode());
+			assertEquals(response.getHeaderString("Content-Encoding"), "deflate");
+			assertEquals(response.getHeaderString("Vary"), "Accept-Encoding");
+			try (final InputStream in = new InflaterInputStream(response.readEntity(InputStream.class)))
+			{
+				final String wadl = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+				assertTrue(wadl.contains("<application"), "Invalid decompressed WADL");
+			}
+		}
+	}
+
+	@Parameters({ "remote.base.url" })
+	@Test
+	public void getWADLWithIdentityEncoding(@Optional final String remoteAppBaseUrlParam)
+	{
+		final String remoteAppBaseUrl = remoteAppBaseUrlParam == null || remoteAppBaseUrlParam.isEmpty() ? WebClient.getConfig(domainsAPIProxyClient).getEndpoint().getEndpointInfo().getAddress()
+		        : remoteAppBaseUrlParam;
+		final WebTarget target = ClientBuilder.newClient().target(remoteAppBaseUrl).queryParam("_wadl", "");
+		final Invocation.Builder builder = target.request().header("Accept-Encoding", "identity");
+		try (final jakarta.ws.rs.core.Response response = builder.get())
+		{
+			assertEquals(response.getStatus(), jakarta.ws.rs.core.Response.Status.OK.getStatusCode());
+			assertNull(response.getHeaderString("Content-Encoding"), "Response compressed although the client accepts only identity");
+			assertTrue(response.readEntity(String.class).contains("<application"), "Invalid WADL");
+		}
+	}
+
+	@Parameters({ "remote.base.url" })
+	@Test
+	public void getProductMetadataNotCompressed(@Optional final String remoteAppBaseUrlParam)
+	{
+		final String remoteAppBaseUrl = remoteAppBaseUrlParam == null || remoteAppBaseUrlParam.isEmpty() ? WebClient.getConfig(domainsAPIProxyClient).getEndpoint().getEndpointInfo().getAddress()
+		        : remoteAppBaseUrlParam;
+		final WebTarget target = ClientBuilder.newClient().target(remoteAppBaseUrl).path("version");
+		final Invocation.Builder builder = target.request(MediaType.APPLICATION_XML).header("Accept-Encoding", "gzip");
+		try (final jakarta.ws.rs.core.Response response = builder.get())
+		{
+			assertEquals(response.getStatus(), jakarta.ws.rs.core.Response.Status.OK.getStatusCode());
+			// the product metadata is smaller than the default compression threshold
+			assertNull(response.getHeaderString("Content-Encoding"), "Response compressed although smaller than the compression threshold");
+			assertEquals(response.getHeaderString("Vary"), "Accept-Encoding");
+			assertTrue(response.readEntity(String.class).contains("authzforce-ce-server"), "Invalid product metadata");
+		}
+	}
+
+	@Parameters({ "remote.base.url" })
+	@Test
+	public void getProductMetadataAccessLogged(@Optional final String remoteAppBaseUrlParam) throws InterruptedException
+	{
+		if (remoteAppBaseUrlParam != null && !remoteAppBaseUrlParam.isEmpty())
+		{
+			throw new SkipException("Access log of a remote server not available");
+		}
+
+		final String remoteAppBaseUrl = WebClient.getConfig(domainsAPIProxyClient).getEndpoint().getEndpointInfo().getAddress();
+		/*
+		 * The embedded server shares the logging configuration of the tests, where the access log is disabled (level WARN)
+		 */
+		final ch.qos.logback.classic.Logger accessLogger = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(AccessLog.LOGGER_NAME);
+		final Level previousLevel = accessLogger.getLevel();
+		final boolean previousAdditivity = accessLogger.isAdditive();
+		final ListAppender<ILoggingEvent> appender = new ListAppender<>();
+		appender.start();
+		accessLogger.addAppender(appender);
+		accessLogger.setAdditive(false);
+		accessLogger.setLevel(Level.INFO);
+		try
+		{
+			final WebTarget target = ClientBuilder.newClient().target(remoteAppBaseUrl).path("version");
+			try (final jakarta.ws.rs.core.Response response = target.request(MediaType.APPLICATION_XML).get())
+			{
+				assertEquals(response.getStatus(), jakarta.ws.rs.core.Response.Status.OK.getStatusCode());
+			}
+
+			// the record is written when the response stream is closed on the server side, possibly after the client got the response
+			final Pattern recordPattern = Pattern.compile("^id=\\d+ method=GET path=\\S*/version( .*)? status=200( .*)? duration_us=\\d+$");
+			final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+			boolean recordFound = false;
+			while (!recordFound && System.nanoTime() < deadline)
+			{
+				// ListAppender appends to its list under the appender lock
+				synchronized (appender)
+				{
+					recordFound = appender.list.stream().anyMatch(event -> recordPattern.matcher(event.getFormattedMessage()).matches());
+				}
+
+				if (!recordFound)
+				{
+					Thread.sleep(50);
+				}
+			}
+
+			assertTrue(recordFound, "No access log record with method, path, status and duration of GET /version");
+		}
+		finally
+		{
+			accessLogger.setLevel(previousLevel);
+			accessLogger.setAdditive(previousAdditivity);
+			accessLogger.detachAppender(appender);
+			appender.stop();
+		}
+	}
+
 	@Test
 	public void getProductMetadata()
 	{
@@ -322,6 +489,85 @@ public class RootResourcesTest extends RestServiceTest
 		}
 	}
 
+	@Parameters({ "remote.base.url", "enableFastInfoset", "useJSON", "enablePdpOnly" })
+	@Test
+	public void addDomainWithCompressedBody(@Optional final String remoteAppBaseUrlParam, @Optional("false") final Boolean enableFastInfoset, @Optional("false") final Boolean useJSON,
+	        @Optional("false") final Boolean enablePdpOnly) throws IOException, JAXBException
+	{
+		if (enablePdpOnly || enableFastInfoset || useJSON)
+		{
+			throw new SkipException("Domain creation with XML body not supported with enablePdpOnly/enableFastInfoset/useJSON=true");
+		}
+
+		final String remoteAppBaseUrl = remoteAppBaseUrlParam == null || remoteAppBaseUrlParam.isEmpty() ? WebClient.getConfig(domainsAPIProxyClient).getEndpoint().getEndpointInfo().getAddress()
+		        : remoteAppBaseUrlParam;
+		final JAXBContext domainPropsJaxbCtx = JAXBContext.newInstance(DomainProperties.class);
+		for (final String contentEncoding : Arrays.asList("gzip", "deflate"))
+		{
+			// externalID is xs:NCName therefore cannot start with a number
+			final DomainProperties domainProperties = new DomainProperties("Domain created with " + contentEncoding + " body", "externalCompressed" + nextCreatedDomainIndex);
+			nextCreatedDomainIndex += 1;
+			final ByteArrayOutputStream compressedBody = new ByteArrayOutputStream();
+			try (final OutputStream out = contentEncoding.equals("gzip") ? new GZIPOutputStream(compressedBody) : new DeflaterOutputStream(compressedBody))
+			{
+				domainPropsJaxbCtx.createMarshaller().marshal(domainProperties, out);
+			}
+
+			final WebTarget target = ClientBuilder.newClient().target(remoteAppBaseUrl).path("domains");
+			final Invocation.Builder builder = target.request(MediaType.APPLICATION_XML).header("Content-Encoding", contentEncoding);
+			final String domainId;
+			try (final jakarta.ws.rs.core.Response response = builder.post(Entity.entity(compressedBody.toByteArray(), MediaType.APPLICATION_XML)))
+			{
+				assertEquals(response.getStatus(), Status.OK.getStatusCode(), "Domain creation with " + contentEncoding + " request body failed");
+				domainId = response.readEntity(Link.class).getHref();
+			}
+
+			final DomainResource domainRes = domainsAPIProxyClient.getDomainResource(domainId);
+			assertEquals(domainRes.getDomainPropertiesResource().getDomainProperties().getExternalId(), domainProperties.getExternalId());
+			domainRes.deleteDomain();
+		}
+	}
+
+	@Parameters({ "enablePdpOnly" })
+	@Test
+	public void addDomainBatch(@Optional("false") final Boolean enablePdpOnly)
+	{
+		if (enablePdpOnly)
+		{
+			throw new SkipException("Domain creation not supported with enablePdpOnly=true");
+		}
+
+		// externalID is xs:NCName therefore cannot start with a number
+		final String externalId = "externalBatch" + nextCreatedDomainIndex;
+		nextCreatedDomainIndex += 1;
+		final List<DomainProperties> domainPropsList = Arrays.asList(new DomainProperties("Batch domain 0", externalId), new DomainProperties("Batch domain 1", null),
+		        new DomainProperties("Batch domain with conflicting externalId", externalId));
+		final DomainBatchResult batchResult = domainBatchResClient.addDomains(new DomainBatch(domainPropsList));
+		final List<DomainBatchItemResult> items = batchResult.getItems();
+		assertEquals(items.size(), domainPropsList.size());
+
+		final Set<String> batchDomainIds = new HashSet<>();
+		for (int i = 0; i < 2; i++)
+		{
+			final DomainBatchItemResult item = items.get(i);
+			assertEquals(item.getIndex(), i);
+			assertEquals(item.getStatus(), Status.OK.getStatusCode());
+			assertNotNull(item.getLink(), "Missing link to domain #" + i + " of batch");
+			final DomainResource domainRes = domainsAPIProxyClient.getDomainResource(item.getLink().getHref());
+			assertEquals(domainRes.getDomainPropertiesResource().getDomainProperties().getDescription(), domainPropsList.get(i).getDescription());
+			assertTrue(batchDomainIds.add(item.getLink().getHref()), "Domain ID uniqueness violation in batch");
+		}
+
+		// duplicate externalId
+		assertEquals(items.get(2).getStatus(), Status.BAD_REQUEST.getStatusCode());
+		assertNotNull(items.get(2).getError());
+
+		for (final String domainId : batchDomainIds)
+		{
+			domainsAPIProxyClient.getDomainResource(domainId).deleteDomain();
+		}
+	}
+
 	@Parameters({ "enablePdpOnly" })
 	@Test(dependsOnMethods = { "addAndGetDomain" })
 	public void getDomains(@Optional("false") final Boolean enablePdpOnly)
@@ -353,6 +599,91 @@ public class RootResourcesTest extends RestServiceTest
 		assertEquals(matchedDomainCount, createdDomainIds.size(), "Test domains added by 'addDomain' not all found by getDomains");
 	}
 
+	/**
+	 * Get /domains in Fast Infoset with the XACML external vocabulary
+	 *
+	 * @param enableFastInfoset enable Fast Infoset support
+	 * @param enablePdpOnly enable PDP only (no domain listing)
+	 */
+	@Parameters({ "enableFastInfoset", "enablePdpOnly" })
+	@Test(dependsOnMethods = { "getDomains" })
+	public void getDomainsWithFastInfosetVocabulary(@Optional("false") final Boolean enableFastInfoset, @Optional("false") final Boolean enablePdpOnly)
+	{
+		if (!enableFastInfoset || enablePdpOnly)
+		{
+			return;
+		}
+
+		final WebClient client = WebClient.create(WebClient.getConfig(domainsAPIProxyClient).getEndpoint().getEndpointInfo().getAddress(), Collections.singletonList(clientJaxbProviderFI));
+		// client parser must know the vocabulary
+		WebClient.getConfig(client).getInInterceptors().add(new JAXRSSubResourceCompatibleFIStaxInInterceptor());
+		try (final jakarta.ws.rs.core.Response response = client.path("domains").accept("application/fastinfoset").header(XacmlFastInfosetVocabulary.HTTP_HEADER, XacmlFastInfosetVocabulary.URI).get())
+		{
+			assertEquals(response.getStatus(), Status.OK.getStatusCode());
+			assertEquals(response.getHeaderString(XacmlFastInfosetVocabulary.HTTP_HEADER), XacmlFastInfosetVocabulary.URI);
+			final Resources domainResources = response.readEntity(Resources.class);
+			final Set<String> domainIds = new HashSet<>();
+			domainResources.getLinks().forEach(link -> domainIds.add(link.getHref()));
+			assertTrue(domainIds.containsAll(createdDomainIds), "Test domains added by 'addDomain' not all found by getDomains with Fast Infoset vocabulary");
+		}
+	}
+
+	private static String getMetricsText(final WebTarget metricsTarget)
+	{
+		try (final jakarta.ws.rs.core.Response response = metricsTarget.request().accept(MediaType.TEXT_PLAIN).get())
+		{
+			assertEquals(response.getStatus(), jakarta.ws.rs.core.Response.Status.OK.getStatusCode());
+			return response.readEntity(String.class);
+		}
+	}
+
+	private static long sumSamples(final String metrics, final Pattern samplePattern)
+	{
+		long sum = 0;
+		final Matcher matcher = samplePattern.matcher(metrics);
+		while (matcher.find())
+		{
+			sum += Long.parseLong(matcher.group(1));
+		}
+
+		return sum;
+	}
+
+	@Parameters({ "remote.base.url" })
+	@Test(dependsOnMethods = { "addAndGetDomain" })
+	public void getMetrics(@Optional final String remoteAppBaseUrlParam) throws JAXBException, InterruptedException
+	{
+		final String remoteAppBaseUrl = remoteAppBaseUrlParam == null || remoteAppBaseUrlParam.isEmpty() ? WebClient.getConfig(domainsAPIProxyClient).getEndpoint().getEndpointInfo().getAddress()
+		        : remoteAppBaseUrlParam;
+		final WebTarget target = ClientBuilder.newClient().register(LoggingFeature.class).target(remoteAppBaseUrl).path("metrics");
+		final String metricsBefore = getMetricsText(target);
+		// requests of previous tests must have been recorded
+		assertTrue(metricsBefore.contains("authzforce_http_server_requests_seconds_count{"), "HTTP request metrics missing from GET /metrics");
+		assertTrue(metricsBefore.contains("# TYPE authzforce_decision_duration_seconds histogram"), "Decision metrics missing from GET /metrics");
+		final long decisionCountBefore = sumSamples(metricsBefore, DECISION_COUNT_SAMPLE_PATTERN);
+		final long policyAddCountBefore = sumSamples(metricsBefore, POLICY_ADD_COUNT_SAMPLE_PATTERN);
+
+		// one decision (single Result) and one PAP write reloading the PDP
+		final DomainResource domainRes = domainsAPIProxyClient.getDomainResource(createdDomainIds.iterator().next());
+		final Request request = (Request) unmarshaller.unmarshal(new File(new File(XACML_SAMPLES_DIR, "IIIG301"), REQUEST_FILENAME));
+		assertNotNull(domainRes.getPdpResource().requestPolicyDecision(request), "No decision response");
+		domainRes.getPapResource().getPoliciesResource().addPolicy(createDumbXacmlPolicySet("metricsTest", "1.0"));
+
+		/*
+		 * Decisions are recorded before the response is sent, whereas HTTP requests are recorded when the response stream is closed on the server side, possibly after the client got the response
+		 */
+		final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		String metricsAfter = getMetricsText(target);
+		while (sumSamples(metricsAfter, POLICY_ADD_COUNT_SAMPLE_PATTERN) == policyAddCountBefore && System.nanoTime() < deadline)
+		{
+			Thread.sleep(50);
+			metricsAfter = getMetricsText(target);
+		}
+
+		assertEquals(sumSamples(metricsAfter, DECISION_COUNT_SAMPLE_PATTERN), decisionCountBefore + 1, "Decision count not incremented in GET /metrics after a decision request");
+		assertEquals(sumSamples(metricsAfter, POLICY_ADD_COUNT_SAMPLE_PATTERN), policyAddCountBefore + 1, "Policy addition (PDP reload) count not incremented in GET /metrics after a PAP write");
+	}
+
 	@Parameters({ "enablePdpOnly" })
 	@Test(dependsOnMethods = { "getDomains" })
 	public void getDomain(@Optional("false") final Boolean enablePdpOnly)
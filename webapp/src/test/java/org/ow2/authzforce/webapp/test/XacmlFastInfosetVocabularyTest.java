@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2012-2024 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * AuthzForce CE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AuthzForce CE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AuthzForce CE.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ow2.authzforce.webapp.test;
+
+import static org.testng.Assert.assertEquals;
+
+import org.ow2.authzforce.webapp.XacmlFastInfosetVocabulary;
+import org.testng.annotations.Test;
+
+import com.sun.xml.fastinfoset.vocab.ParserVocabulary;
+
+/**
+ * Pins the tables of the {@link XacmlFastInfosetVocabulary}: the index of an entry is what the Fast Infoset documents refer to, so any change of a table breaks the documents of the clients using
+ * the same vocabulary {@link XacmlFastInfosetVocabulary#URI}. If this test fails, restore the tables, or change the URI.
+ */
+public class XacmlFastInfosetVocabularyTest
+{
+	private static final String XACML_3_0_NS = "urn:oasis:names:tc:xacml:3.0:core:schema:wd-17";
+
+	private final ParserVocabulary vocabulary = XacmlFastInfosetVocabulary.getParserVocabulary();
+
+	@Test
+	public void elementNames()
+	{
+		assertEquals(vocabulary.elementName.getSize(), 75);
+		assertEquals(vocabulary.elementName._array[0].localName, "Request");
+		assertEquals(vocabulary.elementName._array[0].namespaceName, XACML_3_0_NS);
+		assertEquals(vocabulary.elementName._array[26].localName, "PolicySet");
+		assertEquals(vocabulary.elementName._array[54].localName, "resources");
+		assertEquals(vocabulary.elementName._array[54].namespaceName, "http://authzforce.github.io/rest-api-model/xmlns/authz/5");
+		assertEquals(vocabulary.elementName._array[74].localName, "link");
+		assertEquals(vocabulary.elementName._array[74].namespaceName, "http://www.w3.org/2005/Atom");
+	}
+
+	@Test
+	public void attributeNames()
+	{
+		assertEquals(vocabulary.attributeName.getSize(), 41);
+		assertEquals(vocabulary.attributeName._array[0].localName, "ReturnPolicyIdList");
+		assertEquals(vocabulary.attributeName._array[2].localName, "Category");
+		assertEquals(vocabulary.attributeName._array[30].localName, "externalId");
+		assertEquals(vocabulary.attributeName._array[40].localName, "title");
+	}
+
+	@Test
+	public void localNames()
+	{
+		assertEquals(vocabulary.localName.getSize(), 116);
+		assertEquals(vocabulary.localName._array[0], "Request");
+		assertEquals(vocabulary.localName._array[74], "link");
+		assertEquals(vocabulary.localName._array[77], "Category");
+		assertEquals(vocabulary.localName._array[115], "title");
+	}
+
+	@Test
+	public void attributeValues()
+	{
+		assertEquals(vocabulary.attributeValue.getSize(), 51);
+		// attribute categories
+		assertEquals(vocabulary.attributeValue._array[0], "urn:oasis:names:tc:xacml:1.0:subject-category:access-subject");
+		assertEquals(vocabulary.attributeValue._array[7], "urn:oasis:names:tc:xacml:3.0:attribute-category:environment");
+		// attribute IDs
+		assertEquals(vocabulary.attributeValue._array[8], "urn:oasis:names:tc:xacml:1.0:subject:authn-locality:dns-name");
+		assertEquals(vocabulary.attributeValue._array[15], "urn:oasis:names:tc:xacml:1.0:subject:subject-id");
+		assertEquals(vocabulary.attributeValue._array[29], "urn:oasis:names:tc:xacml:1.0:environment:current-dateTime");
+		// datatypes
+		assertEquals(vocabulary.attributeValue._array[30], "http://www.w3.org/2001/XMLSchema#string");
+		assertEquals(vocabulary.attributeValue._array[46], "urn:oasis:names:tc:xacml:3.0:data-type:xpathExpression");
+		// status codes
+		assertEquals(vocabulary.attributeValue._array[47], "urn:oasis:names:tc:xacml:1.0:status:ok");
+		assertEquals(vocabulary.attributeValue._array[50], "urn:oasis:names:tc:xacml:1.0:status:processing-error");
+	}
+
+	@Test
+	public void characterContentChunks()
+	{
+		assertEquals(vocabulary.characterContentChunk.getSize(), 6);
+	}
+}